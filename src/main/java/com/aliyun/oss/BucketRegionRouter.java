@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.aliyun.oss.common.auth.CredentialsProvider;
+import com.aliyun.oss.common.comm.ServiceClient;
+import com.aliyun.oss.internal.OSSBucketOperation;
+import com.aliyun.oss.model.GenericRequest;
+
+/**
+ * BucketRegionRouter
+ * 
+ * Sends the requests of each bucket to the endpoint of its region. The region
+ * is looked up once with GetBucketLocation through the configured endpoint 
+ * and cached; concurrent first requests of a bucket share the lookup. The 
+ * regional endpoint keeps the scheme, port and -internal suffix of the 
+ * configured one, or comes from {@link #setRegionEndpoint(String, URI)}.
+ * 
+ * Buckets whose location cannot be read, and configured endpoints that are 
+ * not regional OSS endpoints (CNAME, IP, acceleration), use the configured 
+ * endpoint. A redirect or wrong-endpoint error drops the cached location so
+ * that it is looked up again.
+ * 
+ * Connections are pooled per host by the HTTP client, so every region keeps
+ * its own connections.
+ */
+public class BucketRegionRouter {
+    
+    private static final Pattern REGIONAL_HOST = Pattern.compile("^(oss-[a-z0-9-]+?)(-internal)?(\\.aliyuncs\\.com)$");
+    private static final String ACCELERATE_PREFIX = "oss-accelerate";
+    private static final String PERMANENT_REDIRECT = "PermanentRedirect";
+    
+    /**
+     * How long a bucket whose location could not be read keeps using the 
+     * configured endpoint before it is looked up again.
+     */
+    private static final long FALLBACK_TTL_MILLIS = 60 * 1000L;
+    
+    private final ServiceClient client;
+    private final CredentialsProvider credsProvider;
+    
+    private final ConcurrentMap<String, FutureTask<Location>> locations = 
+            new ConcurrentHashMap<String, FutureTask<Location>>();
+    private final ConcurrentMap<String, URI> regionEndpoints = new ConcurrentHashMap<String, URI>();
+    private final ConcurrentMap<String, URI> routes = new ConcurrentHashMap<String, URI>();
+    
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    
+    public BucketRegionRouter(ServiceClient client, CredentialsProvider credsProvider) {
+        this.client = client;
+        this.credsProvider = credsProvider;
+    }
+    
+    /**
+     * Returns the endpoint for requests of the bucket, the configured 
+     * endpoint when the bucket cannot be routed.
+     */
+    public URI resolve(String bucketName, URI endpoint) {
+        if (regionEndpoints.isEmpty() && !isRegional(endpoint)) {
+            return endpoint;
+        }
+        
+        String region = getRegion(bucketName, endpoint);
+        if (region == null) {
+            return endpoint;
+        }
+        
+        URI explicit = regionEndpoints.get(region);
+        if (explicit != null) {
+            return explicit;
+        }
+        
+        String routeKey = region + "\n" + endpoint;
+        URI route = routes.get(routeKey);
+        if (route == null) {
+            route = regionalEndpoint(region, endpoint);
+            routes.putIfAbsent(routeKey, route);
+        }
+        return route;
+    }
+    
+    /**
+     * Returns the region of the bucket, looking it up if it is not cached, or 
+     * null when the location cannot be read.
+     */
+    public String getRegion(final String bucketName, final URI endpoint) {
+        assertParameterNotNull(bucketName, "bucketName");
+        while (true) {
+            FutureTask<Location> task = locations.get(bucketName);
+            if (task == null) {
+                FutureTask<Location> lookup = new FutureTask<Location>(new Callable<Location>() {
+                    @Override
+                    public Location call() {
+                        return lookup(bucketName, endpoint);
+                    }
+                });
+                task = locations.putIfAbsent(bucketName, lookup);
+                if (task == null) {
+                    task = lookup;
+                    lookup.run();
+                }
+            }
+            
+            Location location;
+            try {
+                location = task.get();
+            } catch (ExecutionException e) {
+                locations.remove(bucketName, task);
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ClientException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ClientException(e);
+            }
+            
+            if (System.currentTimeMillis() >= location.expiresAt) {
+                locations.remove(bucketName, task);
+                continue;
+            }
+            return location.region;
+        }
+    }
+    
+    /**
+     * Drops the cached location of the bucket, the next request looks it up again.
+     */
+    public void invalidate(String bucketName) {
+        if (locations.remove(bucketName) != null) {
+            refreshCount.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Sends the requests of buckets in the region to the endpoint, e.g. a 
+     * proxy or a VPC address, instead of the derived regional endpoint.
+     */
+    public void setRegionEndpoint(String region, URI endpoint) {
+        assertParameterNotNull(region, "region");
+        assertParameterNotNull(endpoint, "endpoint");
+        regionEndpoints.put(region, endpoint);
+    }
+    
+    /**
+     * GetBucketLocation requests sent.
+     */
+    public long getLookupCount() {
+        return lookupCount.get();
+    }
+    
+    /**
+     * Cached locations dropped after a redirect or wrong-endpoint error.
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+    
+    /**
+     * Whether the error means the bucket must be addressed through another 
+     * endpoint.
+     */
+    public static boolean isRegionError(OSSException e) {
+        if (PERMANENT_REDIRECT.equals(e.getErrorCode())) {
+            return true;
+        }
+        return OSSErrorCode.ACCESS_DENIED.equals(e.getErrorCode()) && e.getErrorMessage() != null 
+                && e.getErrorMessage().contains("endpoint");
+    }
+    
+    /**
+     * Reads the location of the bucket through the configured endpoint.
+     */
+    protected String locate(String bucketName, URI endpoint) {
+        OSSBucketOperation bucketOperation = new OSSBucketOperation(client, credsProvider);
+        bucketOperation.setEndpoint(endpoint);
+        return bucketOperation.getBucketLocation(new GenericRequest(bucketName));
+    }
+    
+    private Location lookup(String bucketName, URI endpoint) {
+        lookupCount.incrementAndGet();
+        try {
+            String region = locate(bucketName, endpoint);
+            if (region == null || region.length() == 0) {
+                return new Location(null, System.currentTimeMillis() + FALLBACK_TTL_MILLIS);
+            }
+            return new Location(region, Long.MAX_VALUE);
+        } catch (OSSException e) {
+            // No permission to read the location, or no such bucket: leave 
+            // the request to the configured endpoint, which reports the error.
+            return new Location(null, System.currentTimeMillis() + FALLBACK_TTL_MILLIS);
+        }
+    }
+    
+    private static boolean isRegional(URI endpoint) {
+        String host = endpoint.getHost();
+        if (host == null) {
+            return false;
+        }
+        Matcher matcher = REGIONAL_HOST.matcher(host);
+        return matcher.matches() && !matcher.group(1).startsWith(ACCELERATE_PREFIX);
+    }
+    
+    private static URI regionalEndpoint(String region, URI endpoint) {
+        if (!isRegional(endpoint)) {
+            return endpoint;
+        }
+        
+        Matcher matcher = REGIONAL_HOST.matcher(endpoint.getHost());
+        matcher.matches();
+        String internal = matcher.group(2) != null ? matcher.group(2) : "";
+        String regionalHost = region + internal + matcher.group(3);
+        try {
+            return new URI(endpoint.getScheme(), null, regionalHost, endpoint.getPort(), 
+                    endpoint.getPath(), null, null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+    
+    private static class Location {
+        final String region;
+        final long expiresAt;
+        
+        Location(String region, long expiresAt) {
+            this.region = region;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
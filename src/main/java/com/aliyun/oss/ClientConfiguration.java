@@ -52,6 +52,7 @@ public class ClientConfiguration {
     public static final int DEFAULT_THREAD_POOL_WAIT_TIME = 60 * 1000;
     public static final int DEFAULT_REQUEST_TIMEOUT = 5 * 60 * 1000;
     public static final long DEFAULT_SLOW_REQUESTS_THRESHOLD = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_TRANSFER_CONCURRENCY = 64;
 
     public static final boolean DEFAULT_USE_REAPER = true;
     
@@ -85,6 +86,7 @@ public class ClientConfiguration {
     private int requestTimeout = DEFAULT_REQUEST_TIMEOUT;
     private boolean requestTimeoutEnabled = false;
     private long slowRequestsThreshold = DEFAULT_SLOW_REQUESTS_THRESHOLD;
+    private int maxTransferConcurrency = DEFAULT_MAX_TRANSFER_CONCURRENCY;
     
     private Map<String, String> defaultHeaders = new LinkedHashMap<String, String>();
 
@@ -497,6 +499,21 @@ public class ClientConfiguration {
         this.slowRequestsThreshold = slowRequestsThreshold;
     }
     
+    /**
+     * 获取断点续传上传/下载共享线程池的最大并发分片数，默认64。
+     */
+    public int getMaxTransferConcurrency() {
+        return maxTransferConcurrency;
+    }
+
+    /**
+     * 设置断点续传上传/下载共享线程池的最大并发分片数，所有进行中的uploadFile/downloadFile共享该上限。
+     * @param maxTransferConcurrency 最大并发分片数，需大于0。
+     */
+    public void setMaxTransferConcurrency(int maxTransferConcurrency) {
+        this.maxTransferConcurrency = maxTransferConcurrency;
+    }
+    
     /**
      * 获取默认请求头，每个请求发送到时会添加默认请求头。具体操作请求头与默认请求头有重复时，前者覆盖后者，具体请求头优先级更高。
      */
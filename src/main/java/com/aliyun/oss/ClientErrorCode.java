@@ -56,4 +56,9 @@ public interface ClientErrorCode {
      */
     static final String NONREPEATABLE_REQUEST = "NonRepeatableRequest";
     
+    /**
+     * 客户端与服务器端计算的CRC64不一致。
+     */
+    static final String INCONSISTENT_CRC = "InconsistentCRC";
+    
 }
@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertTrue;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aliyun.oss.common.utils.ExceptionFactory;
+import com.aliyun.oss.internal.CacheUtils;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.SimplifiedObjectMeta;
+
+/**
+ * MetadataCache
+ * 
+ * Caches the answers of HEAD-style calls: object metadata, simplified object
+ * meta and bucket existence. Found objects are kept for ttlMillis; NoSuchKey
+ * and NoSuchBucket answers, and buckets that do not exist, are kept for 
+ * negativeTtlMillis. Concurrent lookups of one entry share a single request.
+ * 
+ * Writes sent through the same client invalidate the entries of the object 
+ * or bucket they touch. A lookup that was in flight during an invalidation 
+ * returns its answer but does not cache it. Changes made by other clients 
+ * are seen once the entries expire.
+ */
+public class MetadataCache {
+    
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_TTL_MILLIS = 30 * 1000L;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5 * 1000L;
+    
+    /**
+     * Sends the request that answers a lookup.
+     */
+    public interface Loader<T> {
+        T load() throws OSSException, ClientException;
+    }
+    
+    private static final String METADATA = "M";
+    private static final String SIMPLIFIED_META = "S";
+    private static final String BUCKET = "B";
+    
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    
+    // Guarded by this.
+    private final LinkedHashMap<String, Entry> entries;
+    
+    private final ConcurrentMap<String, Loading> loadings = new ConcurrentHashMap<String, Loading>();
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong negativeHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    
+    public MetadataCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+    
+    /**
+     * @param maxEntries the least recently used entries beyond it are dropped.
+     * @param ttlMillis how long found objects and existing buckets are cached.
+     * @param negativeTtlMillis how long missing objects and buckets are cached, 
+     *          0 disables negative caching.
+     */
+    public MetadataCache(final int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        assertTrue(maxEntries > 0, "maxEntries should be positive.");
+        assertTrue(ttlMillis >= 0, "ttlMillis should not be negative.");
+        assertTrue(negativeTtlMillis >= 0, "negativeTtlMillis should not be negative.");
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+    
+    public ObjectMetadata getObjectMetadata(String bucketName, String key, Loader<ObjectMetadata> loader) {
+        Map<String, String> headers = lookup(METADATA, bucketName, key, new HeadersLoader(loader));
+        return CacheUtils.toMetadata(headers);
+    }
+    
+    public SimplifiedObjectMeta getSimplifiedObjectMeta(String bucketName, String key, 
+            Loader<SimplifiedObjectMeta> loader) {
+        SimplifiedObjectMeta cached = lookup(SIMPLIFIED_META, bucketName, key, loader);
+        SimplifiedObjectMeta meta = new SimplifiedObjectMeta();
+        meta.setETag(cached.getETag());
+        meta.setSize(cached.getSize());
+        meta.setLastModified(cached.getLastModified());
+        meta.setRequestId(cached.getRequestId());
+        return meta;
+    }
+    
+    public boolean doesBucketExist(String bucketName, Loader<Boolean> loader) {
+        return lookup(BUCKET, bucketName, null, loader);
+    }
+    
+    /**
+     * Drops the cached metadata of the object. Lookups of the object in 
+     * flight are detached and will not store their answer.
+     */
+    public void invalidate(String bucketName, String key) {
+        invalidationCount.incrementAndGet();
+        synchronized (this) {
+            for (String cacheKey : new String[] { cacheKey(METADATA, bucketName, key), 
+                    cacheKey(SIMPLIFIED_META, bucketName, key) }) {
+                entries.remove(cacheKey);
+                Loading loading = loadings.remove(cacheKey);
+                if (loading != null) {
+                    loading.invalidated = true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Drops the cached existence of the bucket and of all its objects.
+     */
+    public void invalidateBucket(String bucketName) {
+        invalidationCount.incrementAndGet();
+        synchronized (this) {
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+                if (it.next().bucketName.equals(bucketName)) {
+                    it.remove();
+                }
+            }
+            for (Iterator<Loading> it = loadings.values().iterator(); it.hasNext();) {
+                Loading loading = it.next();
+                if (loading.bucketName.equals(bucketName)) {
+                    loading.invalidated = true;
+                    it.remove();
+                }
+            }
+        }
+    }
+    
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            for (Loading loading : loadings.values()) {
+                loading.invalidated = true;
+            }
+            loadings.clear();
+        }
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+    
+    public long getNegativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+    
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+    
+    /**
+     * Lookups answered from the cache, including cached misses.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    /**
+     * Lookups answered from a cached NoSuchKey, NoSuchBucket or missing bucket.
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+    
+    /**
+     * Lookups that sent a request.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(String kind, String bucketName, String key, Loader<T> loader) {
+        String cacheKey = cacheKey(kind, bucketName, key);
+        
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(cacheKey);
+            if (entry != null && System.currentTimeMillis() >= entry.expiresAt) {
+                entries.remove(cacheKey);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            return (T) hit(entry);
+        }
+        
+        Loading loading = new Loading(bucketName);
+        Loading leader = loadings.putIfAbsent(cacheKey, loading);
+        if (leader != null) {
+            return (T) hit(leader.await());
+        }
+        
+        missCount.incrementAndGet();
+        try {
+            Entry loaded;
+            try {
+                T value = loader.load();
+                long ttl = Boolean.FALSE.equals(value) ? negativeTtlMillis : ttlMillis;
+                loaded = new Entry(bucketName, value, null, ttl);
+            } catch (OSSException e) {
+                if (!OSSErrorCode.NO_SUCH_KEY.equals(e.getErrorCode()) 
+                        && !OSSErrorCode.NO_SUCH_BUCKET.equals(e.getErrorCode())) {
+                    throw e;
+                }
+                loaded = new Entry(bucketName, null, e, negativeTtlMillis);
+            }
+            
+            synchronized (this) {
+                if (!loading.invalidated && loaded.expiresAt > System.currentTimeMillis()) {
+                    entries.put(cacheKey, loaded);
+                }
+            }
+            loading.complete(loaded, null);
+            return (T) loaded.value();
+        } catch (RuntimeException e) {
+            loading.complete(null, e);
+            throw e;
+        } finally {
+            loadings.remove(cacheKey, loading);
+        }
+    }
+    
+    private Object hit(Entry entry) {
+        hitCount.incrementAndGet();
+        if (entry.notFound != null || Boolean.FALSE.equals(entry.value)) {
+            negativeHitCount.incrementAndGet();
+        }
+        return entry.value();
+    }
+    
+    private static String cacheKey(String kind, String bucketName, String key) {
+        return key == null ? kind + "\n" + bucketName : kind + "\n" + bucketName + "\n" + key;
+    }
+    
+    private static class Entry {
+        final String bucketName;
+        final Object value;
+        final OSSException notFound;
+        final long expiresAt;
+        
+        Entry(String bucketName, Object value, OSSException notFound, long ttlMillis) {
+            this.bucketName = bucketName;
+            this.value = value;
+            this.notFound = notFound;
+            this.expiresAt = System.currentTimeMillis() + ttlMillis;
+        }
+        
+        /**
+         * Returns the cached value or throws a copy of the cached NoSuchKey 
+         * or NoSuchBucket error.
+         */
+        Object value() {
+            if (notFound != null) {
+                throw ExceptionFactory.createOSSException(notFound.getRequestId(), 
+                        notFound.getErrorCode(), notFound.getErrorMessage());
+            }
+            return value;
+        }
+    }
+    
+    /**
+     * Keeps the response headers instead of the mutable ObjectMetadata, 
+     * every hit gets its own copy.
+     */
+    private static class HeadersLoader implements Loader<Map<String, String>> {
+        private final Loader<ObjectMetadata> loader;
+        
+        HeadersLoader(Loader<ObjectMetadata> loader) {
+            this.loader = loader;
+        }
+        
+        @Override
+        public Map<String, String> load() {
+            return CacheUtils.toHeaders(loader.load());
+        }
+    }
+    
+    /**
+     * A lookup in progress that other callers of the same entry wait for.
+     */
+    private static class Loading {
+        final String bucketName;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Entry entry;
+        private volatile RuntimeException failure;
+        /* Set by the invalidate methods, guarded by the cache */
+        private boolean invalidated;
+        
+        Loading(String bucketName) {
+            this.bucketName = bucketName;
+        }
+        
+        void complete(Entry entry, RuntimeException failure) {
+            this.entry = entry;
+            this.failure = failure;
+            done.countDown();
+        }
+        
+        Entry await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return entry;
+        }
+    }
+}
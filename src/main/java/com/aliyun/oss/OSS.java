@@ -32,6 +32,7 @@ import com.aliyun.oss.model.AbortMultipartUploadRequest;
 import com.aliyun.oss.model.AccessControlList;
 import com.aliyun.oss.model.AddBucketCnameRequest;
 import com.aliyun.oss.model.AddBucketReplicationRequest;
+import com.aliyun.oss.model.AppendLogRequest;
 import com.aliyun.oss.model.AppendObjectRequest;
 import com.aliyun.oss.model.AppendObjectResult;
 import com.aliyun.oss.model.Bucket;
@@ -42,8 +43,11 @@ import com.aliyun.oss.model.BucketProcess;
 import com.aliyun.oss.model.BucketReferer;
 import com.aliyun.oss.model.BucketReplicationProgress;
 import com.aliyun.oss.model.BucketWebsiteResult;
+import com.aliyun.oss.model.BulkDeleteRequest;
+import com.aliyun.oss.model.BulkDeleteResult;
 import com.aliyun.oss.model.CannedAccessControlList;
 import com.aliyun.oss.model.CnameConfiguration;
+import com.aliyun.oss.model.CompactObjectListing;
 import com.aliyun.oss.model.CompleteMultipartUploadRequest;
 import com.aliyun.oss.model.CompleteMultipartUploadResult;
 import com.aliyun.oss.model.CopyObjectRequest;
@@ -74,6 +78,7 @@ import com.aliyun.oss.model.ListLiveChannelsRequest;
 import com.aliyun.oss.model.ListMultipartUploadsRequest;
 import com.aliyun.oss.model.ListObjectsRequest;
 import com.aliyun.oss.model.ListPartsRequest;
+import com.aliyun.oss.model.ListingIterable;
 import com.aliyun.oss.model.LiveChannel;
 import com.aliyun.oss.model.LiveChannelGenericRequest;
 import com.aliyun.oss.model.LiveChannelInfo;
@@ -81,12 +86,19 @@ import com.aliyun.oss.model.LiveChannelListing;
 import com.aliyun.oss.model.LiveChannelStat;
 import com.aliyun.oss.model.LiveChannelStatus;
 import com.aliyun.oss.model.LiveRecord;
+import com.aliyun.oss.model.MultipartUpload;
 import com.aliyun.oss.model.MultipartUploadListing;
 import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.OSSObjectSummary;
 import com.aliyun.oss.model.ObjectAcl;
 import com.aliyun.oss.model.ObjectListing;
 import com.aliyun.oss.model.ObjectMetadata;
 import com.aliyun.oss.model.OptionsRequest;
+import com.aliyun.oss.model.ParallelCopyObjectRequest;
+import com.aliyun.oss.model.ParallelCopyObjectResult;
+import com.aliyun.oss.model.ParallelGetObjectRequest;
+import com.aliyun.oss.model.ParallelListObjectsRequest;
+import com.aliyun.oss.model.ParallelObjectListing;
 import com.aliyun.oss.model.PartListing;
 import com.aliyun.oss.model.PolicyConditions;
 import com.aliyun.oss.model.PutBucketImageRequest;
@@ -106,9 +118,13 @@ import com.aliyun.oss.model.SetBucketTaggingRequest;
 import com.aliyun.oss.model.SetBucketWebsiteRequest;
 import com.aliyun.oss.model.SetLiveChannelRequest;
 import com.aliyun.oss.model.SetObjectAclRequest;
+import com.aliyun.oss.model.SeekableObjectRequest;
 import com.aliyun.oss.model.SimplifiedObjectMeta;
+import com.aliyun.oss.model.StreamUploadRequest;
 import com.aliyun.oss.model.Style;
 import com.aliyun.oss.model.TagSet;
+import com.aliyun.oss.model.UploadDirectoryRequest;
+import com.aliyun.oss.model.UploadDirectoryResult;
 import com.aliyun.oss.model.UploadFileRequest;
 import com.aliyun.oss.model.UploadFileResult;
 import com.aliyun.oss.model.UploadPartCopyRequest;
@@ -409,6 +425,65 @@ public interface OSS {
      */
     public ObjectListing listObjects(ListObjectsRequest listObjectsRequest)
             throws OSSException, ClientException;
+
+    /**
+     * 列出指定{@link Bucket}下的{@link OSSObject}，结果按列紧凑存储。
+     * <p>
+     * 与{@link #listObjects(ListObjectsRequest)}返回相同的内容，但不为每个Object创建
+     * {@link OSSObjectSummary}、{@link com.aliyun.oss.model.Owner}和{@link java.util.Date}，适合在内存中保存大量Object的清单。
+     * </p>
+     * @param listObjectsRequest
+     *          请求信息。
+     * @return 紧凑存储的object列表{@link CompactObjectListing}
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public CompactObjectListing listObjectsCompact(ListObjectsRequest listObjectsRequest)
+            throws OSSException, ClientException;
+
+    /**
+     * 逐条遍历指定{@link Bucket}下的{@link OSSObject}摘要。
+     * <p>
+     * 遍历时在后台预取下一页，调用者处理当前页时下一页已在请求中。
+     * 默认最多预取2页，结果中不包含CommonPrefixes。
+     * </p>
+     * @param listObjectsRequest
+     *          请求信息，其中marker为遍历的起点。
+     * @return 可遍历的Object摘要{@link ListingIterable}
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public ListingIterable<OSSObjectSummary> iterateObjects(ListObjectsRequest listObjectsRequest)
+            throws OSSException, ClientException;
+
+    /**
+     * 逐条遍历指定{@link Bucket}下的{@link OSSObject}摘要。
+     * @param listObjectsRequest
+     *          请求信息，其中marker为遍历的起点。
+     * @param readAheadPages
+     *          后台最多预取的页数。
+     * @return 可遍历的Object摘要{@link ListingIterable}
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public ListingIterable<OSSObjectSummary> iterateObjects(ListObjectsRequest listObjectsRequest,
+            int readAheadPages) throws OSSException, ClientException;
+    
+    /**
+     * 并行列举指定{@link Bucket}下的{@link OSSObject}摘要。
+     * <p>
+     * 先按delimiter列举prefix下的目录结构，每个子目录作为一个分片，多个线程同时列举各分片。
+     * 子目录数少于线程数时，继续向下层目录划分，最多到maxShardDepth层。
+     * 结果可按key的顺序输出，也可按分片返回的先后输出；不需要继续遍历时应调用cancel()。
+     * </p>
+     * @param parallelListObjectsRequest
+     *          请求信息。
+     * @return 可遍历的Object摘要及列举统计信息{@link ParallelObjectListing}
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public ParallelObjectListing listObjectsInParallel(ParallelListObjectsRequest parallelListObjectsRequest)
+            throws OSSException, ClientException;
     
     /**
      * 上传指定的{@link OSSObject}到OSS中指定的{@link Bucket}。
@@ -547,6 +622,21 @@ public interface OSS {
     public CopyObjectResult copyObject(CopyObjectRequest copyObjectRequest)
             throws OSSException, ClientException;
 
+    /**
+     * 并发拷贝一个在OSS上已经存在的Object成另外一个Object。
+     * 源Object小于分片拷贝阈值时使用一次{@link #copyObject(CopyObjectRequest)}，
+     * 否则按分片并发执行{@link #uploadPartCopy(UploadPartCopyRequest)}，
+     * 每个分片都以源Object的ETag作为拷贝条件，拷贝过程中源Object被修改时拷贝失败。
+     * 开启断点续传时，可从检查点文件中恢复已拷贝的分片。
+     * @param parallelCopyObjectRequest
+     *          请求参数{@link ParallelCopyObjectRequest}实例。
+     * @return 请求结果{@link ParallelCopyObjectResult}实例。
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public ParallelCopyObjectResult copyObjectInParallel(ParallelCopyObjectRequest parallelCopyObjectRequest)
+            throws OSSException, ClientException;
+
     /**
      * 从OSS指定的{@link Bucket}中导出{@link OSSObject}。
      * @param bucketName
@@ -577,6 +667,19 @@ public interface OSS {
     public OSSObject getObject(GetObjectRequest getObjectRequest)
             throws OSSException, ClientException;
 
+    /**
+     * 并发读取指定的Object，返回的{@link OSSObject}中的ObjectContent按顺序读取Object内容，
+     * 数据由多个并发的范围请求提前下载，适用于解压、解析等以流方式读取大Object的场景。
+     * 单个范围请求失败时只重试该范围；读到流末尾时校验Object的CRC64。
+     * @param parallelGetObjectRequest
+     *          请求参数{@link ParallelGetObjectRequest}。
+     * @return 请求结果{@link OSSObject}实例。使用完之后需要关闭其中的ObjectContent以停止后台下载。
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public OSSObject getObjectInParallel(ParallelGetObjectRequest parallelGetObjectRequest)
+            throws OSSException, ClientException;
+
     /**
      * 使用URL签名方式导出{@link OSSObject}。
      * @param signedUrl GET请求类型的URL签名。
@@ -669,6 +772,19 @@ public interface OSS {
     public DeleteObjectsResult deleteObjects(DeleteObjectsRequest deleteObjectsRequest)
             throws OSSException, ClientException;
     
+    /**
+     * 批量删除迭代器给出的全部{@link OSSObject}，或者指定前缀下的全部{@link OSSObject}。
+     * <p>
+     * 按每批最多1000个分批并发删除，同时进行中的批次数不超过taskNum，失败的批次会重试。
+     * 按前缀删除时，列举与删除同时进行。重试后仍失败的Object在结果中返回，不抛出异常。
+     * </p>
+     * @param bulkDeleteRequest
+     *             请求参数{@link BulkDeleteRequest}实例。
+     * @return 汇总的删除结果及删除失败的Object。
+     */
+    public BulkDeleteResult bulkDeleteObjects(BulkDeleteRequest bulkDeleteRequest)
+            throws OSSException, ClientException;
+    
     /**
      * 判断指定{@link Bucket}下是否存在指定的{@link OSSObject}。
      * @param bucketName 
@@ -951,6 +1067,30 @@ public interface OSS {
     public MultipartUploadListing listMultipartUploads(ListMultipartUploadsRequest request) 
             throws OSSException, ClientException;
 
+    /**
+     * 逐条遍历所有执行中的 Multipart上传事件，在后台预取下一页，默认最多预取2页。
+     * @param request
+     *          {@link ListMultipartUploadsRequest}对象，其中keyMarker/uploadIdMarker为遍历的起点。
+     * @return 可遍历的Multipart上传事件{@link ListingIterable}
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public ListingIterable<MultipartUpload> iterateMultipartUploads(ListMultipartUploadsRequest request)
+            throws OSSException, ClientException;
+
+    /**
+     * 逐条遍历所有执行中的 Multipart上传事件，在后台预取下一页。
+     * @param request
+     *          {@link ListMultipartUploadsRequest}对象，其中keyMarker/uploadIdMarker为遍历的起点。
+     * @param readAheadPages
+     *          后台最多预取的页数。
+     * @return 可遍历的Multipart上传事件{@link ListingIterable}
+     * @throws OSSException
+     * @throws ClientException
+     */
+    public ListingIterable<MultipartUpload> iterateMultipartUploads(ListMultipartUploadsRequest request,
+            int readAheadPages) throws OSSException, ClientException;
+
     /**
      * 列出multipart中上传的所有part信息
      * @param request
@@ -1463,6 +1603,92 @@ public interface OSS {
      */
     public DownloadFileResult downloadFile(DownloadFileRequest downloadFileRequest) throws Throwable;
     
+    /**
+     * 创建流式上传的输出流，用于上传长度未知的数据。
+     * 
+     * 写入的数据按分片大小切分，写满的分片在后台并发上传，同时上传的分片过多时写入会阻塞等待。
+     * 关闭输出流时完成上传；数据不足一个分片时使用PutObject上传。上传失败时分片上传会被取消。
+     * 
+     * @param bucketName Bucket名称。
+     * @param key Object key。
+     * @return 流式上传的输出流{@link OSSOutputStream}。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public OSSOutputStream createOutputStream(String bucketName, String key) throws ClientException;
+    
+    /**
+     * 创建流式上传的输出流，用于上传长度未知的数据。
+     * 
+     * @param streamUploadRequest 流式上传请求，指定分片大小、并发分片数及Object元数据。
+     * @return 流式上传的输出流{@link OSSOutputStream}。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public OSSOutputStream createOutputStream(StreamUploadRequest streamUploadRequest) throws ClientException;
+    
+    /**
+     * 创建追加日志写入器，用于通过追加上传高频写入小记录。
+     * 
+     * 记录先在内存中缓冲，缓冲数据达到指定大小或等待超过指定时间时合并为一次AppendObject请求写入，
+     * 追加位置及CRC64由写入器自动维护，Object达到大小上限时切换到新的Object。
+     * 
+     * @param bucketName Bucket名称。
+     * @param key Object key。
+     * @return 追加日志写入器{@link OSSAppendLogWriter}。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public OSSAppendLogWriter createAppendLogWriter(String bucketName, String key) throws ClientException;
+    
+    /**
+     * 创建追加日志写入器，用于通过追加上传高频写入小记录。
+     * 
+     * @param appendLogRequest 追加日志写入请求，指定合并写入的大小、等待时间及Object大小上限。
+     * @return 追加日志写入器{@link OSSAppendLogWriter}。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public OSSAppendLogWriter createAppendLogWriter(AppendLogRequest appendLogRequest) throws ClientException;
+    
+    /**
+     * 打开可随机定位读取的Object通道，适用于Parquet、ORC等需要跳跃读取文件尾及列数据的场景。
+     * 
+     * 通道按块读取Object并缓存最近读取的块；短距离的向前定位沿用当前的范围请求，相邻的小范围读取合并为一个范围请求，
+     * 连续读取时范围请求的大小逐步增大。所有范围请求都限定为打开时的ETag，Object被修改后读取会失败。
+     * 
+     * @param bucketName Bucket名称。
+     * @param key Object key。
+     * @return 可随机定位读取的通道{@link OSSObjectChannel}，可通过{@link OSSObjectChannel#newInputStream()}获得输入流。
+     *          使用完之后需要关闭。
+     * @throws OSSException OSS Server异常信息。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public OSSObjectChannel openObjectChannel(String bucketName, String key) throws OSSException, ClientException;
+    
+    /**
+     * 打开可随机定位读取的Object通道。
+     * 
+     * @param seekableObjectRequest 随机读取请求，指定块大小、最大预读大小、向前定位距离及块缓存大小。
+     * @return 可随机定位读取的通道{@link OSSObjectChannel}。使用完之后需要关闭。
+     * @throws OSSException OSS Server异常信息。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public OSSObjectChannel openObjectChannel(SeekableObjectRequest seekableObjectRequest) 
+            throws OSSException, ClientException;
+    
+    /**
+     * 目录上传
+     * 
+     * 将本地目录下的文件上传到Bucket中，Object key为指定前缀与文件相对路径的拼接，支持包含及排除规则。
+     * 小文件使用PutObject上传，大文件使用分片上传，所有文件在同一个有界的流水线中上传。
+     * 指定manifest文件时记录已上传的文件，再次上传时跳过未修改的文件，全部成功后manifest文件被删除。
+     * 单个文件上传失败不影响其他文件，失败的文件在结果中返回。
+     * 
+     * @param uploadDirectoryRequest 目录上传请求{@link UploadDirectoryRequest}实例。
+     * @return 汇总的文件数、字节数、吞吐量及上传失败的文件。
+     * @throws OSSException OSS Server异常信息。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public UploadDirectoryResult uploadDirectory(UploadDirectoryRequest uploadDirectoryRequest)
+            throws OSSException, ClientException;
+    
     /**
      * 创建Live Channel。
      * 
@@ -1585,6 +1811,27 @@ public interface OSS {
      */
     public LiveChannelListing listLiveChannels(ListLiveChannelsRequest listLiveChannelRequest) 
             throws OSSException, ClientException;
+
+    /**
+     * 逐条遍历符合请求参数要求的{@link LiveChannel}，在后台预取下一页，默认最多预取2页。
+     * @param listLiveChannelRequest 请求参数，其中marker为遍历的起点。
+     * @return 可遍历的{@link LiveChannel}列表。
+     * @throws OSSException OSS Server异常信息。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public ListingIterable<LiveChannel> iterateLiveChannels(ListLiveChannelsRequest listLiveChannelRequest)
+            throws OSSException, ClientException;
+
+    /**
+     * 逐条遍历符合请求参数要求的{@link LiveChannel}，在后台预取下一页。
+     * @param listLiveChannelRequest 请求参数，其中marker为遍历的起点。
+     * @param readAheadPages 后台最多预取的页数。
+     * @return 可遍历的{@link LiveChannel}列表。
+     * @throws OSSException OSS Server异常信息。
+     * @throws ClientException OSS Client异常信息。
+     */
+    public ListingIterable<LiveChannel> iterateLiveChannels(ListLiveChannelsRequest listLiveChannelRequest,
+            int readAheadPages) throws OSSException, ClientException;
     
     /**
      * 获取指定Live Channel的推流记录。
@@ -0,0 +1,494 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+import static com.aliyun.oss.internal.OSSUtils.ensureObjectKeyValid;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aliyun.oss.common.utils.CRC64;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.AppendLogRequest;
+import com.aliyun.oss.model.AppendObjectRequest;
+import com.aliyun.oss.model.AppendObjectResult;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+
+/**
+ * OSSAppendLogWriter
+ * 
+ * Group-commits small records into appendable objects. Records are copied 
+ * into a shared buffer; once it holds flushSize bytes, or its oldest record
+ * has waited flushIntervalMillis, the whole buffer is sent as one 
+ * AppendObject. Records appended while a batch is in flight go into the next
+ * batch, so concurrent writers share requests instead of queueing one each.
+ * 
+ * The writer tracks the append position and the rolling CRC64 of the object,
+ * checking it against the CRC64 returned by every append. A position 
+ * mismatch (an existing object, or a retried append that already landed) is
+ * resolved with a HEAD: a batch found at the tail of the object is taken as
+ * written, otherwise the batch is appended at the current length. A batch 
+ * that would grow the object beyond maxObjectSize starts a new object whose
+ * key carries a ".000001"-style sequence suffix. The first batch looks up
+ * the latest existing object with HEADs, so a restarted writer continues 
+ * where the previous one stopped.
+ * 
+ * A CRC64 mismatch after an accepted append means the object no longer 
+ * holds what was written. The batch is not sent again, which would only 
+ * duplicate it; the writer gives up that object and starts a new one.
+ */
+public class OSSAppendLogWriter implements Closeable, Flushable {
+    
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+    private static final int MAX_POSITION_RECOVERIES = 3;
+    
+    private final OSSObjectOperation objectOperation;
+    private final AppendLogRequest request;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final long maxObjectSize;
+    
+    // Pending records, guarded by this.
+    private byte[] buffer;
+    private byte[] spare;
+    private int count;
+    private int pendingRecords;
+    private long oldestPendingNanos;
+    private boolean closed;
+    
+    // Object state, guarded by flushLock.
+    private final Object flushLock = new Object();
+    private volatile String currentKey;
+    private volatile int segment;
+    private volatile long position;
+    private volatile Long crc64 = 0L;
+    private boolean located;
+    
+    private volatile long flushCount;
+    private volatile long recordsWritten;
+    private volatile long bytesWritten;
+    
+    private final Thread flusher;
+    
+    OSSAppendLogWriter(OSSObjectOperation objectOperation, AppendLogRequest request) {
+        assertParameterNotNull(request, "appendLogRequest");
+        assertParameterNotNull(request.getBucketName(), "bucketName");
+        assertParameterNotNull(request.getKey(), "key");
+        ensureBucketNameValid(request.getBucketName());
+        ensureObjectKeyValid(request.getKey());
+        
+        this.objectOperation = objectOperation;
+        this.request = request;
+        this.flushSize = request.getFlushSize();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(request.getFlushIntervalMillis());
+        this.maxObjectSize = request.getMaxObjectSize();
+        this.buffer = new byte[flushSize];
+        this.currentKey = request.getKey();
+        
+        if (flushIntervalNanos > 0) {
+            flusher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runFlusher();
+                }
+            }, "oss-append-log-" + THREAD_NUMBER.incrementAndGet());
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+    
+    public void append(byte[] record) {
+        append(record, 0, record.length);
+    }
+    
+    /**
+     * Buffers one record. When the buffer reaches flushSize the caller sends
+     * it, which also holds back writers that outpace the appends.
+     */
+    public void append(byte[] record, int off, int len) {
+        if (off < 0 || len < 0 || off + len > record.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        boolean full;
+        synchronized (this) {
+            ensureOpen();
+            if (count == 0) {
+                oldestPendingNanos = System.nanoTime();
+                notifyAll();
+            }
+            ensureCapacity(count + len);
+            System.arraycopy(record, off, buffer, count, len);
+            count += len;
+            pendingRecords++;
+            full = count >= flushSize;
+        }
+        if (full) {
+            flushPending(FlushMode.FULL);
+        }
+    }
+    
+    /**
+     * Writes all records appended before this call. A failed batch is kept
+     * and sent again by the next flush, unless the server accepted it with
+     * a mismatching CRC64.
+     */
+    @Override
+    public void flush() {
+        flushPending(FlushMode.ALL);
+    }
+    
+    /**
+     * Writes the pending records and stops the writer.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        flushPending(FlushMode.ALL);
+    }
+    
+    /**
+     * The key of the object currently appended to.
+     */
+    public String getKey() {
+        return currentKey;
+    }
+    
+    /**
+     * Number of objects started after the first one.
+     */
+    public int getSegment() {
+        return segment;
+    }
+    
+    /**
+     * The position the next batch is appended at.
+     */
+    public long getPosition() {
+        return position;
+    }
+    
+    /**
+     * CRC64 of the current object, null if the server did not report it.
+     */
+    public Long getCRC64() {
+        return crc64;
+    }
+    
+    /**
+     * Number of AppendObject requests that wrote a batch.
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+    
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+    
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    public synchronized int getPendingBytes() {
+        return count;
+    }
+    
+    private enum FlushMode {
+        ALL, FULL, DEADLINE
+    }
+    
+    private void flushPending(FlushMode mode) {
+        synchronized (flushLock) {
+            byte[] data;
+            int length;
+            int records;
+            synchronized (this) {
+                if (count == 0
+                        || (mode == FlushMode.FULL && count < flushSize)
+                        || (mode == FlushMode.DEADLINE && System.nanoTime() - oldestPendingNanos < flushIntervalNanos)) {
+                    return;
+                }
+                data = buffer;
+                length = count;
+                records = pendingRecords;
+                buffer = spare != null ? spare : new byte[flushSize];
+                spare = null;
+                count = 0;
+                pendingRecords = 0;
+            }
+            
+            boolean written = false;
+            try {
+                write(data, length);
+                written = true;
+            } catch (ClientException e) {
+                // The server has the batch already; resending would duplicate it.
+                if (ClientErrorCode.INCONSISTENT_CRC.equals(e.getErrorCode())) {
+                    written = true;
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    if (written) {
+                        if (data.length <= 2 * flushSize) {
+                            spare = data;
+                        }
+                    } else {
+                        restore(data, length, records);
+                    }
+                }
+            }
+            flushCount++;
+            recordsWritten += records;
+            bytesWritten += length;
+        }
+    }
+    
+    /**
+     * Puts a failed batch back in front of the records appended meanwhile.
+     */
+    private void restore(byte[] data, int length, int records) {
+        byte[] merged = new byte[Math.max(length + count, flushSize)];
+        System.arraycopy(data, 0, merged, 0, length);
+        System.arraycopy(buffer, 0, merged, length, count);
+        buffer = merged;
+        count += length;
+        pendingRecords += records;
+        oldestPendingNanos = System.nanoTime();
+    }
+    
+    private void write(byte[] data, int length) {
+        if (!located) {
+            locateSegment();
+            located = true;
+        }
+        if (position > 0 && position + length > maxObjectSize) {
+            roll();
+        }
+        
+        long batchCRC = crc64(data, length);
+        for (int recoveries = 0; ; recoveries++) {
+            try {
+                append(data, length, batchCRC);
+                return;
+            } catch (OSSException e) {
+                if (!OSSErrorCode.POSITION_NOT_EQUAL_TO_LENGTH.equals(e.getErrorCode())
+                        || recoveries == MAX_POSITION_RECOVERIES) {
+                    throw e;
+                }
+                if (recoverPosition(length, batchCRC)) {
+                    return;
+                }
+                if (position > 0 && position + length > maxObjectSize) {
+                    roll();
+                }
+            }
+        }
+    }
+    
+    private void append(byte[] data, int length, long batchCRC) {
+        ObjectMetadata metadata = position == 0 && request.getObjectMetadata() != null 
+                ? request.getObjectMetadata() : new ObjectMetadata();
+        metadata.setContentLength(length);
+        AppendObjectRequest appendObjectRequest = new AppendObjectRequest(request.getBucketName(), currentKey,
+                new ByteArrayInputStream(data, 0, length), metadata);
+        appendObjectRequest.setPosition(position);
+        AppendObjectResult result = objectOperation.appendObject(appendObjectRequest);
+        
+        Long expected = crc64 != null ? CRC64.combine(crc64, batchCRC, length) : null;
+        Long serverCRC = parseCRC64(result.getObjectCRC64());
+        if (expected != null && serverCRC != null && !expected.equals(serverCRC)) {
+            roll();
+            throw new ClientException("The CRC64 of the appended object " + Long.toHexString(serverCRC) 
+                    + " does not match the CRC64 of the written records " + Long.toHexString(expected), 
+                    ClientErrorCode.INCONSISTENT_CRC, result.getRequestId());
+        }
+        position = result.getNextPosition() != null ? result.getNextPosition() : position + length;
+        crc64 = serverCRC != null ? serverCRC : expected;
+    }
+    
+    /**
+     * Re-reads the object length after a position mismatch. Returns true if 
+     * the batch is already the tail of the object, e.g. a retried request 
+     * whose first attempt succeeded.
+     */
+    private boolean recoverPosition(int length, long batchCRC) {
+        ObjectMetadata metadata = objectOperation.getObjectMetadataFromServer(
+                new GenericRequest(request.getBucketName(), currentKey));
+        long objectLength = metadata.getContentLength();
+        Long serverCRC = metadata.getServerCRC();
+        
+        if (objectLength == position + length && crc64 != null && serverCRC != null
+                && serverCRC.longValue() == CRC64.combine(crc64, batchCRC, length)) {
+            position = objectLength;
+            crc64 = serverCRC;
+            return true;
+        }
+        position = objectLength;
+        crc64 = serverCRC;
+        return false;
+    }
+    
+    /**
+     * Finds the last object written under the key: the base key, then the
+     * sequence suffixes probed by doubling and bisected. Appending continues
+     * at its end.
+     */
+    private void locateSegment() {
+        ObjectMetadata metadata = headSegment(0);
+        if (metadata == null) {
+            return;
+        }
+        
+        int last = 0;
+        ObjectMetadata lastMetadata = metadata;
+        int missing = -1;
+        for (int probe = 1; missing < 0; probe *= 2) {
+            metadata = headSegment(probe);
+            if (metadata == null) {
+                missing = probe;
+            } else {
+                last = probe;
+                lastMetadata = metadata;
+            }
+        }
+        while (missing - last > 1) {
+            int middle = (last + missing) >>> 1;
+            metadata = headSegment(middle);
+            if (metadata == null) {
+                missing = middle;
+            } else {
+                last = middle;
+                lastMetadata = metadata;
+            }
+        }
+        
+        segment = last;
+        currentKey = segmentKey(last);
+        position = lastMetadata.getContentLength();
+        crc64 = lastMetadata.getServerCRC();
+    }
+    
+    private ObjectMetadata headSegment(int number) {
+        try {
+            return objectOperation.getObjectMetadataFromServer(
+                    new GenericRequest(request.getBucketName(), segmentKey(number)));
+        } catch (OSSException e) {
+            if (OSSErrorCode.NO_SUCH_KEY.equals(e.getErrorCode())) {
+                return null;
+            }
+            throw e;
+        }
+    }
+    
+    private String segmentKey(int number) {
+        return number == 0 ? request.getKey() : request.getKey() + String.format(".%06d", number);
+    }
+    
+    private void roll() {
+        segment++;
+        currentKey = segmentKey(segment);
+        position = 0;
+        crc64 = 0L;
+    }
+    
+    private void runFlusher() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!closed) {
+                        if (count == 0) {
+                            wait();
+                            continue;
+                        }
+                        long remaining = oldestPendingNanos + flushIntervalNanos - System.nanoTime();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                flushPending(FlushMode.DEADLINE);
+            } catch (RuntimeException e) {
+                // The batch is kept and sent again after another interval.
+                logException("Append to " + currentKey + " failed: ", e);
+            }
+        }
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            byte[] grown = new byte[Math.max(capacity, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+    }
+    
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The append log writer is closed.");
+        }
+    }
+    
+    private static long crc64(byte[] data, int length) {
+        CRC64 crc = new CRC64();
+        crc.update(data, length);
+        return crc.getValue();
+    }
+    
+    private static Long parseCRC64(String crc) {
+        if (crc == null) {
+            return null;
+        }
+        try {
+            return new BigInteger(crc).longValue();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -65,18 +65,25 @@ import com.aliyun.oss.common.utils.HttpUtil;
 import com.aliyun.oss.internal.CORSOperation;
 import com.aliyun.oss.internal.LiveChannelOperation;
 import com.aliyun.oss.internal.OSSBucketOperation;
+import com.aliyun.oss.internal.OSSBulkDeleteOperation;
+import com.aliyun.oss.internal.OSSCopyOperation;
 import com.aliyun.oss.internal.OSSDownloadOperation;
 import com.aliyun.oss.internal.OSSHeaders;
 import com.aliyun.oss.internal.OSSMultipartOperation;
 import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.internal.OSSParallelInputStream;
+import com.aliyun.oss.internal.OSSParallelListOperation;
 import com.aliyun.oss.internal.OSSRequestMessageBuilder;
+import com.aliyun.oss.internal.OSSUploadDirectoryOperation;
 import com.aliyun.oss.internal.OSSUploadOperation;
+import com.aliyun.oss.internal.PrefetchingListingIterator;
 import com.aliyun.oss.internal.OSSUtils;
 import com.aliyun.oss.internal.SignUtils;
 import com.aliyun.oss.model.AbortMultipartUploadRequest;
 import com.aliyun.oss.model.AccessControlList;
 import com.aliyun.oss.model.AddBucketCnameRequest;
 import com.aliyun.oss.model.AddBucketReplicationRequest;
+import com.aliyun.oss.model.AppendLogRequest;
 import com.aliyun.oss.model.AppendObjectRequest;
 import com.aliyun.oss.model.AppendObjectResult;
 import com.aliyun.oss.model.Bucket;
@@ -87,8 +94,11 @@ import com.aliyun.oss.model.BucketProcess;
 import com.aliyun.oss.model.BucketReferer;
 import com.aliyun.oss.model.BucketReplicationProgress;
 import com.aliyun.oss.model.BucketWebsiteResult;
+import com.aliyun.oss.model.BulkDeleteRequest;
+import com.aliyun.oss.model.BulkDeleteResult;
 import com.aliyun.oss.model.CannedAccessControlList;
 import com.aliyun.oss.model.CnameConfiguration;
+import com.aliyun.oss.model.CompactObjectListing;
 import com.aliyun.oss.model.CompleteMultipartUploadRequest;
 import com.aliyun.oss.model.CompleteMultipartUploadResult;
 import com.aliyun.oss.model.CopyObjectRequest;
@@ -119,6 +129,7 @@ import com.aliyun.oss.model.ListLiveChannelsRequest;
 import com.aliyun.oss.model.ListMultipartUploadsRequest;
 import com.aliyun.oss.model.ListObjectsRequest;
 import com.aliyun.oss.model.ListPartsRequest;
+import com.aliyun.oss.model.ListingIterable;
 import com.aliyun.oss.model.LiveChannel;
 import com.aliyun.oss.model.LiveChannelGenericRequest;
 import com.aliyun.oss.model.LiveChannelInfo;
@@ -126,12 +137,19 @@ import com.aliyun.oss.model.LiveChannelListing;
 import com.aliyun.oss.model.LiveChannelStat;
 import com.aliyun.oss.model.LiveChannelStatus;
 import com.aliyun.oss.model.LiveRecord;
+import com.aliyun.oss.model.MultipartUpload;
 import com.aliyun.oss.model.MultipartUploadListing;
 import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.OSSObjectSummary;
 import com.aliyun.oss.model.ObjectAcl;
 import com.aliyun.oss.model.ObjectListing;
 import com.aliyun.oss.model.ObjectMetadata;
 import com.aliyun.oss.model.OptionsRequest;
+import com.aliyun.oss.model.ParallelCopyObjectRequest;
+import com.aliyun.oss.model.ParallelCopyObjectResult;
+import com.aliyun.oss.model.ParallelGetObjectRequest;
+import com.aliyun.oss.model.ParallelListObjectsRequest;
+import com.aliyun.oss.model.ParallelObjectListing;
 import com.aliyun.oss.model.PartListing;
 import com.aliyun.oss.model.PolicyConditions;
 import com.aliyun.oss.model.PutBucketImageRequest;
@@ -139,6 +157,7 @@ import com.aliyun.oss.model.PutImageStyleRequest;
 import com.aliyun.oss.model.PutObjectRequest;
 import com.aliyun.oss.model.PutObjectResult;
 import com.aliyun.oss.model.ReplicationRule;
+import com.aliyun.oss.model.SeekableObjectRequest;
 import com.aliyun.oss.model.SetBucketAclRequest;
 import com.aliyun.oss.model.SetBucketCORSRequest;
 import com.aliyun.oss.model.SetBucketCORSRequest.CORSRule;
@@ -152,8 +171,11 @@ import com.aliyun.oss.model.SetBucketWebsiteRequest;
 import com.aliyun.oss.model.SetLiveChannelRequest;
 import com.aliyun.oss.model.SetObjectAclRequest;
 import com.aliyun.oss.model.SimplifiedObjectMeta;
+import com.aliyun.oss.model.StreamUploadRequest;
 import com.aliyun.oss.model.Style;
 import com.aliyun.oss.model.TagSet;
+import com.aliyun.oss.model.UploadDirectoryRequest;
+import com.aliyun.oss.model.UploadDirectoryResult;
 import com.aliyun.oss.model.UploadFileRequest;
 import com.aliyun.oss.model.UploadFileResult;
 import com.aliyun.oss.model.UploadPartCopyRequest;
@@ -184,6 +206,15 @@ public class OSSClient implements OSS {
     private OSSUploadOperation uploadOperation;
     private OSSDownloadOperation downloadOperation;
     private LiveChannelOperation liveChannelOperation;
+    private OSSParallelListOperation parallelListOperation;
+    private OSSBulkDeleteOperation bulkDeleteOperation;
+    private OSSUploadDirectoryOperation uploadDirectoryOperation;
+    private OSSCopyOperation copyOperation;
+    
+    /* The shared part scheduler of uploadFile/downloadFile */
+    private TransferManager transferManager;
+    /* The scheduler created by this client, the only one shutdown() stops */
+    private TransferManager defaultTransferManager;
 
     /**
      * 使用默认的OSS Endpoint(http://oss-cn-hangzhou.aliyuncs.com)及
@@ -291,6 +322,9 @@ public class OSSClient implements OSS {
         } else {
             this.serviceClient = new DefaultServiceClient(config);
         }
+        this.defaultTransferManager = new TransferManager(config.getMaxTransferConcurrency() > 0 ? 
+                config.getMaxTransferConcurrency() : ClientConfiguration.DEFAULT_MAX_TRANSFER_CONCURRENCY);
+        this.transferManager = this.defaultTransferManager;
         initOperations();
         setEndpoint(endpoint);
     }
@@ -363,9 +397,15 @@ public class OSSClient implements OSS {
         this.objectOperation = new OSSObjectOperation(this.serviceClient, this.credsProvider);
         this.multipartOperation = new OSSMultipartOperation(this.serviceClient, this.credsProvider);
         this.corsOperation = new CORSOperation(this.serviceClient, this.credsProvider);
-        this.uploadOperation = new OSSUploadOperation(this.multipartOperation);
-        this.downloadOperation = new OSSDownloadOperation(objectOperation);
+        this.uploadOperation = new OSSUploadOperation(this.multipartOperation, this.objectOperation, 
+                this.transferManager);
+        this.downloadOperation = new OSSDownloadOperation(objectOperation, this.transferManager);
         this.liveChannelOperation = new LiveChannelOperation(this.serviceClient, this.credsProvider);
+        this.parallelListOperation = new OSSParallelListOperation(this.bucketOperation);
+        this.bulkDeleteOperation = new OSSBulkDeleteOperation(this.objectOperation, this.bucketOperation);
+        this.uploadDirectoryOperation = new OSSUploadDirectoryOperation(this.objectOperation, this.uploadOperation);
+        this.copyOperation = new OSSCopyOperation(this.objectOperation, this.multipartOperation, 
+                this.transferManager);
     }
     
     @Override
@@ -377,6 +417,111 @@ public class OSSClient implements OSS {
         this.credsProvider.setCredentials(creds);
     }
     
+    /**
+     * 获取断点续传上传/下载、并发拷贝及并发读取共享的分片调度器，可用于查看排队及运行中的分片数。
+     */
+    public TransferManager getTransferManager() {
+        return this.transferManager;
+    }
+    
+    /**
+     * 设置断点续传上传/下载、并发拷贝及并发读取共享的分片调度器，例如基于调用者自己的线程池构造的{@link TransferManager}。
+     * 原调度器不会被立即关闭；调用者设置的调度器在{@link #shutdown()}时也不会被关闭，可在多个客户端间共享，需由调用者自行关闭。
+     * @param transferManager 分片调度器。
+     */
+    public void setTransferManager(TransferManager transferManager) {
+        if (transferManager == null) {
+            throw new IllegalArgumentException("transferManager should not be null.");
+        }
+        this.transferManager = transferManager;
+        this.uploadOperation.setTransferManager(transferManager);
+        this.downloadOperation.setTransferManager(transferManager);
+        this.copyOperation.setTransferManager(transferManager);
+    }
+    
+    /**
+     * 获取GetObject使用的本地磁盘缓存，未设置时返回null。
+     */
+    public ObjectDiskCache getObjectDiskCache() {
+        return objectOperation.getDiskCache();
+    }
+    
+    /**
+     * 设置GetObject使用的本地磁盘缓存。命中缓存时先以If-None-Match校验ETag，
+     * 文件未修改才从本地读取；多个进程可共享同一缓存目录。传入null关闭缓存。
+     * @param diskCache 本地磁盘缓存。
+     */
+    public void setObjectDiskCache(ObjectDiskCache diskCache) {
+        objectOperation.setDiskCache(diskCache);
+    }
+    
+    /**
+     * 获取GetObject使用的内存热点缓存，未设置时返回null。
+     */
+    public ObjectMemoryCache getObjectMemoryCache() {
+        return objectOperation.getMemoryCache();
+    }
+    
+    /**
+     * 设置GetObject使用的内存热点缓存，用于缓存较小且访问频繁的文件，位于本地磁盘缓存之前。
+     * 通过本客户端上传、追加、拷贝、删除文件或完成分片上传时，相应的缓存项会失效；其他客户端的修改在缓存过期后可见。
+     * 传入null关闭缓存。
+     * @param memoryCache 内存热点缓存。
+     */
+    public void setObjectMemoryCache(ObjectMemoryCache memoryCache) {
+        objectOperation.setMemoryCache(memoryCache);
+        multipartOperation.setMemoryCache(memoryCache);
+    }
+    
+    /**
+     * 获取对象元数据、对象是否存在及Bucket是否存在等查询使用的元数据缓存，未设置时返回null。
+     */
+    public MetadataCache getMetadataCache() {
+        return objectOperation.getMetadataCache();
+    }
+    
+    /**
+     * 设置元数据缓存，用于缓存{@link #getObjectMetadata(GenericRequest)}、{@link #getSimplifiedObjectMeta(GenericRequest)}、
+     * {@link #doesObjectExist(HeadObjectRequest)}及{@link #doesBucketExist(GenericRequest)}的结果，包括不存在的结果。
+     * 通过本客户端上传、拷贝、删除文件或完成分片上传时，相应的缓存项会失效；其他客户端的修改在缓存过期后可见。
+     * 传入null关闭缓存。
+     * @param metadataCache 元数据缓存。
+     */
+    public void setMetadataCache(MetadataCache metadataCache) {
+        this.bucketOperation.setMetadataCache(metadataCache);
+        this.objectOperation.setMetadataCache(metadataCache);
+        this.multipartOperation.setMetadataCache(metadataCache);
+    }
+    
+    /**
+     * 获取按Bucket所在地域路由请求的路由器，未开启时返回null。
+     */
+    public BucketRegionRouter getBucketRegionRouter() {
+        return bucketOperation.getRegionRouter();
+    }
+    
+    /**
+     * 开启或关闭按Bucket所在地域自动路由请求。开启后首次访问某个Bucket时通过GetBucketLocation查询其所在地域并缓存，
+     * 之后该Bucket的请求发往对应地域的Endpoint；收到重定向或Endpoint错误时重新查询。
+     * 仅当配置的Endpoint为地域Endpoint（如oss-cn-hangzhou.aliyuncs.com）或设置了地域对应的Endpoint时生效。
+     * @param enabled 是否开启。
+     */
+    public void setBucketRegionRoutingEnabled(boolean enabled) {
+        setBucketRegionRouter(enabled ? new BucketRegionRouter(this.serviceClient, this.credsProvider) : null);
+    }
+    
+    /**
+     * 设置按Bucket所在地域路由请求的路由器，传入null关闭路由。
+     * @param regionRouter 地域路由器。
+     */
+    public void setBucketRegionRouter(BucketRegionRouter regionRouter) {
+        this.bucketOperation.setRegionRouter(regionRouter);
+        this.objectOperation.setRegionRouter(regionRouter);
+        this.multipartOperation.setRegionRouter(regionRouter);
+        this.corsOperation.setRegionRouter(regionRouter);
+        this.liveChannelOperation.setRegionRouter(regionRouter);
+    }
+    
     public CredentialsProvider getCredentialsProvider() {
         return this.credsProvider;
     }
@@ -525,6 +670,30 @@ public class OSSClient implements OSS {
         return bucketOperation.listObjects(listObjectsRequest);
     }
     
+    @Override
+    public CompactObjectListing listObjectsCompact(ListObjectsRequest listObjectsRequest)
+            throws OSSException, ClientException {
+        return bucketOperation.listObjectsCompact(listObjectsRequest);
+    }
+
+    @Override
+    public ListingIterable<OSSObjectSummary> iterateObjects(ListObjectsRequest listObjectsRequest)
+            throws OSSException, ClientException {
+        return this.iterateObjects(listObjectsRequest, PrefetchingListingIterator.DEFAULT_READ_AHEAD_PAGES);
+    }
+
+    @Override
+    public ListingIterable<OSSObjectSummary> iterateObjects(ListObjectsRequest listObjectsRequest,
+            int readAheadPages) throws OSSException, ClientException {
+        return bucketOperation.iterateObjects(listObjectsRequest, readAheadPages);
+    }
+    
+    @Override
+    public ParallelObjectListing listObjectsInParallel(ParallelListObjectsRequest parallelListObjectsRequest)
+            throws OSSException, ClientException {
+        return parallelListOperation.listObjects(parallelListObjectsRequest);
+    }
+    
     @Override
     public PutObjectResult putObject(String bucketName, String key, InputStream input) 
             throws OSSException, ClientException {
@@ -613,6 +782,12 @@ public class OSSClient implements OSS {
         return objectOperation.copyObject(copyObjectRequest);
     }
 
+    @Override
+    public ParallelCopyObjectResult copyObjectInParallel(ParallelCopyObjectRequest parallelCopyObjectRequest)
+            throws OSSException, ClientException {
+        return copyOperation.copyObject(parallelCopyObjectRequest);
+    }
+
     @Override
     public OSSObject getObject(String bucketName, String key) 
             throws OSSException, ClientException {
@@ -631,6 +806,12 @@ public class OSSClient implements OSS {
         return objectOperation.getObject(getObjectRequest);
     }
 
+    @Override
+    public OSSObject getObjectInParallel(ParallelGetObjectRequest parallelGetObjectRequest)
+            throws OSSException, ClientException {
+        return OSSParallelInputStream.open(objectOperation, transferManager, parallelGetObjectRequest);
+    }
+
     @Override
     public OSSObject getObject(URL signedUrl, Map<String, String> requestHeaders) 
             throws OSSException, ClientException {
@@ -686,6 +867,12 @@ public class OSSClient implements OSS {
         return objectOperation.deleteObjects(deleteObjectsRequest);
     }
     
+    @Override
+    public BulkDeleteResult bulkDeleteObjects(BulkDeleteRequest bulkDeleteRequest)
+            throws OSSException, ClientException {
+        return bulkDeleteOperation.deleteObjects(bulkDeleteRequest);
+    }
+    
     private void headObject(HeadObjectRequest headObjectRequest)
             throws OSSException, ClientException {
         objectOperation.headObject(headObjectRequest);
@@ -863,6 +1050,18 @@ public class OSSClient implements OSS {
         return multipartOperation.listMultipartUploads(request);
     }
 
+    @Override
+    public ListingIterable<MultipartUpload> iterateMultipartUploads(ListMultipartUploadsRequest request)
+            throws OSSException, ClientException {
+        return this.iterateMultipartUploads(request, PrefetchingListingIterator.DEFAULT_READ_AHEAD_PAGES);
+    }
+
+    @Override
+    public ListingIterable<MultipartUpload> iterateMultipartUploads(ListMultipartUploadsRequest request,
+            int readAheadPages) throws OSSException, ClientException {
+        return multipartOperation.iterateMultipartUploads(request, readAheadPages);
+    }
+
     @Override
     public PartListing listParts(ListPartsRequest request) 
             throws OSSException, ClientException {
@@ -1298,6 +1497,43 @@ public class OSSClient implements OSS {
         return downloadOperation.downloadFile(downloadFileRequest);
     }
     
+    @Override
+    public OSSOutputStream createOutputStream(String bucketName, String key) throws ClientException {
+        return createOutputStream(new StreamUploadRequest(bucketName, key));
+    }
+    
+    @Override
+    public OSSOutputStream createOutputStream(StreamUploadRequest streamUploadRequest) throws ClientException {
+        return new OSSOutputStream(multipartOperation, objectOperation, transferManager, streamUploadRequest);
+    }
+    
+    @Override
+    public OSSAppendLogWriter createAppendLogWriter(String bucketName, String key) throws ClientException {
+        return createAppendLogWriter(new AppendLogRequest(bucketName, key));
+    }
+    
+    @Override
+    public OSSAppendLogWriter createAppendLogWriter(AppendLogRequest appendLogRequest) throws ClientException {
+        return new OSSAppendLogWriter(objectOperation, appendLogRequest);
+    }
+    
+    @Override
+    public OSSObjectChannel openObjectChannel(String bucketName, String key) throws OSSException, ClientException {
+        return openObjectChannel(new SeekableObjectRequest(bucketName, key));
+    }
+    
+    @Override
+    public OSSObjectChannel openObjectChannel(SeekableObjectRequest seekableObjectRequest) 
+            throws OSSException, ClientException {
+        return OSSObjectChannel.open(objectOperation, seekableObjectRequest);
+    }
+    
+    @Override
+    public UploadDirectoryResult uploadDirectory(UploadDirectoryRequest uploadDirectoryRequest)
+            throws OSSException, ClientException {
+        return uploadDirectoryOperation.uploadDirectory(uploadDirectoryRequest);
+    }
+    
     @Override
     public CreateLiveChannelResult createLiveChannel(CreateLiveChannelRequest createLiveChannelRequest) 
             throws OSSException, ClientException {
@@ -1362,6 +1598,18 @@ public class OSSClient implements OSS {
             throws OSSException, ClientException {
         return liveChannelOperation.listLiveChannels(listLiveChannelRequest);
     }
+
+    @Override
+    public ListingIterable<LiveChannel> iterateLiveChannels(ListLiveChannelsRequest listLiveChannelRequest)
+            throws OSSException, ClientException {
+        return this.iterateLiveChannels(listLiveChannelRequest, PrefetchingListingIterator.DEFAULT_READ_AHEAD_PAGES);
+    }
+
+    @Override
+    public ListingIterable<LiveChannel> iterateLiveChannels(ListLiveChannelsRequest listLiveChannelRequest,
+            int readAheadPages) throws OSSException, ClientException {
+        return liveChannelOperation.iterateLiveChannels(listLiveChannelRequest, readAheadPages);
+    }
     
     @Override
     public List<LiveRecord> getLiveChannelHistory(String bucketName, String liveChannel) 
@@ -1415,6 +1663,11 @@ public class OSSClient implements OSS {
         } catch(Exception e) {
             logException("shutdown throw exception: ", e);
         }
+        try {
+            defaultTransferManager.shutdown();
+        } catch(Exception e) {
+            logException("shutdown transfer manager throw exception: ", e);
+        }
     }
 
     @Override
@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.IOUtils.safeClose;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+import static com.aliyun.oss.internal.OSSUtils.ensureObjectKeyValid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.SeekableObjectRequest;
+
+/**
+ * OSSObjectChannel
+ * 
+ * A seekable view of an object, for readers that jump between the footer and
+ * the column chunks of large files. The object is read in blocks of blockSize
+ * through one ranged GET at a time, pinned to the ETag read by HEAD.
+ * 
+ * - Recently read blocks are kept in an LRU cache, so rereads and backward 
+ *   seeks within it need no request.
+ * - A forward seek of at most forwardSeekLimit reads through the open range
+ *   instead of opening a new one; the skipped blocks are cached.
+ * - A new range covers at least 4 blocks, so nearby small reads share one 
+ *   request; near the end of the object it extends backwards to cover the
+ *   footer. When it starts where the previous range ended the range size 
+ *   doubles, up to maxReadAhead; a random seek resets it.
+ * 
+ * Java 6 has no SeekableByteChannel, the channel offers the same position 
+ * and size methods. {@link #newInputStream()} gives an InputStream view that
+ * shares the position. Readers that need their own positions should open 
+ * their own channels.
+ */
+public class OSSObjectChannel implements ReadableByteChannel {
+    
+    private static final int MIN_READ_AHEAD_BLOCKS = 4;
+    private static final int MAX_RETRIES = 3;
+    
+    private final OSSObjectOperation objectOperation;
+    private final String bucketName;
+    private final String key;
+    private final String eTag;
+    private final long size;
+    private final int blockSize;
+    private final long minReadAhead;
+    private final long maxReadAhead;
+    private final long forwardSeekLimit;
+    private final Map<Long, byte[]> blocks;
+    
+    private long position;
+    private boolean closed;
+    
+    // The open range: the stream returns the bytes [streamPosition, streamEnd).
+    private InputStream stream;
+    private long streamPosition;
+    private long streamEnd;
+    private long readAhead;
+    private long lastRangeEnd = -1;
+    
+    private long rangeRequestCount;
+    private long fetchedBytes;
+    private long cachedBlockReads;
+    
+    OSSObjectChannel(OSSObjectOperation objectOperation, SeekableObjectRequest request, 
+            ObjectMetadata metadata) {
+        this.objectOperation = objectOperation;
+        this.bucketName = request.getBucketName();
+        this.key = request.getKey();
+        this.eTag = metadata.getETag();
+        this.size = metadata.getContentLength();
+        this.blockSize = request.getBlockSize();
+        this.minReadAhead = (long) MIN_READ_AHEAD_BLOCKS * blockSize;
+        this.maxReadAhead = Math.max(minReadAhead, request.getMaxReadAhead());
+        this.forwardSeekLimit = request.getForwardSeekLimit();
+        this.readAhead = minReadAhead;
+        
+        final int maxBlocks = (int) Math.max(1, request.getBlockCacheSize() / blockSize);
+        this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+    
+    /**
+     * Reads the metadata with HEAD and opens a channel positioned at 0.
+     */
+    static OSSObjectChannel open(OSSObjectOperation objectOperation, SeekableObjectRequest request) 
+            throws OSSException, ClientException {
+        assertParameterNotNull(request, "seekableObjectRequest");
+        assertParameterNotNull(request.getBucketName(), "bucketName");
+        assertParameterNotNull(request.getKey(), "key");
+        ensureBucketNameValid(request.getBucketName());
+        ensureObjectKeyValid(request.getKey());
+        
+        ObjectMetadata metadata = objectOperation.getObjectMetadataFromServer(
+                new GenericRequest(request.getBucketName(), request.getKey()));
+        return new OSSObjectChannel(objectOperation, request, metadata);
+    }
+    
+    public synchronized long position() {
+        return position;
+    }
+    
+    /**
+     * Moves the position; positions at or beyond the end read end of stream.
+     */
+    public synchronized OSSObjectChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("newPosition should not be negative.");
+        }
+        position = newPosition;
+        return this;
+    }
+    
+    public long size() {
+        return size;
+    }
+    
+    public String getETag() {
+        return eTag;
+    }
+    
+    /**
+     * Ranged GETs sent, including reopened ranges after a broken connection.
+     */
+    public synchronized long getRangeRequestCount() {
+        return rangeRequestCount;
+    }
+    
+    public synchronized long getFetchedBytes() {
+        return fetchedBytes;
+    }
+    
+    /**
+     * Block reads served from the block cache.
+     */
+    public synchronized long getCachedBlockReads() {
+        return cachedBlockReads;
+    }
+    
+    /**
+     * Size of the next range request when the reader keeps reading sequentially.
+     */
+    public synchronized long getReadAhead() {
+        return readAhead;
+    }
+    
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        if (dst.hasArray()) {
+            int n = read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (n > 0) {
+                dst.position(dst.position() + n);
+            }
+            return n;
+        }
+        
+        byte[] buffer = new byte[Math.min(dst.remaining(), blockSize)];
+        int n = read(buffer, 0, buffer.length);
+        if (n > 0) {
+            dst.put(buffer, 0, n);
+        }
+        return n;
+    }
+    
+    /**
+     * Reads up to len bytes at the current position and advances it.
+     */
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= size) {
+            return -1;
+        }
+        
+        int total = 0;
+        while (len > 0 && position < size) {
+            long index = position / blockSize;
+            byte[] block = block(index);
+            int offsetInBlock = (int) (position - index * blockSize);
+            int n = Math.min(len, block.length - offsetInBlock);
+            System.arraycopy(block, offsetInBlock, b, off, n);
+            position += n;
+            off += n;
+            len -= n;
+            total += n;
+        }
+        return total;
+    }
+    
+    /**
+     * Returns an InputStream that reads from and moves the position of this 
+     * channel. Closing it closes the channel.
+     */
+    public InputStream newInputStream() {
+        return new ChannelInputStream();
+    }
+    
+    @Override
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeStream();
+        blocks.clear();
+    }
+    
+    private byte[] block(long index) throws IOException {
+        byte[] block = blocks.get(index);
+        if (block != null) {
+            cachedBlockReads++;
+            return block;
+        }
+        
+        long start = index * blockSize;
+        boolean readThrough = stream != null && start >= streamPosition && start < streamEnd 
+                && start - streamPosition <= forwardSeekLimit;
+        if (!readThrough) {
+            openRange(start);
+        }
+        while (true) {
+            long current = streamPosition / blockSize;
+            block = readBlock();
+            if (current == index) {
+                return block;
+            }
+        }
+    }
+    
+    /**
+     * Opens a range at the block boundary start. Its size doubles when it 
+     * continues the previous range and starts over after a random seek.
+     */
+    private void openRange(long start) throws IOException {
+        closeStream();
+        if (start == lastRangeEnd) {
+            readAhead = Math.min(readAhead * 2, maxReadAhead);
+        } else {
+            readAhead = minReadAhead;
+            // Near the end, also fetch the blocks before: footers are read 
+            // backwards from their trailing length field.
+            if (size - start < minReadAhead) {
+                long lastBlock = (size - 1) / blockSize * blockSize;
+                start = Math.max(0, lastBlock + blockSize - minReadAhead);
+            }
+        }
+        streamPosition = start;
+        streamEnd = Math.min(size, start + readAhead);
+        lastRangeEnd = streamEnd;
+        stream = fetch(streamPosition, streamEnd);
+    }
+    
+    /**
+     * Reads the block at streamPosition from the open range into the cache, 
+     * reopening the rest of the range if the connection breaks.
+     */
+    private byte[] readBlock() throws IOException {
+        int length = (int) Math.min(blockSize, size - streamPosition);
+        byte[] block = new byte[length];
+        int retries = 0;
+        int offset = 0;
+        while (offset < length) {
+            try {
+                int n = stream.read(block, offset, length - offset);
+                if (n == -1) {
+                    throw new IOException("Premature end of range at " + (streamPosition + offset) 
+                            + ", expected " + streamEnd);
+                }
+                offset += n;
+            } catch (IOException e) {
+                if (++retries > MAX_RETRIES) {
+                    throw e;
+                }
+                closeStream();
+                stream = fetch(streamPosition + offset, streamEnd);
+            }
+        }
+        
+        fetchedBytes += length;
+        blocks.put(streamPosition / blockSize, block);
+        streamPosition += length;
+        if (streamPosition >= streamEnd) {
+            closeStream();
+        }
+        return block;
+    }
+    
+    private InputStream fetch(long start, long end) throws IOException {
+        GetObjectRequest request = new GetObjectRequest(bucketName, key);
+        request.setRange(start, end - 1);
+        if (eTag != null) {
+            request.setMatchingETagConstraints(Collections.singletonList(eTag));
+        }
+        rangeRequestCount++;
+        try {
+            OSSObject ossObject = objectOperation.getObjectFromServer(request);
+            return ossObject.getObjectContent();
+        } catch (OSSException e) {
+            throw new IOException("Failed to read bytes " + start + "-" + (end - 1) + " of " + key 
+                    + ": " + e.getMessage(), e);
+        } catch (ClientException e) {
+            throw new IOException("Failed to read bytes " + start + "-" + (end - 1) + " of " + key 
+                    + ": " + e.getMessage(), e);
+        }
+    }
+    
+    private void closeStream() {
+        if (stream != null) {
+            safeClose(stream);
+            stream = null;
+        }
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+    
+    private class ChannelInputStream extends InputStream {
+        
+        private long mark;
+        
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = OSSObjectChannel.this.read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return OSSObjectChannel.this.read(b, off, len);
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            synchronized (OSSObjectChannel.this) {
+                long skipped = Math.max(0, Math.min(n, size - position()));
+                position(position() + skipped);
+                return skipped;
+            }
+        }
+        
+        @Override
+        public int available() throws IOException {
+            synchronized (OSSObjectChannel.this) {
+                ensureOpen();
+                long index = position / blockSize;
+                byte[] block = blocks.get(index);
+                return block == null ? 0 : (int) (block.length - (position - index * blockSize));
+            }
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+        
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = position();
+        }
+        
+        @Override
+        public synchronized void reset() throws IOException {
+            position(mark);
+        }
+        
+        @Override
+        public void close() {
+            OSSObjectChannel.this.close();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+import static com.aliyun.oss.internal.OSSUtils.ensureObjectKeyValid;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import com.aliyun.oss.internal.OSSMultipartOperation;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.PutObjectRequest;
+import com.aliyun.oss.model.PutObjectResult;
+import com.aliyun.oss.model.StreamUploadRequest;
+import com.aliyun.oss.model.UploadPartRequest;
+import com.aliyun.oss.model.UploadPartResult;
+
+/**
+ * OSSOutputStream
+ * 
+ * Uploads data of unknown length. Written bytes fill part buffers of 
+ * partSize; every full buffer is uploaded as a part on the transfer manager 
+ * while the producer keeps writing into the next one. At most taskNum parts 
+ * are in flight, further writes block until one of them finishes, so the 
+ * stream never holds more than taskNum + 1 buffers. close() uploads the last 
+ * part and completes the multipart upload; output that never fills a part is
+ * sent with a single PutObject instead.
+ */
+public class OSSOutputStream extends OutputStream {
+    
+    private static final int MAX_PART_NUMBER = 10000;
+    
+    private final OSSMultipartOperation multipartOperation;
+    private final OSSObjectOperation objectOperation;
+    private final TransferManager transferManager;
+    private final StreamUploadRequest request;
+    private final int partSize;
+    private final int taskNum;
+    
+    private final Semaphore inFlightParts;
+    private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<byte[]>();
+    private final List<PartETag> partETags = Collections.synchronizedList(new ArrayList<PartETag>());
+    private volatile RuntimeException failure;
+    private Exception writeFailure;
+    
+    private byte[] buffer;
+    private int count;
+    private int nextPartNumber = 1;
+    private long bytesWritten;
+    private String uploadId;
+    private String eTag;
+    private boolean closed;
+    
+    OSSOutputStream(OSSMultipartOperation multipartOperation, OSSObjectOperation objectOperation,
+            TransferManager transferManager, StreamUploadRequest request) {
+        assertParameterNotNull(request, "streamUploadRequest");
+        assertParameterNotNull(request.getBucketName(), "bucketName");
+        assertParameterNotNull(request.getKey(), "key");
+        ensureBucketNameValid(request.getBucketName());
+        ensureObjectKeyValid(request.getKey());
+        
+        this.multipartOperation = multipartOperation;
+        this.objectOperation = objectOperation;
+        this.transferManager = transferManager;
+        this.request = request;
+        this.partSize = (int) request.getPartSize();
+        this.taskNum = request.getTaskNum();
+        this.inFlightParts = new Semaphore(taskNum);
+        this.buffer = new byte[partSize];
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte) b;
+        bytesWritten++;
+        if (count == partSize) {
+            try {
+                uploadBuffer();
+            } catch (IOException e) {
+                throw writeFailed(e);
+            } catch (RuntimeException e) {
+                throw writeFailed(e);
+            }
+        }
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        try {
+            while (len > 0) {
+                int n = Math.min(len, partSize - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                bytesWritten += n;
+                if (count == partSize) {
+                    uploadBuffer();
+                }
+            }
+        } catch (IOException e) {
+            throw writeFailed(e);
+        } catch (RuntimeException e) {
+            throw writeFailed(e);
+        }
+    }
+    
+    /**
+     * Parts are only sent once they are full, flush does not upload a 
+     * partial buffer.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+    }
+    
+    /**
+     * Uploads the remaining data and completes the upload. If a part failed
+     * the multipart upload is aborted and the part failure is thrown. If an
+     * earlier write failed, part of its data was never buffered, so nothing 
+     * is committed: the upload is aborted and an IOException is thrown.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        
+        try {
+            if (writeFailure != null) {
+                throw new IOException("The upload of " + request.getKey() + " is aborted after a failed write: " 
+                        + writeFailure.getMessage(), writeFailure);
+            }
+            if (uploadId == null) {
+                eTag = putObject().getETag();
+            } else {
+                if (count > 0) {
+                    uploadBuffer();
+                }
+                awaitParts();
+                throwIfFailed();
+                eTag = complete().getETag();
+            }
+        } catch (IOException e) {
+            abortQuietly();
+            throw e;
+        } catch (RuntimeException e) {
+            abortQuietly();
+            throw e;
+        } finally {
+            buffer = null;
+            freeBuffers.clear();
+        }
+    }
+    
+    /**
+     * Discards the written data: waits for the parts in flight and aborts the
+     * multipart upload.
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            abortQuietly();
+        } finally {
+            buffer = null;
+            freeBuffers.clear();
+        }
+    }
+    
+    /**
+     * The ETag of the uploaded object, available after close().
+     */
+    public String getETag() {
+        return eTag;
+    }
+    
+    public String getUploadId() {
+        return uploadId;
+    }
+    
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    /**
+     * Number of parts uploaded so far.
+     */
+    public int getUploadedPartCount() {
+        return partETags.size();
+    }
+    
+    private void uploadBuffer() throws IOException {
+        throwIfFailed();
+        if (uploadId == null) {
+            InitiateMultipartUploadRequest initiateRequest = new InitiateMultipartUploadRequest(
+                    request.getBucketName(), request.getKey(), request.getObjectMetadata());
+            uploadId = multipartOperation.initiateMultipartUpload(initiateRequest).getUploadId();
+        }
+        if (nextPartNumber > MAX_PART_NUMBER) {
+            throw new ClientException("The stream exceeds " + MAX_PART_NUMBER + " parts of " + partSize 
+                    + " bytes, use a larger part size.");
+        }
+        
+        // Back-pressure: wait for a free slot before handing out another part.
+        try {
+            inFlightParts.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a part upload slot.");
+        }
+        
+        final byte[] data = buffer;
+        final int length = count;
+        final int partNumber = nextPartNumber++;
+        Callable<Void> task = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    if (failure == null) {
+                        uploadPart(partNumber, data, length);
+                    }
+                } catch (RuntimeException e) {
+                    logException(String.format("Upload part %d of %s failed: ", partNumber, uploadId), e);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                } finally {
+                    freeBuffers.offer(data);
+                    inFlightParts.release();
+                }
+                return null;
+            }
+        };
+        try {
+            transferManager.submitAll(Collections.singletonList(task), 1);
+        } catch (RuntimeException e) {
+            inFlightParts.release();
+            throw e;
+        }
+        
+        byte[] next = freeBuffers.poll();
+        buffer = next != null ? next : new byte[partSize];
+        count = 0;
+    }
+    
+    private void uploadPart(int partNumber, byte[] data, int length) {
+        UploadPartRequest uploadPartRequest = new UploadPartRequest(request.getBucketName(), request.getKey(),
+                uploadId, partNumber, new ByteArrayInputStream(data, 0, length), length);
+        UploadPartResult uploadPartResult = multipartOperation.uploadPart(uploadPartRequest);
+        partETags.add(uploadPartResult.getPartETag());
+    }
+    
+    private PutObjectResult putObject() {
+        ObjectMetadata metadata = request.getObjectMetadata();
+        if (metadata == null) {
+            metadata = new ObjectMetadata();
+        }
+        metadata.setContentLength(count);
+        PutObjectRequest putObjectRequest = new PutObjectRequest(request.getBucketName(), request.getKey(),
+                new ByteArrayInputStream(buffer, 0, count), metadata);
+        return objectOperation.putObject(putObjectRequest);
+    }
+    
+    private CompleteMultipartUploadResult complete() {
+        List<PartETag> sorted = new ArrayList<PartETag>(partETags);
+        Collections.sort(sorted, new Comparator<PartETag>() {
+            @Override
+            public int compare(PartETag p1, PartETag p2) {
+                return p1.getPartNumber() - p2.getPartNumber();
+            }
+        });
+        CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(
+                request.getBucketName(), request.getKey(), uploadId, sorted);
+        return multipartOperation.completeMultipartUpload(completeRequest);
+    }
+    
+    private void awaitParts() throws IOException {
+        try {
+            inFlightParts.acquire(taskNum);
+            inFlightParts.release(taskNum);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for the part uploads.");
+        }
+    }
+    
+    private void abortQuietly() {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            inFlightParts.acquireUninterruptibly(taskNum);
+            inFlightParts.release(taskNum);
+            multipartOperation.abortMultipartUpload(new AbortMultipartUploadRequest(
+                    request.getBucketName(), request.getKey(), uploadId));
+        } catch (Exception e) {
+            logException("Abort multipart upload " + uploadId + " failed: ", e);
+        }
+    }
+    
+    private void throwIfFailed() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Records that a write did not hand all its data to the upload, after 
+     * which the stream can only be aborted.
+     */
+    private <T extends Exception> T writeFailed(T e) {
+        writeFailure = e;
+        return e;
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (writeFailure != null) {
+            throw new IOException("A previous write failed: " + writeFailure.getMessage(), writeFailure);
+        }
+    }
+}
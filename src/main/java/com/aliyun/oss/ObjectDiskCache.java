@@ -0,0 +1,515 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.CodingUtils.assertTrue;
+import static com.aliyun.oss.common.utils.IOUtils.safeClose;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.CacheUtils.rangeOf;
+import static com.aliyun.oss.internal.CacheUtils.revalidate;
+import static com.aliyun.oss.internal.CacheUtils.toHeaders;
+import static com.aliyun.oss.internal.CacheUtils.toMetadata;
+import static com.aliyun.oss.internal.OSSConstants.DEFAULT_CHARSET_NAME;
+import static com.aliyun.oss.internal.OSSUtils.OSS_RESOURCE_MANAGER;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.internal.CachedObjectInputStream;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+
+/**
+ * ObjectDiskCache
+ * 
+ * An on-disk cache of GetObject responses, keyed by bucket, key and range. 
+ * Every entry is one file holding the response headers followed by the 
+ * object data. A cached entry is revalidated with If-None-Match on its ETag 
+ * before it is served; a 304 serves the file, any other response replaces it.
+ * 
+ * A response that misses the cache is streamed to the caller and copied to 
+ * a temporary file as it is read. Only once the caller read it to the end is
+ * the file renamed into place, so readers never see a partial entry and 
+ * several processes may share one directory.
+ * The modification time of an entry is its last use; when the directory 
+ * grows beyond maxSize the least recently used entries are deleted. An entry
+ * opened by a reader stays readable after it is replaced or evicted.
+ */
+public class ObjectDiskCache {
+    
+    private static final int MAGIC = 0x4F534301;
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000L;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    
+    private final File directory;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    
+    public ObjectDiskCache(File directory, long maxSize) {
+        assertParameterNotNull(directory, "directory");
+        assertTrue(maxSize > 0, "maxSize should be positive.");
+        
+        directory.mkdirs();
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Cannot create cache directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        
+        long total = 0;
+        for (CachedFile entry : listEntries()) {
+            total += entry.length;
+        }
+        this.size.set(total);
+    }
+    
+    /**
+     * Only plain GETs are cached: conditional requests, response header 
+     * overrides and signed URLs go straight to OSS. So do requests carrying
+     * custom headers or parameters, such as x-oss-process, which are sent 
+     * along and may change the response.
+     */
+    public static boolean isCacheable(GetObjectRequest request) {
+        return !request.isUseUrlSignature()
+                && request.getMatchingETagConstraints().isEmpty()
+                && request.getNonmatchingETagConstraints().isEmpty()
+                && request.getModifiedSinceConstraint() == null
+                && request.getUnmodifiedSinceConstraint() == null
+                && request.getResponseHeaders() == null
+                && request.getHeaders().isEmpty()
+                && request.getParameters().isEmpty();
+    }
+    
+    /**
+     * Serves the object from the cache when OSS reports the cached ETag is 
+     * still current, otherwise loads it and caches the response. Objects 
+     * larger than maxSize or without an ETag are returned as loaded.
+     */
+    public OSSObject getObject(GetObjectRequest request, ObjectLoader loader) 
+            throws OSSException, ClientException {
+        if (!isCacheable(request)) {
+            return loader.load(request);
+        }
+        Entry entry = open(entryFile(request), request);
+        if (entry != null) {
+            OSSObject ossObject = null;
+            boolean notModified = false;
+            try {
+                ossObject = loader.load(revalidate(request, entry.eTag));
+            } catch (OSSException e) {
+                if (!OSSErrorCode.NOT_MODIFIED.equals(e.getErrorCode())) {
+                    throw e;
+                }
+                notModified = true;
+            } finally {
+                if (!notModified) {
+                    safeClose(entry.content);
+                }
+            }
+            
+            if (notModified) {
+                hitCount.incrementAndGet();
+                entry.file.setLastModified(System.currentTimeMillis());
+                return entry.toObject(request);
+            }
+            missCount.incrementAndGet();
+            return store(request, ossObject);
+        }
+        
+        missCount.incrementAndGet();
+        return store(request, loader.load(request));
+    }
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    public long getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Bytes of entries in the directory as last seen by this cache; entries
+     * written by other processes are counted at the next eviction scan.
+     */
+    public long getSize() {
+        return size.get();
+    }
+    
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+    
+    /**
+     * Hands the response to the caller with its content copied into a new 
+     * entry while it is read.
+     */
+    private OSSObject store(GetObjectRequest request, OSSObject ossObject) {
+        ObjectMetadata metadata = ossObject.getObjectMetadata();
+        String eTag = metadata.getETag();
+        long length = metadata.getContentLength();
+        if (eTag == null || length < 0 || length > maxSize) {
+            return ossObject;
+        }
+        
+        File target = entryFile(request);
+        File temp = null;
+        OutputStream out = null;
+        try {
+            temp = File.createTempFile(target.getName(), TEMP_SUFFIX, directory);
+            out = new BufferedOutputStream(new FileOutputStream(temp), COPY_BUFFER_SIZE);
+            out.write(encodeHeader(request, eTag, toHeaders(metadata)));
+        } catch (IOException e) {
+            // Serve the response uncached rather than fail the request.
+            logException("Cannot create cache entry for " + request.getKey() + ": ", e);
+            safeClose(out);
+            if (temp != null) {
+                temp.delete();
+            }
+            return ossObject;
+        }
+        
+        ossObject.setObjectContent(new CachingInputStream(ossObject.getObjectContent(), out, temp, 
+                target, length));
+        return ossObject;
+    }
+    
+    /**
+     * Moves a complete entry into place, replacing the entry it refreshes.
+     */
+    private void commit(File temp, File target) throws IOException {
+        long length = temp.length();
+        long replaced = target.length();
+        if (!temp.renameTo(target)) {
+            target.delete();
+            if (!temp.renameTo(target)) {
+                throw new IOException("Cannot rename " + temp + " to " + target);
+            }
+        }
+        size.addAndGet(length - replaced);
+        evictIfNeeded();
+    }
+    
+    private File entryFile(GetObjectRequest request) {
+        String id = request.getBucketName() + "\n" + request.getKey() + "\n" + rangeOf(request);
+        try {
+            return new File(directory, BinaryUtil.encodeMD5(id.getBytes(DEFAULT_CHARSET_NAME)) + ENTRY_SUFFIX);
+        } catch (IOException e) {
+            throw new ClientException(e.getMessage(), e);
+        }
+    }
+    
+    private static byte[] encodeHeader(GetObjectRequest request, String eTag, Map<String, String> headers) 
+            throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeUTF(request.getBucketName());
+        out.writeUTF(request.getKey());
+        out.writeUTF(rangeOf(request));
+        out.writeUTF(eTag);
+        out.writeInt(headers.size());
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.flush();
+        
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(header.size() + 8);
+        out = new DataOutputStream(encoded);
+        out.writeInt(MAGIC);
+        out.writeInt(header.size());
+        header.writeTo(out);
+        out.flush();
+        return encoded.toByteArray();
+    }
+    
+    /**
+     * Opens the entry for the request, or returns null when there is none or 
+     * it belongs to another request. Entries that cannot be decoded are deleted.
+     */
+    private static Entry open(File file, GetObjectRequest request) {
+        CachedObjectInputStream content = null;
+        try {
+            content = new CachedObjectInputStream(file);
+            return readEntry(file, content, request);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            safeClose(content);
+            file.delete();
+            return null;
+        } catch (IllegalStateException e) {
+            safeClose(content);
+            return null;
+        }
+    }
+    
+    private static Entry readEntry(File file, CachedObjectInputStream content, GetObjectRequest request) 
+            throws IOException {
+        DataInputStream in = new DataInputStream(content);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a cache entry: " + file);
+        }
+        byte[] header = new byte[in.readInt()];
+        in.readFully(header);
+        
+        in = new DataInputStream(new ByteArrayInputStream(header));
+        if (!in.readUTF().equals(request.getBucketName()) || !in.readUTF().equals(request.getKey()) 
+                || !in.readUTF().equals(rangeOf(request))) {
+            throw new IllegalStateException("Cache entry belongs to another request");
+        }
+        Entry entry = new Entry();
+        entry.file = file;
+        entry.eTag = in.readUTF();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            entry.headers.put(in.readUTF(), in.readUTF());
+        }
+        entry.content = content;
+        return entry;
+    }
+    
+    private void evictIfNeeded() {
+        if (size.get() <= maxSize) {
+            return;
+        }
+        synchronized (this) {
+            if (size.get() <= maxSize) {
+                return;
+            }
+            
+            List<CachedFile> entries = listEntries();
+            Collections.sort(entries, new Comparator<CachedFile>() {
+                @Override
+                public int compare(CachedFile a, CachedFile b) {
+                    return a.lastModified < b.lastModified ? -1 : (a.lastModified == b.lastModified ? 0 : 1);
+                }
+            });
+            
+            long total = 0;
+            for (CachedFile entry : entries) {
+                total += entry.length;
+            }
+            // Evict down to 90% so that every store does not trigger a scan.
+            long lowWatermark = maxSize - maxSize / 10;
+            for (CachedFile entry : entries) {
+                if (total <= lowWatermark) {
+                    break;
+                }
+                if (entry.file.delete()) {
+                    total -= entry.length;
+                    evictionCount.incrementAndGet();
+                }
+            }
+            size.set(total);
+        }
+    }
+    
+    /**
+     * Lists the entries with their size and last use, deleting temporary 
+     * files left behind by writers that died.
+     */
+    private List<CachedFile> listEntries() {
+        List<CachedFile> entries = new ArrayList<CachedFile>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return entries;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                if (now - file.lastModified() > STALE_TEMP_MILLIS) {
+                    file.delete();
+                }
+            } else if (name.endsWith(ENTRY_SUFFIX)) {
+                // Snapshot length and mtime, they may change while sorting.
+                CachedFile entry = new CachedFile();
+                entry.file = file;
+                entry.length = file.length();
+                entry.lastModified = file.lastModified();
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+    
+    private static class CachedFile {
+        File file;
+        long length;
+        long lastModified;
+    }
+    
+    private static class Entry {
+        File file;
+        String eTag;
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        CachedObjectInputStream content;
+        
+        OSSObject toObject(GetObjectRequest request) {
+            ObjectMetadata metadata = toMetadata(headers);
+            OSSObject ossObject = new OSSObject();
+            ossObject.setBucketName(request.getBucketName());
+            ossObject.setKey(request.getKey());
+            ossObject.setObjectMetadata(metadata);
+            ossObject.setObjectContent(content);
+            return ossObject;
+        }
+    }
+    
+    /**
+     * Content of a response being cached. Every byte read is also written to 
+     * the temporary entry, which is committed when the content was read to 
+     * the end and had the expected length. Closing early, skipping or a write
+     * failure abandons the entry; the caller keeps reading from OSS.
+     */
+    private class CachingInputStream extends FilterInputStream {
+        
+        private final File temp;
+        private final File target;
+        private final long length;
+        private OutputStream out;
+        private long copied;
+        
+        CachingInputStream(InputStream in, OutputStream out, File temp, File target, long length) {
+            super(in);
+            this.out = out;
+            this.temp = temp;
+            this.target = target;
+            this.length = length;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            if (out == null) {
+                return n;
+            }
+            
+            try {
+                if (n == -1) {
+                    finish();
+                } else {
+                    out.write(b, off, n);
+                    copied += n;
+                }
+            } catch (IOException e) {
+                logException("Cannot cache object content: ", e);
+                abandon();
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return in.skip(n);
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        
+        @Override
+        public void mark(int readlimit) {
+        }
+        
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+        
+        @Override
+        public void close() throws IOException {
+            abandon();
+            super.close();
+        }
+        
+        private void finish() throws IOException {
+            OutputStream current = out;
+            out = null;
+            try {
+                current.close();
+                if (copied != length) {
+                    throw new IOException("Object content ended after " + copied + " of " + length + " bytes");
+                }
+                commit(temp, target);
+            } finally {
+                temp.delete();
+            }
+        }
+        
+        private void abandon() {
+            if (out != null) {
+                safeClose(out);
+                out = null;
+                temp.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertTrue;
+import static com.aliyun.oss.common.utils.IOUtils.safeClose;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.OSSUtils.OSS_RESOURCE_MANAGER;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aliyun.oss.internal.CacheUtils;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+
+/**
+ * ObjectMemoryCache
+ * 
+ * A heap cache of small GetObject responses, keyed by bucket, key and range,
+ * with a budget in bytes. Entries are kept in LRU order, but a new entry only
+ * displaces the LRU victims when a frequency sketch (TinyLFU) has seen its 
+ * key more often than theirs, so a scan over many cold keys cannot flush the
+ * hot ones.
+ * 
+ * An entry is served without contacting OSS for ttlMillis. After that it is 
+ * revalidated with If-None-Match, or reloaded when revalidation is disabled.
+ * Concurrent misses of one key share a single load. Writes made through the
+ * client invalidate the entries of the object, and a load that was in flight
+ * during an invalidation is returned but not cached.
+ */
+public class ObjectMemoryCache {
+    
+    public static final int DEFAULT_MAX_OBJECT_SIZE = 256 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 60 * 1000L;
+    
+    private static final int AVERAGE_OBJECT_SIZE = 8 * 1024;
+    
+    private final long maxBytes;
+    private final int maxObjectSize;
+    private final long ttlMillis;
+    private final boolean revalidateEnabled;
+    
+    // Guarded by this.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long bytes;
+    
+    private final ConcurrentMap<String, Loading> loadings = new ConcurrentHashMap<String, Loading>();
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong rejectionCount = new AtomicLong();
+    private final AtomicLong hitBytes = new AtomicLong();
+    private final AtomicLong loadedBytes = new AtomicLong();
+    
+    public ObjectMemoryCache(long maxBytes) {
+        this(maxBytes, DEFAULT_MAX_OBJECT_SIZE, DEFAULT_TTL_MILLIS, true);
+    }
+    
+    /**
+     * @param maxBytes budget for the cached object data.
+     * @param maxObjectSize larger objects are passed through uncached.
+     * @param ttlMillis how long an entry is served without asking OSS.
+     * @param revalidateEnabled whether expired entries are revalidated with 
+     *          If-None-Match instead of being reloaded.
+     */
+    public ObjectMemoryCache(long maxBytes, int maxObjectSize, long ttlMillis, boolean revalidateEnabled) {
+        assertTrue(maxBytes > 0, "maxBytes should be positive.");
+        assertTrue(maxObjectSize > 0, "maxObjectSize should be positive.");
+        assertTrue(ttlMillis >= 0, "ttlMillis should not be negative.");
+        this.maxBytes = maxBytes;
+        this.maxObjectSize = maxObjectSize;
+        this.ttlMillis = ttlMillis;
+        this.revalidateEnabled = revalidateEnabled;
+        this.sketch = new FrequencySketch((int) Math.min(maxBytes / AVERAGE_OBJECT_SIZE, 1 << 20));
+    }
+    
+    public OSSObject getObject(GetObjectRequest request, ObjectLoader loader) 
+            throws OSSException, ClientException {
+        if (!ObjectDiskCache.isCacheable(request)) {
+            return loader.load(request);
+        }
+        String key = request.getBucketName() + "\n" + request.getKey() + "\n" + CacheUtils.rangeOf(request);
+        
+        Entry entry;
+        synchronized (this) {
+            sketch.increment(key);
+            entry = entries.get(key);
+        }
+        if (entry != null && System.currentTimeMillis() < entry.expiresAt) {
+            return hit(entry, request);
+        }
+        
+        Loading loading = new Loading();
+        Loading leader = loadings.putIfAbsent(key, loading);
+        if (leader != null) {
+            Entry loaded = leader.await();
+            if (loaded != null) {
+                return hit(loaded, request);
+            }
+            // The leader's object was too large to share, or its load was invalidated.
+            missCount.incrementAndGet();
+            loadCount.incrementAndGet();
+            return loader.load(request);
+        }
+        
+        missCount.incrementAndGet();
+        try {
+            LoadResult result = load(key, request, entry, loader, loading);
+            loading.complete(result.entry, null);
+            return result.ossObject;
+        } catch (RuntimeException e) {
+            loading.complete(null, e);
+            throw e;
+        } finally {
+            loadings.remove(key, loading);
+        }
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public int getMaxObjectSize() {
+        return maxObjectSize;
+    }
+    
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+    
+    public boolean isRevalidateEnabled() {
+        return revalidateEnabled;
+    }
+    
+    public synchronized long getSize() {
+        return bytes;
+    }
+    
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+    
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    /**
+     * Requests sent to the loader, including revalidations.
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+    
+    /**
+     * Expired entries that OSS reported as not modified.
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+    
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+    
+    /**
+     * Loaded objects that were not admitted because their key is less 
+     * frequent than the entries they would have displaced.
+     */
+    public long getRejectionCount() {
+        return rejectionCount.get();
+    }
+    
+    public long getHitBytes() {
+        return hitBytes.get();
+    }
+    
+    public long getLoadedBytes() {
+        return loadedBytes.get();
+    }
+    
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+    
+    private OSSObject hit(Entry entry, GetObjectRequest request) {
+        hitCount.incrementAndGet();
+        hitBytes.addAndGet(entry.data.length);
+        return entry.toObject(request);
+    }
+    
+    private LoadResult load(String key, GetObjectRequest request, Entry expired, ObjectLoader loader, 
+            Loading loading) {
+        OSSObject ossObject;
+        loadCount.incrementAndGet();
+        if (expired != null && revalidateEnabled) {
+            try {
+                ossObject = loader.load(CacheUtils.revalidate(request, expired.eTag));
+            } catch (OSSException e) {
+                if (!OSSErrorCode.NOT_MODIFIED.equals(e.getErrorCode())) {
+                    throw e;
+                }
+                revalidationCount.incrementAndGet();
+                Entry refreshed = new Entry(key, expired.eTag, expired.headers, expired.data, 
+                        System.currentTimeMillis() + ttlMillis);
+                return new LoadResult(admit(refreshed, loading) ? refreshed : null, 
+                        refreshed.toObject(request));
+            }
+        } else {
+            ossObject = loader.load(request);
+        }
+        
+        ObjectMetadata metadata = ossObject.getObjectMetadata();
+        long length = metadata.getContentLength();
+        if (metadata.getETag() == null || length < 0 || length > maxObjectSize || length > maxBytes) {
+            remove(key);
+            return new LoadResult(null, ossObject);
+        }
+        
+        byte[] data = new byte[(int) length];
+        InputStream content = ossObject.getObjectContent();
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int len = content.read(data, offset, data.length - offset);
+                if (len == -1) {
+                    throw new IOException("Object content ended after " + offset + " of " + length + " bytes");
+                }
+                offset += len;
+            }
+        } catch (IOException e) {
+            logException("Cannot read object content stream: ", e);
+            throw new ClientException(OSS_RESOURCE_MANAGER.getString("CannotReadContentStream"), e);
+        } finally {
+            safeClose(content);
+        }
+        loadedBytes.addAndGet(length);
+        
+        Entry entry = new Entry(key, metadata.getETag(), CacheUtils.toHeaders(metadata), data, 
+                System.currentTimeMillis() + ttlMillis);
+        return new LoadResult(admit(entry, loading) ? entry : null, entry.toObject(request));
+    }
+    
+    /**
+     * Drops every cached range of the object. Loads of the object in flight
+     * may return the old content, they are marked so that it is not admitted
+     * and are detached so that later requests start a fresh load.
+     */
+    public synchronized void invalidate(String bucketName, String key) {
+        String prefix = bucketName + "\n" + key + "\n";
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.key.startsWith(prefix)) {
+                it.remove();
+                bytes -= entry.data.length;
+            }
+        }
+        Iterator<Map.Entry<String, Loading>> loads = loadings.entrySet().iterator();
+        while (loads.hasNext()) {
+            Map.Entry<String, Loading> load = loads.next();
+            if (load.getKey().startsWith(prefix)) {
+                load.getValue().invalidated = true;
+                loads.remove();
+            }
+        }
+    }
+    
+    private synchronized void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.data.length;
+        }
+    }
+    
+    /**
+     * Inserts the entry, evicting LRU entries as long as they are less 
+     * frequent than it. A replaced key was admitted before and is kept. An 
+     * entry whose load was invalidated may be stale and is dropped. 
+     * Returns false if so, which makes callers waiting for the load reload.
+     */
+    private synchronized boolean admit(Entry entry, Loading loading) {
+        if (loading.invalidated) {
+            remove(entry.key);
+            return false;
+        }
+        Entry old = entries.remove(entry.key);
+        if (old != null) {
+            bytes -= old.data.length;
+        }
+        
+        int frequency = sketch.frequency(entry.key);
+        while (bytes + entry.data.length > maxBytes) {
+            Iterator<Entry> lru = entries.values().iterator();
+            Entry victim = lru.next();
+            if (old == null && frequency <= sketch.frequency(victim.key)) {
+                rejectionCount.incrementAndGet();
+                return true;
+            }
+            lru.remove();
+            bytes -= victim.data.length;
+            evictionCount.incrementAndGet();
+        }
+        entries.put(entry.key, entry);
+        bytes += entry.data.length;
+        return true;
+    }
+    
+    private static class Entry {
+        final String key;
+        final String eTag;
+        final Map<String, String> headers;
+        final byte[] data;
+        final long expiresAt;
+        
+        Entry(String key, String eTag, Map<String, String> headers, byte[] data, long expiresAt) {
+            this.key = key;
+            this.eTag = eTag;
+            this.headers = headers;
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+        
+        OSSObject toObject(GetObjectRequest request) {
+            ObjectMetadata metadata = CacheUtils.toMetadata(headers);
+            OSSObject ossObject = new OSSObject();
+            ossObject.setBucketName(request.getBucketName());
+            ossObject.setKey(request.getKey());
+            ossObject.setObjectMetadata(metadata);
+            ossObject.setObjectContent(new ByteArrayInputStream(data));
+            return ossObject;
+        }
+    }
+    
+    private static class LoadResult {
+        final Entry entry;
+        final OSSObject ossObject;
+        
+        LoadResult(Entry entry, OSSObject ossObject) {
+            this.entry = entry;
+            this.ossObject = ossObject;
+        }
+    }
+    
+    /**
+     * A load in progress that other callers of the same key wait for.
+     */
+    private static class Loading {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Entry entry;
+        private volatile RuntimeException failure;
+        /* Set by invalidate, guarded by the cache */
+        private boolean invalidated;
+        
+        void complete(Entry entry, RuntimeException failure) {
+            this.entry = entry;
+            this.failure = failure;
+            done.countDown();
+        }
+        
+        Entry await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return entry;
+        }
+    }
+    
+    /**
+     * Count-min sketch of 4-bit counters estimating how often each key was 
+     * requested. All counters are halved after every sampleSize increments 
+     * so that the estimate follows recent popularity.
+     */
+    static class FrequencySketch {
+        
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = { 0x97cb3127, 0xb5e6a3a1, 0x3c6ef372, 0x5851f42d };
+        
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+        
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(expectedEntries, 64) - 1) << 1;
+            this.counters = new byte[DEPTH * width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+        
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+        
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters[indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+        
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            h ^= h >>> 16;
+            return row * (mask + 1) + (h & mask);
+        }
+        
+        private void reset() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = (byte) (counters[i] >>> 1);
+            }
+            additions /= 2;
+        }
+        
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            return h;
+        }
+    }
+}
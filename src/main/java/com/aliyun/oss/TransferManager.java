@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aliyun.oss.internal.AdaptiveConcurrency;
+
+
+/**
+ * TransferManager
+ * 
+ * Runs the part tasks of all active uploadFile/downloadFile calls on one 
+ * shared executor. Every call registers a transfer with its own queue; the 
+ * scheduler hands out tasks round-robin across transfers, never runs more 
+ * than taskNum tasks of a single transfer and never more than maxConcurrency 
+ * tasks in total. Tasks that can not be started yet wait in their transfer 
+ * queue rather than in the executor, so a large transfer can not starve the 
+ * others.
+ */
+public class TransferManager {
+    
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final int maxConcurrency;
+    
+    private final LinkedList<Transfer> transfers = new LinkedList<Transfer>();
+    private int runningTasks;
+    private int queuedTasks;
+    private long completedTasks;
+    private boolean shutdown;
+    private boolean dispatching;
+    
+    public TransferManager() {
+        this(DEFAULT_MAX_CONCURRENCY);
+    }
+    
+    public TransferManager(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency should be greater than 0.");
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), 
+                new TransferThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.ownedExecutor = pool;
+        this.maxConcurrency = maxConcurrency;
+    }
+    
+    /**
+     * Uses an executor supplied by the caller. The executor is not shut down
+     * by {@link #shutdown()}, and it should be able to run maxConcurrency 
+     * tasks at the same time, otherwise the cap is effectively lower.
+     */
+    public TransferManager(Executor executor, int maxConcurrency) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor should not be null.");
+        }
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency should be greater than 0.");
+        }
+        this.executor = executor;
+        this.ownedExecutor = null;
+        this.maxConcurrency = maxConcurrency;
+    }
+    
+    /**
+     * Queues the tasks of one transfer. At most taskNum of them run at the 
+     * same time. The returned futures are in the order of the tasks.
+     */
+    public <T> List<Future<T>> submitAll(List<? extends Callable<T>> tasks, int taskNum) {
+        return submitAll(tasks, new Transfer(Math.max(1, taskNum), null));
+    }
+    
+    /**
+     * Queues the tasks of one transfer whose concurrency is adjusted while it
+     * runs. The limit is read every time a task of the transfer is about to 
+     * be started.
+     */
+    public <T> List<Future<T>> submitAll(List<? extends Callable<T>> tasks, AdaptiveConcurrency concurrency) {
+        if (concurrency == null) {
+            throw new IllegalArgumentException("concurrency should not be null.");
+        }
+        return submitAll(tasks, new Transfer(0, concurrency));
+    }
+    
+    private <T> List<Future<T>> submitAll(List<? extends Callable<T>> tasks, Transfer transfer) {
+        if (tasks == null) {
+            throw new IllegalArgumentException("tasks should not be null.");
+        }
+        
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            TransferTask<T> transferTask = new TransferTask<T>(task, transfer);
+            transfer.pending.add(transferTask);
+            futures.add(transferTask);
+        }
+        
+        if (transfer.pending.isEmpty()) {
+            return futures;
+        }
+        
+        synchronized (this) {
+            if (shutdown) {
+                throw new ClientException("The transfer manager has been shut down.");
+            }
+            transfers.addLast(transfer);
+            queuedTasks += transfer.pending.size();
+        }
+        dispatch();
+        return futures;
+    }
+    
+    /**
+     * Cancels the given tasks that are still queued and returns how many were
+     * cancelled. Unlike Future.cancel, tasks that already started are left 
+     * alone, so their futures still tell when they really finish.
+     */
+    public int cancelQueued(List<? extends Future<?>> futures) {
+        Map<Object, Boolean> toCancel = new IdentityHashMap<Object, Boolean>();
+        Set<Transfer> owners = new HashSet<Transfer>();
+        for (Future<?> future : futures) {
+            if (future instanceof TransferTask) {
+                toCancel.put(future, Boolean.TRUE);
+                owners.add(((TransferTask<?>) future).transfer);
+            }
+        }
+        
+        int cancelled = 0;
+        synchronized (this) {
+            for (Transfer transfer : owners) {
+                Iterator<TransferTask<?>> it = transfer.pending.iterator();
+                while (it.hasNext()) {
+                    TransferTask<?> task = it.next();
+                    if (toCancel.containsKey(task)) {
+                        it.remove();
+                        queuedTasks--;
+                        task.cancel(false);
+                        cancelled++;
+                    }
+                }
+                if (transfer.pending.isEmpty()) {
+                    transfers.remove(transfer);
+                }
+            }
+        }
+        return cancelled;
+    }
+    
+    /**
+     * Number of tasks waiting for a free slot.
+     */
+    public synchronized int getQueuedTaskCount() {
+        return queuedTasks;
+    }
+    
+    /**
+     * Number of tasks handed to the executor and not finished yet.
+     */
+    public synchronized int getRunningTaskCount() {
+        return runningTasks;
+    }
+    
+    /**
+     * Number of transfers that still have queued tasks.
+     */
+    public synchronized int getPendingTransferCount() {
+        return transfers.size();
+    }
+    
+    public synchronized long getCompletedTaskCount() {
+        return completedTasks;
+    }
+    
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+    
+    /**
+     * Rejects new transfers; tasks already queued are still run. The executor 
+     * is shut down only when it was created by this transfer manager.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        if (ownedExecutor != null) {
+            // Queued tasks are only handed to the executor on completion of 
+            // running ones, so let the pool drain before shutting it down.
+            drainAndShutdown();
+        }
+    }
+    
+    private void drainAndShutdown() {
+        synchronized (this) {
+            if (runningTasks > 0 || queuedTasks > 0) {
+                return;
+            }
+        }
+        ownedExecutor.shutdown();
+    }
+    
+    /**
+     * Hands tasks to the executor until no more can be started. Only one 
+     * thread dispatches at a time: a task that completes while another thread
+     * is dispatching leaves its freed slot to that thread. This keeps a 
+     * caller-runs or same-thread executor, which completes tasks inside 
+     * execute, from recursing once per task.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            if (dispatching) {
+                return;
+            }
+            dispatching = true;
+        }
+        
+        boolean finished = false;
+        try {
+            while (true) {
+                List<TransferTask<?>> ready = new ArrayList<TransferTask<?>>();
+                synchronized (this) {
+                    while (runningTasks < maxConcurrency && !transfers.isEmpty()) {
+                        TransferTask<?> next = pollNext();
+                        if (next == null) {
+                            break;
+                        }
+                        next.transfer.running++;
+                        runningTasks++;
+                        ready.add(next);
+                    }
+                    if (ready.isEmpty()) {
+                        dispatching = false;
+                        finished = true;
+                        return;
+                    }
+                }
+                
+                for (TransferTask<?> task : ready) {
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        task.fail(e);
+                        onComplete(task);
+                    }
+                }
+            }
+        } finally {
+            if (!finished) {
+                synchronized (this) {
+                    dispatching = false;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Takes the head task of the first transfer below its own cap and moves 
+     * that transfer to the tail, which gives every transfer a turn.
+     */
+    private TransferTask<?> pollNext() {
+        Iterator<Transfer> it = transfers.iterator();
+        while (it.hasNext()) {
+            Transfer transfer = it.next();
+            
+            // Tasks cancelled while queued are dropped without being run.
+            while (!transfer.pending.isEmpty() && transfer.pending.getFirst().isDone()) {
+                transfer.pending.removeFirst();
+                queuedTasks--;
+            }
+            if (transfer.pending.isEmpty()) {
+                it.remove();
+                continue;
+            }
+            if (transfer.running >= transfer.limit()) {
+                continue;
+            }
+            
+            TransferTask<?> task = transfer.pending.removeFirst();
+            queuedTasks--;
+            it.remove();
+            if (!transfer.pending.isEmpty()) {
+                transfers.addLast(transfer);
+            }
+            return task;
+        }
+        return null;
+    }
+    
+    private void onComplete(TransferTask<?> task) {
+        boolean drained;
+        synchronized (this) {
+            task.transfer.running--;
+            runningTasks--;
+            completedTasks++;
+            drained = shutdown && runningTasks == 0 && queuedTasks == 0;
+        }
+        if (drained && ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        } else {
+            dispatch();
+        }
+    }
+    
+    private static class Transfer {
+        
+        Transfer(int limit, AdaptiveConcurrency concurrency) {
+            this.limit = limit;
+            this.concurrency = concurrency;
+        }
+        
+        int limit() {
+            return concurrency != null ? concurrency.getLimit() : limit;
+        }
+        
+        final int limit;
+        final AdaptiveConcurrency concurrency;
+        final LinkedList<TransferTask<?>> pending = new LinkedList<TransferTask<?>>();
+        int running;
+    }
+    
+    private class TransferTask<T> extends FutureTask<T> {
+        
+        TransferTask(Callable<T> callable, Transfer transfer) {
+            super(callable);
+            this.transfer = transfer;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                onComplete(this);
+            }
+        }
+        
+        void fail(Throwable t) {
+            setException(t);
+        }
+        
+        private final Transfer transfer;
+    }
+    
+    private static class TransferThreadFactory implements ThreadFactory {
+        
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "oss-transfer-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -27,7 +27,6 @@ import java.security.cert.X509Certificate;
 
 import javax.net.ssl.SSLContext;
 
-import org.apache.http.Header;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
@@ -59,7 +58,6 @@ import com.aliyun.oss.OSSErrorCode;
 import com.aliyun.oss.OSSException;
 import com.aliyun.oss.common.utils.ExceptionFactory;
 import com.aliyun.oss.common.utils.HttpHeaders;
-import com.aliyun.oss.common.utils.HttpUtil;
 import com.aliyun.oss.common.utils.IOUtils;
 
 /**
@@ -142,14 +140,12 @@ public class DefaultServiceClient extends ServiceClient {
             }
         }
 
-        for (Header header : httpResponse.getAllHeaders()) {
-            if (HttpHeaders.CONTENT_LENGTH.equals(header.getName())) {
-                response.setContentLength(Long.parseLong(header.getValue()));
-            }
-            response.addHeader(header.getName(), header.getValue());
+        ResponseHeaderMap headers = new ResponseHeaderMap(httpResponse.getAllHeaders());
+        String contentLength = headers.get(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+            response.setContentLength(Long.parseLong(contentLength));
         }
-        
-        HttpUtil.convertHeaderCharsetFromIso88591(response.getHeaders());
+        response.setHeaders(headers);
 
         return response;
     }
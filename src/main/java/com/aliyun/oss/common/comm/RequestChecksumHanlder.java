@@ -31,7 +31,7 @@ public class RequestChecksumHanlder implements RequestHandler {
     @Override
     public void handle(RequestMessage request) throws OSSException, ClientException {
         InputStream originalInputStream = request.getContent();
-        if (originalInputStream == null) {
+        if (originalInputStream == null || request.getContentCRC64() != null) {
             return;
         }
         
@@ -53,6 +53,9 @@ public class RequestMessage extends HttpMesssage {
     /* Indicate whether using chunked encoding */
     private boolean useChunkEncoding = false;
     
+    /* The CRC64 of the content computed before sending, if any */
+    private Long contentCRC64;
+    
     /* The original request provided by user */
     private final WebServiceRequest originalRequest;
 
@@ -145,6 +148,18 @@ public class RequestMessage extends HttpMesssage {
         this.useChunkEncoding = useChunkEncoding;
     }
 
+    public Long getContentCRC64() {
+        return contentCRC64;
+    }
+
+    /**
+     * Sets the CRC64 of the content computed ahead of time. The content is
+     * then sent without being checksummed on the sending thread.
+     */
+    public void setContentCRC64(Long contentCRC64) {
+        this.contentCRC64 = contentCRC64;
+    }
+
     public WebServiceRequest getOriginalRequest() {
         return originalRequest;
     }
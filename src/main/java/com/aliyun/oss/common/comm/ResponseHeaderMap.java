@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.common.comm;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.http.Header;
+
+import com.aliyun.oss.common.utils.HttpUtil;
+
+/**
+ * A read-mostly view of the response headers backed by the raw HttpClient
+ * headers. Lookups scan the few headers of a response directly, and a value
+ * is converted from iso-8859-1 to utf-8 only when it is read and contains 
+ * non-ASCII chars. When a name occurs more than once the last one wins, as 
+ * it did with the headers copied into a map. The first modification copies 
+ * the headers into a {@link HashMap}.
+ */
+public class ResponseHeaderMap extends AbstractMap<String, String> {
+    
+    private final Header[] headers;
+    private final String[] values;
+    private volatile Map<String, String> copy;
+    
+    public ResponseHeaderMap(Header[] headers) {
+        this.headers = headers != null ? headers : new Header[0];
+        this.values = new String[this.headers.length];
+    }
+    
+    @Override
+    public String get(Object key) {
+        if (copy != null) {
+            return copy.get(key);
+        }
+        int index = lastIndexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        if (copy != null) {
+            return copy.containsKey(key);
+        }
+        return lastIndexOf(key) >= 0;
+    }
+    
+    @Override
+    public String put(String key, String value) {
+        return modifiable().put(key, value);
+    }
+    
+    @Override
+    public String remove(Object key) {
+        return modifiable().remove(key);
+    }
+    
+    @Override
+    public void clear() {
+        modifiable().clear();
+    }
+    
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (copy != null) {
+            return copy.entrySet();
+        }
+        
+        return new AbstractSet<Map.Entry<String, String>>() {
+            
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    
+                    private int next = nextDistinct(0);
+                    
+                    @Override
+                    public boolean hasNext() {
+                        return next < headers.length;
+                    }
+                    
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next;
+                        next = nextDistinct(index + 1);
+                        return new AbstractMap.SimpleImmutableEntry<String, String>(
+                                headers[index].getName(), valueAt(index));
+                    }
+                    
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("remove");
+                    }
+                };
+            }
+            
+            @Override
+            public int size() {
+                int size = 0;
+                for (int i = nextDistinct(0); i < headers.length; i = nextDistinct(i + 1)) {
+                    size++;
+                }
+                return size;
+            }
+        };
+    }
+    
+    private int lastIndexOf(Object key) {
+        for (int i = headers.length - 1; i >= 0; i--) {
+            if (headers[i].getName().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the index of the first header from the given one that is the 
+     * last occurrence of its name.
+     */
+    private int nextDistinct(int from) {
+        for (int i = from; i < headers.length; i++) {
+            if (lastIndexOf(headers[i].getName()) == i) {
+                return i;
+            }
+        }
+        return headers.length;
+    }
+    
+    private String valueAt(int index) {
+        String value = values[index];
+        if (value == null) {
+            value = HttpUtil.convertHeaderValueFromIso88591(headers[index].getValue());
+            values[index] = value;
+        }
+        return value;
+    }
+    
+    private Map<String, String> modifiable() {
+        if (copy == null) {
+            Map<String, String> map = new HashMap<String, String>();
+            for (int i = 0; i < headers.length; i++) {
+                map.put(headers[i].getName(), valueAt(i));
+            }
+            copy = map;
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.common.comm.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the range [offset, offset + length) of a file with positional reads 
+ * on a FileChannel that is shared by all parts of a transfer. The channel 
+ * position is never touched, so any number of these streams can read the 
+ * same channel concurrently. The stream is repeatable through mark/reset 
+ * without buffering, and closing it leaves the shared channel open.
+ * 
+ * Note that interrupting a thread blocked in a FileChannel read closes the 
+ * channel for every stream sharing it.
+ */
+public class FileChannelRangeInputStream extends InputStream {
+    
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+    private long position;
+    private long markPos;
+    private volatile boolean closed;
+    
+    public FileChannelRangeInputStream(FileChannel channel, long offset, long length) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel should not be null.");
+        }
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length should not be negative.");
+        }
+        this.channel = channel;
+        this.start = offset;
+        this.end = offset + length;
+        this.position = offset;
+        this.markPos = offset;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        
+        int toRead = (int) Math.min(len, end - position);
+        int n = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+        if (n < 0) {
+            // The file was truncated under us.
+            return -1;
+        }
+        position += n;
+        return n;
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        if (n <= 0) {
+            return 0;
+        }
+        long skipped = Math.min(n, end - position);
+        position += skipped;
+        return skipped;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+    
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+    
+    @Override
+    public synchronized void mark(int readlimit) {
+        markPos = position;
+    }
+    
+    @Override
+    public synchronized void reset() throws IOException {
+        ensureOpen();
+        position = markPos;
+    }
+    
+    /**
+     * Marks the stream as closed; the shared channel is closed by its owner.
+     * Closing from another thread makes the next read of an in-flight request
+     * fail, which is how a transfer aborts its running parts.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+    
+    public long getOffset() {
+        return start;
+    }
+    
+    public long getLength() {
+        return end - start;
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
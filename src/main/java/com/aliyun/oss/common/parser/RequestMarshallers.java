@@ -92,6 +92,10 @@ public final class RequestMarshallers {
         
     }
     
+    public interface XmlRequestMarshaller<R> extends Marshaller<XmlWriter, R> {
+        
+    }
+    
     public static final class StringMarshaller implements Marshaller<FixedLengthInputStream, String> {
 
         @Override
@@ -421,52 +425,45 @@ public final class RequestMarshallers {
         
     }
     
-    public static final class CompleteMultipartUploadRequestMarshaller implements RequestMarshaller<CompleteMultipartUploadRequest> {
+    public static final class CompleteMultipartUploadRequestMarshaller implements XmlRequestMarshaller<CompleteMultipartUploadRequest> {
 
         @Override
-        public FixedLengthInputStream marshall(CompleteMultipartUploadRequest request) {
-            StringBuffer xmlBody = new StringBuffer();
+        public XmlWriter marshall(CompleteMultipartUploadRequest request) {
+            XmlWriter xmlBody = new XmlWriter();
             List<PartETag> eTags =  request.getPartETags();
-            xmlBody.append("<CompleteMultipartUpload>");
+            xmlBody.start("CompleteMultipartUpload");
             for (int i = 0; i < eTags.size(); i++) {
                 PartETag part = eTags.get(i);
-                String eTag = EscapedChar.QUOT + part.getETag().replace("\"", "") + EscapedChar.QUOT;
-                xmlBody.append("<Part>");
-                xmlBody.append("<PartNumber>" + part.getPartNumber() + "</PartNumber>");
-                xmlBody.append("<ETag>" + eTag + "</ETag>");
-                xmlBody.append("</Part>");
+                xmlBody.start("Part");
+                xmlBody.element("PartNumber", part.getPartNumber());
+                xmlBody.start("ETag").raw(EscapedChar.QUOT.toString())
+                        .text(part.getETag().replace("\"", ""))
+                        .raw(EscapedChar.QUOT.toString()).end("ETag");
+                xmlBody.end("Part");
             }
-            xmlBody.append("</CompleteMultipartUpload>");
-            return stringMarshaller.marshall(xmlBody.toString());
+            xmlBody.end("CompleteMultipartUpload");
+            return xmlBody;
         }
         
     }
     
-    public static final class DeleteObjectsRequestMarshaller implements RequestMarshaller2<DeleteObjectsRequest> {
+    public static final class DeleteObjectsRequestMarshaller implements XmlRequestMarshaller<DeleteObjectsRequest> {
 
         @Override
-        public byte[] marshall(DeleteObjectsRequest request) {
-            StringBuffer xmlBody = new StringBuffer();
+        public XmlWriter marshall(DeleteObjectsRequest request) {
+            XmlWriter xmlBody = new XmlWriter();
             boolean quiet = request.isQuiet();
             List<String> keysToDelete =  request.getKeys();
             
-            xmlBody.append("<Delete>");
-            xmlBody.append("<Quiet>" + quiet + "</Quiet>");
+            xmlBody.start("Delete");
+            xmlBody.element("Quiet", quiet);
             for (int i = 0; i < keysToDelete.size(); i++) {
-                String key = keysToDelete.get(i);
-                xmlBody.append("<Object>");
-                xmlBody.append("<Key>" + escapeKey(key) + "</Key>");
-                xmlBody.append("</Object>");
-            }
-            xmlBody.append("</Delete>");
-            
-            byte[] rawData = null;
-            try {
-                rawData = xmlBody.toString().getBytes(DEFAULT_CHARSET_NAME);
-            } catch (UnsupportedEncodingException e) {
-                throw new ClientException("Unsupported encoding " + e.getMessage(), e);
+                xmlBody.start("Object");
+                xmlBody.element("Key", keysToDelete.get(i));
+                xmlBody.end("Object");
             }
-            return rawData;
+            xmlBody.end("Delete");
+            return xmlBody;
         }
         
     }
@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.common.parser;
+
+import static com.aliyun.oss.internal.OSSConstants.DEFAULT_BUFFER_SIZE;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aliyun.oss.common.comm.io.FixedLengthInputStream;
+import com.aliyun.oss.common.utils.BinaryUtil;
+
+/**
+ * Writes an XML request body as UTF-8 straight into pooled byte chunks. Text 
+ * is escaped while it is encoded, and the MD5 digest is updated as each chunk
+ * fills up, so the body is never held as a String or copied into one array.
+ * The chunks go back to the pool on {@link #release()}, which should be called
+ * once the request has been sent. A writer that is not released is simply
+ * garbage collected, which is what a failed request leaves behind.
+ */
+public final class XmlWriter {
+    
+    private static final int CHUNK_SIZE = DEFAULT_BUFFER_SIZE;
+    private static final int MAX_POOLED_CHUNKS = 128;
+    
+    private static final ConcurrentLinkedQueue<byte[]> chunkPool = new ConcurrentLinkedQueue<byte[]>();
+    private static final AtomicInteger pooledChunks = new AtomicInteger();
+    
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+    private final MessageDigest digest;
+    private byte[] current;
+    private int position;
+    private long length;
+    private byte[] md5;
+    private boolean released;
+    
+    public XmlWriter() {
+        try {
+            this.digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported.", e);
+        }
+    }
+    
+    /**
+     * Writes an opening tag.
+     */
+    public XmlWriter start(String tag) {
+        writeAscii("<");
+        writeAscii(tag);
+        writeAscii(">");
+        return this;
+    }
+    
+    /**
+     * Writes a closing tag.
+     */
+    public XmlWriter end(String tag) {
+        writeAscii("</");
+        writeAscii(tag);
+        writeAscii(">");
+        return this;
+    }
+    
+    /**
+     * Writes an element whose text is escaped.
+     */
+    public XmlWriter element(String tag, String text) {
+        return start(tag).text(text).end(tag);
+    }
+    
+    public XmlWriter element(String tag, long value) {
+        return start(tag).value(value).end(tag);
+    }
+    
+    public XmlWriter element(String tag, boolean value) {
+        start(tag);
+        writeAscii(value ? "true" : "false");
+        return end(tag);
+    }
+    
+    /**
+     * Writes ASCII markup as it is, without escaping.
+     */
+    public XmlWriter raw(String ascii) {
+        writeAscii(ascii);
+        return this;
+    }
+    
+    public XmlWriter value(long value) {
+        writeAscii(Long.toString(value));
+        return this;
+    }
+    
+    /**
+     * Writes escaped text, the same escaping the object keys of a request get.
+     */
+    public XmlWriter text(String text) {
+        if (text == null) {
+            return this;
+        }
+        
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+            case '\t':
+                writeAscii("&#x0009;");
+                break;
+            case '\n':
+                writeAscii("&#x000A;");
+                break;
+            case '\r':
+                writeAscii("&#x000D;");
+                break;
+            case '&':
+                writeAscii("&amp;");
+                break;
+            case '"':
+                writeAscii("&quot;");
+                break;
+            case '<':
+                writeAscii("&lt;");
+                break;
+            case '>':
+                writeAscii("&gt;");
+                break;
+            default:
+                if (ch < 0x80) {
+                    write(ch);
+                } else if (ch < 0x800) {
+                    write(0xC0 | (ch >> 6));
+                    write(0x80 | (ch & 0x3F));
+                } else if (Character.isHighSurrogate(ch) && i + 1 < len 
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(ch, text.charAt(++i));
+                    write(0xF0 | (cp >> 18));
+                    write(0x80 | ((cp >> 12) & 0x3F));
+                    write(0x80 | ((cp >> 6) & 0x3F));
+                    write(0x80 | (cp & 0x3F));
+                } else if (ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE) {
+                    // Unpaired surrogate, encoded as '?' like String.getBytes does.
+                    write('?');
+                } else {
+                    write(0xE0 | (ch >> 12));
+                    write(0x80 | ((ch >> 6) & 0x3F));
+                    write(0x80 | (ch & 0x3F));
+                }
+                break;
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * Returns the number of bytes written.
+     */
+    public long length() {
+        return length;
+    }
+    
+    /**
+     * Returns the MD5 digest of the body. No more content can be written after.
+     */
+    public byte[] getMd5() {
+        if (md5 == null) {
+            if (current != null) {
+                digest.update(current, 0, position);
+            }
+            md5 = digest.digest();
+        }
+        return md5;
+    }
+    
+    public String getMd5Base64() {
+        return BinaryUtil.toBase64String(getMd5());
+    }
+    
+    /**
+     * Returns a stream over the body that supports mark and reset, so the 
+     * request can be retried.
+     */
+    public FixedLengthInputStream getInputStream() {
+        getMd5();
+        return new FixedLengthInputStream(new ChunkInputStream(), length);
+    }
+    
+    /**
+     * Returns the body as a byte array, for callers that need one.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int size = chunkLength(i);
+            System.arraycopy(chunks.get(i), 0, bytes, offset, size);
+            offset += size;
+        }
+        return bytes;
+    }
+    
+    /**
+     * Returns the chunks to the pool. The writer and its streams cannot be used after.
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        for (byte[] chunk : chunks) {
+            if (pooledChunks.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+                chunkPool.offer(chunk);
+            } else {
+                pooledChunks.decrementAndGet();
+            }
+        }
+        chunks.clear();
+        current = null;
+    }
+    
+    private void writeAscii(String s) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            write(s.charAt(i));
+        }
+    }
+    
+    private void write(int b) {
+        if (md5 != null || released) {
+            throw new IllegalStateException("The XML body has been completed.");
+        }
+        if (current == null || position == current.length) {
+            nextChunk();
+        }
+        current[position++] = (byte) b;
+        length++;
+    }
+    
+    private void nextChunk() {
+        if (current != null) {
+            digest.update(current, 0, position);
+        }
+        byte[] chunk = chunkPool.poll();
+        if (chunk != null) {
+            pooledChunks.decrementAndGet();
+        } else {
+            chunk = new byte[CHUNK_SIZE];
+        }
+        chunks.add(chunk);
+        current = chunk;
+        position = 0;
+    }
+    
+    private int chunkLength(int index) {
+        return index == chunks.size() - 1 ? position : chunks.get(index).length;
+    }
+    
+    private class ChunkInputStream extends InputStream {
+        
+        private int chunkIndex;
+        private int offset;
+        private int markChunkIndex;
+        private int markOffset;
+        
+        @Override
+        public int read() {
+            if (!advance()) {
+                return -1;
+            }
+            return chunks.get(chunkIndex)[offset++] & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int n = Math.min(len, chunkLength(chunkIndex) - offset);
+            System.arraycopy(chunks.get(chunkIndex), offset, b, off, n);
+            offset += n;
+            return n;
+        }
+        
+        @Override
+        public int available() {
+            if (!advance()) {
+                return 0;
+            }
+            long remaining = length;
+            for (int i = 0; i < chunkIndex; i++) {
+                remaining -= chunks.get(i).length;
+            }
+            return (int) Math.min(Integer.MAX_VALUE, remaining - offset);
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+        
+        @Override
+        public void mark(int readlimit) {
+            markChunkIndex = chunkIndex;
+            markOffset = offset;
+        }
+        
+        @Override
+        public void reset() {
+            chunkIndex = markChunkIndex;
+            offset = markOffset;
+        }
+        
+        private boolean advance() {
+            if (released) {
+                throw new IllegalStateException("The XML body has been released.");
+            }
+            while (chunkIndex < chunks.size() && offset == chunkLength(chunkIndex)) {
+                if (chunkIndex == chunks.size() - 1) {
+                    return false;
+                }
+                chunkIndex++;
+                offset = 0;
+            }
+            return chunkIndex < chunks.size();
+        }
+    }
+}
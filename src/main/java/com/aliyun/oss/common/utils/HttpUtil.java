@@ -105,19 +105,42 @@ public class HttpUtil {
         convertHeaderCharset(headers, UTF8_CHARSET, ISO_8859_1_CHARSET);
     }
 
+    // Convert a single response header value from iso-8859-1 to utf-8.
+    public static String convertHeaderValueFromIso88591(String value) {
+        return convertHeaderValue(value, ISO_8859_1_CHARSET, UTF8_CHARSET);
+    }
+
     private static void convertHeaderCharset(Map<String, String> headers, 
             String fromCharset, String toCharset) {
 
         for(Map.Entry<String, String> header : headers.entrySet()) {
-            if (header.getValue() == null) {
-                continue;
+            String value = header.getValue();
+            String converted = convertHeaderValue(value, fromCharset, toCharset);
+            if (converted != value) {
+                header.setValue(converted);
             }
+        }
+    }
+
+    // ASCII reads the same in both charsets, so only values with other chars are re-encoded.
+    private static String convertHeaderValue(String value, String fromCharset, String toCharset) {
+        if (value == null || isAscii(value)) {
+            return value;
+        }
+
+        try {
+            return new String(value.getBytes(fromCharset), toCharset);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Invalid charset name: " + e.getMessage(), e);
+        }
+    }
 
-            try {
-                header.setValue(new String(header.getValue().getBytes(fromCharset) , toCharset));
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalArgumentException("Invalid charset name: " + e.getMessage(), e);
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
             }
         }
+        return true;
     }
 }
@@ -44,6 +44,8 @@ public class LogUtils {
         errorCodeFilterList.add(OSSErrorCode.NO_SUCH_CORS_CONFIGURATION);
         errorCodeFilterList.add(OSSErrorCode.NO_SUCH_WEBSITE_CONFIGURATION);
         errorCodeFilterList.add(OSSErrorCode.NO_SUCH_LIFECYCLE);
+        // Answers the conditional GETs the object caches use to revalidate entries.
+        errorCodeFilterList.add(OSSErrorCode.NOT_MODIFIED);
     }
     
     public static Log getLog() {
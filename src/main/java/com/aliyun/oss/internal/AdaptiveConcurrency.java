@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+/**
+ * AdaptiveConcurrency
+ * 
+ * Chooses the part size of an auto-tuned transfer and adjusts the number of 
+ * parts it runs concurrently. Finished parts are evaluated in windows of 
+ * roughly the current concurrency: a window with failures halves the 
+ * concurrency, otherwise it grows by one while the aggregate throughput of the
+ * window keeps improving and shrinks by one when it drops. The concurrency 
+ * stays between 1 and maxConcurrency.
+ */
+public class AdaptiveConcurrency {
+    
+    public static final long MIN_PART_SIZE = 1024 * 1024;
+    public static final long MAX_PART_SIZE = 64 * 1024 * 1024;
+    public static final int MAX_PART_COUNT = 10000;
+    
+    private static final int PARTS_PER_TASK = 4;
+    private static final long PART_SIZE_ALIGNMENT = 256 * 1024;
+    private static final double IMPROVEMENT_RATIO = 1.1;
+    private static final double DEGRADATION_RATIO = 0.9;
+    
+    private final int maxConcurrency;
+    private volatile int limit;
+    
+    private int windowParts;
+    private int windowFailures;
+    private long windowBytes;
+    private long windowStart;
+    private double lastThroughput;
+    
+    public AdaptiveConcurrency(int maxConcurrency) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.limit = Math.max(1, (this.maxConcurrency + 1) / 2);
+        this.windowStart = System.nanoTime();
+    }
+    
+    /**
+     * Picks a part size giving every task a few parts to balance the load, 
+     * between 1MB and 64MB unless the 10000 part limit requires more.
+     */
+    public static long choosePartSize(long objectSize, int concurrency) {
+        long partSize = objectSize / ((long) Math.max(1, concurrency) * PARTS_PER_TASK);
+        partSize = Math.max(MIN_PART_SIZE, Math.min(MAX_PART_SIZE, partSize));
+        partSize = Math.max(partSize, (objectSize + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        return (partSize + PART_SIZE_ALIGNMENT - 1) / PART_SIZE_ALIGNMENT * PART_SIZE_ALIGNMENT;
+    }
+    
+    /**
+     * Current number of parts allowed to run concurrently.
+     */
+    public int getLimit() {
+        return limit;
+    }
+    
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+    
+    /**
+     * Aggregate throughput of the last evaluated window in bytes per second.
+     */
+    public synchronized double getThroughput() {
+        return lastThroughput;
+    }
+    
+    /**
+     * Records a finished part.
+     */
+    public synchronized void onPartFinished(long bytes, boolean failed) {
+        windowParts++;
+        if (failed) {
+            windowFailures++;
+        } else {
+            windowBytes += bytes;
+        }
+        if (windowParts < limit) {
+            return;
+        }
+        
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - windowStart) / 1e9;
+        double throughput = windowBytes / seconds;
+        
+        if (windowFailures > 0) {
+            limit = Math.max(1, limit / 2);
+        } else if (throughput > lastThroughput * IMPROVEMENT_RATIO) {
+            limit = Math.min(maxConcurrency, limit + 1);
+        } else if (throughput < lastThroughput * DEGRADATION_RATIO) {
+            limit = Math.max(1, limit - 1);
+        }
+        
+        if (windowFailures == 0) {
+            lastThroughput = throughput;
+        }
+        windowParts = 0;
+        windowFailures = 0;
+        windowBytes = 0;
+        windowStart = now;
+    }
+}
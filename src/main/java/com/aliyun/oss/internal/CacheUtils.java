@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.common.parser.ResponseParseException;
+import com.aliyun.oss.common.utils.DateUtil;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+
+/**
+ * Helpers shared by the object and metadata caches.
+ */
+public class CacheUtils {
+    
+    /**
+     * Builds a GET for the same object and range that OSS answers with 304 
+     * while the object still has the given ETag.
+     */
+    public static GetObjectRequest revalidate(GetObjectRequest request, String eTag) {
+        GetObjectRequest conditional = new GetObjectRequest(request.getBucketName(), request.getKey());
+        long[] range = request.getRange();
+        if (range != null) {
+            conditional.setRange(range[0], range[1]);
+        }
+        List<String> eTags = new ArrayList<String>();
+        eTags.add(eTag);
+        conditional.setNonmatchingETagConstraints(eTags);
+        conditional.setProgressListener(request.getProgressListener());
+        return conditional;
+    }
+    
+    public static String rangeOf(GetObjectRequest request) {
+        long[] range = request.getRange();
+        return range == null ? "" : range[0] + "-" + range[1];
+    }
+    
+    /**
+     * Rebuilds the metadata of a cached entry from the headers that 
+     * {@link #toHeaders} produced.
+     */
+    public static ObjectMetadata toMetadata(Map<String, String> headers) {
+        try {
+            return ResponseParsers.parseObjectMetadata(headers);
+        } catch (ResponseParseException e) {
+            throw new ClientException(e.getMessage(), e);
+        }
+    }
+    
+    public static Map<String, String> toHeaders(ObjectMetadata metadata) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Object> header : metadata.getRawMetadata().entrySet()) {
+            Object value = header.getValue();
+            if (value instanceof Date) {
+                headers.put(header.getKey(), DateUtil.formatRfc822Date((Date) value));
+            } else if (value != null) {
+                headers.put(header.getKey(), value.toString());
+            }
+        }
+        for (Map.Entry<String, String> header : metadata.getUserMetadata().entrySet()) {
+            headers.put(OSSHeaders.OSS_USER_METADATA_PREFIX + header.getKey(), header.getValue());
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Content of a cached object, positioned after the entry header. 
+ */
+public class CachedObjectInputStream extends FileInputStream {
+    
+    public CachedObjectInputStream(File file) throws FileNotFoundException {
+        super(file);
+    }
+    
+    /**
+     * Copies the rest of the content to the file with FileChannel.transferTo.
+     */
+    public void copyTo(File file) throws IOException {
+        FileChannel source = getChannel();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel target = out.getChannel();
+            long position = source.position();
+            long remaining = source.size() - position;
+            while (remaining > 0) {
+                long transferred = source.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+            source.position(position);
+            if (remaining > 0) {
+                throw new IOException("Cannot copy cached content to " + file);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * CheckpointJournal
+ * 
+ * Append-only checkpoint file of a resumable transfer. The file starts with a 
+ * header record describing the transfer and continues with one small record 
+ * per finished part, so recording a part costs one short write instead of 
+ * rewriting the whole checkpoint. Records are fsynced in groups; a crash loses
+ * at most the records of the last group, whose parts are then transferred 
+ * again. Every record carries a CRC32 and reading stops at the first torn or 
+ * corrupt record.
+ *
+ * Layout: magic (int), version (byte), then records of 
+ * length (int), payload, crc32 of payload (int).
+ */
+public class CheckpointJournal {
+    
+    public static final int DEFAULT_SYNC_GROUP_SIZE = 32;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+    
+    private static final int JOURNAL_MAGIC = 0x4F53434A;
+    private static final byte JOURNAL_VERSION = 1;
+    private static final int FILE_HEADER_LENGTH = 5;
+    private static final int RECORD_OVERHEAD = 8;
+    
+    /**
+     * The header and part records read back from a journal file.
+     */
+    public static class Contents {
+        
+        Contents(byte[] header, List<byte[]> records) {
+            this.header = header;
+            this.records = records;
+        }
+        
+        public byte[] getHeader() {
+            return header;
+        }
+        
+        public List<byte[]> getRecords() {
+            return records;
+        }
+        
+        private final byte[] header;
+        private final List<byte[]> records;
+    }
+    
+    private final String journalFile;
+    private final int syncGroupSize;
+    private final long syncIntervalMillis;
+    private final Object syncLock = new Object();
+    
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private int unsyncedRecords;
+    private long lastSyncTime;
+    
+    private CheckpointJournal(String journalFile, int syncGroupSize, long syncIntervalMillis) {
+        this.journalFile = journalFile;
+        this.syncGroupSize = Math.max(1, syncGroupSize);
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+    
+    /**
+     * Writes a compacted journal holding the header and the given records,
+     * replacing any existing file, and opens it for appending.
+     */
+    public static CheckpointJournal create(String journalFile, byte[] header, List<byte[]> records) 
+            throws IOException {
+        return create(journalFile, header, records, DEFAULT_SYNC_GROUP_SIZE, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+    
+    public static CheckpointJournal create(String journalFile, byte[] header, List<byte[]> records,
+            int syncGroupSize, long syncIntervalMillis) throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(journalFile, syncGroupSize, syncIntervalMillis);
+        journal.rewrite(header, records);
+        return journal;
+    }
+    
+    /**
+     * Returns true if the file starts with the journal magic. Checkpoint files
+     * written by older versions are Java serialized and return false.
+     */
+    public static boolean isJournal(String journalFile) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(journalFile));
+            return in.readInt() == JOURNAL_MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+    
+    /**
+     * Reads the journal. Records after a torn or corrupt record are ignored,
+     * a missing or corrupt header fails with an IOException.
+     */
+    public static Contents read(String journalFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        try {
+            if (in.readInt() != JOURNAL_MAGIC || in.readByte() != JOURNAL_VERSION) {
+                throw new IOException("Not a checkpoint journal: " + journalFile);
+            }
+            
+            long remaining = new File(journalFile).length() - FILE_HEADER_LENGTH;
+            byte[] header = readRecord(in, remaining);
+            if (header == null) {
+                throw new IOException("Corrupt checkpoint journal header: " + journalFile);
+            }
+            remaining -= header.length + RECORD_OVERHEAD;
+            
+            List<byte[]> records = new ArrayList<byte[]>();
+            byte[] record;
+            while ((record = readRecord(in, remaining)) != null) {
+                records.add(record);
+                remaining -= record.length + RECORD_OVERHEAD;
+            }
+            return new Contents(header, records);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+    
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < RECORD_OVERHEAD) {
+            return null;
+        }
+        try {
+            int length = in.readInt();
+            if (length < 0 || length > remaining - RECORD_OVERHEAD) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            int crc = in.readInt();
+            return crc == crc32(payload) ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Appends a part record. The write goes to the OS immediately; fsync is 
+     * issued once per sync group or sync interval, outside the append lock so
+     * other workers keep appending while it runs.
+     */
+    public void append(byte[] record) throws IOException {
+        boolean sync = false;
+        FileChannel target;
+        synchronized (this) {
+            ensureOpen();
+            writeRecord(channel, record);
+            target = channel;
+            long now = System.currentTimeMillis();
+            if (++unsyncedRecords >= syncGroupSize || now - lastSyncTime >= syncIntervalMillis) {
+                unsyncedRecords = 0;
+                lastSyncTime = now;
+                sync = true;
+            }
+        }
+        if (sync) {
+            synchronized (syncLock) {
+                target.force(false);
+            }
+        }
+    }
+    
+    /**
+     * Replaces the journal with the header followed by the given records, 
+     * dropping duplicates and torn tails left by earlier runs.
+     */
+    public synchronized void compact(byte[] header, List<byte[]> records) throws IOException {
+        rewrite(header, records);
+    }
+    
+    /**
+     * Syncs the pending records and closes the file.
+     */
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (unsyncedRecords > 0) {
+                channel.force(false);
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+    
+    public String getJournalFile() {
+        return journalFile;
+    }
+    
+    private void rewrite(byte[] header, List<byte[]> records) throws IOException {
+        closeChannel();
+        
+        File target = new File(journalFile);
+        File temp = new File(journalFile + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        try {
+            out.setLength(0);
+            FileChannel tempChannel = out.getChannel();
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+            fileHeader.putInt(JOURNAL_MAGIC).put(JOURNAL_VERSION).flip();
+            writeFully(tempChannel, fileHeader);
+            
+            // Batch the records into one buffer, a compacted journal of 10000 
+            // parts is only a few hundred KB.
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            writeRecord(data, header);
+            if (records != null) {
+                for (byte[] record : records) {
+                    writeRecord(data, record);
+                }
+            }
+            data.flush();
+            writeFully(tempChannel, ByteBuffer.wrap(bytes.toByteArray()));
+            tempChannel.force(false);
+        } finally {
+            out.close();
+        }
+        
+        if (!temp.renameTo(target)) {
+            // File.renameTo does not replace an existing file on every platform.
+            if (!target.delete() || !temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Failed to replace checkpoint journal: " + journalFile);
+            }
+        }
+        
+        file = new RandomAccessFile(target, "rw");
+        channel = file.getChannel();
+        channel.position(channel.size());
+        unsyncedRecords = 0;
+        lastSyncTime = System.currentTimeMillis();
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException("The checkpoint journal has been closed: " + journalFile);
+        }
+    }
+    
+    private void closeChannel() throws IOException {
+        if (file != null) {
+            try {
+                file.close();
+            } finally {
+                file = null;
+                channel = null;
+            }
+        }
+    }
+    
+    private static void writeRecord(FileChannel channel, byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(payload.length + RECORD_OVERHEAD);
+        buffer.putInt(payload.length).put(payload).putInt(crc32(payload)).flip();
+        writeFully(channel, buffer);
+    }
+    
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(crc32(payload));
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static int crc32(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+    
+    private static void closeQuietly(DataInputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FileSink
+ * 
+ * Writes downloaded ranges into one local file through a single FileChannel 
+ * shared by all parts. Each range is filled into a pooled direct buffer and 
+ * written with positional writes, so parts need neither their own file 
+ * handle nor a seek, and a write call moves up to BUFFER_SIZE bytes. The 
+ * stream itself is still read through Channels.newChannel, which copies in
+ * chunks of 8KB. 
+ * 
+ * In memory-mapped mode the range is mapped and filled in place, leaving the
+ * write back to the page cache. Java 6 can not unmap a MappedByteBuffer, so 
+ * every window keeps its address space, and on some platforms the file, 
+ * until it is garbage collected. A sink therefore maps at most maxMappedBytes
+ * in total; ranges beyond that are written through buffers.
+ * 
+ * Parts are written from the transfer threads, which are never interrupted:
+ * an interrupt during a write would close the channel shared by all parts.
+ */
+public class FileSink implements Closeable {
+    
+    public static final int BUFFER_SIZE = 256 * 1024;
+    
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final long MAP_WINDOW_SIZE = 16 * 1024 * 1024;
+    
+    public static final long DEFAULT_MAX_MAPPED_BYTES = 256 * 1024 * 1024;
+    
+    private static final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final AtomicInteger pooledBuffers = new AtomicInteger();
+    
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean memoryMapped;
+    private final long maxMappedBytes;
+    private final AtomicLong mappedBytes = new AtomicLong();
+    
+    /**
+     * Told about the bytes of a range that have reached the disk.
+     */
+    public interface CommitListener {
+        
+        void onCommitted(long bytesWritten) throws IOException;
+    }
+    
+    private FileSink(RandomAccessFile file, boolean memoryMapped, long maxMappedBytes) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.memoryMapped = memoryMapped;
+        this.maxMappedBytes = maxMappedBytes;
+    }
+    
+    /**
+     * Opens an existing or new file for writing, keeping its content.
+     */
+    public static FileSink open(File file, boolean memoryMapped) throws IOException {
+        return open(file, memoryMapped, DEFAULT_MAX_MAPPED_BYTES);
+    }
+    
+    /**
+     * Opens the file like {@link #open(File, boolean)}, mapping at most 
+     * maxMappedBytes of it over the life of the sink.
+     */
+    public static FileSink open(File file, boolean memoryMapped, long maxMappedBytes) throws IOException {
+        return new FileSink(new RandomAccessFile(file, "rw"), memoryMapped, maxMappedBytes);
+    }
+    
+    /**
+     * Opens the file for writing from scratch, dropping its previous content.
+     */
+    public static FileSink create(File file) throws IOException {
+        FileSink sink = open(file, false);
+        try {
+            sink.channel.truncate(0);
+        } catch (IOException e) {
+            sink.close();
+            throw e;
+        }
+        return sink;
+    }
+    
+    /**
+     * Sizes the file to length without writing its content. With 
+     * preallocation the last byte is also written, so that a file system 
+     * that can not hold a file of that size fails before the download starts
+     * rather than at its last part.
+     */
+    public static void allocate(File target, long length, boolean preallocate) throws IOException {
+        RandomAccessFile rf = new RandomAccessFile(target, "rw");
+        try {
+            rf.setLength(length);
+            if (preallocate && length > 0) {
+                rf.seek(length - 1);
+                rf.write(0);
+            }
+        } finally {
+            rf.close();
+        }
+    }
+    
+    /**
+     * Copies the stream to the file starting at position and returns the 
+     * number of bytes written. length is the expected size of the stream, or 
+     * -1 if unknown; memory mapping is only used when it is known. A stream
+     * that is shorter or longer than a known length fails the write.
+     */
+    public long write(long position, InputStream in, long length) throws IOException {
+        return write(position, in, length, 0, null);
+    }
+    
+    /**
+     * Copies the stream like {@link #write(long, InputStream, long)}. Every 
+     * commitInterval bytes the written data is forced to the disk and then 
+     * reported to the listener, so the reported offset is always durable.
+     */
+    public long write(long position, InputStream in, long length, long commitInterval, 
+            CommitListener listener) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        if (listener == null || commitInterval <= 0) {
+            listener = null;
+            commitInterval = Long.MAX_VALUE;
+        }
+        if (memoryMapped && length >= 0 && reserveMapping(length)) {
+            return writeMapped(position, source, length, commitInterval, listener);
+        }
+        
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long written = 0;
+            long committed = 0;
+            boolean eof = false;
+            while (!eof && (length < 0 || written < length)) {
+                buffer.clear();
+                if (length >= 0) {
+                    buffer.limit((int) Math.min(buffer.capacity(), length - written));
+                }
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) == -1) {
+                        eof = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                written += writeFully(channel, buffer, position + written);
+                if (written - committed >= commitInterval && !eof) {
+                    channel.force(false);
+                    committed = written;
+                    listener.onCommitted(committed);
+                }
+            }
+            if (length >= 0) {
+                checkLength(source, length, written);
+            }
+            return written;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+    
+    private long writeMapped(long position, ReadableByteChannel source, long length, long commitInterval,
+            CommitListener listener) throws IOException {
+        long written = 0;
+        long committed = 0;
+        while (written < length) {
+            long size = Math.min(MAP_WINDOW_SIZE, length - written);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, position + written, size);
+            while (window.position() < size) {
+                // A stream that has data available would otherwise fill the whole window in one read.
+                window.limit((int) Math.min(size, window.position() + BUFFER_SIZE));
+                if (source.read(window) == -1) {
+                    throw new IOException("Premature end of stream, expected " + length + " bytes but got " 
+                            + (written + window.position()) + ".");
+                }
+                if (written + window.position() - committed >= commitInterval && window.position() < size) {
+                    window.force();
+                    committed = written + window.position();
+                    listener.onCommitted(committed);
+                }
+            }
+            // Later commits only force their own window.
+            if (listener != null) {
+                window.force();
+            }
+            written += size;
+        }
+        checkLength(source, length, written);
+        return written;
+    }
+    
+    private static void checkLength(ReadableByteChannel source, long length, long written) throws IOException {
+        if (written < length) {
+            throw new IOException("Premature end of stream, expected " + length + " bytes but got " 
+                    + written + ".");
+        }
+        // Drain the end of the stream so that checks made on EOF still run.
+        if (source.read(ByteBuffer.allocate(1)) != -1) {
+            throw new IOException("The stream holds more than the expected " + length + " bytes.");
+        }
+    }
+    
+    /**
+     * Reserves length bytes of the mapping budget for a whole range, so a 
+     * range is either mapped or written through buffers.
+     */
+    private boolean reserveMapping(long length) {
+        while (true) {
+            long current = mappedBytes.get();
+            if (current + length > maxMappedBytes) {
+                return false;
+            }
+            if (mappedBytes.compareAndSet(current, current + length)) {
+                return true;
+            }
+        }
+    }
+    
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+    
+    /**
+     * Number of bytes mapped by this sink so far.
+     */
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+    
+    private static int writeFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            total += fc.write(buffer, position + total);
+        }
+        return total;
+    }
+    
+    static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer != null) {
+            pooledBuffers.decrementAndGet();
+            return buffer;
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    
+    static void releaseBuffer(ByteBuffer buffer) {
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+}
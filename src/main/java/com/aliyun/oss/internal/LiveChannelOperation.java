@@ -58,6 +58,8 @@ import com.aliyun.oss.model.CreateLiveChannelResult;
 import com.aliyun.oss.model.GenerateRtmpUriRequest;
 import com.aliyun.oss.model.GenerateVodPlaylistRequest;
 import com.aliyun.oss.model.ListLiveChannelsRequest;
+import com.aliyun.oss.model.ListingIterable;
+import com.aliyun.oss.model.ListingIterator;
 import com.aliyun.oss.model.LiveChannel;
 import com.aliyun.oss.model.LiveChannelGenericRequest;
 import com.aliyun.oss.model.LiveChannelInfo;
@@ -267,6 +269,52 @@ public class LiveChannelOperation extends OSSOperation {
         
         return doOperation(request, listLiveChannelsReponseParser, bucketName, null, true);
     }
+
+    /**
+     * List live channels page by page, prefetching the next page in background.
+     */
+    public ListingIterable<LiveChannel> iterateLiveChannels(final ListLiveChannelsRequest listLiveChannelRequest,
+            final int readAheadPages) throws OSSException, ClientException {
+
+        assertParameterNotNull(listLiveChannelRequest, "listLiveChannelRequest");
+
+        final String bucketName = listLiveChannelRequest.getBucketName();
+        assertParameterNotNull(bucketName, "bucketName");
+        ensureBucketNameValid(bucketName);
+
+        return new ListingIterable<LiveChannel>() {
+
+            @Override
+            public ListingIterator<LiveChannel> iterator() {
+                return new PrefetchingListingIterator<LiveChannel>(readAheadPages) {
+
+                    private String marker = listLiveChannelRequest.getMarker();
+                    private boolean truncated = true;
+
+                    @Override
+                    protected List<LiveChannel> fetchNextPage() {
+                        if (!truncated) {
+                            return null;
+                        }
+
+                        ListLiveChannelsRequest request = new ListLiveChannelsRequest(bucketName,
+                                listLiveChannelRequest.getPrefix(), marker);
+                        if (listLiveChannelRequest.getMaxKeys() != null) {
+                            request.setMaxKeys(listLiveChannelRequest.getMaxKeys());
+                        }
+                        request.setHeaders(new LinkedHashMap<String, String>(listLiveChannelRequest.getHeaders()));
+
+                        LiveChannelListing liveChannelListing = listLiveChannels(request);
+                        truncated = liveChannelListing.isTruncated();
+                        marker = liveChannelListing.getNextMarker();
+                        return liveChannelListing.getLiveChannels();
+                    }
+
+                };
+            }
+
+        };
+    }
     
     public List<LiveRecord> getLiveChannelHistory(LiveChannelGenericRequest liveChannelGenericRequest) 
             throws OSSException, ClientException {
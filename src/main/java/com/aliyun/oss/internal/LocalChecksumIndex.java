@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aliyun.oss.common.utils.CRC64;
+
+/**
+ * LocalChecksumIndex
+ * 
+ * Caches the CRC64 and MD5 of local files keyed by absolute path, size and
+ * modification time, so a repeated sync only reads the files that changed.
+ * Entries are appended to a CheckpointJournal as they are computed; a later
+ * entry for the same path replaces an earlier one, and close() compacts the
+ * journal once it holds stale entries.
+ */
+public class LocalChecksumIndex {
+    
+    private static final byte[] INDEX_HEADER = { 'O', 'S', 'S', 'C', 'R', 'C', 0, 1 };
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * The checksums of a file together with the stat they were computed for.
+     */
+    public static class FileChecksum {
+        
+        FileChecksum(long size, long lastModified, long crc64, String md5) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc64 = crc64;
+            this.md5 = md5;
+        }
+        
+        public long getSize() {
+            return size;
+        }
+        
+        public long getLastModified() {
+            return lastModified;
+        }
+        
+        public long getCrc64() {
+            return crc64;
+        }
+        
+        /**
+         * Returns the upper case hex MD5, the ETag format of simple uploads.
+         */
+        public String getMd5() {
+            return md5;
+        }
+        
+        private final long size;
+        private final long lastModified;
+        private final long crc64;
+        private final String md5;
+    }
+    
+    private final Map<String, FileChecksum> entries;
+    private final CheckpointJournal journal;
+    private int records;
+    
+    private LocalChecksumIndex(Map<String, FileChecksum> entries, CheckpointJournal journal, int records) {
+        this.entries = entries;
+        this.journal = journal;
+        this.records = records;
+    }
+    
+    /**
+     * Opens the index stored in the file, or an in-memory index when the 
+     * file is null. A missing or unreadable index file starts empty.
+     */
+    public static LocalChecksumIndex open(String indexFile) throws IOException {
+        Map<String, FileChecksum> entries = new HashMap<String, FileChecksum>();
+        if (indexFile == null) {
+            return new LocalChecksumIndex(entries, null, 0);
+        }
+        
+        List<byte[]> records = new ArrayList<byte[]>();
+        if (CheckpointJournal.isJournal(indexFile)) {
+            try {
+                CheckpointJournal.Contents contents = CheckpointJournal.read(indexFile);
+                if (Arrays.equals(INDEX_HEADER, contents.getHeader())) {
+                    for (byte[] record : contents.getRecords()) {
+                        decode(record, entries);
+                    }
+                }
+            } catch (IOException e) {
+                logException("Ignore the corrupt checksum index " + indexFile + ": ", e);
+                entries.clear();
+            }
+        }
+        for (Map.Entry<String, FileChecksum> entry : entries.entrySet()) {
+            records.add(encode(entry.getKey(), entry.getValue()));
+        }
+        
+        CheckpointJournal journal = CheckpointJournal.create(indexFile, INDEX_HEADER, records);
+        return new LocalChecksumIndex(entries, journal, records.size());
+    }
+    
+    /**
+     * Returns the checksums of the file, computing them only when the file 
+     * is not indexed or its size or modification time changed.
+     */
+    public FileChecksum checksumOf(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            FileChecksum cached = entries.get(path);
+            if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+                return cached;
+            }
+        }
+        
+        FileChecksum checksum = compute(file, size, lastModified);
+        
+        // A file written while it was read must not be cached under either stat.
+        if (file.length() != size || file.lastModified() != lastModified) {
+            return checksum;
+        }
+        synchronized (this) {
+            entries.put(path, checksum);
+            if (journal != null) {
+                try {
+                    journal.append(encode(path, checksum));
+                    records++;
+                } catch (IOException e) {
+                    logException("Failed to record " + path + " in the checksum index: ", e);
+                }
+            }
+        }
+        return checksum;
+    }
+    
+    /**
+     * Reads the file once, updating CRC64 and MD5 together.
+     */
+    public static FileChecksum compute(File file) throws IOException {
+        return compute(file, file.length(), file.lastModified());
+    }
+    
+    private static FileChecksum compute(File file, long size, long lastModified) throws IOException {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("MD5 algorithm not found.");
+        }
+        CRC64 crc = new CRC64();
+        
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        InputStream in = new FileInputStream(file);
+        try {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, len);
+                md5.update(buffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return new FileChecksum(size, lastModified, crc.getValue(), toHex(md5.digest()));
+    }
+    
+    /**
+     * Compacts the index when it holds replaced entries or entries of 
+     * deleted files, and closes it.
+     */
+    public synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            List<byte[]> live = new ArrayList<byte[]>();
+            for (Map.Entry<String, FileChecksum> entry : entries.entrySet()) {
+                if (new File(entry.getKey()).exists()) {
+                    live.add(encode(entry.getKey(), entry.getValue()));
+                }
+            }
+            if (live.size() < records) {
+                journal.compact(INDEX_HEADER, live);
+            }
+            journal.close();
+        } catch (IOException e) {
+            logException("Failed to close the checksum index " + journal.getJournalFile() + ": ", e);
+        }
+    }
+    
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789ABCDEF".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >>> 4) & 0x0f];
+            hex[i * 2 + 1] = digits[bytes[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+    
+    private static byte[] encode(String path, FileChecksum checksum) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(path);
+        out.writeLong(checksum.size);
+        out.writeLong(checksum.lastModified);
+        out.writeLong(checksum.crc64);
+        out.writeUTF(checksum.md5);
+        out.flush();
+        return bytes.toByteArray();
+    }
+    
+    private static void decode(byte[] record, Map<String, FileChecksum> entries) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String path = in.readUTF();
+        entries.put(path, new FileChecksum(in.readLong(), in.readLong(), in.readLong(), in.readUTF()));
+    }
+}
@@ -34,6 +34,7 @@ import static com.aliyun.oss.common.parser.RequestMarshallers.deleteBucketCnameR
 import static com.aliyun.oss.common.parser.RequestMarshallers.setBucketQosRequestMarshaller;
 import static com.aliyun.oss.common.parser.RequestMarshallers.bucketImageProcessConfMarshaller;
 import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.internal.OSSConstants.DEFAULT_CHARSET_NAME;
 import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
 import static com.aliyun.oss.internal.RequestParameters.DELIMITER;
 import static com.aliyun.oss.internal.RequestParameters.ENCODING_TYPE;
@@ -66,6 +67,7 @@ import static com.aliyun.oss.internal.ResponseParsers.getBucketCnameResponsePars
 import static com.aliyun.oss.internal.ResponseParsers.getBucketInfoResponseParser;
 import static com.aliyun.oss.internal.ResponseParsers.getBucketQosResponseParser;
 import static com.aliyun.oss.internal.ResponseParsers.listBucketResponseParser;
+import static com.aliyun.oss.internal.ResponseParsers.listObjectsCompactReponseParser;
 import static com.aliyun.oss.internal.ResponseParsers.listObjectsReponseParser;
 import static com.aliyun.oss.internal.ResponseParsers.getBucketImageResponseParser;
 import static com.aliyun.oss.internal.ResponseParsers.getImageStyleResponseParser;
@@ -80,6 +82,7 @@ import java.util.Map;
 
 import com.aliyun.oss.ClientException;
 import com.aliyun.oss.HttpMethod;
+import com.aliyun.oss.MetadataCache;
 import com.aliyun.oss.OSSErrorCode;
 import com.aliyun.oss.OSSException;
 import com.aliyun.oss.common.auth.CredentialsProvider;
@@ -87,6 +90,7 @@ import com.aliyun.oss.common.comm.RequestMessage;
 import com.aliyun.oss.common.comm.ServiceClient;
 import com.aliyun.oss.common.utils.BinaryUtil;
 import com.aliyun.oss.common.utils.HttpHeaders;
+import com.aliyun.oss.common.utils.HttpUtil;
 import com.aliyun.oss.model.AccessControlList;
 import com.aliyun.oss.model.Bucket;
 import com.aliyun.oss.model.BucketInfo;
@@ -98,6 +102,7 @@ import com.aliyun.oss.model.BucketReplicationProgress;
 import com.aliyun.oss.model.BucketWebsiteResult;
 import com.aliyun.oss.model.CannedAccessControlList;
 import com.aliyun.oss.model.CnameConfiguration;
+import com.aliyun.oss.model.CompactObjectListing;
 import com.aliyun.oss.model.CreateBucketRequest;
 import com.aliyun.oss.model.DeleteBucketCnameRequest;
 import com.aliyun.oss.model.DeleteBucketReplicationRequest;
@@ -110,6 +115,9 @@ import com.aliyun.oss.model.GetImageStyleResult;
 import com.aliyun.oss.model.LifecycleRule;
 import com.aliyun.oss.model.ListBucketsRequest;
 import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.ListingIterable;
+import com.aliyun.oss.model.ListingIterator;
+import com.aliyun.oss.model.OSSObjectSummary;
 import com.aliyun.oss.model.ObjectListing;
 import com.aliyun.oss.model.PutBucketImageRequest;
 import com.aliyun.oss.model.PutImageStyleRequest;
@@ -160,7 +168,11 @@ public class OSSBucketOperation extends OSSOperation {
                 .setOriginalRequest(createBucketRequest)
                 .build();
 
-        doOperation(request, emptyResponseParser, bucketName, null);
+        try {
+            doOperation(request, emptyResponseParser, bucketName, null);
+        } finally {
+            invalidateBucketMetadata(bucketName);
+        }
         return new Bucket(bucketName);
     }
 
@@ -183,7 +195,18 @@ public class OSSBucketOperation extends OSSOperation {
                 .setOriginalRequest(genericRequest)
                 .build();
         
-        doOperation(request, emptyResponseParser, bucketName, null);
+        try {
+            doOperation(request, emptyResponseParser, bucketName, null);
+        } finally {
+            invalidateBucketMetadata(bucketName);
+        }
+    }
+    
+    private void invalidateBucketMetadata(String bucketName) {
+        MetadataCache cache = this.metadataCache;
+        if (cache != null) {
+            cache.invalidateBucket(bucketName);
+        }
     }
     
     /**
@@ -371,17 +394,30 @@ public class OSSBucketOperation extends OSSOperation {
     }
 
     /**
-     * Determine whether a bucket exists or not.
+     * Determine whether a bucket exists or not, from the metadata cache when one is set.
      */
     public boolean doesBucketExists(GenericRequest genericRequest)
             throws OSSException, ClientException {
 
         assertParameterNotNull(genericRequest, "genericRequest");
         
-        String bucketName = genericRequest.getBucketName();
+        final String bucketName = genericRequest.getBucketName();
         assertParameterNotNull(bucketName, "bucketName");
         ensureBucketNameValid(bucketName);
         
+        MetadataCache cache = this.metadataCache;
+        if (cache != null) {
+            return cache.doesBucketExist(bucketName, new MetadataCache.Loader<Boolean>() {
+                @Override
+                public Boolean load() {
+                    return doesBucketExistOnServer(bucketName);
+                }
+            });
+        }
+        return doesBucketExistOnServer(bucketName);
+    }
+    
+    private boolean doesBucketExistOnServer(String bucketName) {
         try {
              getBucketAcl(new GenericRequest(bucketName));
         } catch (OSSException oe) {
@@ -400,6 +436,23 @@ public class OSSBucketOperation extends OSSOperation {
     public ObjectListing listObjects(ListObjectsRequest listObjectsRequest)
             throws OSSException, ClientException {
 
+        RequestMessage request = buildListObjectsRequest(listObjectsRequest);
+        return doOperation(request, listObjectsReponseParser, listObjectsRequest.getBucketName(), null, true);
+    }
+    
+    /**
+     * List objects under the specified bucket, keeping the entries in columnar arrays.
+     */
+    public CompactObjectListing listObjectsCompact(ListObjectsRequest listObjectsRequest)
+            throws OSSException, ClientException {
+
+        RequestMessage request = buildListObjectsRequest(listObjectsRequest);
+        return doOperation(request, listObjectsCompactReponseParser, listObjectsRequest.getBucketName(), 
+                null, true);
+    }
+    
+    private RequestMessage buildListObjectsRequest(ListObjectsRequest listObjectsRequest) {
+        
         assertParameterNotNull(listObjectsRequest, "listObjectsRequest");
         
         String bucketName = listObjectsRequest.getBucketName();
@@ -409,15 +462,69 @@ public class OSSBucketOperation extends OSSOperation {
         Map<String, String> params = new LinkedHashMap<String, String>();
         populateListObjectsRequestParameters(listObjectsRequest, params);
 
-        RequestMessage request = new OSSRequestMessageBuilder(getInnerClient())
+        return new OSSRequestMessageBuilder(getInnerClient())
                 .setEndpoint(getEndpoint())
                 .setMethod(HttpMethod.GET)
                 .setBucket(bucketName)
                 .setParameters(params)
                 .setOriginalRequest(listObjectsRequest)
                 .build();
-        
-        return doOperation(request, listObjectsReponseParser, bucketName, null, true);
+    }
+
+    /**
+     * List objects page by page, prefetching the next page in background.
+     */
+    public ListingIterable<OSSObjectSummary> iterateObjects(final ListObjectsRequest listObjectsRequest,
+            final int readAheadPages) throws OSSException, ClientException {
+
+        assertParameterNotNull(listObjectsRequest, "listObjectsRequest");
+
+        final String bucketName = listObjectsRequest.getBucketName();
+        assertParameterNotNull(bucketName, "bucketName");
+        ensureBucketNameValid(bucketName);
+
+        return new ListingIterable<OSSObjectSummary>() {
+
+            @Override
+            public ListingIterator<OSSObjectSummary> iterator() {
+                return new PrefetchingListingIterator<OSSObjectSummary>(readAheadPages) {
+
+                    private String marker = listObjectsRequest.getMarker();
+                    private boolean truncated = true;
+
+                    @Override
+                    protected List<OSSObjectSummary> fetchNextPage() {
+                        if (!truncated) {
+                            return null;
+                        }
+
+                        ListObjectsRequest request = new ListObjectsRequest(bucketName,
+                                listObjectsRequest.getPrefix(), marker, listObjectsRequest.getDelimiter(),
+                                listObjectsRequest.getMaxKeys());
+                        request.setEncodingType(listObjectsRequest.getEncodingType());
+                        request.setHeaders(new LinkedHashMap<String, String>(listObjectsRequest.getHeaders()));
+
+                        ObjectListing objectListing = listObjects(request);
+                        truncated = objectListing.isTruncated();
+                        marker = decodeMarker(objectListing.getNextMarker(), objectListing.getEncodingType());
+                        return objectListing.getObjectSummaries();
+                    }
+
+                };
+            }
+
+        };
+    }
+
+    /**
+     * The next marker is returned url-encoded if url encoding type was requested, 
+     * while the marker request parameter always takes the raw key.
+     */
+    static String decodeMarker(String marker, String encodingType) {
+        if (marker != null && encodingType != null && encodingType.equalsIgnoreCase("url")) {
+            return HttpUtil.urlDecode(marker, DEFAULT_CHARSET_NAME);
+        }
+        return marker;
     }
     
     /**
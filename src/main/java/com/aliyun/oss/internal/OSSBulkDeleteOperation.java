@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.internal;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+import static com.aliyun.oss.internal.OSSUtils.validateObjectKey;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.aliyun.oss.ClientErrorCode;
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.model.BulkDeleteRequest;
+import com.aliyun.oss.model.BulkDeleteResult;
+import com.aliyun.oss.model.BulkDeleteResult.DeleteFailure;
+import com.aliyun.oss.model.DeleteObjectsRequest;
+import com.aliyun.oss.model.DeleteObjectsResult;
+import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.ListingIterator;
+import com.aliyun.oss.model.OSSObjectSummary;
+
+/**
+ * OSSBulkDeleteOperation
+ * 
+ * Deletes an unbounded stream of keys in DeleteObjects batches. The caller 
+ * thread reads the keys, or lists the prefix with prefetching, and hands out 
+ * batches while at most taskNum batches are in flight.
+ */
+public class OSSBulkDeleteOperation {
+    
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 3000;
+    
+    private OSSObjectOperation objectOperation;
+    private OSSBucketOperation bucketOperation;
+    
+    public OSSBulkDeleteOperation(OSSObjectOperation objectOperation, OSSBucketOperation bucketOperation) {
+        this.objectOperation = objectOperation;
+        this.bucketOperation = bucketOperation;
+    }
+    
+    public BulkDeleteResult deleteObjects(BulkDeleteRequest bulkDeleteRequest) 
+            throws OSSException, ClientException {
+        
+        assertParameterNotNull(bulkDeleteRequest, "bulkDeleteRequest");
+        
+        String bucketName = bulkDeleteRequest.getBucketName();
+        assertParameterNotNull(bucketName, "bucketName");
+        ensureBucketNameValid(bucketName);
+        
+        if ((bulkDeleteRequest.getKeys() == null) == (bulkDeleteRequest.getPrefix() == null)) {
+            throw new IllegalArgumentException("Either the keys or the prefix to delete should be specified.");
+        }
+        
+        long startTime = System.currentTimeMillis();
+        BulkDeleteResult result = new BulkDeleteResult();
+        int taskNum = bulkDeleteRequest.getTaskNum();
+        Semaphore window = new Semaphore(taskNum);
+        ExecutorService service = Executors.newFixedThreadPool(taskNum);
+        
+        ListingIterator<OSSObjectSummary> listing = null;
+        Iterator<String> keys = bulkDeleteRequest.getKeys();
+        if (keys == null) {
+            ListObjectsRequest listObjectsRequest = new ListObjectsRequest(bucketName, 
+                    bulkDeleteRequest.getPrefix(), null, null, DeleteObjectsRequest.DELETE_OBJECTS_ONETIME_LIMIT);
+            listing = bucketOperation.iterateObjects(listObjectsRequest, 
+                    PrefetchingListingIterator.DEFAULT_READ_AHEAD_PAGES).iterator();
+            keys = new SummaryKeyIterator(listing);
+        }
+        
+        try {
+            List<String> batch = new ArrayList<String>();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key == null || key.isEmpty() || !validateObjectKey(key)) {
+                    result.addFailure(new DeleteFailure(key, OSSErrorCode.INVALID_OBJECT_NAME, 
+                            "Illegal object key " + key));
+                    continue;
+                }
+                batch.add(key);
+                if (batch.size() == bulkDeleteRequest.getBatchSize()) {
+                    submit(service, window, new DeleteBatchTask(bulkDeleteRequest, batch, result));
+                    batch = new ArrayList<String>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(service, window, new DeleteBatchTask(bulkDeleteRequest, batch, result));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientException("Interrupted while deleting objects.", e);
+        } finally {
+            // Let the batches in flight finish, also when listing failed.
+            window.acquireUninterruptibly(taskNum);
+            service.shutdown();
+            if (listing != null) {
+                listing.cancel();
+            }
+            result.setElapsedMillis(System.currentTimeMillis() - startTime);
+        }
+        
+        return result;
+    }
+    
+    private static void submit(ExecutorService service, final Semaphore window, final DeleteBatchTask task) 
+            throws InterruptedException {
+        window.acquire();
+        try {
+            service.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        window.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            window.release();
+            throw e;
+        }
+    }
+    
+    private static boolean isRetryable(OSSException e) {
+        String errorCode = e.getErrorCode();
+        return OSSErrorCode.INTERNAL_ERROR.equals(errorCode) || OSSErrorCode.REQUEST_TIMEOUT.equals(errorCode);
+    }
+    
+    class DeleteBatchTask implements Runnable {
+        
+        private final BulkDeleteRequest bulkDeleteRequest;
+        private final List<String> keys;
+        private final BulkDeleteResult result;
+        
+        DeleteBatchTask(BulkDeleteRequest bulkDeleteRequest, List<String> keys, BulkDeleteResult result) {
+            this.bulkDeleteRequest = bulkDeleteRequest;
+            this.keys = keys;
+            this.result = result;
+        }
+        
+        /**
+         * Records the whole batch as failed unless another attempt is allowed.
+         */
+        private boolean retry(int attempt, boolean retryable, Exception e, String errorCode, String errorMessage) {
+            if (retryable && attempt < bulkDeleteRequest.getMaxRetries()) {
+                return true;
+            }
+            logException("Failed to delete a batch of " + keys.size() + " objects: ", e);
+            for (String key : keys) {
+                result.addFailure(new DeleteFailure(key, errorCode, errorMessage));
+            }
+            return false;
+        }
+        
+        @Override
+        public void run() {
+            result.addBatch();
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    DeleteObjectsRequest deleteObjectsRequest = new DeleteObjectsRequest(
+                            bulkDeleteRequest.getBucketName());
+                    deleteObjectsRequest.setKeys(keys);
+                    deleteObjectsRequest.setQuiet(bulkDeleteRequest.isQuiet());
+                    deleteObjectsRequest.setHeaders(new LinkedHashMap<String, String>(bulkDeleteRequest.getHeaders()));
+                    
+                    DeleteObjectsResult deleteObjectsResult = objectOperation.deleteObjects(deleteObjectsRequest);
+                    result.addDeleted(bulkDeleteRequest.isQuiet() ? keys.size() 
+                            : deleteObjectsResult.getDeletedObjects().size());
+                    return;
+                } catch (OSSException e) {
+                    if (!retry(attempt, isRetryable(e), e, e.getErrorCode(), e.getErrorMessage())) {
+                        return;
+                    }
+                } catch (ClientException e) {
+                    if (!retry(attempt, true, e, e.getErrorCode(), e.getErrorMessage())) {
+                        return;
+                    }
+                }
+                
+                result.addRetry();
+                try {
+                    Thread.sleep(Math.min(RETRY_BACKOFF_MILLIS << Math.min(attempt, 5), MAX_RETRY_BACKOFF_MILLIS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (String key : keys) {
+                        result.addFailure(new DeleteFailure(key, ClientErrorCode.UNKNOWN, 
+                                "Interrupted before retrying."));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+    
+    static class SummaryKeyIterator implements Iterator<String> {
+        
+        private final Iterator<OSSObjectSummary> summaries;
+        
+        SummaryKeyIterator(Iterator<OSSObjectSummary> summaries) {
+            this.summaries = summaries;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return summaries.hasNext();
+        }
+        
+        @Override
+        public String next() {
+            return summaries.next().getKey();
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+import static com.aliyun.oss.internal.OSSUtils.ensureObjectKeyValid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.TransferManager;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CopyObjectRequest;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.ParallelCopyObjectRequest;
+import com.aliyun.oss.model.ParallelCopyObjectResult;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.TransferHandle;
+import com.aliyun.oss.model.UploadPartCopyRequest;
+
+/**
+ * OSSCopyOperation
+ * 
+ * Copies an object on the server side. Objects below the multipart threshold
+ * take a single CopyObject; larger ones are split into ranges copied by 
+ * concurrent UploadPartCopy requests on the shared TransferManager. Every 
+ * part copy is pinned to the source ETag read by HEAD, so a source changed 
+ * mid-copy fails the copy instead of producing a mixed object.
+ */
+public class OSSCopyOperation {
+    
+    private static final int MAX_PART_COUNT = 10000;
+    
+    static class CopyCheckPoint {
+        
+        private static final String COPY_MAGIC = "B1C2D3E4-OSS-COPY-CHECKPOINT";
+        
+        String magic;
+        String sourceBucketName;
+        String sourceKey;
+        String sourceETag;
+        long sourceSize;
+        String destinationBucketName;
+        String destinationKey;
+        String uploadId;
+        List<CopyPart> parts;
+        List<PartETag> partETags;
+        private transient CheckpointJournal journal;
+        
+        /**
+         * Reads the header and the completed parts of the checkpoint journal.
+         */
+        synchronized void load(String cpFile) throws IOException {
+            CheckpointJournal.Contents contents = CheckpointJournal.read(cpFile);
+            decodeHeader(contents.getHeader());
+            for (byte[] record : contents.getRecords()) {
+                decodePart(record);
+            }
+        }
+        
+        synchronized void open(String cpFile) throws IOException {
+            journal = CheckpointJournal.create(cpFile, encodeHeader(), encodeCompletedParts());
+        }
+        
+        synchronized void update(int partIndex, PartETag partETag) {
+            parts.get(partIndex).isCompleted = true;
+            partETags.add(partETag);
+        }
+        
+        void journal(PartETag partETag) throws IOException {
+            journal.append(encodePart(partETag));
+        }
+        
+        synchronized void close(boolean compact) throws IOException {
+            if (journal == null) {
+                return;
+            }
+            try {
+                if (compact) {
+                    journal.compact(encodeHeader(), encodeCompletedParts());
+                }
+            } finally {
+                journal.close();
+                journal = null;
+            }
+        }
+        
+        /**
+         * Returns true if the checkpoint is a copy of the same source version
+         * to the same destination.
+         */
+        synchronized boolean isValid(ParallelCopyObjectRequest request, String eTag, long size) {
+            return COPY_MAGIC.equals(magic)
+                    && request.getSourceBucketName().equals(sourceBucketName)
+                    && request.getSourceKey().equals(sourceKey)
+                    && request.getDestinationBucketName().equals(destinationBucketName)
+                    && request.getDestinationKey().equals(destinationKey)
+                    && eTag != null && eTag.equals(sourceETag)
+                    && size == sourceSize;
+        }
+        
+        private byte[] encodeHeader() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(magic);
+            out.writeUTF(sourceBucketName);
+            out.writeUTF(sourceKey);
+            out.writeUTF(sourceETag);
+            out.writeLong(sourceSize);
+            out.writeUTF(destinationBucketName);
+            out.writeUTF(destinationKey);
+            out.writeUTF(uploadId);
+            out.writeInt(parts.size());
+            for (CopyPart part : parts) {
+                out.writeLong(part.offset);
+                out.writeLong(part.size);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        private void decodeHeader(byte[] header) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            magic = in.readUTF();
+            sourceBucketName = in.readUTF();
+            sourceKey = in.readUTF();
+            sourceETag = in.readUTF();
+            sourceSize = in.readLong();
+            destinationBucketName = in.readUTF();
+            destinationKey = in.readUTF();
+            uploadId = in.readUTF();
+            int partCount = in.readInt();
+            parts = new ArrayList<CopyPart>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                parts.add(new CopyPart(i + 1, in.readLong(), in.readLong()));
+            }
+            partETags = new ArrayList<PartETag>();
+        }
+        
+        private List<byte[]> encodeCompletedParts() throws IOException {
+            List<byte[]> records = new ArrayList<byte[]>(partETags.size());
+            for (PartETag partETag : partETags) {
+                records.add(encodePart(partETag));
+            }
+            return records;
+        }
+        
+        private static byte[] encodePart(PartETag partETag) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(partETag.getPartNumber());
+            out.writeUTF(partETag.getETag());
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        private void decodePart(byte[] record) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            int partNumber = in.readInt();
+            String eTag = in.readUTF();
+            int partIndex = partNumber - 1;
+            if (partIndex < 0 || partIndex >= parts.size() || parts.get(partIndex).isCompleted) {
+                return;
+            }
+            parts.get(partIndex).isCompleted = true;
+            partETags.add(new PartETag(partNumber, eTag));
+        }
+    }
+    
+    static class CopyPart {
+        
+        CopyPart(int number, long offset, long size) {
+            this.number = number;
+            this.offset = offset;
+            this.size = size;
+        }
+        
+        final int number;
+        final long offset;
+        final long size;
+        boolean isCompleted;
+    }
+    
+    private OSSObjectOperation objectOperation;
+    private OSSMultipartOperation multipartOperation;
+    private TransferManager transferManager;
+    
+    public OSSCopyOperation(OSSObjectOperation objectOperation, OSSMultipartOperation multipartOperation,
+            TransferManager transferManager) {
+        this.objectOperation = objectOperation;
+        this.multipartOperation = multipartOperation;
+        this.transferManager = transferManager;
+    }
+    
+    public TransferManager getTransferManager() {
+        return transferManager;
+    }
+    
+    public void setTransferManager(TransferManager transferManager) {
+        this.transferManager = transferManager;
+    }
+    
+    public ParallelCopyObjectResult copyObject(ParallelCopyObjectRequest request) 
+            throws OSSException, ClientException {
+        
+        assertParameterNotNull(request, "parallelCopyObjectRequest");
+        assertParameterNotNull(request.getSourceBucketName(), "sourceBucketName");
+        assertParameterNotNull(request.getSourceKey(), "sourceKey");
+        assertParameterNotNull(request.getDestinationBucketName(), "destinationBucketName");
+        assertParameterNotNull(request.getDestinationKey(), "destinationKey");
+        ensureBucketNameValid(request.getSourceBucketName());
+        ensureObjectKeyValid(request.getSourceKey());
+        ensureBucketNameValid(request.getDestinationBucketName());
+        ensureObjectKeyValid(request.getDestinationKey());
+        if (request.isEnableCheckpoint() && request.getCheckpointFile() == null) {
+            throw new IllegalArgumentException("The checkpoint file should be specified to enable checkpoint.");
+        }
+        
+        ObjectMetadata source = objectOperation.getObjectMetadataFromServer(
+                new GenericRequest(request.getSourceBucketName(), request.getSourceKey()));
+        long size = source.getContentLength();
+        
+        ParallelCopyObjectResult result = new ParallelCopyObjectResult();
+        result.setObjectSize(size);
+        if (size < request.getMultipartThreshold()) {
+            CopyObjectRequest copyObjectRequest = new CopyObjectRequest(request.getSourceBucketName(), 
+                    request.getSourceKey(), request.getDestinationBucketName(), request.getDestinationKey());
+            copyObjectRequest.setNewObjectMetadata(request.getNewObjectMetadata());
+            if (source.getETag() != null) {
+                copyObjectRequest.setMatchingETagConstraints(Collections.singletonList(source.getETag()));
+            }
+            result.setCopyObjectResult(objectOperation.copyObject(copyObjectRequest));
+            return result;
+        }
+        
+        CopyCheckPoint checkPoint = new CopyCheckPoint();
+        boolean resumed = false;
+        if (request.isEnableCheckpoint() && CheckpointJournal.isJournal(request.getCheckpointFile())) {
+            try {
+                checkPoint.load(request.getCheckpointFile());
+                resumed = checkPoint.isValid(request, source.getETag(), size);
+            } catch (IOException e) {
+                logException("Ignore the corrupt copy checkpoint " + request.getCheckpointFile() + ": ", e);
+            }
+            // The source changed since the last run: its parts are of no use.
+            if (!resumed && checkPoint.uploadId != null && checkPoint.destinationKey != null) {
+                abort(checkPoint);
+            }
+        }
+        if (!resumed) {
+            prepare(checkPoint, request, source);
+        }
+        
+        boolean completed = false;
+        try {
+            if (request.isEnableCheckpoint()) {
+                checkPoint.open(request.getCheckpointFile());
+            }
+            copyParts(checkPoint, request);
+            
+            Collections.sort(checkPoint.partETags, new Comparator<PartETag>() {
+                @Override
+                public int compare(PartETag p1, PartETag p2) {
+                    return p1.getPartNumber() - p2.getPartNumber();
+                }
+            });
+            result.setMultipartUploadResult(multipartOperation.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(checkPoint.destinationBucketName, 
+                            checkPoint.destinationKey, checkPoint.uploadId, checkPoint.partETags)));
+            completed = true;
+        } catch (IOException e) {
+            throw new ClientException("Failed to write the copy checkpoint " + request.getCheckpointFile(), e);
+        } finally {
+            try {
+                checkPoint.close(!completed);
+            } catch (IOException e) {
+                logException("Close copy checkpoint journal failed: ", e);
+            }
+            // Without a checkpoint the copied parts cannot be resumed.
+            if (!completed && !request.isEnableCheckpoint()) {
+                abort(checkPoint);
+            }
+        }
+        
+        if (request.isEnableCheckpoint()) {
+            new File(request.getCheckpointFile()).delete();
+        }
+        return result;
+    }
+    
+    private void prepare(CopyCheckPoint checkPoint, ParallelCopyObjectRequest request, ObjectMetadata source) {
+        checkPoint.magic = CopyCheckPoint.COPY_MAGIC;
+        checkPoint.sourceBucketName = request.getSourceBucketName();
+        checkPoint.sourceKey = request.getSourceKey();
+        checkPoint.sourceETag = source.getETag() != null ? source.getETag() : "";
+        checkPoint.sourceSize = source.getContentLength();
+        checkPoint.destinationBucketName = request.getDestinationBucketName();
+        checkPoint.destinationKey = request.getDestinationKey();
+        checkPoint.parts = splitObject(checkPoint.sourceSize, request.getPartSize());
+        checkPoint.partETags = new ArrayList<PartETag>();
+        
+        ObjectMetadata metadata = request.getNewObjectMetadata() != null 
+                ? request.getNewObjectMetadata() : inheritMetadata(source);
+        checkPoint.uploadId = multipartOperation.initiateMultipartUpload(new InitiateMultipartUploadRequest(
+                request.getDestinationBucketName(), request.getDestinationKey(), metadata)).getUploadId();
+    }
+    
+    /**
+     * UploadPartCopy does not carry the source metadata over as CopyObject 
+     * does, so the standard headers and user metadata are set on initiate.
+     */
+    private static ObjectMetadata inheritMetadata(ObjectMetadata source) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (source.getContentType() != null) {
+            metadata.setContentType(source.getContentType());
+        }
+        if (source.getCacheControl() != null) {
+            metadata.setCacheControl(source.getCacheControl());
+        }
+        if (source.getContentDisposition() != null) {
+            metadata.setContentDisposition(source.getContentDisposition());
+        }
+        if (source.getContentEncoding() != null) {
+            metadata.setContentEncoding(source.getContentEncoding());
+        }
+        metadata.setUserMetadata(new HashMap<String, String>(source.getUserMetadata()));
+        return metadata;
+    }
+    
+    private static List<CopyPart> splitObject(long size, long partSize) {
+        if ((size + partSize - 1) / partSize > MAX_PART_COUNT) {
+            partSize = (size + MAX_PART_COUNT - 1) / MAX_PART_COUNT;
+        }
+        List<CopyPart> parts = new ArrayList<CopyPart>();
+        for (long offset = 0; offset < size; offset += partSize) {
+            parts.add(new CopyPart(parts.size() + 1, offset, Math.min(partSize, size - offset)));
+        }
+        return parts;
+    }
+    
+    private void copyParts(CopyCheckPoint checkPoint, ParallelCopyObjectRequest request) throws IOException {
+        List<CopyTask> tasks = new ArrayList<CopyTask>();
+        for (int i = 0; i < checkPoint.parts.size(); i++) {
+            if (!checkPoint.parts.get(i).isCompleted) {
+                tasks.add(new CopyTask(checkPoint, i, request.isEnableCheckpoint()));
+            }
+        }
+        
+        // 任一分片失败或拷贝被取消时，停止其余分片
+        TransferControl control = new TransferControl(transferManager, tasks);
+        for (CopyTask task : tasks) {
+            task.control = control;
+        }
+        TransferHandle handle = request.getTransferHandle();
+        if (handle != null) {
+            handle.addCancelListener(control);
+        }
+        
+        boolean finished = false;
+        try {
+            List<Future<PartETag>> futures = transferManager.submitAll(tasks, request.getTaskNum());
+            control.setFutures(futures);
+            for (Future<PartETag> future : futures) {
+                try {
+                    future.get();
+                } catch (CancellationException e) {
+                    // The part was never started.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ClientException("Interrupted while copying parts.", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    control.fail((Exception) cause);
+                }
+            }
+            control.throwIfStopped();
+            finished = true;
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ClientException(e);
+        } finally {
+            if (!finished) {
+                control.stop();
+            }
+            if (handle != null) {
+                handle.removeCancelListener(control);
+            }
+        }
+    }
+    
+    private void abort(CopyCheckPoint checkPoint) {
+        if (checkPoint.uploadId == null) {
+            return;
+        }
+        try {
+            multipartOperation.abortMultipartUpload(new AbortMultipartUploadRequest(
+                    checkPoint.destinationBucketName, checkPoint.destinationKey, checkPoint.uploadId));
+        } catch (Exception e) {
+            logException("Abort multipart copy " + checkPoint.uploadId + " failed: ", e);
+        }
+    }
+    
+    class CopyTask implements Callable<PartETag>, TransferControl.AbortableTask {
+        
+        private final CopyCheckPoint checkPoint;
+        private final int partIndex;
+        private final boolean journaled;
+        private TransferControl control;
+        
+        CopyTask(CopyCheckPoint checkPoint, int partIndex, boolean journaled) {
+            this.checkPoint = checkPoint;
+            this.partIndex = partIndex;
+            this.journaled = journaled;
+        }
+        
+        @Override
+        public PartETag call() throws Exception {
+            CopyPart part = checkPoint.parts.get(partIndex);
+            try {
+                if (control != null && control.isStopped()) {
+                    throw new ClientException("The transfer has been stopped.");
+                }
+                
+                UploadPartCopyRequest request = new UploadPartCopyRequest(checkPoint.sourceBucketName, 
+                        checkPoint.sourceKey, checkPoint.destinationBucketName, checkPoint.destinationKey, 
+                        checkPoint.uploadId, part.number, part.offset, part.size);
+                if (!checkPoint.sourceETag.isEmpty()) {
+                    request.setMatchingETagConstraints(Collections.singletonList(checkPoint.sourceETag));
+                }
+                
+                PartETag partETag = multipartOperation.uploadPartCopy(request).getPartETag();
+                checkPoint.update(partIndex, partETag);
+                if (journaled) {
+                    checkPoint.journal(partETag);
+                }
+                return partETag;
+            } catch (Exception e) {
+                // Stop the other parts right away rather than when the caller 
+                // gets to this part's future.
+                if (control == null || control.fail(e)) {
+                    logException(String.format("Copy part %d of %s failed: ", part.number, 
+                            checkPoint.uploadId), e);
+                }
+                throw e;
+            }
+        }
+        
+        /**
+         * Part copies run on the server and carry no local stream to close;
+         * a running part is left to finish.
+         */
+        @Override
+        public void abort() {
+        }
+    }
+}
@@ -21,18 +21,18 @@ package com.aliyun.oss.internal;
 
 import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
 import static com.aliyun.oss.common.utils.LogUtils.logException;
-import static com.aliyun.oss.internal.OSSConstants.DEFAULT_BUFFER_SIZE;
 import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
 import static com.aliyun.oss.internal.OSSUtils.ensureObjectKeyValid;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -40,12 +40,12 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.TransferManager;
 import com.aliyun.oss.model.DownloadFileRequest;
 import com.aliyun.oss.model.DownloadFileResult;
 import com.aliyun.oss.model.GenericRequest;
@@ -53,6 +53,7 @@ import com.aliyun.oss.model.GetObjectRequest;
 import com.aliyun.oss.model.OSSObject;
 import com.aliyun.oss.model.ObjectMetadata;
 import com.aliyun.oss.model.SimplifiedObjectMeta;
+import com.aliyun.oss.model.TransferHandle;
 
 /**
  * OSSDownloadOperation
@@ -64,11 +65,32 @@ public class OSSDownloadOperation {
 
         private static final long serialVersionUID = 4682293344365787077L;
         private static final String DOWNLOAD_MAGIC = "92611BED-89E2-46B6-89E5-72F273D4B0A3";
+        private static final int PROGRESS_RECORD_LENGTH = 12;
         
         /**
-         * 从checkpoint文件中加载checkpoint数据
+         * 从checkpoint文件中加载checkpoint数据，支持日志格式及旧版本序列化格式的checkpoint文件
          */
         public synchronized void load(String cpFile) throws IOException, ClassNotFoundException {
+            if (CheckpointJournal.isJournal(cpFile)) {
+                CheckpointJournal.Contents contents = CheckpointJournal.read(cpFile);
+                decodeHeader(contents.getHeader());
+                for (byte[] record : contents.getRecords()) {
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                    int index = in.readInt();
+                    if (index < 0 || index >= downloadParts.size()) {
+                        continue;
+                    }
+                    DownloadPart part = downloadParts.get(index);
+                    if (record.length == PROGRESS_RECORD_LENGTH) {
+                        part.committed = Math.max(part.committed, in.readLong());
+                    } else {
+                        part.isCompleted = true;
+                    }
+                }
+                this.md5 = hashCode();
+                return;
+            }
+            
             FileInputStream fileIn =new FileInputStream(cpFile);
             ObjectInputStream in = new ObjectInputStream(fileIn);
             DownloadCheckPoint dcp = (DownloadCheckPoint) in.readObject();
@@ -78,15 +100,115 @@ public class OSSDownloadOperation {
         }
         
         /**
-         * 把checkpoint数据写到checkpoint文件
+         * 以日志格式写入当前checkpoint数据并打开日志，之后每个完成的分片追加一条记录；
+         * 旧版本的checkpoint文件在此被转换为日志格式
+         */
+        public synchronized void open(String cpFile) throws IOException {
+            journal = CheckpointJournal.create(cpFile, encodeHeader(), encodeParts());
+        }
+        
+        /**
+         * 向checkpoint日志追加一个完成的分片
+         */
+        public void journal(int index) throws IOException {
+            journal.append(encodePart(index));
+        }
+        
+        /**
+         * 向checkpoint日志追加一个分片内已写入磁盘的字节数，续传时从该位置继续下载
          */
-        public synchronized void dump(String cpFile) throws IOException {
-            this.md5 = hashCode();
-            FileOutputStream fileOut = new FileOutputStream(cpFile);
-            ObjectOutputStream outStream = new ObjectOutputStream(fileOut);
-            outStream.writeObject(this);
-            outStream.close();
-            fileOut.close();
+        public void journalProgress(int index, long committed) throws IOException {
+            journal.append(encodeProgress(index, committed));
+        }
+        
+        /**
+         * 关闭checkpoint日志，compact为true时先把日志压缩为当前状态
+         */
+        public synchronized void close(boolean compact) throws IOException {
+            if (journal == null) {
+                return;
+            }
+            try {
+                if (compact) {
+                    journal.compact(encodeHeader(), encodeParts());
+                }
+            } finally {
+                journal.close();
+                journal = null;
+            }
+        }
+        
+        private byte[] encodeHeader() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(magic);
+            out.writeUTF(downloadFile);
+            out.writeUTF(bucketName);
+            out.writeUTF(objectKey);
+            out.writeLong(objectStat.size);
+            out.writeBoolean(objectStat.lastModified != null);
+            out.writeLong(objectStat.lastModified != null ? objectStat.lastModified.getTime() : 0L);
+            OSSUploadOperation.writeNullableUTF(out, objectStat.digest);
+            out.writeInt(downloadParts.size());
+            for (DownloadPart part : downloadParts) {
+                out.writeInt(part.index);
+                out.writeLong(part.start);
+                out.writeLong(part.end);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        private void decodeHeader(byte[] header) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            magic = in.readUTF();
+            downloadFile = in.readUTF();
+            bucketName = in.readUTF();
+            objectKey = in.readUTF();
+            objectStat = new ObjectStat();
+            objectStat.size = in.readLong();
+            boolean hasLastModified = in.readBoolean();
+            long lastModified = in.readLong();
+            objectStat.lastModified = hasLastModified ? new Date(lastModified) : null;
+            objectStat.digest = OSSUploadOperation.readNullableUTF(in);
+            int partCount = in.readInt();
+            downloadParts = new ArrayList<DownloadPart>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                DownloadPart part = new DownloadPart();
+                part.index = in.readInt();
+                part.start = in.readLong();
+                part.end = in.readLong();
+                downloadParts.add(part);
+            }
+        }
+        
+        private synchronized List<byte[]> encodeParts() throws IOException {
+            List<byte[]> records = new ArrayList<byte[]>();
+            for (DownloadPart part : downloadParts) {
+                if (part.isCompleted) {
+                    records.add(encodePart(part.index));
+                } else if (part.committed > 0) {
+                    records.add(encodeProgress(part.index, part.committed));
+                }
+            }
+            return records;
+        }
+        
+        private static byte[] encodePart(int index) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(index);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        private static byte[] encodeProgress(int index, long committed) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(PROGRESS_RECORD_LENGTH);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(index);
+            out.writeLong(committed);
+            out.flush();
+            return bytes.toByteArray();
         }
         
         /**
@@ -97,6 +219,13 @@ public class OSSDownloadOperation {
             downloadParts.get(index).isCompleted = completed;
         }
         
+        /**
+         * 分片内的数据已写入磁盘，更新分片的续传位置
+         */
+        public synchronized void updateProgress(int index, long committed) {
+            downloadParts.get(index).committed = committed;
+        }
+        
         /**
          * 判读Object与checkpoint中记录的信息是否相符，即Object是否修改过
          */
@@ -109,7 +238,7 @@ public class OSSDownloadOperation {
             }
             
             GenericRequest genericRequest = new GenericRequest(bucketName, objectKey);
-            SimplifiedObjectMeta meta = objectOperation.getSimplifiedObjectMeta(genericRequest);
+            SimplifiedObjectMeta meta = objectOperation.getSimplifiedObjectMetaFromServer(genericRequest);
             
             // Object的大小、最后修改时间、ETAG相同
             if (this.objectStat.size != meta.getSize() || 
@@ -151,6 +280,7 @@ public class OSSDownloadOperation {
         public String objectKey;  // object key
         public ObjectStat objectStat;  // object state
         public ArrayList<DownloadPart> downloadParts;  // 分片
+        private transient CheckpointJournal journal;  // checkpoint日志
 
     }
     
@@ -171,7 +301,7 @@ public class OSSDownloadOperation {
         public static ObjectStat getFileStat(OSSObjectOperation objectOperation, 
                 String bucketName, String key) {
             GenericRequest genericRequest = new GenericRequest(bucketName, key);
-            SimplifiedObjectMeta meta = objectOperation.getSimplifiedObjectMeta(genericRequest);
+            SimplifiedObjectMeta meta = objectOperation.getSimplifiedObjectMetaFromServer(genericRequest);
             
             ObjectStat objStat = new ObjectStat();
             objStat.size = meta.getSize();
@@ -205,6 +335,7 @@ public class OSSDownloadOperation {
         public long start; // 分片起始位置
         public long end; // 分片片结束位置
         public boolean isCompleted; // 该分片下载是否完成
+        public long committed; // 未完成的分片已写入磁盘的字节数，不参与校验
     }
     
     static class PartResult {
@@ -281,7 +412,20 @@ public class OSSDownloadOperation {
     }
     
     public OSSDownloadOperation(OSSObjectOperation objectOperation) {
+        this(objectOperation, new TransferManager());
+    }
+    
+    public OSSDownloadOperation(OSSObjectOperation objectOperation, TransferManager transferManager) {
         this.objectOperation = objectOperation;
+        this.transferManager = transferManager;
+    }
+    
+    public TransferManager getTransferManager() {
+        return transferManager;
+    }
+    
+    public void setTransferManager(TransferManager transferManager) {
+        this.transferManager = transferManager;
     }
     
     public DownloadFileResult downloadFile(DownloadFileRequest downloadFileRequest) throws Throwable {
@@ -333,11 +477,28 @@ public class OSSDownloadOperation {
             prepare(downloadCheckPoint, downloadFileRequest);
         }
         
-        // 并发下载分片
-        DownloadResult downloadResult = download(downloadCheckPoint, downloadFileRequest);
-        for (PartResult partResult : downloadResult.getPartResults()) {
-            if (partResult.isFailed()) {
-                throw partResult.getException();
+        // 开启断点续传，以日志格式记录下载进度
+        if (downloadFileRequest.isEnableCheckpoint()) {
+            downloadCheckPoint.open(downloadFileRequest.getCheckpointFile());
+        }
+        
+        DownloadResult downloadResult = null;
+        boolean completed = false;
+        try {
+            // 并发下载分片
+            downloadResult = download(downloadCheckPoint, downloadFileRequest);
+            for (PartResult partResult : downloadResult.getPartResults()) {
+                if (partResult.isFailed()) {
+                    throw partResult.getException();
+                }
+            }
+            completed = true;
+        } finally {
+            // 下载未完成时压缩checkpoint日志，供下次续传
+            try {
+                downloadCheckPoint.close(!completed);
+            } catch (IOException e) {
+                logException("Close download checkpoint journal failed: ", e);
             }
         }
         
@@ -357,55 +518,83 @@ public class OSSDownloadOperation {
         downloadCheckPoint.objectKey = downloadFileRequest.getKey();
         downloadCheckPoint.objectStat = ObjectStat.getFileStat(objectOperation, 
                 downloadCheckPoint.bucketName, downloadCheckPoint.objectKey);
-        downloadCheckPoint.downloadParts = splitFile(downloadCheckPoint.objectStat.size, 
-                downloadFileRequest.getPartSize());
+        // 自动调整模式根据Object大小选择分片大小，分片划分记录在checkpoint中
+        long partSize = downloadFileRequest.isAutoTuning() 
+                ? AdaptiveConcurrency.choosePartSize(downloadCheckPoint.objectStat.size, 
+                        downloadFileRequest.getTaskNum())
+                : downloadFileRequest.getPartSize();
+        downloadCheckPoint.downloadParts = splitFile(downloadCheckPoint.objectStat.size, partSize);
         
-        createFixedFile(downloadFileRequest.getDownloadFile(), downloadCheckPoint.objectStat.size);
+        FileSink.allocate(new File(downloadFileRequest.getDownloadFile()), downloadCheckPoint.objectStat.size,
+                downloadFileRequest.isPreallocate());
     }
     
     public static void createFixedFile(String filePath, long length) throws IOException {
-        File file = new File(filePath);
-        RandomAccessFile rf = null;
-        
-        try {
-            rf = new RandomAccessFile(file, "rw");
-            rf.setLength(length);
-        } finally {
-            if (rf != null) {
-                rf.close();
-            }
-        }
+        FileSink.allocate(new File(filePath), length, false);
     } 
     
     private DownloadResult download(DownloadCheckPoint downloadCheckPoint, DownloadFileRequest downloadFileRequest) 
             throws Throwable {
         DownloadResult downloadResult = new DownloadResult();
         ArrayList<PartResult> taskResults = new ArrayList<PartResult>();
-        ExecutorService service = Executors.newFixedThreadPool(downloadFileRequest.getTaskNum());
-        ArrayList<Future<PartResult>> futures = new ArrayList<Future<PartResult>>();
         List<Task> tasks = new ArrayList<Task>();
+        AdaptiveConcurrency concurrency = downloadFileRequest.isAutoTuning() 
+                ? new AdaptiveConcurrency(downloadFileRequest.getTaskNum()) : null;
                 
         for (int i = 0; i < downloadCheckPoint.downloadParts.size(); i++) {
             if (!downloadCheckPoint.downloadParts.get(i).isCompleted) {
-                Task task = new Task(i, "download-" + i, downloadCheckPoint, i, downloadFileRequest, objectOperation);
-                futures.add(service.submit(task));
-                tasks.add(task);
+                tasks.add(new Task(i, "download-" + i, downloadCheckPoint, i, downloadFileRequest, objectOperation,
+                        concurrency));
             } else {
                 taskResults.add(new PartResult(i + 1, downloadCheckPoint.downloadParts.get(i).start,
                         downloadCheckPoint.downloadParts.get(i).end));
             }
         }
-        service.shutdown();
         
-        service.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        // 所有分片共享同一个FileChannel按位置写入
+        FileSink sink = FileSink.open(new File(downloadFileRequest.getDownloadFile()), 
+                downloadFileRequest.isMemoryMapped());
         
-        for (Future<PartResult> future : futures) {
-            try {
-                PartResult tr = future.get();
-                taskResults.add(tr);
-            } catch (ExecutionException e) {
-                throw e.getCause();
+        // 任一分片失败或传输被取消时，停止其余分片
+        TransferControl control = new TransferControl(transferManager, tasks);
+        for (Task task : tasks) {
+            task.control = control;
+            task.sink = sink;
+        }
+        TransferHandle handle = downloadFileRequest.getTransferHandle();
+        if (handle != null) {
+            handle.addCancelListener(control);
+        }
+        
+        boolean finished = false;
+        try {
+            List<Future<PartResult>> futures = concurrency != null 
+                    ? transferManager.submitAll(tasks, concurrency)
+                    : transferManager.submitAll(tasks, downloadFileRequest.getTaskNum());
+            control.setFutures(futures);
+            for (Future<PartResult> future : futures) {
+                try {
+                    PartResult tr = future.get();
+                    taskResults.add(tr);
+                } catch (CancellationException e) {
+                    // The part was never started.
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof Exception)) {
+                        throw e.getCause();
+                    }
+                    control.fail((Exception) e.getCause());
+                }
             }
+            control.throwIfStopped();
+            finished = true;
+        } finally {
+            if (!finished) {
+                control.stop();
+            }
+            if (handle != null) {
+                handle.removeCancelListener(control);
+            }
+            sink.close();
         }
         
         Collections.sort(taskResults, new Comparator<PartResult>() {
@@ -416,37 +605,52 @@ public class OSSDownloadOperation {
         });
         
         downloadResult.setPartResults(taskResults);
-        if (tasks.size() > 0) {
-            downloadResult.setObjectMetadata(tasks.get(0).GetobjectMetadata());
+        // 已提交的分片不会再发起GET，取实际下载过的分片的元信息
+        ObjectMetadata objectMetadata = null;
+        for (Task task : tasks) {
+            if (task.GetobjectMetadata() != null) {
+                objectMetadata = task.GetobjectMetadata();
+                break;
+            }
+        }
+        if (objectMetadata == null) {
+            objectMetadata = objectOperation.getObjectMetadataFromServer(
+                    new GenericRequest(downloadFileRequest.getBucketName(), downloadFileRequest.getKey()));
         }
+        downloadResult.setObjectMetadata(objectMetadata);
 
         return downloadResult;
     }
     
-    static class Task implements Callable<PartResult> {
+    static class Task implements Callable<PartResult>, TransferControl.AbortableTask {
         
         public Task(int id, String name, DownloadCheckPoint downloadCheckPoint, int partIndex,
-                DownloadFileRequest downloadFileRequest, OSSObjectOperation objectOperation) {
+                DownloadFileRequest downloadFileRequest, OSSObjectOperation objectOperation,
+                AdaptiveConcurrency concurrency) {
             this.id = id;
             this.name = name;
             this.downloadCheckPoint = downloadCheckPoint;
             this.partIndex = partIndex;
             this.downloadFileRequest = downloadFileRequest;
             this.objectOperation = objectOperation;
+            this.concurrency = concurrency;
         }
         
         @Override
         public PartResult call() throws Exception {
             PartResult tr = null;
-            RandomAccessFile output = null;
             InputStream content = null;
             
             try {
-                DownloadPart downloadPart = downloadCheckPoint.downloadParts.get(partIndex);
+                final DownloadPart downloadPart = downloadCheckPoint.downloadParts.get(partIndex);
                 tr = new PartResult(partIndex + 1, downloadPart.start, downloadPart.end);
                 
-                output = new RandomAccessFile(downloadFileRequest.getDownloadFile(), "rw");  
-                output.seek(downloadPart.start);
+                // 从上次写入磁盘的位置继续下载分片
+                final long resumeFrom = downloadPart.start + downloadPart.committed;
+                if (resumeFrom > downloadPart.end) {
+                    complete();
+                    return tr;
+                }
 
                 GetObjectRequest getObjectRequest = new GetObjectRequest(downloadFileRequest.getBucketName(),
                         downloadFileRequest.getKey());
@@ -455,42 +659,79 @@ public class OSSDownloadOperation {
                 getObjectRequest.setModifiedSinceConstraint(downloadFileRequest.getModifiedSinceConstraint());
                 getObjectRequest.setUnmodifiedSinceConstraint(downloadFileRequest.getUnmodifiedSinceConstraint());
                 getObjectRequest.setResponseHeaders(downloadFileRequest.getResponseHeaders());
-                getObjectRequest.setRange(downloadPart.start, downloadPart.end);
+                getObjectRequest.setRange(resumeFrom, downloadPart.end);
                 
-                OSSObject ossObj = objectOperation.getObject(getObjectRequest);
+                OSSObject ossObj = objectOperation.getObjectFromServer(getObjectRequest);
+                this.ossObject = ossObj;
                 objectMetadata = ossObj.getObjectMetadata();
                 content = ossObj.getObjectContent();
-                
-                byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-                int bytesRead = 0;
-                while ((bytesRead = content.read(buffer)) != -1) {
-                    output.write(buffer, 0, bytesRead);
+                if (control != null && control.isStopped()) {
+                    ossObj.forcedClose();
+                    throw new ClientException("The transfer has been stopped.");
                 }
                 
-                downloadCheckPoint.update(partIndex, true);
-                if (downloadFileRequest.isEnableCheckpoint()) {
-                   downloadCheckPoint.dump(downloadFileRequest.getCheckpointFile()); 
-                }
+                long commitInterval = downloadFileRequest.isEnableCheckpoint() 
+                        ? downloadFileRequest.getProgressCheckpointSize() : 0;
+                sink.write(resumeFrom, content, downloadPart.end - resumeFrom + 1, commitInterval,
+                        new FileSink.CommitListener() {
+                            @Override
+                            public void onCommitted(long bytesWritten) throws IOException {
+                                long committed = resumeFrom - downloadPart.start + bytesWritten;
+                                downloadCheckPoint.updateProgress(partIndex, committed);
+                                downloadCheckPoint.journalProgress(partIndex, committed);
+                            }
+                        });
+                complete();
             } catch (Exception e) {
                 tr.setFailed(true);
                 tr.setException(e);
-                logException(String.format("Task %d:%s upload part %d failed: ", id, name, partIndex), e);
+                if (control == null || control.fail(e)) {
+                    logException(String.format("Task %d:%s upload part %d failed: ", id, name, partIndex), e);
+                }
             } finally {
-                if (output != null) {
-                    output.close();
+                if (content != null) {
+                    try {
+                        content.close();
+                    } catch (IOException e) {
+                        // The connection has been aborted.
+                        if (control == null || !control.isStopped()) {
+                            throw e;
+                        }
+                    }
                 }
                 
-                if (content != null) {
-                    content.close();
+                if (concurrency != null && tr != null) {
+                    concurrency.onPartFinished(tr.getEnd() - tr.getStart() + 1, tr.isFailed());
                 }
             }
                                     
             return tr;
         }
         
+        private void complete() throws IOException {
+            downloadCheckPoint.update(partIndex, true);
+            if (downloadFileRequest.isEnableCheckpoint()) {
+               downloadCheckPoint.journal(partIndex); 
+            }
+        }
+        
         public ObjectMetadata GetobjectMetadata () {
             return objectMetadata;
         }
+        
+        /**
+         * 强制关闭进行中的分片下载连接
+         */
+        @Override
+        public void abort() {
+            OSSObject current = ossObject;
+            if (current != null) {
+                try {
+                    current.forcedClose();
+                } catch (IOException e) {
+                }
+            }
+        }
 
         private int id;
         private String name;
@@ -499,6 +740,10 @@ public class OSSDownloadOperation {
         private DownloadFileRequest downloadFileRequest;
         private OSSObjectOperation objectOperation;
         private ObjectMetadata objectMetadata;
+        private AdaptiveConcurrency concurrency;
+        private TransferControl control;
+        private FileSink sink;
+        private volatile OSSObject ossObject;
     }
     
     private ArrayList<DownloadPart> splitFile(long objectSize, long partSize) {
@@ -540,4 +785,5 @@ public class OSSDownloadOperation {
     }
     
     private OSSObjectOperation objectOperation;
+    private TransferManager transferManager;
 }
@@ -64,6 +64,7 @@ import com.aliyun.oss.common.comm.RequestMessage;
 import com.aliyun.oss.common.comm.ResponseHandler;
 import com.aliyun.oss.common.comm.ResponseMessage;
 import com.aliyun.oss.common.comm.ServiceClient;
+import com.aliyun.oss.common.parser.XmlWriter;
 import com.aliyun.oss.common.utils.CRC64;
 import com.aliyun.oss.common.utils.HttpUtil;
 import com.aliyun.oss.event.ProgressEventType;
@@ -77,6 +78,9 @@ import com.aliyun.oss.model.InitiateMultipartUploadRequest;
 import com.aliyun.oss.model.InitiateMultipartUploadResult;
 import com.aliyun.oss.model.ListMultipartUploadsRequest;
 import com.aliyun.oss.model.ListPartsRequest;
+import com.aliyun.oss.model.ListingIterable;
+import com.aliyun.oss.model.ListingIterator;
+import com.aliyun.oss.model.MultipartUpload;
 import com.aliyun.oss.model.MultipartUploadListing;
 import com.aliyun.oss.model.PartETag;
 import com.aliyun.oss.model.PartListing;
@@ -166,6 +170,7 @@ public class OSSMultipartOperation extends OSSOperation {
             }
         });
         
+        XmlWriter xmlBody = completeMultipartUploadRequestMarshaller.marshall(completeMultipartUploadRequest);
         RequestMessage request = new OSSRequestMessageBuilder(getInnerClient())
                 .setEndpoint(getEndpoint())
                 .setMethod(HttpMethod.POST)
@@ -173,7 +178,7 @@ public class OSSMultipartOperation extends OSSOperation {
                 .setKey(key)
                 .setHeaders(headers)
                 .setParameters(parameters)
-                .setInputStreamWithLength(completeMultipartUploadRequestMarshaller.marshall(completeMultipartUploadRequest))
+                .setInputStreamWithLength(xmlBody.getInputStream())
                 .setOriginalRequest(completeMultipartUploadRequest)
                 .build();
         
@@ -181,11 +186,16 @@ public class OSSMultipartOperation extends OSSOperation {
         reponseHandlers.add(new OSSCallbackErrorResponseHandler());
         
         CompleteMultipartUploadResult result = null;
-        if (completeMultipartUploadRequest.getCallback() == null) {
-            result = doOperation(request, completeMultipartUploadResponseParser, bucketName, key, true);
-        } else {
-            result =  doOperation(request, completeMultipartUploadCallbackResponseParser, bucketName, key, true, null, reponseHandlers);
+        try {
+            if (completeMultipartUploadRequest.getCallback() == null) {
+                result = doOperation(request, completeMultipartUploadResponseParser, bucketName, key, true);
+            } else {
+                result =  doOperation(request, completeMultipartUploadCallbackResponseParser, bucketName, key, true, null, reponseHandlers);
+            }
+        } finally {
+            invalidateObject(bucketName, key);
         }
+        xmlBody.release();
         result.setClientCRC64(calcObjectCRC64FromParts(completeMultipartUploadRequest.getPartETags()));
         return result;
     }
@@ -266,6 +276,59 @@ public class OSSMultipartOperation extends OSSOperation {
         return doOperation(request, listMultipartUploadsResponseParser, bucketName, null, true);
     }
 
+    /**
+     * List multipart uploads page by page, prefetching the next page in background.
+     */
+    public ListingIterable<MultipartUpload> iterateMultipartUploads(
+            final ListMultipartUploadsRequest listMultipartUploadsRequest, final int readAheadPages)
+                    throws OSSException, ClientException {
+
+        assertParameterNotNull(listMultipartUploadsRequest, "listMultipartUploadsRequest");
+
+        final String bucketName = listMultipartUploadsRequest.getBucketName();
+        assertParameterNotNull(bucketName, "bucketName");
+        ensureBucketNameValid(bucketName);
+
+        return new ListingIterable<MultipartUpload>() {
+
+            @Override
+            public ListingIterator<MultipartUpload> iterator() {
+                return new PrefetchingListingIterator<MultipartUpload>(readAheadPages) {
+
+                    private String keyMarker = listMultipartUploadsRequest.getKeyMarker();
+                    private String uploadIdMarker = listMultipartUploadsRequest.getUploadIdMarker();
+                    private boolean truncated = true;
+
+                    @Override
+                    protected List<MultipartUpload> fetchNextPage() {
+                        if (!truncated) {
+                            return null;
+                        }
+
+                        ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucketName);
+                        request.setPrefix(listMultipartUploadsRequest.getPrefix());
+                        request.setDelimiter(listMultipartUploadsRequest.getDelimiter());
+                        request.setMaxUploads(listMultipartUploadsRequest.getMaxUploads());
+                        request.setEncodingType(listMultipartUploadsRequest.getEncodingType());
+                        request.setKeyMarker(keyMarker);
+                        request.setUploadIdMarker(uploadIdMarker);
+                        request.setHeaders(new LinkedHashMap<String, String>(
+                                listMultipartUploadsRequest.getHeaders()));
+
+                        MultipartUploadListing uploadListing = listMultipartUploads(request);
+                        truncated = uploadListing.isTruncated();
+                        keyMarker = OSSBucketOperation.decodeMarker(uploadListing.getNextKeyMarker(),
+                                listMultipartUploadsRequest.getEncodingType());
+                        uploadIdMarker = uploadListing.getNextUploadIdMarker();
+                        return uploadListing.getMultipartUploads();
+                    }
+
+                };
+            }
+
+        };
+    }
+
     /**
      * List parts.
      */
@@ -353,6 +416,7 @@ public class OSSMultipartOperation extends OSSOperation {
                 .setInputStream(repeatableInputStream)
                 .setInputSize(uploadPartRequest.getPartSize())
                 .setUseChunkEncoding(uploadPartRequest.isUseChunkEncoding())
+                .setContentCRC64(uploadPartRequest.getPartCRC64())
                 .setOriginalRequest(uploadPartRequest)
                 .build();
         
@@ -373,6 +437,9 @@ public class OSSMultipartOperation extends OSSOperation {
         result.setRequestId(response.getRequestId());
         result.setPartSize(uploadPartRequest.getPartSize());
         ResponseParsers.setCRC64(result, response);
+        if (uploadPartRequest.getPartCRC64() != null) {
+            result.setClientCRC64(uploadPartRequest.getPartCRC64());
+        }
         return result;
     }
     
@@ -28,7 +28,6 @@ import static com.aliyun.oss.common.utils.IOUtils.safeClose;
 import static com.aliyun.oss.common.utils.LogUtils.getLog;
 import static com.aliyun.oss.common.utils.LogUtils.logException;
 import static com.aliyun.oss.event.ProgressPublisher.publishProgress;
-import static com.aliyun.oss.internal.OSSConstants.DEFAULT_BUFFER_SIZE;
 import static com.aliyun.oss.internal.OSSConstants.DEFAULT_CHARSET_NAME;
 import static com.aliyun.oss.internal.OSSUtils.OSS_RESOURCE_MANAGER;
 import static com.aliyun.oss.internal.OSSUtils.addDateHeader;
@@ -57,13 +56,9 @@ import static com.aliyun.oss.internal.ResponseParsers.putObjectReponseParser;
 import static com.aliyun.oss.internal.ResponseParsers.putObjectCallbackReponseParser;
 import static com.aliyun.oss.internal.ResponseParsers.getSimplifiedObjectMetaResponseParser;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -76,8 +71,12 @@ import org.apache.http.HttpStatus;
 
 import com.aliyun.oss.ClientException;
 import com.aliyun.oss.HttpMethod;
+import com.aliyun.oss.MetadataCache;
 import com.aliyun.oss.OSSErrorCode;
 import com.aliyun.oss.OSSException;
+import com.aliyun.oss.ObjectDiskCache;
+import com.aliyun.oss.ObjectLoader;
+import com.aliyun.oss.ObjectMemoryCache;
 import com.aliyun.oss.ServiceException;
 import com.aliyun.oss.common.auth.CredentialsProvider;
 import com.aliyun.oss.common.comm.RequestMessage;
@@ -86,7 +85,7 @@ import com.aliyun.oss.common.comm.ResponseMessage;
 import com.aliyun.oss.common.comm.ServiceClient;
 import com.aliyun.oss.common.comm.io.RepeatableFileInputStream;
 import com.aliyun.oss.common.parser.ResponseParser;
-import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.common.parser.XmlWriter;
 import com.aliyun.oss.common.utils.CRC64;
 import com.aliyun.oss.common.utils.DateUtil;
 import com.aliyun.oss.common.utils.ExceptionFactory;
@@ -120,10 +119,20 @@ import com.aliyun.oss.model.SimplifiedObjectMeta;
  */
 public class OSSObjectOperation extends OSSOperation {
     
+    private volatile ObjectDiskCache diskCache;
+    
     public OSSObjectOperation(ServiceClient client, CredentialsProvider credsProvider) {
         super(client, credsProvider);
     }
     
+    public ObjectDiskCache getDiskCache() {
+        return diskCache;
+    }
+    
+    public void setDiskCache(ObjectDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+    
     /**
      * Upload input stream or file to oss.
      */
@@ -177,13 +186,48 @@ public class OSSObjectOperation extends OSSOperation {
     }
 
     /**
-     * Pull an object from oss.
+     * Pull an object from oss, through the memory and disk caches when set.
      */
     public OSSObject getObject(GetObjectRequest getObjectRequest)
             throws OSSException, ClientException {
         
         assertParameterNotNull(getObjectRequest, "getObjectRequest");
         
+        ObjectMemoryCache memoryCache = this.memoryCache;
+        if (memoryCache != null && ObjectDiskCache.isCacheable(getObjectRequest)) {
+            return memoryCache.getObject(getObjectRequest, new ObjectLoader() {
+                @Override
+                public OSSObject load(GetObjectRequest request) {
+                    return getObjectFromDiskCache(request);
+                }
+            });
+        }
+        return getObjectFromDiskCache(getObjectRequest);
+    }
+    
+    private OSSObject getObjectFromDiskCache(GetObjectRequest getObjectRequest)
+            throws OSSException, ClientException {
+        
+        ObjectDiskCache diskCache = this.diskCache;
+        if (diskCache != null && ObjectDiskCache.isCacheable(getObjectRequest)) {
+            return diskCache.getObject(getObjectRequest, new ObjectLoader() {
+                @Override
+                public OSSObject load(GetObjectRequest request) {
+                    return getObjectFromServer(request);
+                }
+            });
+        }
+        return getObjectFromServer(getObjectRequest);
+    }
+    
+    /**
+     * Pull an object from oss, bypassing the memory and disk caches. Transfers
+     * that read an object in parts use this, so their ranges are neither 
+     * copied into the disk cache nor held in memory.
+     */
+    public OSSObject getObjectFromServer(GetObjectRequest getObjectRequest)
+            throws OSSException, ClientException {
+        
         String bucketName = null;
         String key = null;
         RequestMessage request = null;
@@ -256,29 +300,64 @@ public class OSSObjectOperation extends OSSOperation {
 
         OSSObject ossObject = getObject(getObjectRequest);
 
-        OutputStream outputStream = null;
+        FileSink sink = null;
         try {
-            outputStream = new BufferedOutputStream(new FileOutputStream(file));
-            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = ossObject.getObjectContent().read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+            if (ossObject.getObjectContent() instanceof CachedObjectInputStream) {
+                ((CachedObjectInputStream) ossObject.getObjectContent()).copyTo(file);
+                return ossObject.getObjectMetadata();
             }
             
+            sink = FileSink.create(file);
+            sink.write(0, ossObject.getObjectContent(), -1);
+            
             return ossObject.getObjectMetadata();
         } catch (IOException ex) {
             logException("Cannot read object content stream: ", ex);
             throw new ClientException(OSS_RESOURCE_MANAGER.getString("CannotReadContentStream"), ex);
         } finally {
-            safeClose(outputStream);
+            if (sink != null) {
+                try {
+                    sink.close();
+                } catch (IOException e) {
+                }
+            }
             safeClose(ossObject.getObjectContent());
         }
     }
     
     /**
-     * Get simplified object meta.
+     * Get simplified object meta, from the metadata cache when one is set.
+     */
+    public SimplifiedObjectMeta getSimplifiedObjectMeta(final GenericRequest genericRequest) {
+        
+        MetadataCache cache = this.metadataCache;
+        if (cache == null) {
+            return getSimplifiedObjectMetaFromServer(genericRequest);
+        }
+        
+        assertParameterNotNull(genericRequest, "genericRequest");
+        
+        String bucketName = genericRequest.getBucketName();
+        String key = genericRequest.getKey();
+        
+        assertParameterNotNull(bucketName, "bucketName");
+        assertParameterNotNull(key, "key");
+        ensureBucketNameValid(bucketName);
+        ensureObjectKeyValid(key);
+        
+        return cache.getSimplifiedObjectMeta(bucketName, key, new MetadataCache.Loader<SimplifiedObjectMeta>() {
+            @Override
+            public SimplifiedObjectMeta load() {
+                return getSimplifiedObjectMetaFromServer(genericRequest);
+            }
+        });
+    }
+    
+    /**
+     * Get simplified object meta from oss, bypassing the metadata cache. Transfers 
+     * use this to validate their checkpoints, which a stale cached entry would defeat.
      */
-    public SimplifiedObjectMeta getSimplifiedObjectMeta(GenericRequest genericRequest) {
+    public SimplifiedObjectMeta getSimplifiedObjectMetaFromServer(GenericRequest genericRequest) {
         
         assertParameterNotNull(genericRequest, "genericRequest");
         
@@ -306,11 +385,40 @@ public class OSSObjectOperation extends OSSOperation {
     }
 
     /**
-     * Get object matadata.
+     * Get object matadata, from the metadata cache when one is set.
      */
-    public ObjectMetadata getObjectMetadata(GenericRequest genericRequest)
+    public ObjectMetadata getObjectMetadata(final GenericRequest genericRequest)
             throws OSSException, ClientException {
 
+        MetadataCache cache = this.metadataCache;
+        if (cache == null) {
+            return getObjectMetadataFromServer(genericRequest);
+        }
+        
+        assertParameterNotNull(genericRequest, "genericRequest");
+        
+        String bucketName = genericRequest.getBucketName();
+        String key = genericRequest.getKey();
+        
+        assertParameterNotNull(bucketName, "bucketName");
+        assertParameterNotNull(key, "key");
+        ensureBucketNameValid(bucketName);
+        ensureObjectKeyValid(key);
+        
+        return cache.getObjectMetadata(bucketName, key, new MetadataCache.Loader<ObjectMetadata>() {
+            @Override
+            public ObjectMetadata load() {
+                return getObjectMetadataFromServer(genericRequest);
+            }
+        });
+    }
+    
+    /**
+     * Get object metadata with a HEAD request, bypassing the metadata cache.
+     */
+    public ObjectMetadata getObjectMetadataFromServer(GenericRequest genericRequest)
+            throws OSSException, ClientException {
+        
         assertParameterNotNull(genericRequest, "genericRequest");
         
         String bucketName = genericRequest.getBucketName();
@@ -370,9 +478,13 @@ public class OSSObjectOperation extends OSSOperation {
                 .setOriginalRequest(copyObjectRequest)
                 .build();
         
-        return doOperation(request, copyObjectResponseParser, 
-                copyObjectRequest.getDestinationBucketName(), 
-                copyObjectRequest.getDestinationKey(), true);
+        try {
+            return doOperation(request, copyObjectResponseParser, 
+                    copyObjectRequest.getDestinationBucketName(), 
+                    copyObjectRequest.getDestinationKey(), true);
+        } finally {
+            invalidateObject(copyObjectRequest.getDestinationBucketName(), copyObjectRequest.getDestinationKey());
+        }
     }
 
     /**
@@ -399,7 +511,11 @@ public class OSSObjectOperation extends OSSOperation {
                 .setOriginalRequest(genericRequest)
                 .build();
         
-        doOperation(request, emptyResponseParser, bucketName, key);
+        try {
+            doOperation(request, emptyResponseParser, bucketName, key);
+        } finally {
+            invalidateObject(bucketName, key);
+        }
     }
     
     /**
@@ -416,9 +532,9 @@ public class OSSObjectOperation extends OSSOperation {
         Map<String, String> params = new HashMap<String, String>();
         params.put(SUBRESOURCE_DELETE, null);
         
-        byte[] rawContent = deleteObjectsRequestMarshaller.marshall(deleteObjectsRequest);
+        XmlWriter xmlBody = deleteObjectsRequestMarshaller.marshall(deleteObjectsRequest);
         Map<String, String> headers = new HashMap<String, String>();
-        addDeleteObjectsRequiredHeaders(headers, rawContent);
+        addDeleteObjectsRequiredHeaders(headers, xmlBody);
         addDeleteObjectsOptionalHeaders(headers, deleteObjectsRequest);
         
         RequestMessage request = new OSSRequestMessageBuilder(getInnerClient())
@@ -427,12 +543,21 @@ public class OSSObjectOperation extends OSSOperation {
                 .setBucket(bucketName)
                 .setParameters(params)
                 .setHeaders(headers)
-                .setInputSize(rawContent.length)
-                .setInputStream(new ByteArrayInputStream(rawContent))
+                .setInputStreamWithLength(xmlBody.getInputStream())
                 .setOriginalRequest(deleteObjectsRequest)
                 .build();
         
-        return doOperation(request, deleteObjectsResponseParser, bucketName, null, true);
+        DeleteObjectsResult result;
+        try {
+            result = doOperation(request, deleteObjectsResponseParser, bucketName, null, true);
+        } finally {
+            for (String key : deleteObjectsRequest.getKeys()) {
+                invalidateObject(bucketName, key);
+            }
+        }
+        // On failure the body may still be referenced by the request, leave it to the GC.
+        xmlBody.release();
+        return result;
     }
     
     /**
@@ -451,6 +576,15 @@ public class OSSObjectOperation extends OSSOperation {
         assertParameterNotNull(key, "key");
         ensureObjectKeyValid(key);
         
+        // An unconditional HEAD is answered by the cached object metadata.
+        if (this.metadataCache != null && headObjectRequest.getMatchingETagConstraints().isEmpty() 
+                && headObjectRequest.getNonmatchingETagConstraints().isEmpty()
+                && headObjectRequest.getModifiedSinceConstraint() == null
+                && headObjectRequest.getUnmodifiedSinceConstraint() == null) {
+            getObjectMetadata(new GenericRequest(bucketName, key));
+            return;
+        }
+        
         Map<String, String> headers = new HashMap<String, String>();
         addDateHeader(headers, OSSHeaders.HEAD_OBJECT_IF_MODIFIED_SINCE,
                 headObjectRequest.getModifiedSinceConstraint());
@@ -679,6 +813,8 @@ public class OSSObjectOperation extends OSSOperation {
         } catch (RuntimeException e) {
             publishProgress(listener, ProgressEventType.TRANSFER_FAILED_EVENT);
             throw e;
+        } finally {
+            invalidateObject(bucketName, key);
         }
         return result;
     }
@@ -741,12 +877,9 @@ public class OSSObjectOperation extends OSSOperation {
         }
     }
      
-    private static void addDeleteObjectsRequiredHeaders(Map<String, String> headers, byte[] rawContent) {
-        headers.put(HttpHeaders.CONTENT_LENGTH, String.valueOf(rawContent.length));
-        
-        byte[] md5 = BinaryUtil.calculateMd5(rawContent);
-        String md5Base64 = BinaryUtil.toBase64String(md5);
-        headers.put(HttpHeaders.CONTENT_MD5, md5Base64);
+    private static void addDeleteObjectsRequiredHeaders(Map<String, String> headers, XmlWriter xmlBody) {
+        headers.put(HttpHeaders.CONTENT_LENGTH, String.valueOf(xmlBody.length()));
+        headers.put(HttpHeaders.CONTENT_MD5, xmlBody.getMd5Base64());
     }
     
     private static void addDeleteObjectsOptionalHeaders(Map<String, String> headers, 
@@ -21,14 +21,19 @@ package com.aliyun.oss.internal;
 
 import static com.aliyun.oss.common.utils.LogUtils.logException;
 import static com.aliyun.oss.internal.OSSConstants.DEFAULT_CHARSET_NAME;
+import static com.aliyun.oss.internal.OSSUtils.determineFinalEndpoint;
 import static com.aliyun.oss.internal.OSSUtils.safeCloseResponse;
 
 import java.net.URI;
 import java.util.List;
 
+import com.aliyun.oss.BucketRegionRouter;
+import com.aliyun.oss.ClientConfiguration;
 import com.aliyun.oss.ClientException;
 import com.aliyun.oss.HttpMethod;
+import com.aliyun.oss.MetadataCache;
 import com.aliyun.oss.OSSException;
+import com.aliyun.oss.ObjectMemoryCache;
 import com.aliyun.oss.ServiceException;
 import com.aliyun.oss.common.auth.Credentials;
 import com.aliyun.oss.common.auth.CredentialsProvider;
@@ -58,6 +63,9 @@ import com.aliyun.oss.model.WebServiceRequest;
 public abstract class OSSOperation {
     
     protected volatile URI endpoint;
+    protected volatile MetadataCache metadataCache;
+    protected volatile ObjectMemoryCache memoryCache;
+    protected volatile BucketRegionRouter regionRouter;
     protected CredentialsProvider credsProvider;
     protected ServiceClient client;
     
@@ -78,6 +86,45 @@ public abstract class OSSOperation {
         this.endpoint = URI.create(endpoint.toString());
     }
     
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+    
+    public void setMetadataCache(MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+    
+    public ObjectMemoryCache getMemoryCache() {
+        return memoryCache;
+    }
+    
+    public void setMemoryCache(ObjectMemoryCache memoryCache) {
+        this.memoryCache = memoryCache;
+    }
+    
+    public BucketRegionRouter getRegionRouter() {
+        return regionRouter;
+    }
+    
+    public void setRegionRouter(BucketRegionRouter regionRouter) {
+        this.regionRouter = regionRouter;
+    }
+    
+    /**
+     * Drops the cached metadata and content of an object written through 
+     * this operation.
+     */
+    protected void invalidateObject(String bucketName, String key) {
+        MetadataCache cache = this.metadataCache;
+        if (cache != null) {
+            cache.invalidate(bucketName, key);
+        }
+        ObjectMemoryCache objectCache = this.memoryCache;
+        if (objectCache != null) {
+            objectCache.invalidate(bucketName, key);
+        }
+    }
+    
     protected ServiceClient getInnerClient() {
         return this.client;
     }
@@ -103,6 +150,38 @@ public abstract class OSSOperation {
         }
     }
     
+    /**
+     * Sends the request to the regional endpoint of the bucket when a region
+     * router is set. On a redirect or wrong-endpoint error the location of the
+     * bucket is looked up again, and a request without body is resent once 
+     * if the bucket moved to another endpoint.
+     */
+    private ResponseMessage sendRouted(RequestMessage request, ExecutionContext context, String bucketName, 
+            boolean keepResponseOpen) throws OSSException, ClientException {
+        BucketRegionRouter router = this.regionRouter;
+        if (router == null || bucketName == null || request.isUseUrlSignature()) {
+            return send(request, context, keepResponseOpen);
+        }
+        
+        ClientConfiguration config = client.getClientConfiguration();
+        URI routed = router.resolve(bucketName, getEndpoint());
+        request.setEndpoint(determineFinalEndpoint(routed, bucketName, config));
+        try {
+            return send(request, context, keepResponseOpen);
+        } catch (OSSException e) {
+            if (!BucketRegionRouter.isRegionError(e)) {
+                throw e;
+            }
+            router.invalidate(bucketName);
+            URI rerouted = router.resolve(bucketName, getEndpoint());
+            if (rerouted.equals(routed) || request.getContent() != null) {
+                throw e;
+            }
+            request.setEndpoint(determineFinalEndpoint(rerouted, bucketName, config));
+            return send(request, context, keepResponseOpen);
+        }
+    }
+    
     protected <T> T doOperation(RequestMessage request, ResponseParser<T> parser, String bucketName, 
             String key) throws OSSException, ClientException {
         return doOperation(request, parser, bucketName, key, false);
@@ -143,7 +222,7 @@ public abstract class OSSOperation {
         }
         context.addResponseHandler(new ResponseChecksumHandler());
         
-        ResponseMessage response = send(request, context, keepResponseOpen);
+        ResponseMessage response = sendRouted(request, context, bucketName, keepResponseOpen);
         
         try {
             return parser.parse(response);
@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+import static com.aliyun.oss.internal.OSSUtils.ensureObjectKeyValid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.aliyun.oss.ClientErrorCode;
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.TransferManager;
+import com.aliyun.oss.common.utils.CRC64;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.ParallelGetObjectRequest;
+
+/**
+ * OSSParallelInputStream
+ * 
+ * Reads an object in order while up to taskNum ranged GETs run ahead of the
+ * reader on the transfer manager. Ranges are fetched into buffers of 
+ * partSize; at most 2 * taskNum of them are in flight or waiting to be read,
+ * so a slow reader stops the fetching instead of buffering the object. 
+ * Buffers of consumed ranges are reused for the next ones.
+ * 
+ * Every range is pinned to the ETag read by HEAD and retried on its own, 
+ * continuing after the bytes it already received. The CRC64 of each range 
+ * is combined in read order and compared with the CRC64 of the object when 
+ * the end of the stream is reached.
+ */
+public class OSSParallelInputStream extends InputStream {
+    
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 3000;
+    
+    private final OSSObjectOperation objectOperation;
+    private final TransferManager transferManager;
+    private final ParallelGetObjectRequest request;
+    private final String eTag;
+    private final long size;
+    private final Long objectCRC;
+    private final int partSize;
+    private final int rangeCount;
+    private final int taskNum;
+    private final int window;
+    
+    // Fetch state, guarded by this.
+    private final Map<Integer, Range> ranges = new HashMap<Integer, Range>();
+    private final List<byte[]> freeBuffers = new ArrayList<byte[]>();
+    private int nextToFetch;
+    private int inFlight;
+    private volatile boolean closed;
+    
+    // Reader state.
+    private Range current;
+    private int currentIndex;
+    private int readPosition;
+    private long position;
+    private long crc64;
+    
+    public OSSParallelInputStream(OSSObjectOperation objectOperation, TransferManager transferManager,
+            ParallelGetObjectRequest request, ObjectMetadata metadata) {
+        this.objectOperation = objectOperation;
+        this.transferManager = transferManager;
+        this.request = request;
+        this.eTag = metadata.getETag();
+        this.size = metadata.getContentLength();
+        this.objectCRC = request.isCrcCheckEnabled() ? metadata.getServerCRC() : null;
+        this.partSize = (int) request.getPartSize();
+        this.rangeCount = (int) ((size + partSize - 1) / partSize);
+        this.taskNum = request.getTaskNum();
+        this.window = 2 * taskNum;
+    }
+    
+    /**
+     * Reads the metadata with HEAD and returns the object whose content is
+     * read by a parallel stream.
+     */
+    public static OSSObject open(OSSObjectOperation objectOperation, TransferManager transferManager,
+            ParallelGetObjectRequest request) throws OSSException, ClientException {
+        assertParameterNotNull(request, "parallelGetObjectRequest");
+        assertParameterNotNull(request.getBucketName(), "bucketName");
+        assertParameterNotNull(request.getKey(), "key");
+        ensureBucketNameValid(request.getBucketName());
+        ensureObjectKeyValid(request.getKey());
+        
+        ObjectMetadata metadata = objectOperation.getObjectMetadataFromServer(
+                new GenericRequest(request.getBucketName(), request.getKey()));
+        OSSObject ossObject = new OSSObject();
+        ossObject.setBucketName(request.getBucketName());
+        ossObject.setKey(request.getKey());
+        ossObject.setObjectMetadata(metadata);
+        ossObject.setObjectContent(new OSSParallelInputStream(objectOperation, transferManager, request, metadata));
+        return ossObject;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (position == size) {
+            return -1;
+        }
+        
+        if (current == null) {
+            current = awaitRange(currentIndex);
+            readPosition = 0;
+        }
+        int n = Math.min(len, current.length - readPosition);
+        System.arraycopy(current.buffer, readPosition, b, off, n);
+        readPosition += n;
+        position += n;
+        
+        if (readPosition == current.length) {
+            crc64 = CRC64.combine(crc64, current.crc64, current.length);
+            release(current);
+            current = null;
+            currentIndex++;
+            if (position == size) {
+                checkCRC64();
+            }
+        }
+        return n;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return current != null ? current.length - readPosition : 0;
+    }
+    
+    /**
+     * Stops the fetching and aborts the range requests in flight.
+     */
+    @Override
+    public void close() throws IOException {
+        List<Range> running;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = new ArrayList<Range>(ranges.values());
+            ranges.clear();
+            freeBuffers.clear();
+            notifyAll();
+        }
+        current = null;
+        for (Range range : running) {
+            range.abort();
+        }
+    }
+    
+    public long getObjectSize() {
+        return size;
+    }
+    
+    private Range awaitRange(int index) throws IOException {
+        schedule();
+        Range range;
+        synchronized (this) {
+            range = ranges.get(index);
+            try {
+                while (!closed && !range.done) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for range " + index + ".");
+            }
+        }
+        ensureOpen();
+        if (range.failure != null) {
+            throw new IOException("Failed to read bytes " + range.start + "-" + (range.start + range.length - 1) 
+                    + " of " + request.getKey() + ": " + range.failure.getMessage(), range.failure);
+        }
+        return range;
+    }
+    
+    /**
+     * Starts range requests while both the connection limit and the 
+     * read-ahead window allow.
+     */
+    private void schedule() {
+        List<Range> started = new ArrayList<Range>();
+        synchronized (this) {
+            while (!closed && inFlight < taskNum && nextToFetch < rangeCount 
+                    && nextToFetch < currentIndex + window) {
+                int index = nextToFetch++;
+                long start = (long) index * partSize;
+                int length = (int) Math.min(partSize, size - start);
+                byte[] buffer = freeBuffers.isEmpty() ? new byte[partSize] : freeBuffers.remove(freeBuffers.size() - 1);
+                Range range = new Range(index, start, length, buffer);
+                ranges.put(index, range);
+                inFlight++;
+                started.add(range);
+            }
+        }
+        if (!started.isEmpty()) {
+            transferManager.submitAll(started, started.size());
+        }
+    }
+    
+    private void release(Range range) {
+        synchronized (this) {
+            ranges.remove(range.index);
+            if (!closed) {
+                freeBuffers.add(range.buffer);
+            }
+        }
+        schedule();
+    }
+    
+    private void finished(Range range, Exception failure) {
+        synchronized (this) {
+            range.failure = failure;
+            range.done = true;
+            inFlight--;
+            notifyAll();
+        }
+        schedule();
+    }
+    
+    private void checkCRC64() throws IOException {
+        if (objectCRC != null && objectCRC.longValue() != crc64) {
+            throw new IOException("The CRC64 of the object " + Long.toHexString(objectCRC) 
+                    + " does not match the CRC64 of the read data " + Long.toHexString(crc64), 
+                    new ClientException("Inconsistent CRC64", ClientErrorCode.INCONSISTENT_CRC, null));
+        }
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+    
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof OSSException) {
+            String errorCode = ((OSSException) e).getErrorCode();
+            return OSSErrorCode.INTERNAL_ERROR.equals(errorCode) || OSSErrorCode.REQUEST_TIMEOUT.equals(errorCode);
+        }
+        return e instanceof ClientException || e instanceof IOException;
+    }
+    
+    class Range implements Callable<Void> {
+        
+        final int index;
+        final long start;
+        final int length;
+        final byte[] buffer;
+        int received;
+        long crc64;
+        boolean done;
+        Exception failure;
+        private volatile OSSObject connection;
+        
+        Range(int index, long start, int length, byte[] buffer) {
+            this.index = index;
+            this.start = start;
+            this.length = length;
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public Void call() {
+            CRC64 crc = new CRC64();
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    fetch(crc);
+                    crc64 = crc.getValue();
+                    finished(this, null);
+                    return null;
+                } catch (Exception e) {
+                    if (closed || attempt >= request.getMaxRetries() || !isRetryable(e)) {
+                        if (!closed) {
+                            logException("Read range " + index + " of " + request.getKey() + " failed: ", e);
+                        }
+                        finished(this, e);
+                        return null;
+                    }
+                }
+                try {
+                    Thread.sleep(Math.min(RETRY_BACKOFF_MILLIS << Math.min(attempt, 5), MAX_RETRY_BACKOFF_MILLIS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    finished(this, e);
+                    return null;
+                }
+            }
+        }
+        
+        /**
+         * Reads the rest of the range, continuing after the bytes received
+         * by earlier attempts.
+         */
+        private void fetch(CRC64 crc) throws IOException {
+            GetObjectRequest getObjectRequest = new GetObjectRequest(request.getBucketName(), request.getKey());
+            getObjectRequest.setRange(start + received, start + length - 1);
+            if (eTag != null) {
+                getObjectRequest.setMatchingETagConstraints(Collections.singletonList(eTag));
+            }
+            
+            OSSObject ossObject = objectOperation.getObjectFromServer(getObjectRequest);
+            connection = ossObject;
+            InputStream content = ossObject.getObjectContent();
+            try {
+                while (received < length) {
+                    if (closed) {
+                        throw new IOException("Stream closed");
+                    }
+                    int n = content.read(buffer, received, length - received);
+                    if (n == -1) {
+                        throw new IOException("Premature end of range " + index + ", expected " + length 
+                                + " bytes but got " + received + ".");
+                    }
+                    crc.update(buffer, received, n);
+                    received += n;
+                }
+            } finally {
+                connection = null;
+                try {
+                    content.close();
+                } catch (IOException e) {
+                    // The connection has been aborted.
+                }
+            }
+        }
+        
+        void abort() {
+            OSSObject current = connection;
+            if (current != null) {
+                try {
+                    current.forcedClose();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
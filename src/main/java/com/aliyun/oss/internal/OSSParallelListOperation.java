@@ -0,0 +1,464 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.internal;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.ListingStatistics;
+import com.aliyun.oss.model.ListingStatistics.ShardStatistics;
+import com.aliyun.oss.model.OSSObjectSummary;
+import com.aliyun.oss.model.ObjectListing;
+import com.aliyun.oss.model.ParallelListObjectsRequest;
+import com.aliyun.oss.model.ParallelObjectListing;
+
+/**
+ * OSSParallelListOperation
+ * 
+ * Splits a listing into prefix shards discovered with delimiter listings and
+ * lists the shards concurrently. Shards cover disjoint, contiguous key ranges,
+ * so an ordered result is produced by draining the shards one after another
+ * in key order, each shard buffering at most readAheadPages pages.
+ */
+public class OSSParallelListOperation {
+    
+    private static final Object END_OF_SHARD = new Object();
+    private static final AtomicInteger listerCount = new AtomicInteger();
+    
+    private OSSBucketOperation bucketOperation;
+    
+    public OSSParallelListOperation(OSSBucketOperation bucketOperation) {
+        this.bucketOperation = bucketOperation;
+    }
+    
+    public ParallelObjectListing listObjects(ParallelListObjectsRequest parallelListObjectsRequest)
+            throws OSSException, ClientException {
+        
+        assertParameterNotNull(parallelListObjectsRequest, "parallelListObjectsRequest");
+        
+        String bucketName = parallelListObjectsRequest.getBucketName();
+        assertParameterNotNull(bucketName, "bucketName");
+        ensureBucketNameValid(bucketName);
+        
+        ShardedListing listing = new ShardedListing(parallelListObjectsRequest);
+        listing.start();
+        return listing;
+    }
+    
+    /**
+     * A shard is either a prefix to be listed on the executor, or a run of
+     * objects already returned by the discovery listing.
+     */
+    static class Segment {
+        
+        final String prefix;
+        final List<OSSObjectSummary> objects;
+        final ShardStatistics statistics;
+        BlockingQueue<Object> pages;
+        
+        Segment(String prefix, ShardStatistics statistics) {
+            this.prefix = prefix;
+            this.objects = null;
+            this.statistics = statistics;
+        }
+        
+        Segment(List<OSSObjectSummary> objects) {
+            this.prefix = null;
+            this.objects = objects;
+            this.statistics = null;
+        }
+        
+        boolean isShard() {
+            return prefix != null;
+        }
+    }
+    
+    static class ShardFailure {
+        
+        final RuntimeException exception;
+        
+        ShardFailure(RuntimeException exception) {
+            this.exception = exception;
+        }
+    }
+    
+    /**
+     * Orders keys the way OSS does, by their UTF-8 bytes, which is code point
+     * order rather than the UTF-16 order of {@link String#compareTo(String)}.
+     */
+    static int compareKeys(String a, String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return ca < cb ? -1 : 1;
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+    
+    /**
+     * Merges the direct objects and the common prefixes of one directory level,
+     * both sorted by key, into segments in key order. A key never starts with 
+     * one of the common prefixes, so comparing it with the prefix orders it 
+     * against every key under that prefix.
+     */
+    static List<Segment> mergeSegments(List<OSSObjectSummary> objects, List<String> rawKeys,
+            List<Segment> shards) {
+        List<Segment> segments = new ArrayList<Segment>();
+        List<OSSObjectSummary> run = new ArrayList<OSSObjectSummary>();
+        int i = 0;
+        for (Segment shard : shards) {
+            while (i < objects.size() && compareKeys(rawKeys.get(i), shard.prefix) < 0) {
+                run.add(objects.get(i++));
+            }
+            if (!run.isEmpty()) {
+                segments.add(new Segment(run));
+                run = new ArrayList<OSSObjectSummary>();
+            }
+            segments.add(shard);
+        }
+        while (i < objects.size()) {
+            run.add(objects.get(i++));
+        }
+        if (!run.isEmpty()) {
+            segments.add(new Segment(run));
+        }
+        return segments;
+    }
+    
+    class ShardedListing implements ParallelObjectListing {
+        
+        private final ParallelListObjectsRequest request;
+        private final ListingStatistics statistics = new ListingStatistics();
+        private final List<Segment> segments = new ArrayList<Segment>();
+        private BlockingQueue<Object> unorderedPages;
+        private ExecutorService executor;
+        private volatile boolean cancelled = false;
+        
+        private int segmentIndex = 0;
+        private int finishedShards = 0;
+        private int shardCount = 0;
+        private Iterator<OSSObjectSummary> currentPage = Collections.<OSSObjectSummary>emptyList().iterator();
+        
+        ShardedListing(ParallelListObjectsRequest request) {
+            this.request = request;
+        }
+        
+        void start() {
+            segments.addAll(discover(request.getPrefix(), 1));
+            
+            for (Segment segment : segments) {
+                if (segment.isShard()) {
+                    shardCount++;
+                    statistics.addShard(segment.statistics);
+                }
+            }
+            if (shardCount == 0) {
+                statistics.markFinished();
+                return;
+            }
+            
+            if (request.isOrdered()) {
+                for (Segment segment : segments) {
+                    if (segment.isShard()) {
+                        segment.pages = new ArrayBlockingQueue<Object>(request.getReadAheadPages());
+                    }
+                }
+            } else {
+                unorderedPages = new ArrayBlockingQueue<Object>(
+                        request.getReadAheadPages() * Math.min(request.getTaskNum(), shardCount));
+            }
+            
+            final int listerId = listerCount.incrementAndGet();
+            executor = Executors.newFixedThreadPool(Math.min(request.getTaskNum(), shardCount), 
+                    new ThreadFactory() {
+                        private final AtomicInteger threadCount = new AtomicInteger();
+                        
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "oss-parallel-list-" + listerId + "-" 
+                                    + threadCount.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            // Shards are submitted in key order, so with an ordered listing the shard 
+            // being drained always holds a thread and can never be starved.
+            for (Segment segment : segments) {
+                if (segment.isShard()) {
+                    executor.execute(new ShardTask(segment, 
+                            request.isOrdered() ? segment.pages : unorderedPages));
+                }
+            }
+            executor.shutdown();
+        }
+        
+        /**
+         * Lists one directory level with the delimiter. Common prefixes become 
+         * shards, or are split one level further while there are fewer shards 
+         * than threads and maxShardDepth allows. Objects directly under the 
+         * listed level are returned as they are found.
+         */
+        private List<Segment> discover(String prefix, int depth) {
+            List<OSSObjectSummary> objects = new ArrayList<OSSObjectSummary>();
+            List<String> rawKeys = new ArrayList<String>();
+            List<String> childPrefixes = new ArrayList<String>();
+            
+            String marker = null;
+            boolean truncated = true;
+            while (truncated) {
+                ListObjectsRequest listObjectsRequest = newListObjectsRequest(prefix, marker, 
+                        request.getDelimiter());
+                ObjectListing objectListing = bucketOperation.listObjects(listObjectsRequest);
+                String encodingType = objectListing.getEncodingType();
+                for (OSSObjectSummary summary : objectListing.getObjectSummaries()) {
+                    objects.add(summary);
+                    rawKeys.add(OSSBucketOperation.decodeMarker(summary.getKey(), encodingType));
+                }
+                for (String commonPrefix : objectListing.getCommonPrefixes()) {
+                    childPrefixes.add(OSSBucketOperation.decodeMarker(commonPrefix, encodingType));
+                }
+                truncated = objectListing.isTruncated();
+                marker = OSSBucketOperation.decodeMarker(objectListing.getNextMarker(), encodingType);
+                
+                // A flat directory is not worth listing serially or holding in memory, 
+                // keep it as one shard. This holds for the top level too.
+                if (truncated && childPrefixes.isEmpty()) {
+                    statistics.addPage(0);
+                    String shardPrefix = prefix == null ? "" : prefix;
+                    return Collections.singletonList(new Segment(shardPrefix, new ShardStatistics(shardPrefix)));
+                }
+                statistics.addPage(objectListing.getObjectSummaries().size());
+            }
+            
+            boolean split = childPrefixes.size() < request.getTaskNum() && depth < request.getMaxShardDepth();
+            List<Segment> shards = new ArrayList<Segment>();
+            for (String childPrefix : childPrefixes) {
+                shards.add(new Segment(childPrefix, new ShardStatistics(childPrefix)));
+            }
+            List<Segment> segments = mergeSegments(objects, rawKeys, shards);
+            if (!split) {
+                return segments;
+            }
+            
+            List<Segment> expanded = new ArrayList<Segment>();
+            for (Segment segment : segments) {
+                if (segment.isShard()) {
+                    expanded.addAll(discover(segment.prefix, depth + 1));
+                } else {
+                    expanded.add(segment);
+                }
+            }
+            return expanded;
+        }
+        
+        private ListObjectsRequest newListObjectsRequest(String prefix, String marker, String delimiter) {
+            ListObjectsRequest listObjectsRequest = new ListObjectsRequest(request.getBucketName(), 
+                    prefix, marker, delimiter, request.getMaxKeys());
+            listObjectsRequest.setEncodingType(request.getEncodingType());
+            listObjectsRequest.setHeaders(new LinkedHashMap<String, String>(request.getHeaders()));
+            return listObjectsRequest;
+        }
+        
+        class ShardTask implements Runnable {
+            
+            private final Segment shard;
+            private final BlockingQueue<Object> pages;
+            
+            ShardTask(Segment shard, BlockingQueue<Object> pages) {
+                this.shard = shard;
+                this.pages = pages;
+            }
+            
+            @Override
+            public void run() {
+                long startTime = System.currentTimeMillis();
+                try {
+                    String marker = null;
+                    boolean truncated = true;
+                    while (truncated && !cancelled) {
+                        ObjectListing objectListing = bucketOperation.listObjects(
+                                newListObjectsRequest(shard.prefix, marker, null));
+                        List<OSSObjectSummary> summaries = objectListing.getObjectSummaries();
+                        shard.statistics.addPage(summaries.size());
+                        statistics.addPage(summaries.size());
+                        if (!summaries.isEmpty()) {
+                            pages.put(summaries);
+                        }
+                        truncated = objectListing.isTruncated();
+                        marker = OSSBucketOperation.decodeMarker(objectListing.getNextMarker(), 
+                                objectListing.getEncodingType());
+                    }
+                    pages.put(END_OF_SHARD);
+                } catch (InterruptedException e) {
+                    // Cancelled while waiting for the consumer.
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    if (!cancelled) {
+                        logException("Failed to list shard " + shard.prefix + ": ", e);
+                        try {
+                            pages.put(new ShardFailure(e));
+                        } catch (InterruptedException ie) {
+                            // Cancelled while reporting the failure.
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                } finally {
+                    shard.statistics.setElapsedMillis(System.currentTimeMillis() - startTime);
+                }
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!currentPage.hasNext()) {
+                if (cancelled) {
+                    return false;
+                }
+                Iterator<OSSObjectSummary> next = request.isOrdered() ? nextOrderedPage() : nextUnorderedPage();
+                if (next == null) {
+                    statistics.markFinished();
+                    return false;
+                }
+                currentPage = next;
+            }
+            return true;
+        }
+        
+        private Iterator<OSSObjectSummary> nextOrderedPage() {
+            while (segmentIndex < segments.size()) {
+                Segment segment = segments.get(segmentIndex);
+                if (!segment.isShard()) {
+                    segmentIndex++;
+                    return segment.objects.iterator();
+                }
+                Object page = take(segment.pages);
+                if (page == END_OF_SHARD) {
+                    segmentIndex++;
+                    continue;
+                }
+                return toPage(page);
+            }
+            return null;
+        }
+        
+        private Iterator<OSSObjectSummary> nextUnorderedPage() {
+            // Objects found during discovery are already at hand, hand them out first.
+            while (segmentIndex < segments.size()) {
+                Segment segment = segments.get(segmentIndex++);
+                if (!segment.isShard()) {
+                    return segment.objects.iterator();
+                }
+            }
+            while (finishedShards < shardCount) {
+                Object page = take(unorderedPages);
+                if (page == END_OF_SHARD) {
+                    finishedShards++;
+                    continue;
+                }
+                return toPage(page);
+            }
+            return null;
+        }
+        
+        private Object take(BlockingQueue<Object> pages) {
+            try {
+                return pages.take();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new ClientException("Interrupted while waiting for the next listing page.", e);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private Iterator<OSSObjectSummary> toPage(Object page) {
+            if (page instanceof ShardFailure) {
+                cancel();
+                throw ((ShardFailure) page).exception;
+            }
+            return ((List<OSSObjectSummary>) page).iterator();
+        }
+        
+        @Override
+        public OSSObjectSummary next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentPage.next();
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+        
+        @Override
+        public synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            statistics.markFinished();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Segment segment : segments) {
+                if (segment.pages != null) {
+                    segment.pages.clear();
+                }
+            }
+            if (unorderedPages != null) {
+                unorderedPages.clear();
+            }
+        }
+        
+        @Override
+        public void close() {
+            cancel();
+        }
+        
+        @Override
+        public ListingStatistics getStatistics() {
+            return statistics;
+        }
+    }
+}
@@ -56,6 +56,7 @@ public class OSSRequestMessageBuilder {
     private long inputSize = 0; 
     private ServiceClient innerClient;
     private boolean useChunkEncoding = false;
+    private Long contentCRC64;
     
     private WebServiceRequest originalRequest;
     
@@ -167,6 +168,15 @@ public class OSSRequestMessageBuilder {
         return this;
     }
     
+    public Long getContentCRC64() {
+        return contentCRC64;
+    }
+
+    public OSSRequestMessageBuilder setContentCRC64(Long contentCRC64) {
+        this.contentCRC64 = contentCRC64;
+        return this;
+    }
+    
     public OSSRequestMessageBuilder setOriginalRequest(WebServiceRequest originalRequest) {
         this.originalRequest = originalRequest;
         return this;
@@ -195,6 +205,7 @@ public class OSSRequestMessageBuilder {
         request.setContent(this.inputStream);
         request.setContentLength(this.inputSize);
         request.setUseChunkEncoding(this.inputSize == -1 ? true : this.useChunkEncoding);
+        request.setContentCRC64(this.contentCRC64);
         
         return request;
     }
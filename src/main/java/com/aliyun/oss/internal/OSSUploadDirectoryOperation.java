@@ -0,0 +1,531 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import static com.aliyun.oss.common.utils.CodingUtils.assertParameterNotNull;
+import static com.aliyun.oss.common.utils.LogUtils.logException;
+import static com.aliyun.oss.event.ProgressPublisher.publishProgress;
+import static com.aliyun.oss.event.ProgressPublisher.publishRequestBytesTransferred;
+import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
+import static com.aliyun.oss.internal.OSSUtils.validateObjectKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+import com.aliyun.oss.ClientErrorCode;
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.TransferManager;
+import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.event.ProgressEventType;
+import com.aliyun.oss.event.ProgressListener;
+import com.aliyun.oss.model.PutObjectRequest;
+import com.aliyun.oss.model.UploadDirectoryRequest;
+import com.aliyun.oss.model.UploadDirectoryResult;
+import com.aliyun.oss.model.UploadDirectoryResult.UploadFailure;
+import com.aliyun.oss.model.UploadFileRequest;
+
+/**
+ * OSSUploadDirectoryOperation
+ * 
+ * Uploads the files of a local directory tree. The caller thread walks the 
+ * tree lazily and hands out one task per file while at most taskNum files 
+ * are in flight; small files go through PutObject, large ones through 
+ * uploadFile, whose parts run on the shared TransferManager. Finished files 
+ * are appended to a manifest journal so that a rerun skips them. In sync 
+ * mode each file is first compared with the existing object by size and 
+ * CRC64, and left alone when they match.
+ */
+public class OSSUploadDirectoryOperation {
+    
+    private static final String UPLOAD_CHECKPOINT_SUFFIX = ".ucp";
+    
+    private OSSObjectOperation objectOperation;
+    private OSSUploadOperation uploadOperation;
+    
+    public OSSUploadDirectoryOperation(OSSObjectOperation objectOperation, OSSUploadOperation uploadOperation) {
+        this.objectOperation = objectOperation;
+        this.uploadOperation = uploadOperation;
+    }
+    
+    public UploadDirectoryResult uploadDirectory(UploadDirectoryRequest uploadDirectoryRequest) 
+            throws OSSException, ClientException {
+        
+        assertParameterNotNull(uploadDirectoryRequest, "uploadDirectoryRequest");
+        
+        String bucketName = uploadDirectoryRequest.getBucketName();
+        assertParameterNotNull(bucketName, "bucketName");
+        ensureBucketNameValid(bucketName);
+        
+        assertParameterNotNull(uploadDirectoryRequest.getDirectory(), "directory");
+        File root = new File(uploadDirectoryRequest.getDirectory());
+        if (!root.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + uploadDirectoryRequest.getDirectory());
+        }
+        
+        long startTime = System.currentTimeMillis();
+        UploadDirectoryResult result = new UploadDirectoryResult();
+        ProgressListener listener = uploadDirectoryRequest.getProgressListener();
+        Manifest manifest = null;
+        if (uploadDirectoryRequest.getManifestFile() != null) {
+            try {
+                manifest = Manifest.open(uploadDirectoryRequest, canonicalPath(root));
+            } catch (IOException e) {
+                throw new ClientException("Failed to open the upload manifest " 
+                        + uploadDirectoryRequest.getManifestFile(), e);
+            }
+        }
+        
+        LocalChecksumIndex index = null;
+        if (uploadDirectoryRequest.isSync()) {
+            try {
+                index = LocalChecksumIndex.open(uploadDirectoryRequest.getChecksumIndexFile());
+            } catch (IOException e) {
+                if (manifest != null) {
+                    manifest.close(false);
+                }
+                throw new ClientException("Failed to open the checksum index " 
+                        + uploadDirectoryRequest.getChecksumIndexFile(), e);
+            }
+        }
+        
+        int taskNum = uploadDirectoryRequest.getTaskNum();
+        Semaphore window = new Semaphore(taskNum);
+        ExecutorService service = Executors.newFixedThreadPool(taskNum);
+        publishProgress(listener, ProgressEventType.TRANSFER_STARTED_EVENT);
+        
+        boolean walked = false;
+        try {
+            walk(root, uploadDirectoryRequest, manifest, index, service, window, result);
+            walked = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientException("Interrupted while uploading directory.", e);
+        } finally {
+            // Let the files in flight finish, also when walking failed.
+            window.acquireUninterruptibly(taskNum);
+            service.shutdown();
+            result.setElapsedMillis(System.currentTimeMillis() - startTime);
+            
+            boolean completed = walked && result.getFailedCount() == 0;
+            if (manifest != null) {
+                manifest.close(completed);
+            }
+            if (index != null) {
+                index.close();
+            }
+            publishProgress(listener, completed ? ProgressEventType.TRANSFER_COMPLETED_EVENT 
+                    : ProgressEventType.TRANSFER_FAILED_EVENT);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Walks the tree depth first in name order, keeping only the pending 
+     * directories on the stack so a tree of many small files is never held 
+     * in memory as a whole.
+     */
+    private void walk(File root, UploadDirectoryRequest request, Manifest manifest, LocalChecksumIndex index,
+            ExecutorService service, Semaphore window, UploadDirectoryResult result) throws InterruptedException {
+        
+        FileFilter filter = new FileFilter(request.getIncludes(), request.getExcludes());
+        String canonicalIndex = request.getChecksumIndexFile() == null ? null 
+                : canonicalPath(new File(request.getChecksumIndexFile()));
+        Set<String> visited = new HashSet<String>();
+        LinkedList<String> stack = new LinkedList<String>();
+        stack.push("");
+        
+        while (!stack.isEmpty()) {
+            String relativeDir = stack.pop();
+            File dir = relativeDir.isEmpty() ? root : new File(root, relativeDir);
+            
+            // Symbolic links may lead back to an ancestor.
+            if (!visited.add(canonicalPath(dir))) {
+                continue;
+            }
+            
+            File[] children = dir.listFiles();
+            if (children == null) {
+                result.addFailure(new UploadFailure(dir.getPath(), null, ClientErrorCode.UNKNOWN, 
+                        "Failed to list directory " + dir.getPath()));
+                continue;
+            }
+            Arrays.sort(children);
+            
+            List<String> subdirs = new ArrayList<String>();
+            for (File child : children) {
+                String relativePath = relativeDir + child.getName();
+                if (child.isDirectory()) {
+                    if (request.isRecursive()) {
+                        subdirs.add(relativePath + "/");
+                    }
+                    continue;
+                }
+                if (!child.isFile() || !filter.accept(relativePath) 
+                        || (manifest != null && manifest.owns(child)) 
+                        || (canonicalIndex != null && isFileOf(child, canonicalIndex))) {
+                    continue;
+                }
+                
+                String key = request.getKeyPrefix() + relativePath;
+                if (!validateObjectKey(key)) {
+                    result.addFailure(new UploadFailure(child.getPath(), key, OSSErrorCode.INVALID_OBJECT_NAME, 
+                            "Illegal object key " + key));
+                    continue;
+                }
+                
+                long size = child.length();
+                long lastModified = child.lastModified();
+                if (manifest != null && manifest.isUploaded(key, size, lastModified)) {
+                    result.addSkipped();
+                    continue;
+                }
+                submit(service, window, new UploadTask(request, child, key, size, lastModified, manifest, index, 
+                        result));
+            }
+            for (int i = subdirs.size() - 1; i >= 0; i--) {
+                stack.push(subdirs.get(i));
+            }
+        }
+    }
+    
+    private static void submit(ExecutorService service, final Semaphore window, final UploadTask task) 
+            throws InterruptedException {
+        window.acquire();
+        try {
+            service.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        window.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            window.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns true for the file itself and the temporary or checkpoint files
+     * named after it.
+     */
+    private static boolean isFileOf(File file, String canonicalTarget) {
+        String path = canonicalPath(file);
+        return path.equals(canonicalTarget) || path.startsWith(canonicalTarget + ".");
+    }
+    
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+    
+    class UploadTask implements Runnable {
+        
+        private final UploadDirectoryRequest request;
+        private final File file;
+        private final String key;
+        private final long size;
+        private final long lastModified;
+        private final Manifest manifest;
+        private final LocalChecksumIndex index;
+        private final UploadDirectoryResult result;
+        
+        UploadTask(UploadDirectoryRequest request, File file, String key, long size, long lastModified, 
+                Manifest manifest, LocalChecksumIndex index, UploadDirectoryResult result) {
+            this.request = request;
+            this.file = file;
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.manifest = manifest;
+            this.index = index;
+            this.result = result;
+        }
+        
+        @Override
+        public void run() {
+            boolean multipart = size >= request.getMultipartThreshold();
+            try {
+                if (index != null && OSSUploadOperation.isSynced(objectOperation, index, 
+                        request.getBucketName(), key, file)) {
+                    result.addUnchanged();
+                    if (manifest != null) {
+                        manifest.recordUploaded(key, size, lastModified);
+                    }
+                    return;
+                }
+                if (multipart) {
+                    UploadFileRequest uploadFileRequest = new UploadFileRequest(request.getBucketName(), key);
+                    uploadFileRequest.setUploadFile(file.getPath());
+                    uploadFileRequest.setPartSize(request.getPartSize());
+                    uploadFileRequest.setTaskNum(request.getPartTaskNum());
+                    if (manifest != null) {
+                        uploadFileRequest.setEnableCheckpoint(true);
+                        uploadFileRequest.setCheckpointFile(manifest.checkpointFileOf(key));
+                    }
+                    uploadOperation.uploadFile(uploadFileRequest);
+                } else {
+                    objectOperation.putObject(new PutObjectRequest(request.getBucketName(), key, file));
+                }
+            } catch (OSSException e) {
+                fail(e, e.getErrorCode(), e.getErrorMessage());
+                return;
+            } catch (ClientException e) {
+                fail(e, e.getErrorCode(), e.getErrorMessage());
+                return;
+            } catch (Exception e) {
+                fail(e, ClientErrorCode.UNKNOWN, e.getMessage());
+                return;
+            } catch (Throwable t) {
+                fail(t, ClientErrorCode.UNKNOWN, t.getMessage());
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                return;
+            }
+            
+            result.addUploaded(size, multipart);
+            if (manifest != null) {
+                manifest.recordUploaded(key, size, lastModified);
+            }
+            publishRequestBytesTransferred(request.getProgressListener(), size);
+        }
+        
+        private void fail(Throwable t, String errorCode, String errorMessage) {
+            logException("Failed to upload " + file.getPath() + " to " + key + ": ", t);
+            result.addFailure(new UploadFailure(file.getPath(), key, errorCode, errorMessage));
+        }
+    }
+    
+    /**
+     * The journal of uploaded files. The header pins the bucket, directory 
+     * and key prefix; each record holds the key, size and modification time 
+     * of a finished file, so a file changed since is uploaded again.
+     */
+    static class Manifest {
+        
+        private final String manifestFile;
+        private final String canonicalManifest;
+        private final Map<String, long[]> uploaded;
+        private final CheckpointJournal journal;
+        
+        private Manifest(String manifestFile, Map<String, long[]> uploaded, CheckpointJournal journal) {
+            this.manifestFile = manifestFile;
+            this.canonicalManifest = canonicalPath(new File(manifestFile));
+            this.uploaded = uploaded;
+            this.journal = journal;
+        }
+        
+        static Manifest open(UploadDirectoryRequest request, String directory) throws IOException {
+            String manifestFile = request.getManifestFile();
+            byte[] header = encodeHeader(request.getBucketName(), directory, request.getKeyPrefix());
+            
+            // A manifest of another upload, or an unreadable one, starts over.
+            Map<String, long[]> uploaded = new HashMap<String, long[]>();
+            List<byte[]> records = new ArrayList<byte[]>();
+            if (CheckpointJournal.isJournal(manifestFile)) {
+                try {
+                    CheckpointJournal.Contents contents = CheckpointJournal.read(manifestFile);
+                    if (Arrays.equals(header, contents.getHeader())) {
+                        for (byte[] record : contents.getRecords()) {
+                            decodeRecord(record, uploaded);
+                        }
+                    }
+                } catch (IOException e) {
+                    logException("Ignore the corrupt upload manifest " + manifestFile + ": ", e);
+                    uploaded.clear();
+                }
+            }
+            for (Map.Entry<String, long[]> entry : uploaded.entrySet()) {
+                records.add(encodeRecord(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+            }
+            
+            return new Manifest(manifestFile, uploaded, CheckpointJournal.create(manifestFile, header, records));
+        }
+        
+        boolean isUploaded(String key, long size, long lastModified) {
+            long[] stat = uploaded.get(key);
+            return stat != null && stat[0] == size && stat[1] == lastModified;
+        }
+        
+        /**
+         * Returns true for the manifest itself and the part checkpoints kept 
+         * beside it, which must not be uploaded when they sit in the tree.
+         */
+        boolean owns(File file) {
+            return isFileOf(file, canonicalManifest);
+        }
+        
+        String checkpointFileOf(String key) {
+            try {
+                return manifestFile + "." + BinaryUtil.encodeMD5(key.getBytes("UTF-8")) + UPLOAD_CHECKPOINT_SUFFIX;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        void recordUploaded(String key, long size, long lastModified) {
+            try {
+                journal.append(encodeRecord(key, size, lastModified));
+            } catch (IOException e) {
+                logException("Failed to record " + key + " in the upload manifest: ", e);
+            }
+        }
+        
+        /**
+         * Removes the manifest once every file is uploaded, otherwise keeps 
+         * it for the next run.
+         */
+        void close(boolean completed) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logException("Failed to close the upload manifest: ", e);
+            }
+            if (completed) {
+                new File(manifestFile).delete();
+            }
+        }
+        
+        private static byte[] encodeHeader(String bucketName, String directory, String keyPrefix) 
+                throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(bucketName);
+            out.writeUTF(directory);
+            out.writeUTF(keyPrefix);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        private static byte[] encodeRecord(String key, long size, long lastModified) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeUTF(key);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.flush();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        private static void decodeRecord(byte[] record, Map<String, long[]> uploaded) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            String key = in.readUTF();
+            uploaded.put(key, new long[] { in.readLong(), in.readLong() });
+        }
+    }
+    
+    /**
+     * Include and exclude globs matched against the relative path, or only 
+     * against the file name for globs without a '/'.
+     */
+    static class FileFilter {
+        
+        private final List<Pattern> includes = new ArrayList<Pattern>();
+        private final List<Pattern> excludes = new ArrayList<Pattern>();
+        private final List<Boolean> includesByName = new ArrayList<Boolean>();
+        private final List<Boolean> excludesByName = new ArrayList<Boolean>();
+        
+        FileFilter(List<String> includes, List<String> excludes) {
+            for (String glob : includes) {
+                this.includes.add(compileGlob(glob));
+                this.includesByName.add(glob.indexOf('/') < 0);
+            }
+            for (String glob : excludes) {
+                this.excludes.add(compileGlob(glob));
+                this.excludesByName.add(glob.indexOf('/') < 0);
+            }
+        }
+        
+        boolean accept(String relativePath) {
+            String name = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+            if (!includes.isEmpty() && !matchesAny(includes, includesByName, relativePath, name)) {
+                return false;
+            }
+            return !matchesAny(excludes, excludesByName, relativePath, name);
+        }
+        
+        private static boolean matchesAny(List<Pattern> patterns, List<Boolean> byName, 
+                String relativePath, String name) {
+            for (int i = 0; i < patterns.size(); i++) {
+                if (patterns.get(i).matcher(byName.get(i) ? name : relativePath).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        static Pattern compileGlob(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        // "**/" also matches no directory at all.
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            i++;
+                            regex.append("(?:.*/)?");
+                        } else {
+                            regex.append(".*");
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return Pattern.compile(regex.toString());
+        }
+    }
+}
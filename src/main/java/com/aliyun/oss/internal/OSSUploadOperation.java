@@ -24,30 +24,42 @@ import static com.aliyun.oss.common.utils.LogUtils.logException;
 import static com.aliyun.oss.internal.OSSUtils.ensureBucketNameValid;
 import static com.aliyun.oss.internal.OSSUtils.ensureObjectKeyValid;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
+import com.aliyun.oss.ClientErrorCode;
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.TransferManager;
+import com.aliyun.oss.common.comm.io.FileChannelRangeInputStream;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
 import com.aliyun.oss.model.CompleteMultipartUploadRequest;
 import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.GenericRequest;
 import com.aliyun.oss.model.InitiateMultipartUploadRequest;
 import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.ObjectMetadata;
 import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.TransferHandle;
 import com.aliyun.oss.model.UploadFileRequest;
 import com.aliyun.oss.model.UploadFileResult;
 import com.aliyun.oss.model.UploadPartRequest;
@@ -66,9 +78,19 @@ public class OSSUploadOperation {
         private static final String UPLOAD_MAGIC = "FE8BB4EA-B593-4FAC-AD7A-2459A36E2E62";
         
         /**
-         * 从checkpoint文件中加载checkpoint数据
+         * 从checkpoint文件中加载checkpoint数据，支持日志格式及旧版本序列化格式的checkpoint文件
          */
         public synchronized void load(String cpFile) throws IOException, ClassNotFoundException {
+            if (CheckpointJournal.isJournal(cpFile)) {
+                CheckpointJournal.Contents contents = CheckpointJournal.read(cpFile);
+                decodeHeader(contents.getHeader());
+                for (byte[] record : contents.getRecords()) {
+                    decodePart(record);
+                }
+                this.md5 = hashCode();
+                return;
+            }
+            
             FileInputStream fileIn =new FileInputStream(cpFile);
             ObjectInputStream in = new ObjectInputStream(fileIn);
             UploadCheckPoint ucp = (UploadCheckPoint) in.readObject();
@@ -78,15 +100,114 @@ public class OSSUploadOperation {
         }
         
         /**
-         * 把checkpoint数据写到checkpoint文件
+         * 以日志格式写入当前checkpoint数据并打开日志，之后每个完成的分片追加一条记录；
+         * 旧版本的checkpoint文件在此被转换为日志格式
+         */
+        public synchronized void open(String cpFile) throws IOException {
+            journal = CheckpointJournal.create(cpFile, encodeHeader(), encodeCompletedParts());
+        }
+        
+        /**
+         * 向checkpoint日志追加一个完成的分片
          */
-        public synchronized void dump(String cpFile) throws IOException {
-            this.md5 = hashCode();
-            FileOutputStream fileOut = new FileOutputStream(cpFile);
-            ObjectOutputStream outStream = new ObjectOutputStream(fileOut);
-            outStream.writeObject(this);
-            outStream.close();
-            fileOut.close();
+        public void journal(PartETag partETag) throws IOException {
+            journal.append(encodePart(partETag));
+        }
+        
+        /**
+         * 关闭checkpoint日志，compact为true时先把日志压缩为当前状态
+         */
+        public synchronized void close(boolean compact) throws IOException {
+            if (journal == null) {
+                return;
+            }
+            try {
+                if (compact) {
+                    journal.compact(encodeHeader(), encodeCompletedParts());
+                }
+            } finally {
+                journal.close();
+                journal = null;
+            }
+        }
+        
+        private byte[] encodeHeader() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(magic);
+            out.writeUTF(uploadFile);
+            out.writeLong(uploadFileStat.size);
+            out.writeLong(uploadFileStat.lastModified);
+            writeNullableUTF(out, uploadFileStat.digest);
+            out.writeUTF(key);
+            out.writeUTF(uploadID);
+            out.writeInt(uploadParts.size());
+            for (UploadPart part : uploadParts) {
+                out.writeInt(part.number);
+                out.writeLong(part.offset);
+                out.writeLong(part.size);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        private void decodeHeader(byte[] header) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            magic = in.readUTF();
+            uploadFile = in.readUTF();
+            uploadFileStat = new FileStat();
+            uploadFileStat.size = in.readLong();
+            uploadFileStat.lastModified = in.readLong();
+            uploadFileStat.digest = readNullableUTF(in);
+            key = in.readUTF();
+            uploadID = in.readUTF();
+            int partCount = in.readInt();
+            uploadParts = new ArrayList<UploadPart>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                UploadPart part = new UploadPart();
+                part.number = in.readInt();
+                part.offset = in.readLong();
+                part.size = in.readLong();
+                uploadParts.add(part);
+            }
+            partETags = new ArrayList<PartETag>();
+        }
+        
+        private List<byte[]> encodeCompletedParts() throws IOException {
+            List<byte[]> records = new ArrayList<byte[]>(partETags.size());
+            for (PartETag partETag : partETags) {
+                records.add(encodePart(partETag));
+            }
+            return records;
+        }
+        
+        private static byte[] encodePart(PartETag partETag) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(partETag.getPartNumber());
+            out.writeUTF(partETag.getETag());
+            out.writeLong(partETag.getPartSize());
+            out.writeBoolean(partETag.getPartCRC64() != null);
+            out.writeLong(partETag.getPartCRC64() != null ? partETag.getPartCRC64() : 0L);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        private void decodePart(byte[] record) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            int partNumber = in.readInt();
+            String eTag = in.readUTF();
+            long partSize = in.readLong();
+            boolean hasCRC = in.readBoolean();
+            long crc = in.readLong();
+            
+            int partIndex = partNumber - 1;
+            if (partIndex < 0 || partIndex >= uploadParts.size() 
+                    || uploadParts.get(partIndex).isCompleted) {
+                return;
+            }
+            partETags.add(new PartETag(partNumber, eTag, partSize, hasCRC ? crc : null));
+            uploadParts.get(partIndex).isCompleted = true;
         }
         
         /**
@@ -158,6 +279,7 @@ public class OSSUploadOperation {
         public String uploadID;
         public ArrayList<UploadPart> uploadParts;
         public ArrayList<PartETag> partETags;
+        private transient CheckpointJournal journal;
 
     }
     
@@ -263,7 +385,30 @@ public class OSSUploadOperation {
     }
     
     public OSSUploadOperation(OSSMultipartOperation multipartOperation) {
+        this(multipartOperation, new TransferManager());
+    }
+    
+    public OSSUploadOperation(OSSMultipartOperation multipartOperation, TransferManager transferManager) {
+        this(multipartOperation, null, transferManager);
+    }
+    
+    /**
+     * The object operation is used to HEAD the target object when the upload
+     * runs in sync mode.
+     */
+    public OSSUploadOperation(OSSMultipartOperation multipartOperation, OSSObjectOperation objectOperation, 
+            TransferManager transferManager) {
         this.multipartOperation = multipartOperation;
+        this.objectOperation = objectOperation;
+        this.transferManager = transferManager;
+    }
+    
+    public TransferManager getTransferManager() {
+        return transferManager;
+    }
+    
+    public void setTransferManager(TransferManager transferManager) {
+        this.transferManager = transferManager;
     }
     
     public UploadFileResult uploadFile(UploadFileRequest uploadFileRequest) throws Throwable {
@@ -286,6 +431,23 @@ public class OSSUploadOperation {
             }
         }
         
+        // 同步模式，本地文件与已有的Object一致时不再上传
+        if (uploadFileRequest.isSync()) {
+            if (objectOperation == null) {
+                throw new IllegalStateException("Sync mode requires an object operation to check the object.");
+            }
+            LocalChecksumIndex index = LocalChecksumIndex.open(uploadFileRequest.getChecksumIndexFile());
+            try {
+                if (isSynced(objectOperation, index, bucketName, key, new File(uploadFileRequest.getUploadFile()))) {
+                    UploadFileResult uploadFileResult = new UploadFileResult();
+                    uploadFileResult.setSkipped(true);
+                    return uploadFileResult;
+                }
+            } finally {
+                index.close();
+            }
+        }
+        
         return uploadFileWithCheckpoint(uploadFileRequest);
     }
     
@@ -312,21 +474,45 @@ public class OSSUploadOperation {
             prepare(uploadCheckPoint, uploadFileRequest);
         }
         
-        // 并发上传分片
-        List<PartResult> partResults = upload(uploadCheckPoint, uploadFileRequest);
-        for (PartResult partResult : partResults) {
-            if (partResult.isFailed()) {
-                throw partResult.getException();
-            }
+        // 开启断点续传，以日志格式记录上传进度
+        if (uploadFileRequest.isEnableCheckpoint()) {
+            uploadCheckPoint.open(uploadFileRequest.getCheckpointFile());
         }
         
-        // 提交上传任务
-        CompleteMultipartUploadResult multipartUploadResult = complete(uploadCheckPoint, uploadFileRequest);
-        uploadFileResult.setMultipartUploadResult(multipartUploadResult);
-        
-        // 开启了断点上传，成功上传后删除checkpoint文件
-        if (uploadFileRequest.isEnableCheckpoint()) {
-            remove(uploadFileRequest.getCheckpointFile());
+        boolean completed = false;
+        try {
+            // 并发上传分片
+            List<PartResult> partResults = upload(uploadCheckPoint, uploadFileRequest);
+            for (PartResult partResult : partResults) {
+                if (partResult.isFailed()) {
+                    throw partResult.getException();
+                }
+            }
+            
+            // 提交上传任务
+            CompleteMultipartUploadResult multipartUploadResult = complete(uploadCheckPoint, uploadFileRequest);
+            uploadFileResult.setMultipartUploadResult(multipartUploadResult);
+            completed = true;
+            
+            // 所有分片都有CRC64时，合并后与服务器端的CRC64比较
+            checkCRC64(multipartUploadResult);
+        } finally {
+            // 上传未完成时压缩checkpoint日志，供下次续传
+            try {
+                uploadCheckPoint.close(!completed);
+            } catch (IOException e) {
+                logException("Close upload checkpoint journal failed: ", e);
+            }
+            
+            // 没有开启断点续传时，上传失败后删除已上传的分片
+            if (!completed && !uploadFileRequest.isEnableCheckpoint() && uploadFileRequest.isAbortOnFailure()) {
+                abort(uploadCheckPoint, uploadFileRequest);
+            }
+            
+            // 开启了断点上传，提交成功后删除checkpoint文件，CRC64校验失败时也无法再续传
+            if (completed && uploadFileRequest.isEnableCheckpoint()) {
+                remove(uploadFileRequest.getCheckpointFile());
+            }
         }
         
         return uploadFileResult;
@@ -337,8 +523,12 @@ public class OSSUploadOperation {
         uploadCheckPoint.uploadFile = uploadFileRequest.getUploadFile();
         uploadCheckPoint.key = uploadFileRequest.getKey();
         uploadCheckPoint.uploadFileStat = FileStat.getFileStat(uploadCheckPoint.uploadFile);
-        uploadCheckPoint.uploadParts = splitFile(uploadCheckPoint.uploadFileStat.size, 
-                uploadFileRequest.getPartSize());
+        // 自动调整模式根据文件大小选择分片大小，分片划分记录在checkpoint中
+        long partSize = uploadFileRequest.isAutoTuning() 
+                ? AdaptiveConcurrency.choosePartSize(uploadCheckPoint.uploadFileStat.size, 
+                        uploadFileRequest.getTaskNum())
+                : uploadFileRequest.getPartSize();
+        uploadCheckPoint.uploadParts = splitFile(uploadCheckPoint.uploadFileStat.size, partSize);
         uploadCheckPoint.partETags = new ArrayList<PartETag>();
 
         InitiateMultipartUploadRequest initiateUploadRequest = new InitiateMultipartUploadRequest(
@@ -349,32 +539,100 @@ public class OSSUploadOperation {
         uploadCheckPoint.uploadID = initiateUploadResult.getUploadId();
     }
     
+    private void abort(UploadCheckPoint uploadCheckPoint, UploadFileRequest uploadFileRequest) {
+        if (uploadCheckPoint.uploadID == null) {
+            return;
+        }
+        try {
+            multipartOperation.abortMultipartUpload(new AbortMultipartUploadRequest(
+                    uploadFileRequest.getBucketName(), uploadFileRequest.getKey(), uploadCheckPoint.uploadID));
+        } catch (Exception e) {
+            logException("Abort multipart upload " + uploadCheckPoint.uploadID + " failed: ", e);
+        }
+    }
+    
     private ArrayList<PartResult> upload(UploadCheckPoint uploadCheckPoint, UploadFileRequest uploadFileRequest) 
             throws Throwable {
         ArrayList<PartResult> taskResults = new ArrayList<PartResult>();
-        ExecutorService service = Executors.newFixedThreadPool(uploadFileRequest.getTaskNum());
-        ArrayList<Future<PartResult>> futures = new ArrayList<Future<PartResult>>();
+        List<Task> tasks = new ArrayList<Task>();
+        AdaptiveConcurrency concurrency = uploadFileRequest.isAutoTuning() 
+                ? new AdaptiveConcurrency(uploadFileRequest.getTaskNum()) : null;
+        
+        // 所有分片共享一个FileChannel，按偏移量读取各自的分片
+        RandomAccessFile file = new RandomAccessFile(uploadCheckPoint.uploadFile, "r");
+        FileChannel channel = file.getChannel();
                 
         for (int i = 0; i < uploadCheckPoint.uploadParts.size(); i++) {
             if (!uploadCheckPoint.uploadParts.get(i).isCompleted) {
-                futures.add(service.submit(new Task(i, "upload-" + i, uploadCheckPoint, i, 
-                        uploadFileRequest, multipartOperation)));
+                tasks.add(new Task(i, "upload-" + i, uploadCheckPoint, i, 
+                        uploadFileRequest, multipartOperation, channel, concurrency));
             } else {
                 taskResults.add(new PartResult(i + 1, uploadCheckPoint.uploadParts.get(i).offset,
                         uploadCheckPoint.uploadParts.get(i).size));
             }
         }
-        service.shutdown();
         
-        service.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        // 流水线模式下，校验值在单独的线程上提前计算，上传线程只负责发送
+        PartChecksumPipeline checksums = null;
+        if (uploadFileRequest.isChecksumPipelined()) {
+            long[] offsets = new long[tasks.size()];
+            long[] sizes = new long[tasks.size()];
+            for (int i = 0; i < tasks.size(); i++) {
+                UploadPart part = uploadCheckPoint.uploadParts.get(tasks.get(i).partIndex);
+                offsets[i] = part.offset;
+                sizes[i] = part.size;
+                tasks.get(i).checksumIndex = i;
+            }
+            checksums = new PartChecksumPipeline(channel, offsets, sizes, 2 * uploadFileRequest.getTaskNum(), 
+                    uploadFileRequest.isContentMD5Enabled());
+            for (Task task : tasks) {
+                task.checksums = checksums;
+            }
+            checksums.start();
+        }
         
-        for (Future<PartResult> future : futures) {
-            try {
-                PartResult tr = future.get();
-                taskResults.add(tr);
-            } catch (ExecutionException e) {
-                throw e.getCause();
+        // 任一分片失败或传输被取消时，停止其余分片
+        TransferControl control = new TransferControl(transferManager, tasks);
+        for (Task task : tasks) {
+            task.control = control;
+        }
+        TransferHandle handle = uploadFileRequest.getTransferHandle();
+        if (handle != null) {
+            handle.addCancelListener(control);
+        }
+        
+        boolean finished = false;
+        try {
+            List<Future<PartResult>> futures = concurrency != null 
+                    ? transferManager.submitAll(tasks, concurrency)
+                    : transferManager.submitAll(tasks, uploadFileRequest.getTaskNum());
+            control.setFutures(futures);
+            for (Future<PartResult> future : futures) {
+                try {
+                    PartResult tr = future.get();
+                    taskResults.add(tr);
+                } catch (CancellationException e) {
+                    // The part was never started.
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof Exception)) {
+                        throw e.getCause();
+                    }
+                    control.fail((Exception) e.getCause());
+                }
+            }
+            control.throwIfStopped();
+            finished = true;
+        } finally {
+            if (!finished) {
+                control.stop();
             }
+            if (handle != null) {
+                handle.removeCancelListener(control);
+            }
+            if (checksums != null) {
+                checksums.close();
+            }
+            file.close();
         }
         
         Collections.sort(taskResults, new Comparator<PartResult>() {
@@ -387,16 +645,19 @@ public class OSSUploadOperation {
         return taskResults;
     }
     
-    static class Task implements Callable<PartResult> {
+    static class Task implements Callable<PartResult>, TransferControl.AbortableTask {
         
         public Task(int id, String name, UploadCheckPoint uploadCheckPoint, int partIndex,
-                UploadFileRequest uploadFileRequest, OSSMultipartOperation multipartOperation) {
+                UploadFileRequest uploadFileRequest, OSSMultipartOperation multipartOperation,
+                FileChannel channel, AdaptiveConcurrency concurrency) {
             this.id = id;
             this.name = name;
             this.uploadCheckPoint = uploadCheckPoint;
             this.partIndex = partIndex;
             this.uploadFileRequest = uploadFileRequest;
             this.multipartOperation = multipartOperation;
+            this.channel = channel;
+            this.concurrency = concurrency;
         }
         
         @Override
@@ -408,8 +669,11 @@ public class OSSUploadOperation {
                 UploadPart uploadPart = uploadCheckPoint.uploadParts.get(partIndex);
                 tr = new PartResult(partIndex + 1, uploadPart.offset, uploadPart.size);
                 
-                instream = new FileInputStream(uploadCheckPoint.uploadFile);
-                instream.skip(uploadPart.offset);
+                instream = new FileChannelRangeInputStream(channel, uploadPart.offset, uploadPart.size);
+                this.partStream = instream;
+                if (control != null && control.isStopped()) {
+                    throw new ClientException("The transfer has been stopped.");
+                }
 
                 UploadPartRequest uploadPartRequest = new UploadPartRequest();
                 uploadPartRequest.setBucketName(uploadFileRequest.getBucketName());
@@ -418,26 +682,52 @@ public class OSSUploadOperation {
                 uploadPartRequest.setPartNumber(uploadPart.number);
                 uploadPartRequest.setInputStream(instream);
                 uploadPartRequest.setPartSize(uploadPart.size);
+                if (checksums != null) {
+                    PartChecksumPipeline.PartChecksum checksum = checksums.get(checksumIndex);
+                    uploadPartRequest.setPartCRC64(checksum.getCrc64());
+                    uploadPartRequest.setMd5Digest(checksum.getMd5());
+                }
                 
                 UploadPartResult uploadPartResult = multipartOperation.uploadPart(uploadPartRequest);
                 
-                PartETag partETag = new PartETag(uploadPartResult.getPartNumber(), uploadPartResult.getETag());
+                // 预先计算了CRC64时记录分片的大小及CRC64，用于合并整个文件的CRC64
+                PartETag partETag = checksums != null ? uploadPartResult.getPartETag() 
+                        : new PartETag(uploadPartResult.getPartNumber(), uploadPartResult.getETag());
                 uploadCheckPoint.update(partIndex, partETag, true);
                 if (uploadFileRequest.isEnableCheckpoint()) {
-                   uploadCheckPoint.dump(uploadFileRequest.getCheckpointFile()); 
+                   uploadCheckPoint.journal(partETag); 
                 }
             } catch (Exception e) {
                 tr.setFailed(true);
                 tr.setException(e);
-                logException(String.format("Task %d:%s upload part %d failed: ", id, name, partIndex + 1), e);
+                if (control == null || control.fail(e)) {
+                    logException(String.format("Task %d:%s upload part %d failed: ", id, name, partIndex + 1), e);
+                }
             } finally {
                 if (instream != null) {
                     instream.close();
                 }
+                if (concurrency != null && tr != null) {
+                    concurrency.onPartFinished(tr.getLength(), tr.isFailed());
+                }
             }
                                     
             return tr;
         }
+        
+        /**
+         * 关闭分片的输入流，使进行中的上传请求在下一次读取时失败
+         */
+        @Override
+        public void abort() {
+            InputStream current = partStream;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                }
+            }
+        }
 
         private int id;
         private String name;
@@ -445,6 +735,12 @@ public class OSSUploadOperation {
         private int partIndex;
         private UploadFileRequest uploadFileRequest;
         private OSSMultipartOperation multipartOperation;
+        private FileChannel channel;
+        private AdaptiveConcurrency concurrency;
+        private TransferControl control;
+        private PartChecksumPipeline checksums;
+        private int checksumIndex;
+        private volatile InputStream partStream;
     }
     
     private CompleteMultipartUploadResult complete(UploadCheckPoint uploadCheckPoint, UploadFileRequest uploadFileRequest) {
@@ -502,5 +798,57 @@ public class OSSUploadOperation {
         return flag;  
     }
     
+    /**
+     * Returns true if the object exists with the size of the local file and 
+     * the same CRC64, or, for objects stored without a CRC, an ETag equal to
+     * the file MD5. Multipart ETags cannot be compared and count as changed.
+     */
+    static boolean isSynced(OSSObjectOperation objectOperation, LocalChecksumIndex index, 
+            String bucketName, String key, File file) throws IOException {
+        ObjectMetadata metadata;
+        try {
+            metadata = objectOperation.getObjectMetadataFromServer(new GenericRequest(bucketName, key));
+        } catch (OSSException e) {
+            if (OSSErrorCode.NO_SUCH_KEY.equals(e.getErrorCode())) {
+                return false;
+            }
+            throw e;
+        }
+        if (metadata.getContentLength() != file.length()) {
+            return false;
+        }
+        
+        LocalChecksumIndex.FileChecksum checksum = index.checksumOf(file);
+        Long serverCRC = metadata.getServerCRC();
+        if (serverCRC != null) {
+            return serverCRC.longValue() == checksum.getCrc64();
+        }
+        String eTag = metadata.getETag();
+        return eTag != null && eTag.indexOf('-') < 0 && eTag.equalsIgnoreCase(checksum.getMd5());
+    }
+    
+    private static void checkCRC64(CompleteMultipartUploadResult result) {
+        Long clientCRC = result.getClientCRC64();
+        Long serverCRC = result.getServerCRC64();
+        if (clientCRC != null && serverCRC != null && !clientCRC.equals(serverCRC)) {
+            throw new ClientException("The CRC64 of the uploaded object " + Long.toHexString(serverCRC)
+                    + " does not match the CRC64 of the parts " + Long.toHexString(clientCRC), 
+                    ClientErrorCode.INCONSISTENT_CRC, result.getRequestId());
+        }
+    }
+    
+    static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
     private OSSMultipartOperation multipartOperation;
+    private OSSObjectOperation objectOperation;
+    private TransferManager transferManager;
 }
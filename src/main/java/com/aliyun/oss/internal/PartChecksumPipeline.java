@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.common.utils.CRC64;
+
+/**
+ * PartChecksumPipeline
+ * 
+ * Computes the CRC64, and optionally the MD5, of file parts on a dedicated
+ * thread ahead of the part uploads, so checksumming part N+1 overlaps with
+ * sending part N and the send path only does I/O. The stage runs in part 
+ * order and stays at most lookahead parts ahead of the highest part asked 
+ * for, which keeps the part it reads close to the one being sent and still
+ * in the page cache. A part asked for before the stage reached it is 
+ * computed on the asking thread instead of waiting. close() stops the stage
+ * and waits for it, so the file can be closed right after.
+ */
+public class PartChecksumPipeline {
+    
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+    
+    /**
+     * The checksums of one part.
+     */
+    public static class PartChecksum {
+        
+        PartChecksum(long crc64, String md5) {
+            this.crc64 = crc64;
+            this.md5 = md5;
+        }
+        
+        public long getCrc64() {
+            return crc64;
+        }
+        
+        /**
+         * Returns the base64 encoded MD5 for the Content-MD5 header, or null 
+         * when MD5 is not computed.
+         */
+        public String getMd5() {
+            return md5;
+        }
+        
+        private final long crc64;
+        private final String md5;
+    }
+    
+    private final List<FutureTask<PartChecksum>> checksums;
+    private final int lookahead;
+    private Thread stage;
+    private int maxRequested = -1;
+    private volatile boolean closed;
+    
+    /**
+     * @param channel the file to read, shared with the part uploads
+     * @param offsets the offsets of the parts, in upload order
+     * @param sizes the sizes of the parts
+     * @param lookahead how many parts the stage may run ahead
+     * @param computeMd5 whether to compute the MD5 as well
+     */
+    public PartChecksumPipeline(final FileChannel channel, long[] offsets, long[] sizes, int lookahead,
+            final boolean computeMd5) {
+        this.lookahead = Math.max(1, lookahead);
+        this.checksums = new ArrayList<FutureTask<PartChecksum>>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            final long offset = offsets[i];
+            final long size = sizes[i];
+            checksums.add(new FutureTask<PartChecksum>(new Callable<PartChecksum>() {
+                @Override
+                public PartChecksum call() throws IOException {
+                    return compute(channel, offset, size, computeMd5);
+                }
+            }));
+        }
+    }
+    
+    public synchronized void start() {
+        if (stage != null || closed) {
+            return;
+        }
+        stage = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runStage();
+            }
+        }, "oss-checksum-" + THREAD_NUMBER.incrementAndGet());
+        stage.setDaemon(true);
+        stage.start();
+    }
+    
+    private void runStage() {
+        for (int i = 0; i < checksums.size(); i++) {
+            synchronized (this) {
+                while (!closed && i > maxRequested + lookahead) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            checksums.get(i).run();
+        }
+    }
+    
+    /**
+     * Returns the checksums of the part at the given position, computing 
+     * them on the calling thread if the stage has not started on them yet.
+     */
+    public PartChecksum get(int index) throws IOException {
+        synchronized (this) {
+            if (index > maxRequested) {
+                maxRequested = index;
+                notifyAll();
+            }
+        }
+        
+        FutureTask<PartChecksum> checksum = checksums.get(index);
+        checksum.run();
+        try {
+            return checksum.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the part checksum.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new ClientException("Failed to compute the part checksum.", cause);
+        }
+    }
+    
+    /**
+     * Stops the stage and waits until it no longer reads the file. A part in
+     * progress is abandoned at its next read. Parts not computed yet are left
+     * alone.
+     */
+    public void close() {
+        Thread current;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            current = stage;
+        }
+        if (current == null || current == Thread.currentThread()) {
+            return;
+        }
+        
+        // Not interrupted: that would close the channel shared with the uploads.
+        boolean interrupted = false;
+        while (current.isAlive()) {
+            try {
+                current.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private PartChecksum compute(FileChannel channel, long offset, long size, boolean computeMd5) 
+            throws IOException {
+        MessageDigest md5 = null;
+        if (computeMd5) {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("MD5 algorithm not found.");
+            }
+        }
+        CRC64 crc = new CRC64();
+        
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, Math.max(size, 1)));
+        long position = offset;
+        long end = offset + size;
+        while (position < end) {
+            if (closed) {
+                throw new InterruptedIOException("The checksum pipeline is closed.");
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int len = channel.read(buffer, position);
+            if (len < 0) {
+                throw new IOException("Unexpected end of file at offset " + position);
+            }
+            crc.update(buffer.array(), 0, len);
+            if (md5 != null) {
+                md5.update(buffer.array(), 0, len);
+            }
+            position += len;
+        }
+        return new PartChecksum(crc.getValue(), md5 != null ? BinaryUtil.toBase64String(md5.digest()) : null);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.internal;
+
+import static com.aliyun.oss.common.utils.LogUtils.getLog;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.model.ListingIterator;
+
+/**
+ * A {@link ListingIterator} that fetches pages on a background thread so that
+ * page N+1 is on the wire while the caller consumes page N. At most
+ * readAheadPages fetched pages are buffered; the fetcher waits once the
+ * buffer is full and is stopped by {@link #cancel()} or {@link #close()}.
+ * An iterator that is not read to the end must be closed, otherwise its 
+ * fetcher keeps waiting for the consumer.
+ */
+public abstract class PrefetchingListingIterator<T> implements ListingIterator<T> {
+    
+    public static final int DEFAULT_READ_AHEAD_PAGES = 2;
+    
+    private static final Object END_OF_LISTING = new Object();
+    private static final AtomicInteger fetcherCount = new AtomicInteger();
+    private static final long OFFER_TIMEOUT_MILLIS = 1000;
+    
+    private final BlockingQueue<Object> pages;
+    private volatile boolean cancelled = false;
+    private Thread fetcher;
+    private Iterator<T> currentPage = Collections.<T>emptyList().iterator();
+    private boolean exhausted = false;
+    
+    protected PrefetchingListingIterator(int readAheadPages) {
+        if (readAheadPages < 1) {
+            throw new IllegalArgumentException("The read ahead pages should be greater than 0.");
+        }
+        this.pages = new ArrayBlockingQueue<Object>(readAheadPages);
+    }
+    
+    /**
+     * Fetch the next page of the listing, or return null if there are no more pages.
+     * Always invoked sequentially from the background fetcher thread.
+     */
+    protected abstract List<T> fetchNextPage();
+    
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext()) {
+            if (cancelled || exhausted) {
+                return false;
+            }
+            
+            startFetcher();
+            
+            Object page;
+            try {
+                page = pages.take();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new ClientException("Interrupted while waiting for the next listing page.", e);
+            }
+            
+            if (cancelled || page == END_OF_LISTING) {
+                exhausted = true;
+                return false;
+            } else if (page instanceof FetchFailure) {
+                exhausted = true;
+                Throwable failure = ((FetchFailure) page).exception;
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+            
+            @SuppressWarnings("unchecked")
+            List<T> items = (List<T>) page;
+            currentPage = items.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Listing iterator does not support remove.");
+    }
+    
+    @Override
+    public synchronized void cancel() {
+        cancelled = true;
+        currentPage = Collections.<T>emptyList().iterator();
+        if (fetcher != null) {
+            fetcher.interrupt();
+        }
+        // Wake up a consumer blocked on another thread. The fetcher may still
+        // slip in a page before it sees the flag, so make room until it fits.
+        do {
+            pages.clear();
+        } while (!pages.offer(END_OF_LISTING));
+    }
+    
+    @Override
+    public void close() {
+        cancel();
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    private synchronized void startFetcher() {
+        if (fetcher != null || cancelled) {
+            return;
+        }
+        
+        fetcher = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                fetchPages();
+            }
+            
+        }, "oss-listing-prefetch-" + fetcherCount.incrementAndGet());
+        fetcher.setDaemon(true);
+        fetcher.start();
+    }
+    
+    private void fetchPages() {
+        try {
+            while (!cancelled) {
+                List<T> page = fetchNextPage();
+                if (page == null) {
+                    enqueue(END_OF_LISTING);
+                    return;
+                }
+                // A truncated page may carry only common prefixes, skip it.
+                if (!page.isEmpty()) {
+                    enqueue(page);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Cancelled by the consumer.
+        } catch (Throwable e) {
+            if (cancelled) {
+                return;
+            }
+            // logException only takes exceptions, an Error is logged here directly.
+            getLog().warn("Failed to prefetch listing page: " + e.getMessage());
+            try {
+                enqueue(new FetchFailure(e));
+            } catch (InterruptedException ie) {
+                // Cancelled by the consumer.
+            }
+        }
+    }
+    
+    /**
+     * Waits for room in the buffer, giving up once the listing is cancelled
+     * even if the interrupt was swallowed by the HTTP client.
+     */
+    private void enqueue(Object page) throws InterruptedException {
+        while (!cancelled) {
+            if (pages.offer(page, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+    
+    private static class FetchFailure {
+        
+        private final Throwable exception;
+        
+        public FetchFailure(Throwable exception) {
+            this.exception = exception;
+        }
+    }
+    
+}
@@ -28,7 +28,6 @@ import java.math.BigInteger;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.CheckedInputStream;
@@ -53,6 +52,7 @@ import com.aliyun.oss.model.BucketReplicationProgress;
 import com.aliyun.oss.model.BucketWebsiteResult;
 import com.aliyun.oss.model.CannedAccessControlList;
 import com.aliyun.oss.model.CnameConfiguration;
+import com.aliyun.oss.model.CompactObjectListing;
 import com.aliyun.oss.model.CompleteMultipartUploadResult;
 import com.aliyun.oss.model.CopyObjectResult;
 import com.aliyun.oss.model.CreateLiveChannelResult;
@@ -124,7 +124,8 @@ public final class ResponseParsers {
     public static final GetBucketInfoResponseParser getBucketInfoResponseParser = new GetBucketInfoResponseParser();    
     public static final GetBucketQosResponseParser getBucketQosResponseParser = new GetBucketQosResponseParser();
     
-    public static final ListObjectsReponseParser listObjectsReponseParser = new ListObjectsReponseParser();    
+    public static final ListObjectsReponseParser listObjectsReponseParser = new ListObjectsReponseParser();
+    public static final ListObjectsCompactReponseParser listObjectsCompactReponseParser = new ListObjectsCompactReponseParser();    
     public static final PutObjectReponseParser putObjectReponseParser = new PutObjectReponseParser();
     public static final PutObjectCallbackReponseParser putObjectCallbackReponseParser = new PutObjectCallbackReponseParser();
     public static final AppendObjectResponseParser appendObjectResponseParser = new AppendObjectResponseParser();
@@ -501,6 +502,20 @@ public final class ResponseParsers {
         
     }
     
+    public static final class ListObjectsCompactReponseParser implements ResponseParser<CompactObjectListing> {
+        
+        @Override
+        public CompactObjectListing parse(ResponseMessage response)
+                throws ResponseParseException {
+            try {
+                return parseListObjectsCompact(response.getContent());
+            } finally {
+                safeCloseResponse(response);
+            }
+        }
+        
+    }
+    
     public static final class PutObjectReponseParser implements ResponseParser<PutObjectResult> {
         
         @Override
@@ -574,6 +589,7 @@ public final class ResponseParsers {
             ossObject.setKey(this.key);
             ossObject.setObjectContent(response.getContent());
             ossObject.setRequestId(response.getRequestId());
+            ossObject.setResponse(response);
             try {
                 ossObject.setObjectMetadata(parseObjectMetadata(response.getHeaders()));
                 setServerCRC64(ossObject, response);
@@ -811,34 +827,7 @@ public final class ResponseParsers {
             Element root = getXmlRootElement(responseBody);
 
             ObjectListing objectListing = new ObjectListing();
-            objectListing.setBucketName(root.getChildText("Name"));
-            objectListing.setMaxKeys(Integer.valueOf(root.getChildText("MaxKeys")));
-            objectListing.setTruncated(Boolean.valueOf(root.getChildText("IsTruncated")));
-            
-            if (root.getChild("Prefix") != null) {
-                String prefix = root.getChildText("Prefix");
-                objectListing.setPrefix(isNullOrEmpty(prefix) ? null : prefix);                
-            }
-            
-            if (root.getChild("Marker") != null) {
-                String marker = root.getChildText("Marker");
-                objectListing.setMarker(isNullOrEmpty(marker) ? null : marker);                
-            }
-            
-            if (root.getChild("Delimiter") != null) {
-                String delimiter = root.getChildText("Delimiter");
-                objectListing.setDelimiter(isNullOrEmpty(delimiter) ? null : delimiter);             
-            }
-            
-            if (root.getChild("NextMarker") != null) {
-                String nextMarker = root.getChildText("NextMarker");
-                objectListing.setNextMarker(isNullOrEmpty(nextMarker) ? null : nextMarker);           
-            }
-            
-            if (root.getChild("EncodingType") != null) {
-                String encodingType = root.getChildText("EncodingType");
-                objectListing.setEncodingType(isNullOrEmpty(encodingType) ? null : encodingType);
-            }
+            parseListObjectsHeader(root, objectListing);
 
             List<Element> objectSummaryElems = root.getChildren("Contents");
             for (Element elem : objectSummaryElems) {
@@ -858,20 +847,91 @@ public final class ResponseParsers {
                 objectListing.addObjectSummary(ossObjectSummary);
             }
 
-            List<Element> commonPrefixesElems = root.getChildren("CommonPrefixes");
-            for (Element elem : commonPrefixesElems) {
-                String prefix = elem.getChildText("Prefix");
-                if (!isNullOrEmpty(prefix)) {
-                    objectListing.addCommonPrefix(prefix);               
-                }
+            parseCommonPrefixes(root, objectListing);
+
+            return objectListing;
+        } catch (Exception e) {
+            throw new ResponseParseException(e.getMessage(), e);
+        }
+
+    }
+
+    /**
+     * Unmarshall list objects response body to a compact object listing, which
+     * keeps the entries in columnar arrays instead of {@link OSSObjectSummary}s.
+     */
+    @SuppressWarnings("unchecked")
+    public static CompactObjectListing parseListObjectsCompact(InputStream responseBody) 
+            throws ResponseParseException {
+        
+        try {
+            Element root = getXmlRootElement(responseBody);
+
+            List<Element> objectSummaryElems = root.getChildren("Contents");
+            CompactObjectListing objectListing = new CompactObjectListing(objectSummaryElems.size());
+            parseListObjectsHeader(root, objectListing);
+
+            for (Element elem : objectSummaryElems) {
+                Element owner = elem.getChild("Owner");
+                objectListing.addObject(elem.getChildText("Key"), 
+                        trimQuotes(elem.getChildText("ETag")),
+                        DateUtil.parseIso8601Date(elem.getChildText("LastModified")).getTime(),
+                        Long.parseLong(elem.getChildText("Size")),
+                        elem.getChildText("StorageClass"),
+                        owner == null ? null : owner.getChildText("ID"),
+                        owner == null ? null : owner.getChildText("DisplayName"));
             }
 
+            parseCommonPrefixes(root, objectListing);
+
             return objectListing;
         } catch (Exception e) {
             throw new ResponseParseException(e.getMessage(), e);
         }
 
     }
+    
+    private static void parseListObjectsHeader(Element root, ObjectListing objectListing) {
+        objectListing.setBucketName(root.getChildText("Name"));
+        objectListing.setMaxKeys(Integer.valueOf(root.getChildText("MaxKeys")));
+        objectListing.setTruncated(Boolean.valueOf(root.getChildText("IsTruncated")));
+        
+        if (root.getChild("Prefix") != null) {
+            String prefix = root.getChildText("Prefix");
+            objectListing.setPrefix(isNullOrEmpty(prefix) ? null : prefix);                
+        }
+        
+        if (root.getChild("Marker") != null) {
+            String marker = root.getChildText("Marker");
+            objectListing.setMarker(isNullOrEmpty(marker) ? null : marker);                
+        }
+        
+        if (root.getChild("Delimiter") != null) {
+            String delimiter = root.getChildText("Delimiter");
+            objectListing.setDelimiter(isNullOrEmpty(delimiter) ? null : delimiter);             
+        }
+        
+        if (root.getChild("NextMarker") != null) {
+            String nextMarker = root.getChildText("NextMarker");
+            objectListing.setNextMarker(isNullOrEmpty(nextMarker) ? null : nextMarker);           
+        }
+        
+        if (root.getChild("EncodingType") != null) {
+            String encodingType = root.getChildText("EncodingType");
+            objectListing.setEncodingType(isNullOrEmpty(encodingType) ? null : encodingType);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static void parseCommonPrefixes(Element root, ObjectListing objectListing) {
+        List<Element> commonPrefixesElems = root.getChildren("CommonPrefixes");
+        for (Element elem : commonPrefixesElems) {
+            String prefix = elem.getChildText("Prefix");
+            if (!isNullOrEmpty(prefix)) {
+                objectListing.addCommonPrefix(prefix);               
+            }
+        }
+    }
 
     /**
      * Unmarshall get bucket acl response body to ACL.
@@ -1090,24 +1150,26 @@ public final class ResponseParsers {
         try {
             SimplifiedObjectMeta objectMeta = new SimplifiedObjectMeta();
 
-            for (Iterator<String> it = headers.keySet().iterator(); it.hasNext();) {
-                String key = it.next();
-
-                if (key.equals(OSSHeaders.LAST_MODIFIED)) {
-                    try {
-                        objectMeta.setLastModified(DateUtil.parseRfc822Date(headers.get(key)));
-                    } catch (ParseException pe) {
-                        throw new ResponseParseException(pe.getMessage(), pe);
-                    }
-                } else if (key.equals(OSSHeaders.CONTENT_LENGTH)) {
-                    Long value = Long.valueOf(headers.get(key));
-                    objectMeta.setSize(value);
-                } else if (key.equals(OSSHeaders.ETAG)) {
-                    objectMeta.setETag(trimQuotes(headers.get(key)));
-                } else if (key.equals(OSSHeaders.OSS_HEADER_REQUEST_ID)) {
-                    objectMeta.setRequestId(headers.get(key));
+            String lastModified = headers.get(OSSHeaders.LAST_MODIFIED);
+            if (lastModified != null) {
+                try {
+                    objectMeta.setLastModified(DateUtil.parseRfc822Date(lastModified));
+                } catch (ParseException pe) {
+                    throw new ResponseParseException(pe.getMessage(), pe);
                 }
             }
+            
+            String contentLength = headers.get(OSSHeaders.CONTENT_LENGTH);
+            if (contentLength != null) {
+                objectMeta.setSize(Long.parseLong(contentLength));
+            }
+            
+            String eTag = headers.get(OSSHeaders.ETAG);
+            if (eTag != null) {
+                objectMeta.setETag(trimQuotes(eTag));
+            }
+            
+            objectMeta.setRequestId(headers.get(OSSHeaders.OSS_HEADER_REQUEST_ID));
 
             return objectMeta;
         } catch (Exception e) {
@@ -1116,36 +1178,15 @@ public final class ResponseParsers {
     }
 
     /**
-     * Unmarshall object metadata from response headers.
+     * Unmarshall object metadata from response headers. The headers are kept
+     * as they are and parsed the first time the metadata is accessed.
      */
     public static ObjectMetadata parseObjectMetadata(Map<String, String> headers) 
             throws ResponseParseException {
 
         try {
             ObjectMetadata objectMetadata = new ObjectMetadata();
-
-            for (Iterator<String> it = headers.keySet().iterator(); it.hasNext();) {
-                String key = it.next();
-
-                if (key.indexOf(OSSHeaders.OSS_USER_METADATA_PREFIX) >= 0) {
-                    key = key.substring(OSSHeaders.OSS_USER_METADATA_PREFIX.length());
-                    objectMetadata.addUserMetadata(key, headers.get(OSSHeaders.OSS_USER_METADATA_PREFIX + key));
-                } else if (key.equals(OSSHeaders.LAST_MODIFIED) || key.equals(OSSHeaders.DATE)) {
-                    try {
-                        objectMetadata.setHeader(key, DateUtil.parseRfc822Date(headers.get(key)));
-                    } catch (ParseException pe) {
-                        throw new ResponseParseException(pe.getMessage(), pe);
-                    }
-                } else if (key.equals(OSSHeaders.CONTENT_LENGTH)) {
-                    Long value = Long.valueOf(headers.get(key));
-                    objectMetadata.setHeader(key, value);
-                } else if (key.equals(OSSHeaders.ETAG)) {
-                    objectMetadata.setHeader(key, trimQuotes(headers.get(key)));
-                } else {
-                    objectMetadata.setHeader(key, headers.get(key) );
-                }
-            }
-
+            objectMetadata.setResponseHeaders(headers);
             return objectMetadata;
         } catch (Exception e) {
             throw new ResponseParseException(e.getMessage(), e);
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.internal;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.TransferManager;
+
+/**
+ * Stops the remaining parts of an uploadFile/downloadFile call as soon as one
+ * part fails for good or the caller cancels the transfer: queued parts are 
+ * cancelled and running parts are aborted mid-request. The first real part 
+ * failure is kept; failures caused by the abort itself are ignored.
+ */
+class TransferControl implements Runnable {
+    
+    /**
+     * A part task whose in-flight request can be aborted from another thread.
+     */
+    interface AbortableTask {
+        void abort();
+    }
+    
+    private final TransferManager transferManager;
+    private final List<? extends AbortableTask> tasks;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private volatile List<? extends Future<?>> futures;
+    private volatile Exception failure;
+    private volatile boolean cancelled;
+    
+    TransferControl(TransferManager transferManager, List<? extends AbortableTask> tasks) {
+        this.transferManager = transferManager;
+        this.tasks = tasks;
+    }
+    
+    void setFutures(List<? extends Future<?>> futures) {
+        this.futures = futures;
+        if (stopped.get()) {
+            cancelFutures();
+        }
+    }
+    
+    boolean isStopped() {
+        return stopped.get();
+    }
+    
+    /**
+     * Records a part failure and stops the transfer. Returns false if the 
+     * transfer was already stopped, in which case the failure is most likely
+     * a consequence of the abort.
+     */
+    boolean fail(Exception e) {
+        synchronized (this) {
+            if (stopped.get()) {
+                return false;
+            }
+            failure = e;
+        }
+        stop();
+        return true;
+    }
+    
+    /**
+     * Cancels the transfer, invoked from the transfer handle.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (!stopped.get()) {
+                cancelled = true;
+            }
+        }
+        stop();
+    }
+    
+    void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        cancelFutures();
+        for (AbortableTask task : tasks) {
+            task.abort();
+        }
+    }
+    
+    /**
+     * Throws the part failure, or a ClientException if the transfer was 
+     * cancelled.
+     */
+    void throwIfStopped() throws Exception {
+        if (failure != null) {
+            throw failure;
+        }
+        if (cancelled) {
+            throw new ClientException("The transfer has been cancelled.");
+        }
+    }
+    
+    private void cancelFutures() {
+        List<? extends Future<?>> current = futures;
+        if (current != null) {
+            // Only queued parts are cancelled, running ones are aborted and 
+            // still waited for before the transfer returns.
+            transferManager.cancelQueued(current);
+        }
+    }
+}
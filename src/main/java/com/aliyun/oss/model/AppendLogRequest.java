@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+/**
+ * 追加日志写入请求，用于通过追加上传（AppendObject）高频写入小记录。
+ * 
+ * 写入的记录先在内存中缓冲，缓冲数据达到flushSize或最早的记录等待超过flushIntervalMillis时，
+ * 合并为一次AppendObject请求写入OSS。追加位置及CRC64由写入器自动维护；
+ * Object达到maxObjectSize时切换到新的Object继续写入，新Object的Key为原Key加上".000001"形式的序号。
+ */
+public class AppendLogRequest extends GenericRequest {
+    
+    public static final int DEFAULT_FLUSH_SIZE = 256 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final long MAX_OBJECT_SIZE = 5 * 1024 * 1024 * 1024L;
+    
+    private static final int MIN_FLUSH_SIZE = 1024;
+    private static final int MAX_FLUSH_SIZE = 64 * 1024 * 1024;
+    
+    public AppendLogRequest(String bucketName, String key) {
+        super(bucketName, key);
+    }
+    
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    /**
+     * 设置触发写入的缓冲数据大小，取值范围1KB~64MB，默认256KB。
+     * @param flushSize
+     *          缓冲数据达到该大小时合并写入。
+     */
+    public void setFlushSize(int flushSize) {
+        if (flushSize < MIN_FLUSH_SIZE) {
+            this.flushSize = MIN_FLUSH_SIZE;
+        } else if (flushSize > MAX_FLUSH_SIZE) {
+            this.flushSize = MAX_FLUSH_SIZE;
+        } else {
+            this.flushSize = flushSize;
+        }
+    }
+    
+    public AppendLogRequest withFlushSize(int flushSize) {
+        setFlushSize(flushSize);
+        return this;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * 设置记录在缓冲中等待的最长时间（毫秒），默认1000。小于等于0时不按时间写入，
+     * 仅在缓冲数据达到flushSize或调用flush/close时写入。
+     * @param flushIntervalMillis
+     *          记录等待的最长时间。
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis < 0 ? 0 : flushIntervalMillis;
+    }
+    
+    public AppendLogRequest withFlushIntervalMillis(long flushIntervalMillis) {
+        setFlushIntervalMillis(flushIntervalMillis);
+        return this;
+    }
+
+    public long getMaxObjectSize() {
+        return maxObjectSize;
+    }
+
+    /**
+     * 设置单个Object的最大大小，默认及最大值均为追加上传的上限5GB。
+     * 追加一批记录会超过该大小时，切换到新的Object写入。
+     * @param maxObjectSize
+     *          单个Object的最大大小。
+     */
+    public void setMaxObjectSize(long maxObjectSize) {
+        if (maxObjectSize < MIN_FLUSH_SIZE) {
+            this.maxObjectSize = MIN_FLUSH_SIZE;
+        } else if (maxObjectSize > MAX_OBJECT_SIZE) {
+            this.maxObjectSize = MAX_OBJECT_SIZE;
+        } else {
+            this.maxObjectSize = maxObjectSize;
+        }
+    }
+    
+    public AppendLogRequest withMaxObjectSize(long maxObjectSize) {
+        setMaxObjectSize(maxObjectSize);
+        return this;
+    }
+
+    public ObjectMetadata getObjectMetadata() {
+        return objectMetadata;
+    }
+
+    /**
+     * 设置Object的元数据，仅在创建Object的首次追加时生效。
+     * @param objectMetadata
+     *          Object的元数据。
+     */
+    public void setObjectMetadata(ObjectMetadata objectMetadata) {
+        this.objectMetadata = objectMetadata;
+    }
+    
+    public AppendLogRequest withObjectMetadata(ObjectMetadata objectMetadata) {
+        setObjectMetadata(objectMetadata);
+        return this;
+    }
+
+    // 触发写入的缓冲数据大小，默认256KB
+    private int flushSize = DEFAULT_FLUSH_SIZE;
+    // 记录在缓冲中等待的最长时间，默认1秒
+    private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    // 单个Object的最大大小，默认5GB
+    private long maxObjectSize = MAX_OBJECT_SIZE;
+    // Object的元数据
+    private ObjectMetadata objectMetadata;
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.model;
+
+import java.util.Iterator;
+
+/**
+ * 批量删除请求，删除迭代器给出的全部Object，或者指定前缀下的全部Object。
+ * 
+ * 要删除的Object按每批最多1000个分批，多个批次同时发送，同时进行中的批次数不超过taskNum。
+ * 按前缀删除时，列举与删除同时进行。
+ */
+public class BulkDeleteRequest extends GenericRequest {
+    
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    
+    public BulkDeleteRequest(String bucketName) {
+        super(bucketName);
+    }
+    
+    public Iterator<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * 设置要删除的Object的key，可以是不限长度的迭代器，删除过程中逐个读取。
+     * @param keys
+     *          要删除的Object的key。
+     */
+    public void setKeys(Iterator<String> keys) {
+        this.keys = keys;
+    }
+    
+    public BulkDeleteRequest withKeys(Iterator<String> keys) {
+        setKeys(keys);
+        return this;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * 设置要删除的Object的前缀，空字符串表示删除Bucket下的全部Object。
+     * @param prefix
+     *          要删除的Object的前缀。
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+    
+    public BulkDeleteRequest withPrefix(String prefix) {
+        setPrefix(prefix);
+        return this;
+    }
+
+    public int getTaskNum() {
+        return taskNum;
+    }
+
+    public void setTaskNum(int taskNum) {
+        if (taskNum < 1) {
+            this.taskNum = 1;
+        } else if (taskNum > 1000) {
+            this.taskNum = 1000;
+        } else {
+            this.taskNum = taskNum;
+        }
+    }
+    
+    public BulkDeleteRequest withTaskNum(int taskNum) {
+        setTaskNum(taskNum);
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1 || batchSize > DeleteObjectsRequest.DELETE_OBJECTS_ONETIME_LIMIT) {
+            throw new IllegalArgumentException("The batch size should be between 1 and " 
+                    + DeleteObjectsRequest.DELETE_OBJECTS_ONETIME_LIMIT);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public boolean isQuiet() {
+        return quiet;
+    }
+
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+    
+    public BulkDeleteRequest withQuiet(boolean quiet) {
+        setQuiet(quiet);
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries < 0 ? 0 : maxRetries;
+    }
+
+    // 要删除的Object的key
+    private Iterator<String> keys;
+    // 要删除的Object的前缀，与keys二选一
+    private String prefix;
+    // 同时进行中的批次数，默认5
+    private int taskNum = 5;
+    // 每批删除的Object数，默认1000
+    private int batchSize = DeleteObjectsRequest.DELETE_OBJECTS_ONETIME_LIMIT;
+    // 是否使用quiet模式，默认true
+    private boolean quiet = true;
+    // 每批失败后的最大重试次数，默认3
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量删除的结果，包括汇总的数目和删除失败的Object。
+ */
+public class BulkDeleteResult extends GenericResult {
+    
+    /**
+     * 删除失败的Object。
+     */
+    public static class DeleteFailure {
+        
+        public DeleteFailure(String key, String errorCode, String errorMessage) {
+            this.key = key;
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public String getErrorCode() {
+            return errorCode;
+        }
+        
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+        
+        private final String key;
+        private final String errorCode;
+        private final String errorMessage;
+    }
+    
+    /**
+     * 返回删除成功的Object数。quiet模式下为成功批次中的Object数。
+     */
+    public synchronized long getDeletedCount() {
+        return deletedCount;
+    }
+    
+    /**
+     * 返回删除失败的Object数。
+     */
+    public synchronized long getFailedCount() {
+        return failures.size();
+    }
+    
+    /**
+     * 返回发送的批次数，不含重试。
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+    
+    /**
+     * 返回重试的次数。
+     */
+    public synchronized long getRetryCount() {
+        return retryCount;
+    }
+    
+    /**
+     * 返回删除失败的Object及原因。
+     */
+    public synchronized List<DeleteFailure> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<DeleteFailure>(failures));
+    }
+    
+    /**
+     * 返回批量删除的用时，单位毫秒。
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    public synchronized void addDeleted(long count) {
+        deletedCount += count;
+    }
+    
+    public synchronized void addBatch() {
+        batchCount++;
+    }
+    
+    public synchronized void addRetry() {
+        retryCount++;
+    }
+    
+    public synchronized void addFailure(DeleteFailure failure) {
+        failures.add(failure);
+    }
+    
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    private long deletedCount;
+    private long batchCount;
+    private long retryCount;
+    private final List<DeleteFailure> failures = new ArrayList<DeleteFailure>();
+    private volatile long elapsedMillis;
+}
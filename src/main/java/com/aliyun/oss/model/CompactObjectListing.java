@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑存储的{@link ObjectListing}。
+ * <p>
+ * 每页的Object信息按列存放在基本类型和字符串数组中，StorageClass和Owner在页内去重，
+ * {@link OSSObjectSummary}和{@link Date}只在访问时创建，适合在内存中保存大量Object的清单。
+ * {@link #getObjectSummaries()}返回只读视图，每次访问生成新的{@link OSSObjectSummary}，
+ * 只需要key和大小时应直接使用{@link #getKey(int)}和{@link #getSize(int)}。
+ * </p>
+ */
+public class CompactObjectListing extends ObjectListing {
+    
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    private int count;
+    private String[] keys;
+    private String[] eTags;
+    private long[] sizes;
+    private long[] lastModifiedTimes;
+    private byte[] storageClassIndexes;
+    private int[] ownerIndexes;
+    
+    // Page-level dictionaries, entries repeat for nearly every object of a page.
+    private String[] storageClasses = new String[0];
+    private String[] ownerIds = new String[0];
+    private String[] ownerDisplayNames = new String[0];
+    private final Map<String, Integer> ownerIndexMap = new HashMap<String, Integer>();
+    private int lastOwnerIndex = -1;
+    
+    private final List<OSSObjectSummary> summaryView = new AbstractList<OSSObjectSummary>() {
+        
+        @Override
+        public OSSObjectSummary get(int index) {
+            return getObjectSummary(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    };
+    
+    public CompactObjectListing() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    public CompactObjectListing(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.keys = new String[capacity];
+        this.eTags = new String[capacity];
+        this.sizes = new long[capacity];
+        this.lastModifiedTimes = new long[capacity];
+        this.storageClassIndexes = new byte[capacity];
+        this.ownerIndexes = new int[capacity];
+    }
+    
+    /**
+     * 追加一个Object的信息。
+     * @param key
+     *          Object的Key。
+     * @param eTag
+     *          Object的ETag，不含引号。
+     * @param lastModified
+     *          最后修改时间，自1970年1月1日起的毫秒数。
+     * @param size
+     *          Object的字节数。
+     * @param storageClass
+     *          Object的存储类型。
+     * @param ownerId
+     *          Owner的ID。
+     * @param ownerDisplayName
+     *          Owner的显示名称。
+     */
+    public void addObject(String key, String eTag, long lastModified, long size, String storageClass,
+            String ownerId, String ownerDisplayName) {
+        ensureCapacity(count + 1);
+        keys[count] = key;
+        eTags[count] = eTag;
+        lastModifiedTimes[count] = lastModified;
+        sizes[count] = size;
+        storageClassIndexes[count] = storageClassIndex(storageClass);
+        ownerIndexes[count] = ownerIndex(ownerId, ownerDisplayName);
+        count++;
+    }
+    
+    /**
+     * 返回本页的Object数目。
+     */
+    public int size() {
+        return count;
+    }
+    
+    public String getKey(int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+    
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+    
+    public String getETag(int index) {
+        checkIndex(index);
+        return eTags[index];
+    }
+    
+    /**
+     * 返回最后修改时间，自1970年1月1日起的毫秒数，不创建{@link Date}对象。
+     */
+    public long getLastModifiedTime(int index) {
+        checkIndex(index);
+        return lastModifiedTimes[index];
+    }
+    
+    public Date getLastModified(int index) {
+        return new Date(getLastModifiedTime(index));
+    }
+    
+    public String getStorageClass(int index) {
+        checkIndex(index);
+        return storageClasses[storageClassIndexes[index]];
+    }
+    
+    public Owner getOwner(int index) {
+        checkIndex(index);
+        int ownerIndex = ownerIndexes[index];
+        return ownerIndex < 0 ? null : new Owner(ownerIds[ownerIndex], ownerDisplayNames[ownerIndex]);
+    }
+    
+    /**
+     * 创建第index个Object的{@link OSSObjectSummary}。
+     */
+    public OSSObjectSummary getObjectSummary(int index) {
+        OSSObjectSummary summary = new OSSObjectSummary();
+        summary.setBucketName(getBucketName());
+        summary.setKey(getKey(index));
+        summary.setETag(getETag(index));
+        summary.setSize(getSize(index));
+        summary.setLastModified(getLastModified(index));
+        summary.setStorageClass(getStorageClass(index));
+        summary.setOwner(getOwner(index));
+        return summary;
+    }
+    
+    /**
+     * 返回Object摘要的只读视图，元素在访问时创建。
+     */
+    @Override
+    public List<OSSObjectSummary> getObjectSummaries() {
+        return summaryView;
+    }
+    
+    @Override
+    public void addObjectSummary(OSSObjectSummary objectSummary) {
+        Owner owner = objectSummary.getOwner();
+        Date lastModified = objectSummary.getLastModified();
+        addObject(objectSummary.getKey(), objectSummary.getETag(), 
+                lastModified == null ? 0 : lastModified.getTime(), objectSummary.getSize(), 
+                objectSummary.getStorageClass(), owner == null ? null : owner.getId(), 
+                owner == null ? null : owner.getDisplayName());
+    }
+    
+    @Override
+    public void setObjectSummaries(List<OSSObjectSummary> objectSummaries) {
+        clearObjectSummaries();
+        if (objectSummaries != null) {
+            for (OSSObjectSummary objectSummary : objectSummaries) {
+                addObjectSummary(objectSummary);
+            }
+        }
+    }
+    
+    @Override
+    public void clearObjectSummaries() {
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(eTags, 0, count, null);
+        count = 0;
+    }
+    
+    /**
+     * 将数组缩小到实际的Object数目，在长期保存本页前调用。
+     */
+    public void trimToSize() {
+        if (count < keys.length) {
+            resize(Math.max(count, 1));
+        }
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            resize(Math.max(capacity, keys.length * 2));
+        }
+    }
+    
+    private void resize(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        eTags = Arrays.copyOf(eTags, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        lastModifiedTimes = Arrays.copyOf(lastModifiedTimes, capacity);
+        storageClassIndexes = Arrays.copyOf(storageClassIndexes, capacity);
+        ownerIndexes = Arrays.copyOf(ownerIndexes, capacity);
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
+    
+    private byte storageClassIndex(String storageClass) {
+        for (int i = 0; i < storageClasses.length; i++) {
+            if (equals(storageClasses[i], storageClass)) {
+                return (byte) i;
+            }
+        }
+        if (storageClasses.length == Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct storage classes in one listing.");
+        }
+        storageClasses = Arrays.copyOf(storageClasses, storageClasses.length + 1);
+        storageClasses[storageClasses.length - 1] = storageClass;
+        return (byte) (storageClasses.length - 1);
+    }
+    
+    private int ownerIndex(String ownerId, String ownerDisplayName) {
+        if (ownerId == null && ownerDisplayName == null) {
+            return -1;
+        }
+        if (lastOwnerIndex >= 0 && equals(ownerIds[lastOwnerIndex], ownerId)
+                && equals(ownerDisplayNames[lastOwnerIndex], ownerDisplayName)) {
+            return lastOwnerIndex;
+        }
+        String mapKey = ownerId + "\n" + ownerDisplayName;
+        Integer index = ownerIndexMap.get(mapKey);
+        if (index == null) {
+            index = ownerIds.length;
+            ownerIds = Arrays.copyOf(ownerIds, index + 1);
+            ownerDisplayNames = Arrays.copyOf(ownerDisplayNames, index + 1);
+            ownerIds[index] = ownerId;
+            ownerDisplayNames[index] = ownerDisplayName;
+            ownerIndexMap.put(mapKey, index);
+        }
+        lastOwnerIndex = index;
+        return index;
+    }
+    
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
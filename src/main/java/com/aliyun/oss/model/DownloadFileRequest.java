@@ -70,6 +70,77 @@ public class DownloadFileRequest extends GenericRequest {
         this.taskNum = taskNum;
     }
     
+    public TransferHandle getTransferHandle() {
+        return transferHandle;
+    }
+
+    /**
+     * 设置传输句柄，用于从其他线程取消本次传输。
+     * @param transferHandle
+     *          传输句柄。
+     */
+    public void setTransferHandle(TransferHandle transferHandle) {
+        this.transferHandle = transferHandle;
+    }
+    
+    public boolean isAutoTuning() {
+        return autoTuning;
+    }
+
+    /**
+     * 设置是否自动调整分片大小及并发数，默认关闭。开启后忽略partSize，根据文件大小及taskNum选择分片大小，
+     * 传输过程中根据分片的吞吐量及失败率在1~taskNum之间调整并发分片数。分片的划分记录在checkpoint中，断点续传时保持不变。
+     * @param autoTuning
+     *          是否自动调整分片大小及并发数。
+     */
+    public void setAutoTuning(boolean autoTuning) {
+        this.autoTuning = autoTuning;
+    }
+    
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * 设置是否以内存映射方式写入本地文件，默认关闭。开启后分片数据直接写入映射的文件区域，
+     * 由操作系统回写磁盘，减少系统调用及内存拷贝。Java 6无法主动解除映射，映射区域在被垃圾回收前
+     * 一直占用进程的虚拟地址空间，因此每次下载最多映射256MB，超出部分的分片仍以缓冲区方式写入。
+     * @param memoryMapped
+     *          是否以内存映射方式写入本地文件。
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+    
+    public boolean isPreallocate() {
+        return preallocate;
+    }
+
+    /**
+     * 设置下载前是否检查本地文件能否扩展到Object大小，默认关闭。本地文件总是先扩展到
+     * Object大小，开启后还会写入文件的最后一个字节，文件系统无法容纳该大小时在下载开始前即失败。
+     * @param preallocate
+     *          是否预先分配磁盘空间。
+     */
+    public void setPreallocate(boolean preallocate) {
+        this.preallocate = preallocate;
+    }
+    
+    public long getProgressCheckpointSize() {
+        return progressCheckpointSize;
+    }
+
+    /**
+     * 设置开启断点续传时，分片内记录下载进度的间隔，默认8MB。分片每下载该大小的数据，
+     * 先将数据写入磁盘再记录到checkpoint中，续传时未完成的分片从记录的位置继续下载，而不是重新下载整个分片。
+     * 小于等于0时只记录完成的分片。
+     * @param progressCheckpointSize
+     *          分片内记录下载进度的间隔。
+     */
+    public void setProgressCheckpointSize(long progressCheckpointSize) {
+        this.progressCheckpointSize = progressCheckpointSize;
+    }
+    
     public String getDownloadFile() {
         return downloadFile;
     }
@@ -212,12 +283,22 @@ public class DownloadFileRequest extends GenericRequest {
     private long partSize = 1024 * 100;
     // 分片上传线程数，默认1
     private int taskNum = 1;
+    // 是否自动调整分片大小及并发数，默认关闭
+    private boolean autoTuning = false;
+    // 传输句柄，用于取消传输
+    private TransferHandle transferHandle;
+    // 是否以内存映射方式写入本地文件，默认关闭
+    private boolean memoryMapped = false;
+    // 是否预先分配本地文件的磁盘空间，默认关闭
+    private boolean preallocate = false;
     // 本地文件
     private String downloadFile;
     // 是否开启断点续传
     private boolean enableCheckpoint;
     // 断点续传时保存分片上传的信息的本地文件
     private String checkpointFile;
+    // 断点续传时分片内记录下载进度的间隔，默认8MB
+    private long progressCheckpointSize = 8 * 1024 * 1024;
     
     // If-Match参数，如果传入期望的 ETag和 object的 ETag匹配，正常发送文件
     private List<String> matchingETagConstraints = new ArrayList<String>();
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.model;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 逐条遍历分页列举结果的迭代器。
+ * 
+ * 迭代器在后台预取后续页，调用者消费当前页时下一页已在传输中。
+ * 未遍历到末尾就不再使用的迭代器必须调用{@link #close()}或{@link #cancel()}，
+ * 否则后台预取线程会一直等待调用者消费。
+ */
+public interface ListingIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * 取消列举，停止后台预取并丢弃已预取但尚未消费的结果。
+     * 取消后{@link #hasNext()}返回false。
+     */
+    public void cancel();
+    
+    /**
+     * 关闭迭代器，等同于{@link #cancel()}。
+     */
+    @Override
+    public void close();
+
+}
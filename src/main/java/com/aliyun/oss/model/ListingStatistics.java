@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行列举的统计信息，包括总体吞吐量和每个分片的统计。
+ * 列举进行中即可读取，数值随列举进度更新。
+ */
+public class ListingStatistics {
+    
+    /**
+     * 单个分片的统计信息。
+     */
+    public static class ShardStatistics {
+        
+        public ShardStatistics(String prefix) {
+            this.prefix = prefix;
+        }
+        
+        public String getPrefix() {
+            return prefix;
+        }
+        
+        public long getObjectCount() {
+            return objectCount.get();
+        }
+        
+        public long getPageCount() {
+            return pageCount.get();
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        
+        public void addPage(int objects) {
+            pageCount.incrementAndGet();
+            objectCount.addAndGet(objects);
+        }
+        
+        public void setElapsedMillis(long elapsedMillis) {
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        // 分片的前缀
+        private final String prefix;
+        // 分片内列举出的Object数
+        private final AtomicLong objectCount = new AtomicLong();
+        // 分片内发送的列举请求数
+        private final AtomicLong pageCount = new AtomicLong();
+        // 分片的列举用时，单位毫秒
+        private volatile long elapsedMillis;
+    }
+    
+    public ListingStatistics() {
+        this.startTime = System.currentTimeMillis();
+    }
+    
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    public List<ShardStatistics> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+    
+    public void addShard(ShardStatistics shard) {
+        this.shards.add(shard);
+    }
+    
+    public long getObjectCount() {
+        return objectCount.get();
+    }
+    
+    public long getPageCount() {
+        return pageCount.get();
+    }
+    
+    public void addPage(int objects) {
+        pageCount.incrementAndGet();
+        objectCount.addAndGet(objects);
+    }
+    
+    /**
+     * 返回列举用时，列举未结束时返回到当前的用时，单位毫秒。
+     */
+    public long getElapsedMillis() {
+        long end = endTime > 0 ? endTime : System.currentTimeMillis();
+        return end - startTime;
+    }
+    
+    /**
+     * 返回列举吞吐量，单位Object/秒。
+     */
+    public double getObjectsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed > 0 ? getObjectCount() * 1000.0 / elapsed : 0.0;
+    }
+    
+    public void markFinished() {
+        if (endTime == 0) {
+            endTime = System.currentTimeMillis();
+        }
+    }
+    
+    public boolean isFinished() {
+        return endTime > 0;
+    }
+    
+    private final List<ShardStatistics> shards = new ArrayList<ShardStatistics>();
+    private final AtomicLong objectCount = new AtomicLong();
+    private final AtomicLong pageCount = new AtomicLong();
+    private final long startTime;
+    private volatile long endTime;
+}
@@ -19,8 +19,11 @@
 
 package com.aliyun.oss.model;
 
+import java.io.IOException;
 import java.io.InputStream;
 
+import com.aliyun.oss.common.comm.ResponseMessage;
+
 /**
  * 表示OSS中的Object。
  * <p>
@@ -51,6 +54,9 @@ public class OSSObject extends GenericResult {
 
     // Object所包含的内容。
     private InputStream objectContent;
+    
+    // Object内容所属的响应，用于强制关闭连接。
+    private ResponseMessage response;
 
     /**
      * 返回Object的元数据。
@@ -120,6 +126,21 @@ public class OSSObject extends GenericResult {
         this.key = key;
     }
 
+    public void setResponse(ResponseMessage response) {
+        this.response = response;
+    }
+    
+    /**
+     * 强制关闭Object内容所在的连接，未读取的数据被丢弃，不会被读完。
+     * 可以在其他线程中调用，用于中断正在读取Object内容的线程。
+     * @throws IOException 
+     */
+    public void forcedClose() throws IOException {
+        if (response != null) {
+            response.abort();
+        }
+    }
+    
     @Override
     public String toString() {
         return "OSSObject [key=" + getKey()
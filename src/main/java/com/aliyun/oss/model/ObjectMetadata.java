@@ -19,14 +19,17 @@
 
 package com.aliyun.oss.model;
 
+import java.math.BigInteger;
 import java.text.ParseException;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.aliyun.oss.ClientException;
 import com.aliyun.oss.common.utils.DateUtil;
 import com.aliyun.oss.internal.OSSHeaders;
+import com.aliyun.oss.internal.OSSUtils;
 
 /**
  * OSS中Object的元数据。
@@ -39,6 +42,9 @@ public class ObjectMetadata {
 
     // 非用户自定义的元数据。
     private Map<String, Object> metadata = new HashMap<String, Object>();
+    
+    // 尚未解析的响应头，第一次访问元数据时才解析。
+    private volatile Map<String, String> pendingHeaders;
 
     public static final String AES_256_SERVER_SIDE_ENCRYPTION = "AES256";
     
@@ -56,7 +62,7 @@ public class ObjectMetadata {
      * @return 用户自定义的元数据。
      */
     public Map<String, String> getUserMetadata() {
-        return userMetadata;
+        return userMetadata();
     }
 
     /**
@@ -65,9 +71,9 @@ public class ObjectMetadata {
      *          用户自定义的元数据。
      */
     public void setUserMetadata(Map<String, String> userMetadata) {
-        this.userMetadata.clear();
+        userMetadata().clear();
         if (userMetadata != null && !userMetadata.isEmpty()) {
-            this.userMetadata.putAll(userMetadata);
+            userMetadata().putAll(userMetadata);
         }
     }
 
@@ -79,7 +85,7 @@ public class ObjectMetadata {
      *          请求头的Value。
      */
     public void setHeader(String key, Object value) {
-        metadata.put(key, value);
+        metadata().put(key, value);
     }
 
     /**
@@ -91,7 +97,7 @@ public class ObjectMetadata {
      *          请求头的Value。
      */
     public void addUserMetadata(String key, String value) {
-        this.userMetadata.put(key, value);
+        userMetadata().put(key, value);
     }
 
     /**
@@ -99,7 +105,7 @@ public class ObjectMetadata {
      * @return Object最后一次修改的时间。
      */
     public Date getLastModified() {
-        return (Date)metadata.get(OSSHeaders.LAST_MODIFIED);
+        return (Date)metadata().get(OSSHeaders.LAST_MODIFIED);
     }
     
     /**
@@ -108,7 +114,7 @@ public class ObjectMetadata {
      *          Object最后一次修改的时间。
      */
     public void setLastModified(Date lastModified) {
-        metadata.put(OSSHeaders.LAST_MODIFIED, lastModified);
+        metadata().put(OSSHeaders.LAST_MODIFIED, lastModified);
     }
 
     /**
@@ -118,7 +124,7 @@ public class ObjectMetadata {
      * @throws ParseException 无法将Expires解析为Rfc822格式，抛出该异常。
      */
     public Date getExpirationTime() throws ParseException {
-        return DateUtil.parseRfc822Date((String)metadata.get(OSSHeaders.EXPIRES));
+        return DateUtil.parseRfc822Date((String)metadata().get(OSSHeaders.EXPIRES));
     }
     
     /**
@@ -127,7 +133,7 @@ public class ObjectMetadata {
      * @return 原始的Expires响应头。
      */
     public String getRawExpiresValue() {
-        return (String) metadata.get(OSSHeaders.EXPIRES);
+        return (String) metadata().get(OSSHeaders.EXPIRES);
     }
     
     /**
@@ -136,7 +142,7 @@ public class ObjectMetadata {
      *          过期时间。
      */
     public void setExpirationTime(Date expirationTime) {
-        metadata.put(OSSHeaders.EXPIRES, DateUtil.formatRfc822Date(expirationTime));
+        metadata().put(OSSHeaders.EXPIRES, DateUtil.formatRfc822Date(expirationTime));
     }
     
     /**
@@ -144,7 +150,7 @@ public class ObjectMetadata {
      * @return Object内容的大小。
      */
     public long getContentLength() {
-        Long contentLength = (Long)metadata.get(OSSHeaders.CONTENT_LENGTH);        
+        Long contentLength = (Long)metadata().get(OSSHeaders.CONTENT_LENGTH);        
         return contentLength == null ? 0 : contentLength.longValue();
     }
 
@@ -155,7 +161,7 @@ public class ObjectMetadata {
      *          Object内容的大小。
      */
     public void setContentLength(long contentLength) {
-        metadata.put(OSSHeaders.CONTENT_LENGTH, contentLength);
+        metadata().put(OSSHeaders.CONTENT_LENGTH, contentLength);
     }
 
     /**
@@ -163,7 +169,7 @@ public class ObjectMetadata {
      * @return Object内容的类型，为标准的MIME类型。
      */
     public String getContentType() {
-        return (String)metadata.get(OSSHeaders.CONTENT_TYPE);
+        return (String)metadata().get(OSSHeaders.CONTENT_TYPE);
     }
 
     /**
@@ -172,15 +178,15 @@ public class ObjectMetadata {
      *          Object内容的类型，为标准的MIME类型。
      */
     public void setContentType(String contentType) {
-        metadata.put(OSSHeaders.CONTENT_TYPE, contentType);
+        metadata().put(OSSHeaders.CONTENT_TYPE, contentType);
     }
     
     public String getContentMD5() {
-        return (String)metadata.get(OSSHeaders.CONTENT_MD5);
+        return (String)metadata().get(OSSHeaders.CONTENT_MD5);
     }
     
     public void setContentMD5(String contentMD5) {
-        metadata.put(OSSHeaders.CONTENT_MD5, contentMD5);
+        metadata().put(OSSHeaders.CONTENT_MD5, contentMD5);
     }
 
     /**
@@ -188,7 +194,7 @@ public class ObjectMetadata {
      * @return Object内容的编码方式。
      */
     public String getContentEncoding() {
-        return (String)metadata.get(OSSHeaders.CONTENT_ENCODING);
+        return (String)metadata().get(OSSHeaders.CONTENT_ENCODING);
     }
 
     /**
@@ -197,7 +203,7 @@ public class ObjectMetadata {
      *          表示Object内容的编码方式。
      */
     public void setContentEncoding(String encoding) {
-        metadata.put(OSSHeaders.CONTENT_ENCODING, encoding);
+        metadata().put(OSSHeaders.CONTENT_ENCODING, encoding);
     }
 
     /**
@@ -205,7 +211,7 @@ public class ObjectMetadata {
      * @return Cache-Control请求头。
      */
     public String getCacheControl() {
-        return (String)metadata.get(OSSHeaders.CACHE_CONTROL);
+        return (String)metadata().get(OSSHeaders.CACHE_CONTROL);
     }
 
     /**
@@ -214,7 +220,7 @@ public class ObjectMetadata {
      *          Cache-Control请求头。
      */
     public void setCacheControl(String cacheControl) {
-        metadata.put(OSSHeaders.CACHE_CONTROL, cacheControl);
+        metadata().put(OSSHeaders.CACHE_CONTROL, cacheControl);
     }
 
     /**
@@ -222,7 +228,7 @@ public class ObjectMetadata {
      * @return Content-Disposition请求头
      */
     public String getContentDisposition() {
-        return (String)metadata.get(OSSHeaders.CONTENT_DISPOSITION);
+        return (String)metadata().get(OSSHeaders.CONTENT_DISPOSITION);
     }
 
     /**
@@ -231,7 +237,7 @@ public class ObjectMetadata {
      *          Content-Disposition请求头
      */
     public void setContentDisposition(String disposition) {
-        metadata.put(OSSHeaders.CONTENT_DISPOSITION, disposition);
+        metadata().put(OSSHeaders.CONTENT_DISPOSITION, disposition);
     }
 
     /**
@@ -239,7 +245,7 @@ public class ObjectMetadata {
      * @return 与Object相关的hex编码的128位MD5摘要。
      */
     public String getETag() {
-        return (String)metadata.get(OSSHeaders.ETAG);
+        return (String)metadata().get(OSSHeaders.ETAG);
     }
     
     /**
@@ -247,7 +253,7 @@ public class ObjectMetadata {
      * @return 服务器端加密的熵编码，null表示没有进行加密
      */
     public String getServerSideEncryption() {
-        return (String)metadata.get(OSSHeaders.OSS_SERVER_SIDE_ENCRYPTION);
+        return (String)metadata().get(OSSHeaders.OSS_SERVER_SIDE_ENCRYPTION);
     }
 
     /**
@@ -255,7 +261,23 @@ public class ObjectMetadata {
      * @param 服务器端加密的熵编码类型
      */
     public void setServerSideEncryption(String serverSideEncryption) {
-        metadata.put(OSSHeaders.OSS_SERVER_SIDE_ENCRYPTION, serverSideEncryption);
+        metadata().put(OSSHeaders.OSS_SERVER_SIDE_ENCRYPTION, serverSideEncryption);
+    }
+    
+    /**
+     * 获取服务器端计算的Object的CRC64（ECMA-182）校验值。
+     * @return Object的CRC64校验值，服务器没有返回时为null。
+     */
+    public Long getServerCRC() {
+        String crc = (String)metadata().get(OSSHeaders.OSS_HASH_CRC64_ECMA);
+        if (crc == null) {
+            return null;
+        }
+        try {
+            return new BigInteger(crc).longValue();
+        } catch (NumberFormatException nfe) {
+            throw new ClientException(nfe.getMessage(), nfe);
+        }
     }
     
     /**
@@ -263,7 +285,7 @@ public class ObjectMetadata {
      * @return Object存储类型。
      */
     public String getObjectType() {
-        return (String)metadata.get(OSSHeaders.OSS_OBJECT_TYPE);
+        return (String)metadata().get(OSSHeaders.OSS_OBJECT_TYPE);
     }
     
     /**
@@ -271,7 +293,7 @@ public class ObjectMetadata {
      * @param cannedAcl Object访问权限。
      */
     public void setObjectAcl(CannedAccessControlList cannedAcl) {
-        metadata.put(OSSHeaders.OSS_OBJECT_ACL, cannedAcl != null ? cannedAcl.toString() : "");
+        metadata().put(OSSHeaders.OSS_OBJECT_ACL, cannedAcl != null ? cannedAcl.toString() : "");
     }
     
     /**
@@ -279,7 +301,7 @@ public class ObjectMetadata {
      * @return 内部保存的请求头的元数据（内部使用）。
      */
     public Map<String, Object> getRawMetadata() {
-        return Collections.unmodifiableMap(metadata);
+        return Collections.unmodifiableMap(metadata());
     }
     
     /**
@@ -287,6 +309,88 @@ public class ObjectMetadata {
      * @return RequestId。
      */
     public String getRequestId() {
-        return (String)metadata.get(OSSHeaders.OSS_HEADER_REQUEST_ID);
+        return (String)metadata().get(OSSHeaders.OSS_HEADER_REQUEST_ID);
+    }
+    
+    /**
+     * 使用响应头初始化元数据（内部使用）。日期和长度立即解析，其余响应头和用户自定义元数据
+     * 在第一次访问时才解析。
+     * @param headers
+     *          响应头。
+     * @throws ClientException
+     *          Last-Modified或Date响应头不是Rfc822日期格式，或Content-Length响应头不是整数。
+     */
+    public void setResponseHeaders(Map<String, String> headers) {
+        Map<String, Object> parsed = new HashMap<String, Object>();
+        try {
+            for (String key : new String[] { OSSHeaders.LAST_MODIFIED, OSSHeaders.DATE }) {
+                String value = headers.get(key);
+                if (value != null) {
+                    parsed.put(key, DateUtil.parseRfc822Date(value));
+                }
+            }
+            String contentLength = headers.get(OSSHeaders.CONTENT_LENGTH);
+            if (contentLength != null) {
+                parsed.put(OSSHeaders.CONTENT_LENGTH, Long.valueOf(contentLength));
+            }
+        } catch (ParseException pe) {
+            throw new ClientException(pe.getMessage(), pe);
+        } catch (NumberFormatException nfe) {
+            throw new ClientException(nfe.getMessage(), nfe);
+        }
+        
+        synchronized (this) {
+            this.metadata = parsed;
+            this.userMetadata = new HashMap<String, String>();
+            this.pendingHeaders = headers;
+        }
+    }
+    
+    private Map<String, Object> metadata() {
+        parsePendingHeaders();
+        return metadata;
+    }
+    
+    private Map<String, String> userMetadata() {
+        parsePendingHeaders();
+        return userMetadata;
+    }
+    
+    /**
+     * Copies the remaining headers into new maps and publishes them together, 
+     * so other threads see either the pending headers or the complete maps.
+     */
+    private void parsePendingHeaders() {
+        if (pendingHeaders == null) {
+            return;
+        }
+        synchronized (this) {
+            Map<String, String> headers = pendingHeaders;
+            if (headers == null) {
+                return;
+            }
+            
+            Map<String, Object> parsedMetadata = new HashMap<String, Object>(metadata);
+            Map<String, String> parsedUserMetadata = new HashMap<String, String>();
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                String key = header.getKey();
+                String value = header.getValue();
+                
+                if (key.indexOf(OSSHeaders.OSS_USER_METADATA_PREFIX) >= 0) {
+                    key = key.substring(OSSHeaders.OSS_USER_METADATA_PREFIX.length());
+                    parsedUserMetadata.put(key, headers.get(OSSHeaders.OSS_USER_METADATA_PREFIX + key));
+                } else if (parsedMetadata.containsKey(key)) {
+                    // Dates and Content-Length, parsed by setResponseHeaders.
+                    continue;
+                } else if (key.equals(OSSHeaders.ETAG)) {
+                    parsedMetadata.put(key, OSSUtils.trimQuotes(value));
+                } else {
+                    parsedMetadata.put(key, value);
+                }
+            }
+            metadata = parsedMetadata;
+            userMetadata = parsedUserMetadata;
+            pendingHeaders = null;
+        }
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+/**
+ * 并行拷贝请求，将源Object拷贝为目标Object。
+ * 
+ * 源Object小于multipartThreshold时使用CopyObject拷贝，否则按分片大小拆分为多个范围，
+ * 并发发送UploadPartCopy请求后完成分片上传。开启断点续传时，已完成的分片记录在checkpoint文件中，
+ * 再次拷贝时从上次的分片继续；拷贝过程中源Object被修改时拷贝失败，续传时重新拷贝。
+ */
+public class ParallelCopyObjectRequest extends WebServiceRequest {
+    
+    public static final long DEFAULT_MULTIPART_THRESHOLD = 100 * 1024 * 1024L;
+    public static final long DEFAULT_PART_SIZE = 64 * 1024 * 1024L;
+    
+    private static final long MIN_PART_SIZE = 100 * 1024L;
+    private static final long MAX_PART_SIZE = 5 * 1024 * 1024 * 1024L;
+    
+    public ParallelCopyObjectRequest(String sourceBucketName, String sourceKey, 
+            String destinationBucketName, String destinationKey) {
+        this.sourceBucketName = sourceBucketName;
+        this.sourceKey = sourceKey;
+        this.destinationBucketName = destinationBucketName;
+        this.destinationKey = destinationKey;
+    }
+
+    public String getSourceBucketName() {
+        return sourceBucketName;
+    }
+
+    public void setSourceBucketName(String sourceBucketName) {
+        this.sourceBucketName = sourceBucketName;
+    }
+
+    public String getSourceKey() {
+        return sourceKey;
+    }
+
+    public void setSourceKey(String sourceKey) {
+        this.sourceKey = sourceKey;
+    }
+
+    public String getDestinationBucketName() {
+        return destinationBucketName;
+    }
+
+    public void setDestinationBucketName(String destinationBucketName) {
+        this.destinationBucketName = destinationBucketName;
+    }
+
+    public String getDestinationKey() {
+        return destinationKey;
+    }
+
+    public void setDestinationKey(String destinationKey) {
+        this.destinationKey = destinationKey;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * 设置分片大小，范围100KB~5GB，默认64MB。分片数超过10000时自动增大分片大小。
+     * @param partSize
+     *          分片大小，单位字节。
+     */
+    public void setPartSize(long partSize) {
+        if (partSize < MIN_PART_SIZE) {
+            this.partSize = MIN_PART_SIZE;
+        } else if (partSize > MAX_PART_SIZE) {
+            this.partSize = MAX_PART_SIZE;
+        } else {
+            this.partSize = partSize;
+        }
+    }
+
+    public int getTaskNum() {
+        return taskNum;
+    }
+
+    public void setTaskNum(int taskNum) {
+        if (taskNum < 1) {
+            this.taskNum = 1;
+        } else if (taskNum > 1000) {
+            this.taskNum = 1000;
+        } else {
+            this.taskNum = taskNum;
+        }
+    }
+
+    public long getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    /**
+     * 设置使用分片拷贝的大小阈值，小于该值的Object使用CopyObject拷贝。默认100MB，不能超过1GB。
+     * @param multipartThreshold
+     *          分片拷贝阈值，单位字节。
+     */
+    public void setMultipartThreshold(long multipartThreshold) {
+        if (multipartThreshold > 1024 * 1024 * 1024L) {
+            throw new IllegalArgumentException("CopyObject supports objects up to 1GB.");
+        }
+        this.multipartThreshold = multipartThreshold < 0 ? 0 : multipartThreshold;
+    }
+
+    public boolean isEnableCheckpoint() {
+        return enableCheckpoint;
+    }
+
+    public void setEnableCheckpoint(boolean enableCheckpoint) {
+        this.enableCheckpoint = enableCheckpoint;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * 设置断点续传时记录已完成分片的本地文件，开启断点续传时必须指定。
+     * @param checkpointFile
+     *          checkpoint文件。
+     */
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public ObjectMetadata getNewObjectMetadata() {
+        return newObjectMetadata;
+    }
+
+    /**
+     * 设置目标Object的元数据。没有设置时沿用源Object的Content-Type等标准元数据及用户自定义元数据。
+     * @param newObjectMetadata
+     *          目标Object的元数据。
+     */
+    public void setNewObjectMetadata(ObjectMetadata newObjectMetadata) {
+        this.newObjectMetadata = newObjectMetadata;
+    }
+
+    public TransferHandle getTransferHandle() {
+        return transferHandle;
+    }
+
+    /**
+     * 设置传输句柄，用于从其他线程取消本次拷贝。
+     * @param transferHandle
+     *          传输句柄。
+     */
+    public void setTransferHandle(TransferHandle transferHandle) {
+        this.transferHandle = transferHandle;
+    }
+
+    // 源Bucket名称
+    private String sourceBucketName;
+    // 源Object key
+    private String sourceKey;
+    // 目标Bucket名称
+    private String destinationBucketName;
+    // 目标Object key
+    private String destinationKey;
+    // 分片大小，默认64MB
+    private long partSize = DEFAULT_PART_SIZE;
+    // 并发拷贝的分片数，默认5
+    private int taskNum = 5;
+    // 使用分片拷贝的大小阈值，默认100MB
+    private long multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+    // 是否开启断点续传
+    private boolean enableCheckpoint = false;
+    // 断点续传时记录已完成分片的本地文件
+    private String checkpointFile;
+    // 目标Object的元数据
+    private ObjectMetadata newObjectMetadata;
+    // 传输句柄，用于取消拷贝
+    private TransferHandle transferHandle;
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+/**
+ * 并行拷贝的结果。
+ */
+public class ParallelCopyObjectResult {
+    
+    /**
+     * 返回是否使用分片拷贝。
+     */
+    public boolean isMultipart() {
+        return multipartUploadResult != null;
+    }
+    
+    /**
+     * 返回目标Object的ETag。
+     */
+    public String getETag() {
+        if (multipartUploadResult != null) {
+            return multipartUploadResult.getETag();
+        }
+        return copyObjectResult != null ? copyObjectResult.getETag() : null;
+    }
+    
+    /**
+     * 返回源Object的大小，单位字节。
+     */
+    public long getObjectSize() {
+        return objectSize;
+    }
+    
+    public void setObjectSize(long objectSize) {
+        this.objectSize = objectSize;
+    }
+
+    /**
+     * 返回CopyObject的结果，使用分片拷贝时为null。
+     */
+    public CopyObjectResult getCopyObjectResult() {
+        return copyObjectResult;
+    }
+
+    public void setCopyObjectResult(CopyObjectResult copyObjectResult) {
+        this.copyObjectResult = copyObjectResult;
+    }
+
+    /**
+     * 返回完成分片上传的结果，使用CopyObject拷贝时为null。
+     */
+    public CompleteMultipartUploadResult getMultipartUploadResult() {
+        return multipartUploadResult;
+    }
+
+    public void setMultipartUploadResult(CompleteMultipartUploadResult multipartUploadResult) {
+        this.multipartUploadResult = multipartUploadResult;
+    }
+
+    private long objectSize;
+    private CopyObjectResult copyObjectResult;
+    private CompleteMultipartUploadResult multipartUploadResult;
+}
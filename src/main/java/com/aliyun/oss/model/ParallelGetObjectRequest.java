@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+/**
+ * 并发读取Object的请求，用于通过一个按顺序读取的{@link java.io.InputStream}读取大Object。
+ * 
+ * Object按partSize切分为多个范围，同时发起taskNum个范围请求，已下载的范围缓存在内存中，
+ * 最多缓存2 * taskNum个范围，读取方跟不上时暂停下载。单个范围请求失败时只重试该范围；
+ * 每个范围计算CRC64，读完后与Object的CRC64比较。
+ */
+public class ParallelGetObjectRequest extends GenericRequest {
+    
+    public static final long DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    
+    private static final long MIN_PART_SIZE = 100 * 1024;
+    private static final long MAX_PART_SIZE = 512 * 1024 * 1024;
+    
+    public ParallelGetObjectRequest(String bucketName, String key) {
+        super(bucketName, key);
+    }
+    
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * 设置每个范围请求的大小，取值范围100KB~512MB，默认8MB。内存占用最多为2 * taskNum * partSize。
+     * @param partSize
+     *          范围请求的大小。
+     */
+    public void setPartSize(long partSize) {
+        if (partSize < MIN_PART_SIZE) {
+            this.partSize = MIN_PART_SIZE;
+        } else if (partSize > MAX_PART_SIZE) {
+            this.partSize = MAX_PART_SIZE;
+        } else {
+            this.partSize = partSize;
+        }
+    }
+    
+    public ParallelGetObjectRequest withPartSize(long partSize) {
+        setPartSize(partSize);
+        return this;
+    }
+
+    public int getTaskNum() {
+        return taskNum;
+    }
+
+    /**
+     * 设置同时进行的范围请求数，取值范围1~100，默认4。
+     * @param taskNum
+     *          同时进行的范围请求数。
+     */
+    public void setTaskNum(int taskNum) {
+        if (taskNum < 1) {
+            this.taskNum = 1;
+        } else if (taskNum > 100) {
+            this.taskNum = 100;
+        } else {
+            this.taskNum = taskNum;
+        }
+    }
+    
+    public ParallelGetObjectRequest withTaskNum(int taskNum) {
+        setTaskNum(taskNum);
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 设置单个范围请求失败后的最大重试次数，默认3。重试从该范围已收到的数据之后继续。
+     * @param maxRetries
+     *          最大重试次数。
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries < 0 ? 0 : maxRetries;
+    }
+    
+    public ParallelGetObjectRequest withMaxRetries(int maxRetries) {
+        setMaxRetries(maxRetries);
+        return this;
+    }
+
+    public boolean isCrcCheckEnabled() {
+        return crcCheckEnabled;
+    }
+
+    /**
+     * 设置是否校验CRC64，默认开启。开启且服务器返回了Object的CRC64时，读到流末尾时校验，不一致时抛出异常。
+     * @param crcCheckEnabled
+     *          是否校验CRC64。
+     */
+    public void setCrcCheckEnabled(boolean crcCheckEnabled) {
+        this.crcCheckEnabled = crcCheckEnabled;
+    }
+    
+    public ParallelGetObjectRequest withCrcCheckEnabled(boolean crcCheckEnabled) {
+        setCrcCheckEnabled(crcCheckEnabled);
+        return this;
+    }
+
+    // 范围请求的大小，默认8MB
+    private long partSize = DEFAULT_PART_SIZE;
+    // 同时进行的范围请求数，默认4
+    private int taskNum = 4;
+    // 单个范围请求的最大重试次数，默认3
+    private int maxRetries = 3;
+    // 是否校验CRC64，默认开启
+    private boolean crcCheckEnabled = true;
+}
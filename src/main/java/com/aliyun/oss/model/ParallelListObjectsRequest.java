@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.model;
+
+import com.aliyun.oss.internal.OSSUtils;
+
+/**
+ * 并行列举Object请求。
+ * 
+ * 先使用delimiter列举prefix下的目录结构，将每个子目录作为一个分片，
+ * 再由多个线程同时列举各分片，最后按key的顺序合并结果，或不保证顺序直接输出。
+ */
+public class ParallelListObjectsRequest extends GenericRequest {
+    
+    private static final int MAX_RETURNED_KEYS_LIMIT = 1000;
+    
+    public ParallelListObjectsRequest(String bucketName) {
+        super(bucketName);
+    }
+    
+    public ParallelListObjectsRequest(String bucketName, String prefix) {
+        super(bucketName);
+        this.prefix = prefix;
+    }
+    
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+    
+    public ParallelListObjectsRequest withPrefix(String prefix) {
+        setPrefix(prefix);
+        return this;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        if (delimiter == null || delimiter.isEmpty()) {
+            throw new IllegalArgumentException("The delimiter used for sharding should not be empty.");
+        }
+        this.delimiter = delimiter;
+    }
+    
+    public ParallelListObjectsRequest withDelimiter(String delimiter) {
+        setDelimiter(delimiter);
+        return this;
+    }
+
+    public int getTaskNum() {
+        return taskNum;
+    }
+
+    public void setTaskNum(int taskNum) {
+        if (taskNum < 1) {
+            this.taskNum = 1;
+        } else if (taskNum > 1000) {
+            this.taskNum = 1000;
+        } else {
+            this.taskNum = taskNum;
+        }
+    }
+    
+    public ParallelListObjectsRequest withTaskNum(int taskNum) {
+        setTaskNum(taskNum);
+        return this;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+    
+    public ParallelListObjectsRequest withOrdered(boolean ordered) {
+        setOrdered(ordered);
+        return this;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(int maxKeys) {
+        if (maxKeys < 1 || maxKeys > MAX_RETURNED_KEYS_LIMIT) {
+            throw new IllegalArgumentException(
+                    OSSUtils.OSS_RESOURCE_MANAGER.getString("MaxKeysOutOfRange"));
+        }
+        this.maxKeys = maxKeys;
+    }
+
+    public int getMaxShardDepth() {
+        return maxShardDepth;
+    }
+
+    public void setMaxShardDepth(int maxShardDepth) {
+        this.maxShardDepth = maxShardDepth < 1 ? 1 : maxShardDepth;
+    }
+
+    public int getReadAheadPages() {
+        return readAheadPages;
+    }
+
+    public void setReadAheadPages(int readAheadPages) {
+        this.readAheadPages = readAheadPages < 1 ? 1 : readAheadPages;
+    }
+
+    public String getEncodingType() {
+        return encodingType;
+    }
+
+    public void setEncodingType(String encodingType) {
+        this.encodingType = encodingType;
+    }
+
+    // 限定返回的object key必须以prefix作为前缀
+    private String prefix;
+    // 用于发现目录结构、划分分片的分隔符，默认"/"
+    private String delimiter = "/";
+    // 并发列举的线程数，默认10
+    private int taskNum = 10;
+    // 是否按key的顺序输出结果，默认true
+    private boolean ordered = true;
+    // 每次列举请求返回的最大数目，默认1000
+    private int maxKeys = MAX_RETURNED_KEYS_LIMIT;
+    // 分片数少于线程数时，继续向下层目录划分分片的最大深度，默认2
+    private int maxShardDepth = 2;
+    // 每个分片最多预取的页数，默认2
+    private int readAheadPages = 2;
+    // 返回结果的编码方式
+    private String encodingType;
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+/**
+ * 随机读取Object的请求，用于通过可定位的{@link java.nio.channels.ReadableByteChannel}或
+ * {@link java.io.InputStream}读取Object，适用于Parquet、ORC等需要跳跃读取文件尾及列数据的场景。
+ * 
+ * Object按blockSize切分为块，读取的块缓存在内存中；短距离的向前定位沿用当前的范围请求，
+ * 连续读取时范围请求的大小逐步增大，最大为maxReadAhead，随机定位时恢复为初始大小。
+ */
+public class SeekableObjectRequest extends GenericRequest {
+    
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_READ_AHEAD = 16 * 1024 * 1024;
+    public static final long DEFAULT_FORWARD_SEEK_LIMIT = 1024 * 1024;
+    public static final long DEFAULT_BLOCK_CACHE_SIZE = 4 * 1024 * 1024;
+    
+    private static final int MIN_BLOCK_SIZE = 4 * 1024;
+    private static final int MAX_BLOCK_SIZE = 8 * 1024 * 1024;
+    private static final long MAX_READ_AHEAD = 256 * 1024 * 1024;
+    private static final long MAX_FORWARD_SEEK_LIMIT = 64 * 1024 * 1024;
+    private static final long MAX_BLOCK_CACHE_SIZE = 1024 * 1024 * 1024;
+    
+    public SeekableObjectRequest(String bucketName, String key) {
+        super(bucketName, key);
+    }
+    
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 设置块大小，取值范围4KB~8MB，默认64KB。范围请求的起止位置及缓存均以块为单位。
+     * @param blockSize
+     *          块大小。
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE) {
+            this.blockSize = MIN_BLOCK_SIZE;
+        } else if (blockSize > MAX_BLOCK_SIZE) {
+            this.blockSize = MAX_BLOCK_SIZE;
+        } else {
+            this.blockSize = blockSize;
+        }
+    }
+    
+    public SeekableObjectRequest withBlockSize(int blockSize) {
+        setBlockSize(blockSize);
+        return this;
+    }
+
+    public long getMaxReadAhead() {
+        return maxReadAhead;
+    }
+
+    /**
+     * 设置连续读取时单个范围请求的最大大小，最大256MB，默认16MB，不小于4个块。
+     * @param maxReadAhead
+     *          单个范围请求的最大大小。
+     */
+    public void setMaxReadAhead(long maxReadAhead) {
+        this.maxReadAhead = Math.max(1, Math.min(maxReadAhead, MAX_READ_AHEAD));
+    }
+    
+    public SeekableObjectRequest withMaxReadAhead(long maxReadAhead) {
+        setMaxReadAhead(maxReadAhead);
+        return this;
+    }
+
+    public long getForwardSeekLimit() {
+        return forwardSeekLimit;
+    }
+
+    /**
+     * 设置沿用当前范围请求的最大向前定位距离，最大64MB，默认1MB。跳过的数据会被读取并缓存，
+     * 距离更远时关闭当前请求并发起新的范围请求。
+     * @param forwardSeekLimit
+     *          最大向前定位距离。
+     */
+    public void setForwardSeekLimit(long forwardSeekLimit) {
+        this.forwardSeekLimit = Math.max(0, Math.min(forwardSeekLimit, MAX_FORWARD_SEEK_LIMIT));
+    }
+    
+    public SeekableObjectRequest withForwardSeekLimit(long forwardSeekLimit) {
+        setForwardSeekLimit(forwardSeekLimit);
+        return this;
+    }
+
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    /**
+     * 设置缓存最近读取的块所用的内存大小，最大1GB，默认4MB，至少缓存一个块。
+     * @param blockCacheSize
+     *          块缓存的大小。
+     */
+    public void setBlockCacheSize(long blockCacheSize) {
+        this.blockCacheSize = Math.max(0, Math.min(blockCacheSize, MAX_BLOCK_CACHE_SIZE));
+    }
+    
+    public SeekableObjectRequest withBlockCacheSize(long blockCacheSize) {
+        setBlockCacheSize(blockCacheSize);
+        return this;
+    }
+
+    // 块大小，默认64KB
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    // 单个范围请求的最大大小，默认16MB
+    private long maxReadAhead = DEFAULT_MAX_READ_AHEAD;
+    // 沿用当前范围请求的最大向前定位距离，默认1MB
+    private long forwardSeekLimit = DEFAULT_FORWARD_SEEK_LIMIT;
+    // 块缓存的大小，默认4MB
+    private long blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+/**
+ * 流式上传请求，用于通过{@link java.io.OutputStream}上传长度未知的数据。
+ * 
+ * 写入的数据按partSize切分为分片，写满的分片在后台并发上传，同时进行中的分片数不超过taskNum，
+ * 超过时写入方阻塞等待。关闭流时完成分片上传；数据不足一个分片时使用PutObject一次上传。
+ */
+public class StreamUploadRequest extends GenericRequest {
+    
+    public static final long DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    
+    private static final long MIN_PART_SIZE = 100 * 1024;
+    private static final long MAX_PART_SIZE = 512 * 1024 * 1024;
+    
+    public StreamUploadRequest(String bucketName, String key) {
+        super(bucketName, key);
+    }
+    
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * 设置分片大小，取值范围100KB~512MB，默认8MB。每个分片缓冲区占用partSize大小的内存。
+     * @param partSize
+     *          分片大小。
+     */
+    public void setPartSize(long partSize) {
+        if (partSize < MIN_PART_SIZE) {
+            this.partSize = MIN_PART_SIZE;
+        } else if (partSize > MAX_PART_SIZE) {
+            this.partSize = MAX_PART_SIZE;
+        } else {
+            this.partSize = partSize;
+        }
+    }
+    
+    public StreamUploadRequest withPartSize(long partSize) {
+        setPartSize(partSize);
+        return this;
+    }
+
+    public int getTaskNum() {
+        return taskNum;
+    }
+
+    /**
+     * 设置同时上传的分片数，取值范围1~1000，默认3。内存占用最多为(taskNum + 1) * partSize。
+     * @param taskNum
+     *          同时上传的分片数。
+     */
+    public void setTaskNum(int taskNum) {
+        if (taskNum < 1) {
+            this.taskNum = 1;
+        } else if (taskNum > 1000) {
+            this.taskNum = 1000;
+        } else {
+            this.taskNum = taskNum;
+        }
+    }
+    
+    public StreamUploadRequest withTaskNum(int taskNum) {
+        setTaskNum(taskNum);
+        return this;
+    }
+
+    public ObjectMetadata getObjectMetadata() {
+        return objectMetadata;
+    }
+
+    public void setObjectMetadata(ObjectMetadata objectMetadata) {
+        this.objectMetadata = objectMetadata;
+    }
+    
+    public StreamUploadRequest withObjectMetadata(ObjectMetadata objectMetadata) {
+        setObjectMetadata(objectMetadata);
+        return this;
+    }
+
+    // 分片大小，默认8MB
+    private long partSize = DEFAULT_PART_SIZE;
+    // 同时上传的分片数，默认3
+    private int taskNum = 3;
+    // Object的元数据
+    private ObjectMetadata objectMetadata;
+}
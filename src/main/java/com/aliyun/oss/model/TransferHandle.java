@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 传输句柄，用于从其他线程取消进行中的uploadFile/downloadFile。
+ * 
+ * 通过{@link UploadFileRequest#setTransferHandle(TransferHandle)}或
+ * {@link DownloadFileRequest#setTransferHandle(TransferHandle)}传入，调用{@link #cancel()}后，
+ * 尚未开始的分片不再执行，进行中的分片请求被中断，传输方法抛出{@link com.aliyun.oss.ClientException}。
+ * 开启断点续传时，已完成的分片仍记录在checkpoint文件中，可以继续传输。
+ * 每个句柄只用于一次传输。
+ */
+public class TransferHandle {
+    
+    /**
+     * 取消传输，可以重复调用。
+     */
+    public void cancel() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            listeners = new ArrayList<Runnable>(cancelListeners);
+            cancelListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * 注册取消时执行的回调；句柄已取消时立即执行。
+     * @param listener
+     *          取消时执行的回调。
+     */
+    public void addCancelListener(Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+    
+    public synchronized void removeCancelListener(Runnable listener) {
+        cancelListeners.remove(listener);
+    }
+    
+    // 是否已取消
+    private volatile boolean cancelled;
+    // 取消时执行的回调
+    private final List<Runnable> cancelListeners = new ArrayList<Runnable>();
+}
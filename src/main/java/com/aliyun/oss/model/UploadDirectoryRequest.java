@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 目录上传请求，将本地目录下的文件上传到Bucket中指定前缀下。
+ * 
+ * Object的key为keyPrefix与文件相对于目录的路径（以'/'分隔）直接拼接。小于multipartThreshold的文件使用PutObject上传，
+ * 其余文件使用分片上传。所有文件在同一个有界的流水线中上传，同时上传的文件数不超过taskNum。
+ * 指定manifestFile时，上传成功的文件记录在manifest中，再次上传同一目录时跳过大小及修改时间未变的文件。
+ */
+public class UploadDirectoryRequest extends GenericRequest {
+    
+    public static final long DEFAULT_MULTIPART_THRESHOLD = 100 * 1024 * 1024L;
+    public static final long DEFAULT_PART_SIZE = 8 * 1024 * 1024L;
+    
+    public UploadDirectoryRequest(String bucketName, String directory) {
+        super(bucketName);
+        this.directory = directory;
+    }
+    
+    public UploadDirectoryRequest(String bucketName, String directory, String keyPrefix) {
+        super(bucketName);
+        this.directory = directory;
+        this.keyPrefix = keyPrefix;
+    }
+    
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * 设置Object key的前缀，与文件的相对路径直接拼接，需要目录分隔时以'/'结尾。默认为空。
+     * @param keyPrefix
+     *          Object key的前缀。
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+    }
+    
+    public UploadDirectoryRequest withKeyPrefix(String keyPrefix) {
+        setKeyPrefix(keyPrefix);
+        return this;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+    
+    public List<String> getIncludes() {
+        return Collections.unmodifiableList(includes);
+    }
+    
+    /**
+     * 添加包含规则，指定了包含规则时只上传匹配任一规则的文件。
+     * 规则匹配文件的相对路径：'*'匹配不含'/'的任意字符，'**'匹配任意字符，'?'匹配单个字符；
+     * 不含'/'的规则只匹配文件名，例如"*.jpg"。
+     * @param pattern
+     *          包含规则。
+     */
+    public void addInclude(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("The include pattern should not be empty.");
+        }
+        includes.add(pattern);
+    }
+    
+    public UploadDirectoryRequest withInclude(String pattern) {
+        addInclude(pattern);
+        return this;
+    }
+    
+    public List<String> getExcludes() {
+        return Collections.unmodifiableList(excludes);
+    }
+    
+    /**
+     * 添加排除规则，匹配任一排除规则的文件不上传，规则格式同{@link #addInclude(String)}。
+     * @param pattern
+     *          排除规则。
+     */
+    public void addExclude(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("The exclude pattern should not be empty.");
+        }
+        excludes.add(pattern);
+    }
+    
+    public UploadDirectoryRequest withExclude(String pattern) {
+        addExclude(pattern);
+        return this;
+    }
+
+    public int getTaskNum() {
+        return taskNum;
+    }
+
+    public void setTaskNum(int taskNum) {
+        if (taskNum < 1) {
+            this.taskNum = 1;
+        } else if (taskNum > 1000) {
+            this.taskNum = 1000;
+        } else {
+            this.taskNum = taskNum;
+        }
+    }
+    
+    public UploadDirectoryRequest withTaskNum(int taskNum) {
+        setTaskNum(taskNum);
+        return this;
+    }
+
+    public long getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    /**
+     * 设置使用分片上传的文件大小阈值，不小于该值的文件使用分片上传。默认100MB。
+     * @param multipartThreshold
+     *          分片上传阈值，单位字节。
+     */
+    public void setMultipartThreshold(long multipartThreshold) {
+        this.multipartThreshold = multipartThreshold < 1 ? 1 : multipartThreshold;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(long partSize) {
+        if (partSize < 1024 * 100) {
+            this.partSize = 1024 * 100;
+        } else {
+            this.partSize = partSize;
+        }
+    }
+
+    public int getPartTaskNum() {
+        return partTaskNum;
+    }
+
+    /**
+     * 设置分片上传的文件的并发分片数。默认3。
+     * @param partTaskNum
+     *          每个文件的并发分片数。
+     */
+    public void setPartTaskNum(int partTaskNum) {
+        if (partTaskNum < 1) {
+            this.partTaskNum = 1;
+        } else if (partTaskNum > 1000) {
+            this.partTaskNum = 1000;
+        } else {
+            this.partTaskNum = partTaskNum;
+        }
+    }
+
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * 设置是否以同步模式上传，默认关闭。开启后上传每个文件前先获取已有Object的元数据，
+     * 大小相同且CRC64一致（没有CRC64时ETag与文件MD5一致）的文件跳过上传。
+     * @param sync
+     *          是否以同步模式上传。
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+    
+    public UploadDirectoryRequest withSync(boolean sync) {
+        setSync(sync);
+        return this;
+    }
+    
+    public String getChecksumIndexFile() {
+        return checksumIndexFile;
+    }
+
+    /**
+     * 设置缓存本地文件校验值的索引文件，同步模式下未修改的文件不再重新计算校验值，位于上传的目录中时不会被上传。
+     * @param checksumIndexFile
+     *          校验值索引文件，为null时每次都读取文件计算。
+     */
+    public void setChecksumIndexFile(String checksumIndexFile) {
+        this.checksumIndexFile = checksumIndexFile;
+    }
+    
+    public String getManifestFile() {
+        return manifestFile;
+    }
+
+    /**
+     * 设置记录上传进度的manifest文件，位于上传的目录中时不会被上传。全部文件上传成功后manifest文件被删除。
+     * 分片上传的文件同时在manifest旁记录分片的checkpoint，续传时从上次的分片继续。
+     * @param manifestFile
+     *          manifest文件，为null时不记录上传进度。
+     */
+    public void setManifestFile(String manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+    
+    public UploadDirectoryRequest withManifestFile(String manifestFile) {
+        setManifestFile(manifestFile);
+        return this;
+    }
+
+    // 需要上传的本地目录
+    private String directory;
+    // Object key的前缀
+    private String keyPrefix = "";
+    // 是否上传子目录中的文件，默认true
+    private boolean recursive = true;
+    // 包含规则
+    private final List<String> includes = new ArrayList<String>();
+    // 排除规则
+    private final List<String> excludes = new ArrayList<String>();
+    // 同时上传的文件数，默认10
+    private int taskNum = 10;
+    // 使用分片上传的文件大小阈值，默认100MB
+    private long multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+    // 分片大小，默认8MB
+    private long partSize = DEFAULT_PART_SIZE;
+    // 每个分片上传的文件的并发分片数，默认3
+    private int partTaskNum = 3;
+    // 是否以同步模式上传，默认关闭
+    private boolean sync = false;
+    // 缓存本地文件校验值的索引文件
+    private String checksumIndexFile;
+    // 记录上传进度的manifest文件
+    private String manifestFile;
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 目录上传的结果，包括汇总的文件数、字节数、吞吐量和上传失败的文件。
+ */
+public class UploadDirectoryResult extends GenericResult {
+    
+    /**
+     * 上传失败的文件。
+     */
+    public static class UploadFailure {
+        
+        public UploadFailure(String file, String key, String errorCode, String errorMessage) {
+            this.file = file;
+            this.key = key;
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+        }
+        
+        public String getFile() {
+            return file;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public String getErrorCode() {
+            return errorCode;
+        }
+        
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+        
+        private final String file;
+        private final String key;
+        private final String errorCode;
+        private final String errorMessage;
+    }
+    
+    /**
+     * 返回本次上传成功的文件数。
+     */
+    public synchronized long getUploadedCount() {
+        return uploadedCount;
+    }
+    
+    /**
+     * 返回本次上传成功的字节数。
+     */
+    public synchronized long getUploadedBytes() {
+        return uploadedBytes;
+    }
+    
+    /**
+     * 返回使用分片上传的文件数。
+     */
+    public synchronized long getMultipartCount() {
+        return multipartCount;
+    }
+    
+    /**
+     * 返回manifest中记录已上传且未修改、本次跳过的文件数。
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+    
+    /**
+     * 返回同步模式下与已有Object一致、本次跳过的文件数。
+     */
+    public synchronized long getUnchangedCount() {
+        return unchangedCount;
+    }
+    
+    /**
+     * 返回上传失败的文件数。
+     */
+    public synchronized long getFailedCount() {
+        return failures.size();
+    }
+    
+    /**
+     * 返回上传失败的文件及原因。
+     */
+    public synchronized List<UploadFailure> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<UploadFailure>(failures));
+    }
+    
+    /**
+     * 返回目录上传的用时，单位毫秒。
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    /**
+     * 返回平均吞吐量，单位字节/秒。
+     */
+    public synchronized double getBytesPerSecond() {
+        return elapsedMillis > 0 ? uploadedBytes * 1000.0 / elapsedMillis : 0;
+    }
+    
+    /**
+     * 返回平均每秒上传的文件数。
+     */
+    public synchronized double getFilesPerSecond() {
+        return elapsedMillis > 0 ? uploadedCount * 1000.0 / elapsedMillis : 0;
+    }
+    
+    public synchronized void addUploaded(long bytes, boolean multipart) {
+        uploadedCount++;
+        uploadedBytes += bytes;
+        if (multipart) {
+            multipartCount++;
+        }
+    }
+    
+    public synchronized void addSkipped() {
+        skippedCount++;
+    }
+    
+    public synchronized void addUnchanged() {
+        unchangedCount++;
+    }
+    
+    public synchronized void addFailure(UploadFailure failure) {
+        failures.add(failure);
+    }
+    
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    private long uploadedCount;
+    private long uploadedBytes;
+    private long multipartCount;
+    private long skippedCount;
+    private long unchangedCount;
+    private final List<UploadFailure> failures = new ArrayList<UploadFailure>();
+    private volatile long elapsedMillis;
+}
@@ -83,6 +83,104 @@ public class UploadFileRequest extends GenericRequest {
         }
     }
 
+    public TransferHandle getTransferHandle() {
+        return transferHandle;
+    }
+
+    /**
+     * 设置传输句柄，用于从其他线程取消本次传输。
+     * @param transferHandle
+     *          传输句柄。
+     */
+    public void setTransferHandle(TransferHandle transferHandle) {
+        this.transferHandle = transferHandle;
+    }
+    
+    public boolean isAbortOnFailure() {
+        return abortOnFailure;
+    }
+
+    /**
+     * 设置上传失败或被取消时是否调用AbortMultipartUpload删除已上传的分片，默认开启。
+     * 仅在没有开启断点续传时生效，开启断点续传时保留分片供续传。
+     * @param abortOnFailure
+     *          失败时是否取消分片上传。
+     */
+    public void setAbortOnFailure(boolean abortOnFailure) {
+        this.abortOnFailure = abortOnFailure;
+    }
+    
+    public boolean isAutoTuning() {
+        return autoTuning;
+    }
+
+    /**
+     * 设置是否自动调整分片大小及并发数，默认关闭。开启后忽略partSize，根据文件大小及taskNum选择分片大小，
+     * 传输过程中根据分片的吞吐量及失败率在1~taskNum之间调整并发分片数。分片的划分记录在checkpoint中，断点续传时保持不变。
+     * @param autoTuning
+     *          是否自动调整分片大小及并发数。
+     */
+    public void setAutoTuning(boolean autoTuning) {
+        this.autoTuning = autoTuning;
+    }
+    
+    public boolean isChecksumPipelined() {
+        return checksumPipelined;
+    }
+
+    /**
+     * 设置是否以流水线方式计算分片的校验值，默认关闭。开启后分片的CRC64在单独的线程上提前计算，
+     * 与其他分片的发送同时进行，上传线程只负责发送；所有分片上传完成后，合并各分片的CRC64与服务器端的CRC64比较，
+     * 不一致时抛出{@link com.aliyun.oss.ClientException}。
+     * @param checksumPipelined
+     *          是否以流水线方式计算校验值。
+     */
+    public void setChecksumPipelined(boolean checksumPipelined) {
+        this.checksumPipelined = checksumPipelined;
+    }
+    
+    public boolean isContentMD5Enabled() {
+        return contentMD5Enabled;
+    }
+
+    /**
+     * 设置流水线模式下是否同时计算分片的MD5并设置Content-MD5请求头，由服务器端校验分片内容，默认关闭。
+     * 仅在开启流水线方式计算校验值时生效。
+     * @param contentMD5Enabled
+     *          是否计算分片的MD5。
+     */
+    public void setContentMD5Enabled(boolean contentMD5Enabled) {
+        this.contentMD5Enabled = contentMD5Enabled;
+    }
+    
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * 设置是否以同步模式上传，默认关闭。开启后先获取已有Object的元数据，大小相同且CRC64一致
+     * （没有CRC64时ETag与文件MD5一致）时跳过上传。
+     * @param sync
+     *          是否以同步模式上传。
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+    
+    public String getChecksumIndexFile() {
+        return checksumIndexFile;
+    }
+
+    /**
+     * 设置缓存本地文件校验值的索引文件。同步模式下按文件路径、大小及最后修改时间缓存CRC64和MD5，
+     * 文件未修改时不再重新计算。没有指定时每次都读取文件计算。
+     * @param checksumIndexFile
+     *          校验值索引文件。
+     */
+    public void setChecksumIndexFile(String checksumIndexFile) {
+        this.checksumIndexFile = checksumIndexFile;
+    }
+    
     public String getUploadFile() {
         return uploadFile;
     }
@@ -127,6 +225,20 @@ public class UploadFileRequest extends GenericRequest {
     private long partSize = 1024 * 100;
     // 分片上传线程数，默认1
     private int taskNum = 1;
+    // 是否自动调整分片大小及并发数，默认关闭
+    private boolean autoTuning = false;
+    // 传输句柄，用于取消传输
+    private TransferHandle transferHandle;
+    // 没有开启断点续传时，失败后是否取消分片上传，默认开启
+    private boolean abortOnFailure = true;
+    // 是否以流水线方式计算分片的校验值，默认关闭
+    private boolean checksumPipelined = false;
+    // 流水线模式下是否计算分片的MD5，默认关闭
+    private boolean contentMD5Enabled = false;
+    // 是否以同步模式上传，默认关闭
+    private boolean sync = false;
+    // 缓存本地文件校验值的索引文件
+    private String checksumIndexFile;
     // 需要上传的本地文件
     private String uploadFile;
     // 是否开启断点续传
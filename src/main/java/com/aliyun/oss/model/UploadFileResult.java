@@ -34,6 +34,19 @@ public class UploadFileResult {
         this.multipartUploadResult = multipartUploadResult;
     }
     
+    /**
+     * 同步模式下，本地文件与已有的Object一致而没有上传时返回true，此时没有分片上传结果。
+     * @return 是否跳过了上传。
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(boolean skipped) {
+        this.skipped = skipped;
+    }
+    
     private CompleteMultipartUploadResult multipartUploadResult;
+    private boolean skipped;
     
 }
@@ -36,6 +36,8 @@ public class UploadPartRequest extends GenericRequest {
 
     private String md5Digest;
 
+    private Long partCRC64;
+
     private InputStream inputStream;
     
     private boolean useChunkEncoding = false;
@@ -153,6 +155,24 @@ public class UploadPartRequest extends GenericRequest {
         this.md5Digest = md5Digest;
     }
 
+    /**
+     * 返回预先计算的分块（Part）数据的CRC64校验值。
+     * @return 分块（Part）数据的CRC64校验值，未预先计算时为null。
+     */
+    public Long getPartCRC64() {
+        return partCRC64;
+    }
+
+    /**
+     * 设置预先计算的分块（Part）数据的CRC64校验值。设置后发送时不再在发送线程上计算CRC64，
+     * 上传结果的客户端CRC64即为该值，因此必须与数据流的内容一致。
+     * @param partCRC64
+     *          分块（Part）数据的CRC64校验值。
+     */
+    public void setPartCRC64(Long partCRC64) {
+        this.partCRC64 = partCRC64;
+    }
+
     /**
      * 获取是否采用Chunked编码方式传输请求数据。
      * @return 是否采用Chunked编码方式
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.AdaptiveConcurrency;
+
+public class AdaptiveConcurrencyTest {
+    
+    private static final long MB = 1024 * 1024;
+    
+    @Test
+    public void testChoosePartSize() {
+        // Small objects use the minimum part size.
+        assertEquals(MB, AdaptiveConcurrency.choosePartSize(3 * MB, 4));
+        // A few parts per task, aligned to 256KB.
+        assertEquals(1280 * 1024, AdaptiveConcurrency.choosePartSize(10 * MB, 2));
+        // Large objects are capped at 64MB per part.
+        assertEquals(64 * MB, AdaptiveConcurrency.choosePartSize(100L * 1024 * MB, 4));
+        // Unless the 10000 part limit needs larger parts.
+        long huge = 1024L * 1024 * MB;
+        long partSize = AdaptiveConcurrency.choosePartSize(huge, 4);
+        assertTrue(partSize > 64 * MB);
+        assertTrue((huge + partSize - 1) / partSize <= AdaptiveConcurrency.MAX_PART_COUNT);
+    }
+    
+    @Test
+    public void testFailuresHalveConcurrency() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(16);
+        assertEquals(8, concurrency.getLimit());
+        
+        for (int i = 0; i < 7; i++) {
+            concurrency.onPartFinished(MB, false);
+        }
+        concurrency.onPartFinished(MB, true);
+        assertEquals(4, concurrency.getLimit());
+        
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < concurrency.getLimit(); j++) {
+                concurrency.onPartFinished(0, true);
+            }
+        }
+        assertEquals(1, concurrency.getLimit());
+    }
+    
+    @Test
+    public void testGrowsWhileThroughputImproves() throws InterruptedException {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(3);
+        assertEquals(2, concurrency.getLimit());
+        
+        Thread.sleep(5);
+        concurrency.onPartFinished(MB, false);
+        concurrency.onPartFinished(MB, false);
+        assertEquals(3, concurrency.getLimit());
+        assertTrue(concurrency.getThroughput() > 0);
+        
+        // Never above the maximum.
+        for (int i = 0; i < 30; i++) {
+            concurrency.onPartFinished(100 * MB, false);
+        }
+        assertTrue(concurrency.getLimit() <= 3);
+    }
+}
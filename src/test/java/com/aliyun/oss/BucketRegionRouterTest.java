@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.common.auth.CredentialsProvider;
+import com.aliyun.oss.common.auth.DefaultCredentialProvider;
+import com.aliyun.oss.common.auth.DefaultCredentials;
+import com.aliyun.oss.common.comm.ExecutionContext;
+import com.aliyun.oss.common.comm.RequestMessage;
+import com.aliyun.oss.common.comm.ResponseMessage;
+import com.aliyun.oss.common.comm.RetryStrategy;
+import com.aliyun.oss.common.comm.ServiceClient;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.GenericRequest;
+
+public class BucketRegionRouterTest {
+    
+    private static final String BUCKET = "bucket";
+    private static final String WRONG_ENDPOINT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error>"
+            + "<Code>AccessDenied</Code><Message>The bucket you are attempting to access must be addressed "
+            + "using the specified endpoint. Please send all future requests to this endpoint.</Message>"
+            + "<RequestId>1</RequestId><HostId>h</HostId></Error>";
+    
+    /**
+     * Records the host of every request and answers it from the host of the 
+     * bucket's region; other hosts get the wrong-endpoint error.
+     */
+    static class RegionServiceClient extends ServiceClient {
+        
+        final List<String> hosts = Collections.synchronizedList(new ArrayList<String>());
+        volatile String bucketHost;
+        
+        RegionServiceClient() {
+            super(new ClientConfiguration());
+        }
+        
+        @Override
+        protected ResponseMessage sendRequestCore(ServiceClient.Request request, ExecutionContext context)
+                throws IOException {
+            String host = URI.create(request.getUri()).getHost();
+            hosts.add(host);
+            ResponseMessage response = new ResponseMessage(request);
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("x-oss-request-id", "1");
+            if (bucketHost == null || bucketHost.equals(host)) {
+                response.setStatusCode(200);
+                headers.put("ETag", "\"E1\"");
+            } else {
+                response.setStatusCode(403);
+                response.setContent(new ByteArrayInputStream(WRONG_ENDPOINT.getBytes("UTF-8")));
+            }
+            response.setHeaders(headers);
+            return response;
+        }
+        
+        @Override
+        protected RetryStrategy getDefaultRetryStrategy() {
+            return new RetryStrategy() {
+                @Override
+                public boolean shouldRetry(Exception ex, RequestMessage request, ResponseMessage response, int retries) {
+                    return false;
+                }
+            };
+        }
+        
+        @Override
+        public void shutdown() {
+        }
+    }
+    
+    /**
+     * Answers GetBucketLocation from a map instead of OSS.
+     */
+    static class FakeRouter extends BucketRegionRouter {
+        
+        final Map<String, String> regions = Collections.synchronizedMap(new HashMap<String, String>());
+        final AtomicInteger locates = new AtomicInteger();
+        volatile long locateMillis;
+        
+        FakeRouter(ServiceClient client, CredentialsProvider credsProvider) {
+            super(client, credsProvider);
+        }
+        
+        @Override
+        protected String locate(String bucketName, URI endpoint) {
+            locates.incrementAndGet();
+            if (locateMillis > 0) {
+                try {
+                    Thread.sleep(locateMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String region = regions.get(bucketName);
+            if (region == null) {
+                throw new OSSException("Access Denied", OSSErrorCode.ACCESS_DENIED, null, null, null, null, null);
+            }
+            return region;
+        }
+    }
+    
+    private final RegionServiceClient client = new RegionServiceClient();
+    private final CredentialsProvider credsProvider = 
+            new DefaultCredentialProvider(new DefaultCredentials("id", "secret"));
+    private final FakeRouter router = new FakeRouter(client, credsProvider);
+    
+    private OSSObjectOperation objectOperation(String endpoint) {
+        OSSObjectOperation objectOperation = new OSSObjectOperation(client, credsProvider);
+        objectOperation.setEndpoint(URI.create(endpoint));
+        objectOperation.setRegionRouter(router);
+        return objectOperation;
+    }
+    
+    @Test
+    public void testRequestsGoToBucketRegion() {
+        router.regions.put(BUCKET, "oss-cn-beijing");
+        OSSObjectOperation objectOperation = objectOperation("http://oss-cn-hangzhou.aliyuncs.com");
+        
+        for (int i = 0; i < 3; i++) {
+            objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "key" + i));
+        }
+        assertEquals(1, router.locates.get());
+        assertEquals(Collections.nCopies(3, "bucket.oss-cn-beijing.aliyuncs.com"), client.hosts);
+    }
+    
+    @Test
+    public void testInternalEndpointAndPortAreKept() {
+        router.regions.put(BUCKET, "oss-cn-shanghai");
+        assertEquals(URI.create("https://oss-cn-shanghai-internal.aliyuncs.com:8443"), 
+                router.resolve(BUCKET, URI.create("https://oss-cn-hangzhou-internal.aliyuncs.com:8443")));
+    }
+    
+    @Test
+    public void testCustomEndpointsAreNotRouted() {
+        router.regions.put(BUCKET, "oss-cn-beijing");
+        URI cname = URI.create("http://static.example.com");
+        assertEquals(cname, router.resolve(BUCKET, cname));
+        URI accelerate = URI.create("http://oss-accelerate.aliyuncs.com");
+        assertEquals(accelerate, router.resolve(BUCKET, accelerate));
+        assertEquals(0, router.locates.get());
+        
+        URI proxy = URI.create("http://beijing-proxy.example.com");
+        router.setRegionEndpoint("oss-cn-beijing", proxy);
+        assertEquals(proxy, router.resolve(BUCKET, cname));
+        assertEquals(1, router.locates.get());
+    }
+    
+    @Test
+    public void testUnreadableLocationUsesConfiguredEndpoint() {
+        OSSObjectOperation objectOperation = objectOperation("http://oss-cn-hangzhou.aliyuncs.com");
+        objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "key"));
+        objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "key"));
+        assertEquals(1, router.locates.get());
+        assertEquals(Collections.nCopies(2, "bucket.oss-cn-hangzhou.aliyuncs.com"), client.hosts);
+    }
+    
+    @Test
+    public void testMovedBucketIsRelocated() {
+        router.regions.put(BUCKET, "oss-cn-beijing");
+        OSSObjectOperation objectOperation = objectOperation("http://oss-cn-hangzhou.aliyuncs.com");
+        objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "key"));
+        
+        router.regions.put(BUCKET, "oss-cn-shenzhen");
+        client.bucketHost = "bucket.oss-cn-shenzhen.aliyuncs.com";
+        assertEquals("E1", objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "key")).getETag());
+        assertEquals(1, router.getRefreshCount());
+        assertEquals(2, router.locates.get());
+        assertEquals(3, client.hosts.size());
+        assertEquals("bucket.oss-cn-shenzhen.aliyuncs.com", client.hosts.get(2));
+        
+        // No other endpoint to try: the error is reported.
+        client.bucketHost = "bucket.oss-cn-qingdao.aliyuncs.com";
+        try {
+            objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "key"));
+            fail("OSSException expected");
+        } catch (OSSException e) {
+            assertEquals(OSSErrorCode.ACCESS_DENIED, e.getErrorCode());
+        }
+        assertEquals(4, client.hosts.size());
+        assertEquals(3, router.locates.get());
+    }
+    
+    @Test
+    public void testConcurrentLookupsAreShared() throws Exception {
+        router.regions.put(BUCKET, "oss-cn-beijing");
+        router.locateMillis = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<URI>> futures = new ArrayList<Future<URI>>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(executor.submit(new Callable<URI>() {
+                    @Override
+                    public URI call() {
+                        return router.resolve(BUCKET, URI.create("http://oss-cn-hangzhou.aliyuncs.com"));
+                    }
+                }));
+            }
+            for (Future<URI> future : futures) {
+                assertEquals(URI.create("http://oss-cn-beijing.aliyuncs.com"), future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, router.locates.get());
+    }
+}
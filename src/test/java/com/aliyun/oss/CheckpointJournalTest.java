@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.CheckpointJournal;
+import com.aliyun.oss.internal.OSSMultipartOperation;
+import com.aliyun.oss.internal.OSSUploadOperation;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.UploadFileRequest;
+import com.aliyun.oss.model.UploadPartRequest;
+import com.aliyun.oss.model.UploadPartResult;
+
+public class CheckpointJournalTest {
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes();
+    }
+    
+    @Test
+    public void testAppendAndRead() throws IOException {
+        File file = File.createTempFile("journal", ".ucp");
+        file.deleteOnExit();
+        
+        CheckpointJournal journal = CheckpointJournal.create(file.getPath(), bytes("header"), 
+                Arrays.asList(bytes("part-1")), 2, Long.MAX_VALUE);
+        journal.append(bytes("part-2"));
+        journal.append(bytes("part-3"));
+        journal.close();
+        
+        assertTrue(CheckpointJournal.isJournal(file.getPath()));
+        CheckpointJournal.Contents contents = CheckpointJournal.read(file.getPath());
+        assertArrayEquals(bytes("header"), contents.getHeader());
+        assertEquals(3, contents.getRecords().size());
+        assertArrayEquals(bytes("part-3"), contents.getRecords().get(2));
+    }
+    
+    @Test
+    public void testTornTailAndCompaction() throws IOException {
+        File file = File.createTempFile("journal", ".dcp");
+        file.deleteOnExit();
+        
+        CheckpointJournal journal = CheckpointJournal.create(file.getPath(), bytes("header"), 
+                new ArrayList<byte[]>());
+        journal.append(bytes("part-1"));
+        journal.append(bytes("part-2"));
+        journal.close();
+        
+        // Simulate a crash in the middle of the last record.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        
+        CheckpointJournal.Contents contents = CheckpointJournal.read(file.getPath());
+        assertEquals(1, contents.getRecords().size());
+        assertArrayEquals(bytes("part-1"), contents.getRecords().get(0));
+        
+        journal = CheckpointJournal.create(file.getPath(), contents.getHeader(), contents.getRecords());
+        journal.append(bytes("part-2"));
+        journal.compact(bytes("header-2"), Collections.singletonList(bytes("part-all")));
+        journal.close();
+        
+        contents = CheckpointJournal.read(file.getPath());
+        assertArrayEquals(bytes("header-2"), contents.getHeader());
+        assertEquals(1, contents.getRecords().size());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+    
+    @Test
+    public void testNotAJournal() throws IOException {
+        File file = File.createTempFile("legacy", ".ucp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { (byte) 0xAC, (byte) 0xED, 0, 5 });
+        out.close();
+        
+        assertFalse(CheckpointJournal.isJournal(file.getPath()));
+        try {
+            CheckpointJournal.read(file.getPath());
+            fail("Legacy checkpoint should not be read as a journal.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+    
+    /**
+     * Fails the first attempt of one part and records the uploaded parts.
+     */
+    private static class FlakyMultipartOperation extends OSSMultipartOperation {
+        
+        final List<Integer> uploadedParts = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Long> uploadedSizes = Collections.synchronizedList(new ArrayList<Long>());
+        List<PartETag> completedParts;
+        int initiated;
+        int failingPart = 4;
+        
+        FlakyMultipartOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            initiated++;
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload-" + initiated);
+            return result;
+        }
+        
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            if (request.getPartNumber() == failingPart) {
+                failingPart = -1;
+                throw new ClientException("Simulated part failure");
+            }
+            try {
+                InputStream in = request.getInputStream();
+                long remaining = request.getPartSize();
+                byte[] buffer = new byte[4096];
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    remaining -= read;
+                }
+            } catch (IOException e) {
+                throw new ClientException(e);
+            }
+            uploadedParts.add(request.getPartNumber());
+            uploadedSizes.add(request.getPartSize());
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        }
+        
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completedParts = new ArrayList<PartETag>(request.getPartETags());
+            return new CompleteMultipartUploadResult();
+        }
+    }
+    
+    @Test
+    public void testResumeUploadFromJournal() throws Throwable {
+        File upload = File.createTempFile("upload", ".dat");
+        upload.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(upload, "rw");
+        raf.setLength(10 * 100 * 1024);
+        raf.close();
+        File checkpoint = new File(upload.getPath() + ".ucp");
+        checkpoint.deleteOnExit();
+        
+        FlakyMultipartOperation multipartOperation = new FlakyMultipartOperation();
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation);
+        UploadFileRequest request = new UploadFileRequest("bucket", "key");
+        request.setUploadFile(upload.getPath());
+        request.setPartSize(100 * 1024);
+        request.setTaskNum(3);
+        request.setEnableCheckpoint(true);
+        
+        try {
+            uploadOperation.uploadFile(request);
+            fail("The first attempt should fail.");
+        } catch (ClientException e) {
+            assertEquals("Simulated part failure", e.getErrorMessage());
+        }
+        
+        // The failure stops the remaining parts, the finished ones are journaled.
+        int firstRun = multipartOperation.uploadedParts.size();
+        assertTrue(CheckpointJournal.isJournal(checkpoint.getPath()));
+        assertEquals(firstRun, CheckpointJournal.read(checkpoint.getPath()).getRecords().size());
+        
+        multipartOperation.uploadedParts.clear();
+        uploadOperation.uploadFile(request);
+        
+        assertEquals(10 - firstRun, multipartOperation.uploadedParts.size());
+        assertTrue(multipartOperation.uploadedParts.contains(4));
+        assertEquals(1, multipartOperation.initiated);
+        assertEquals(10, multipartOperation.completedParts.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, multipartOperation.completedParts.get(i).getPartNumber());
+        }
+        assertFalse(checkpoint.exists());
+    }
+    
+    @Test
+    public void testResumeKeepsAutoTunedPartBoundaries() throws Throwable {
+        File upload = File.createTempFile("upload", ".dat");
+        upload.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(upload, "rw");
+        raf.setLength(10 * 1024 * 1024);
+        raf.close();
+        new File(upload.getPath() + ".ucp").deleteOnExit();
+        
+        FlakyMultipartOperation multipartOperation = new FlakyMultipartOperation();
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation);
+        UploadFileRequest request = new UploadFileRequest("bucket", "key");
+        request.setUploadFile(upload.getPath());
+        request.setTaskNum(2);
+        request.setAutoTuning(true);
+        request.setEnableCheckpoint(true);
+        
+        try {
+            uploadOperation.uploadFile(request);
+            fail("The first attempt should fail.");
+        } catch (ClientException e) {
+            // expected
+        }
+        // 10MB over 2 tasks with 4 parts each gives 1.25MB parts.
+        int firstRun = multipartOperation.uploadedParts.size();
+        assertEquals(Long.valueOf(1280 * 1024), multipartOperation.uploadedSizes.get(0));
+        
+        // The resumed upload keeps the recorded boundaries whatever the request says.
+        multipartOperation.uploadedParts.clear();
+        multipartOperation.uploadedSizes.clear();
+        request.setAutoTuning(false);
+        request.setPartSize(100 * 1024);
+        uploadOperation.uploadFile(request);
+        
+        assertEquals(8 - firstRun, multipartOperation.uploadedParts.size());
+        assertTrue(multipartOperation.uploadedParts.contains(4));
+        for (Long size : multipartOperation.uploadedSizes) {
+            assertEquals(Long.valueOf(1280 * 1024), size);
+        }
+        assertEquals(8, multipartOperation.completedParts.size());
+    }
+}
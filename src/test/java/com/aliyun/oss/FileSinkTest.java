@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.FileSink;
+import com.aliyun.oss.internal.OSSDownloadOperation;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.DownloadFileRequest;
+import com.aliyun.oss.model.DownloadFileResult;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.SimplifiedObjectMeta;
+
+public class FileSinkTest {
+    
+    /**
+     * Serves ranged GETs of one in-memory object.
+     */
+    static class RangeObjectOperation extends OSSObjectOperation {
+        
+        final byte[] data;
+        final List<long[]> ranges = Collections.synchronizedList(new ArrayList<long[]>());
+        
+        RangeObjectOperation(byte[] data) {
+            super(null, null);
+            this.data = data;
+        }
+        
+        @Override
+        public SimplifiedObjectMeta getSimplifiedObjectMetaFromServer(GenericRequest request) {
+            SimplifiedObjectMeta meta = new SimplifiedObjectMeta();
+            meta.setSize(data.length);
+            meta.setETag("etag");
+            meta.setLastModified(new Date(0));
+            return meta;
+        }
+        
+        @Override
+        public OSSObject getObjectFromServer(GetObjectRequest request) {
+            long[] range = request.getRange();
+            ranges.add(range);
+            int start = range != null ? (int) range[0] : 0;
+            int end = range != null ? (int) range[1] : data.length - 1;
+            OSSObject object = new OSSObject();
+            object.setObjectMetadata(new ObjectMetadata());
+            object.setObjectContent(new ByteArrayInputStream(data, start, end - start + 1));
+            return object;
+        }
+    }
+    
+    /**
+     * Breaks the first response after failAfter bytes.
+     */
+    static class FlakyRangeObjectOperation extends RangeObjectOperation {
+        
+        volatile long failAfter;
+        
+        FlakyRangeObjectOperation(byte[] data, long failAfter) {
+            super(data);
+            this.failAfter = failAfter;
+        }
+        
+        @Override
+        public OSSObject getObjectFromServer(GetObjectRequest request) {
+            OSSObject object = super.getObjectFromServer(request);
+            if (failAfter > 0) {
+                final long limit = failAfter;
+                failAfter = 0;
+                object.setObjectContent(new FilterInputStream(object.getObjectContent()) {
+                    private long read;
+                    
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        if (read >= limit) {
+                            throw new IOException("Connection reset");
+                        }
+                        int n = super.read(b, off, (int) Math.min(len, limit - read));
+                        read += Math.max(n, 0);
+                        return n;
+                    }
+                });
+            }
+            return object;
+        }
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+    
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("sink", ".dat");
+        file.deleteOnExit();
+        return file;
+    }
+    
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int off = 0;
+            while (off < content.length) {
+                off += in.read(content, off, content.length - off);
+            }
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+    
+    @Test
+    public void testConcurrentPositionalWrites() throws Exception {
+        final byte[] data = randomBytes(3 * FileSink.BUFFER_SIZE + 12345);
+        File file = tempFile();
+        FileSink.allocate(file, data.length, false);
+        
+        final FileSink sink = FileSink.open(file, false);
+        final int partSize = 100 * 1024;
+        List<Thread> writers = new ArrayList<Thread>();
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+        for (int offset = 0; offset < data.length; offset += partSize) {
+            final int start = offset;
+            final int length = Math.min(partSize, data.length - offset);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sink.write(start, new ByteArrayInputStream(data, start, length), length);
+                    } catch (IOException e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        sink.close();
+        
+        assertTrue(errors.isEmpty());
+        assertArrayEquals(data, read(file));
+    }
+    
+    @Test
+    public void testMemoryMappedWrite() throws Exception {
+        byte[] data = randomBytes(500 * 1024);
+        File file = tempFile();
+        FileSink.allocate(file, data.length, false);
+        
+        FileSink sink = FileSink.open(file, true);
+        try {
+            assertEquals(200 * 1024, sink.write(300 * 1024, new ByteArrayInputStream(data, 300 * 1024, 200 * 1024), 
+                    200 * 1024));
+            assertEquals(300 * 1024, sink.write(0, new ByteArrayInputStream(data, 0, 300 * 1024), 300 * 1024));
+        } finally {
+            sink.close();
+        }
+        assertArrayEquals(data, read(file));
+    }
+    
+    @Test
+    public void testMemoryMappedWriteIsCapped() throws Exception {
+        byte[] data = randomBytes(500 * 1024);
+        File file = tempFile();
+        FileSink.allocate(file, data.length, false);
+        
+        FileSink sink = FileSink.open(file, true, 300 * 1024);
+        try {
+            sink.write(0, new ByteArrayInputStream(data, 0, 200 * 1024), 200 * 1024);
+            assertEquals(200 * 1024, sink.getMappedBytes());
+            // Over the budget: written through buffers instead.
+            sink.write(200 * 1024, new ByteArrayInputStream(data, 200 * 1024, 300 * 1024), 300 * 1024);
+            assertEquals(200 * 1024, sink.getMappedBytes());
+        } finally {
+            sink.close();
+        }
+        assertArrayEquals(data, read(file));
+    }
+    
+    @Test
+    public void testMemoryMappedWriteRejectsShortStream() throws Exception {
+        File file = tempFile();
+        FileSink.allocate(file, 1024, false);
+        
+        FileSink sink = FileSink.open(file, true);
+        try {
+            sink.write(0, new ByteArrayInputStream(new byte[1000]), 1024);
+            fail("A short stream should fail the mapped write.");
+        } catch (IOException e) {
+        } finally {
+            sink.close();
+        }
+    }
+    
+    @Test
+    public void testPreallocateSizesFile() throws Exception {
+        File file = tempFile();
+        byte[] header = randomBytes(4096);
+        FileSink sink = FileSink.create(file);
+        sink.write(0, new ByteArrayInputStream(header), -1);
+        sink.close();
+        
+        int length = FileSink.BUFFER_SIZE + 777;
+        FileSink.allocate(file, length, true);
+        byte[] content = read(file);
+        assertEquals(length, content.length);
+        // Existing content is left for the parts to overwrite.
+        assertArrayEquals(header, Arrays.copyOf(content, header.length));
+        assertEquals(0, content[length - 1]);
+    }
+    
+    @Test
+    public void testBufferedWriteRejectsShortStream() throws Exception {
+        File file = tempFile();
+        FileSink.allocate(file, 1024, false);
+        
+        FileSink sink = FileSink.open(file, false);
+        try {
+            sink.write(0, new ByteArrayInputStream(new byte[1000]), 1024);
+            fail("A short stream should fail the buffered write.");
+        } catch (IOException e) {
+        } finally {
+            sink.close();
+        }
+    }
+    
+    @Test
+    public void testBufferedWriteRejectsLongStream() throws Exception {
+        byte[] data = randomBytes(2048);
+        File file = tempFile();
+        FileSink.allocate(file, 2048, false);
+        
+        FileSink sink = FileSink.open(file, false);
+        try {
+            sink.write(0, new ByteArrayInputStream(data), 1024);
+            fail("A long stream should fail the buffered write.");
+        } catch (IOException e) {
+        } finally {
+            sink.close();
+        }
+        // Nothing is written past the range.
+        assertArrayEquals(new byte[1024], Arrays.copyOfRange(read(file), 1024, 2048));
+    }
+    
+    @Test
+    public void testCreateTruncates() throws Exception {
+        File file = tempFile();
+        FileSink sink = FileSink.create(file);
+        sink.write(0, new ByteArrayInputStream(randomBytes(8192)), -1);
+        sink.close();
+        
+        sink = FileSink.create(file);
+        assertEquals(3, sink.write(0, new ByteArrayInputStream(new byte[] { 1, 2, 3 }), -1));
+        sink.close();
+        assertArrayEquals(new byte[] { 1, 2, 3 }, read(file));
+    }
+    
+    @Test
+    public void testDownloadFileThroughSharedChannel() throws Throwable {
+        byte[] data = randomBytes(1024 * 1024 + 3);
+        for (boolean memoryMapped : Arrays.asList(false, true)) {
+            RangeObjectOperation objectOperation = new RangeObjectOperation(data);
+            OSSDownloadOperation downloadOperation = new OSSDownloadOperation(objectOperation, 
+                    new TransferManager(4));
+            File file = tempFile();
+            
+            DownloadFileRequest request = new DownloadFileRequest("bucket", "key");
+            request.setDownloadFile(file.getPath());
+            request.setPartSize(100 * 1024);
+            request.setTaskNum(4);
+            request.setMemoryMapped(memoryMapped);
+            request.setPreallocate(true);
+            downloadOperation.downloadFile(request);
+            
+            assertEquals(11, objectOperation.ranges.size());
+            assertArrayEquals(data, read(file));
+        }
+    }
+    
+    @Test
+    public void testResumeInsidePart() throws Throwable {
+        byte[] data = randomBytes(1024 * 1024);
+        for (boolean memoryMapped : Arrays.asList(false, true)) {
+            FlakyRangeObjectOperation objectOperation = new FlakyRangeObjectOperation(data, 700 * 1024);
+            OSSDownloadOperation downloadOperation = new OSSDownloadOperation(objectOperation, 
+                    new TransferManager(1));
+            File file = tempFile();
+            File checkpoint = new File(file.getPath() + ".dcp");
+            checkpoint.deleteOnExit();
+            
+            DownloadFileRequest request = new DownloadFileRequest("bucket", "key");
+            request.setDownloadFile(file.getPath());
+            request.setPartSize(data.length);
+            request.setEnableCheckpoint(true);
+            request.setProgressCheckpointSize(256 * 1024);
+            request.setMemoryMapped(memoryMapped);
+            try {
+                downloadOperation.downloadFile(request);
+                fail("The broken connection should fail the download.");
+            } catch (IOException e) {
+            }
+            assertTrue(checkpoint.exists());
+            
+            downloadOperation.downloadFile(request);
+            
+            assertEquals(2, objectOperation.ranges.size());
+            assertEquals(512 * 1024, objectOperation.ranges.get(1)[0]);
+            assertEquals(data.length - 1, objectOperation.ranges.get(1)[1]);
+            assertArrayEquals(data, read(file));
+            assertTrue(!checkpoint.exists());
+        }
+    }
+    
+    @Test
+    public void testResumeAfterCommittedPartKeepsMetadata() throws Throwable {
+        byte[] data = randomBytes(3 * FileSink.BUFFER_SIZE);
+        // The first part breaks after its last byte was committed, so it is not fetched again.
+        FlakyRangeObjectOperation objectOperation = new FlakyRangeObjectOperation(data, 2 * FileSink.BUFFER_SIZE);
+        OSSDownloadOperation downloadOperation = new OSSDownloadOperation(objectOperation, 
+                new TransferManager(1));
+        File file = tempFile();
+        File checkpoint = new File(file.getPath() + ".dcp");
+        checkpoint.deleteOnExit();
+        
+        DownloadFileRequest request = new DownloadFileRequest("bucket", "key");
+        request.setDownloadFile(file.getPath());
+        request.setPartSize(2 * FileSink.BUFFER_SIZE);
+        request.setEnableCheckpoint(true);
+        request.setProgressCheckpointSize(FileSink.BUFFER_SIZE);
+        try {
+            downloadOperation.downloadFile(request);
+            fail("The broken connection should fail the download.");
+        } catch (IOException e) {
+        }
+        
+        DownloadFileResult result = downloadOperation.downloadFile(request);
+        
+        assertEquals(2, objectOperation.ranges.size());
+        assertEquals(2 * FileSink.BUFFER_SIZE, objectOperation.ranges.get(1)[0]);
+        assertNotNull(result.getObjectMetadata());
+        assertArrayEquals(data, read(file));
+    }
+}
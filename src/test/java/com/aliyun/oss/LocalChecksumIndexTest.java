@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.common.utils.CRC64;
+import com.aliyun.oss.internal.LocalChecksumIndex;
+import com.aliyun.oss.internal.OSSMultipartOperation;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.internal.OSSUploadOperation;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.UploadFileRequest;
+import com.aliyun.oss.model.UploadFileResult;
+
+public class LocalChecksumIndexTest {
+    
+    /**
+     * Answers HEAD with the headers registered per key, NoSuchKey otherwise.
+     */
+    static class HeadObjectOperation extends OSSObjectOperation {
+        
+        final Map<String, Map<String, String>> objects = 
+                Collections.synchronizedMap(new HashMap<String, Map<String, String>>());
+        final AtomicInteger heads = new AtomicInteger();
+        
+        HeadObjectOperation() {
+            super(null, null);
+        }
+        
+        void addObject(String key, long size, Long crc64, String eTag) {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Content-Length", String.valueOf(size));
+            if (crc64 != null) {
+                headers.put("x-oss-hash-crc64ecma", unsigned(crc64));
+            }
+            if (eTag != null) {
+                headers.put("ETag", "\"" + eTag + "\"");
+            }
+            objects.put(key, headers);
+        }
+        
+        @Override
+        public ObjectMetadata getObjectMetadataFromServer(GenericRequest request) {
+            heads.incrementAndGet();
+            Map<String, String> headers = objects.get(request.getKey());
+            if (headers == null) {
+                throw new OSSException("Not found", OSSErrorCode.NO_SUCH_KEY, null, null, null, null, null);
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setResponseHeaders(headers);
+            return metadata;
+        }
+    }
+    
+    /**
+     * Refuses to start a multipart upload, recording that one was attempted.
+     */
+    static class RefusingMultipartOperation extends OSSMultipartOperation {
+        
+        final AtomicInteger initiated = new AtomicInteger();
+        
+        RefusingMultipartOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            initiated.incrementAndGet();
+            throw new ClientException("Refused");
+        }
+    }
+    
+    static String unsigned(long value) {
+        return BigInteger.valueOf(value).and(new BigInteger("FFFFFFFFFFFFFFFF", 16)).toString();
+    }
+    
+    static long crc64(byte[] data) {
+        CRC64 crc = new CRC64();
+        crc.update(data, data.length);
+        return crc.getValue();
+    }
+    
+    static File write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+    
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("checksum", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+    
+    @Test
+    public void testComputeCrc64AndMd5() throws Exception {
+        byte[] data = new byte[200 * 1024 + 7];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        File file = write(tempFile(".dat"), data);
+        
+        LocalChecksumIndex.FileChecksum checksum = LocalChecksumIndex.compute(file);
+        assertEquals(crc64(data), checksum.getCrc64());
+        assertEquals(BinaryUtil.encodeMD5(data), checksum.getMd5());
+        assertEquals(data.length, checksum.getSize());
+    }
+    
+    @Test
+    public void testIndexSurvivesReopen() throws Exception {
+        File file = write(tempFile(".dat"), "first".getBytes());
+        long lastModified = file.lastModified();
+        File indexFile = tempFile(".idx");
+        
+        LocalChecksumIndex index = LocalChecksumIndex.open(indexFile.getPath());
+        assertEquals(crc64("first".getBytes()), index.checksumOf(file).getCrc64());
+        index.close();
+        
+        // Same size and modification time: the cached checksum is trusted.
+        write(file, "other".getBytes());
+        file.setLastModified(lastModified);
+        index = LocalChecksumIndex.open(indexFile.getPath());
+        assertEquals(crc64("first".getBytes()), index.checksumOf(file).getCrc64());
+        
+        // A new modification time invalidates the entry.
+        file.setLastModified(lastModified - 10000);
+        assertEquals(crc64("other".getBytes()), index.checksumOf(file).getCrc64());
+        index.close();
+        
+        index = LocalChecksumIndex.open(indexFile.getPath());
+        assertEquals(crc64("other".getBytes()), index.checksumOf(file).getCrc64());
+        index.close();
+    }
+    
+    @Test
+    public void testCorruptIndexStartsEmpty() throws Exception {
+        File file = write(tempFile(".dat"), "data".getBytes());
+        File indexFile = write(tempFile(".idx"), "garbage".getBytes());
+        
+        LocalChecksumIndex index = LocalChecksumIndex.open(indexFile.getPath());
+        assertEquals(crc64("data".getBytes()), index.checksumOf(file).getCrc64());
+        index.close();
+    }
+    
+    @Test
+    public void testUploadFileSkipsUnchangedObject() throws Throwable {
+        byte[] data = "unchanged content".getBytes();
+        File file = write(tempFile(".dat"), data);
+        HeadObjectOperation objectOperation = new HeadObjectOperation();
+        objectOperation.addObject("key", data.length, crc64(data), null);
+        
+        RefusingMultipartOperation multipartOperation = new RefusingMultipartOperation();
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation, objectOperation, 
+                new TransferManager(1));
+        UploadFileRequest request = new UploadFileRequest("bucket", "key");
+        request.setUploadFile(file.getPath());
+        request.setSync(true);
+        request.setChecksumIndexFile(tempFile(".idx").getPath());
+        
+        UploadFileResult result = uploadOperation.uploadFile(request);
+        assertTrue(result.isSkipped());
+        assertNull(result.getMultipartUploadResult());
+        assertEquals(1, objectOperation.heads.get());
+        assertEquals(0, multipartOperation.initiated.get());
+    }
+    
+    @Test
+    public void testUploadFileUploadsChangedObject() throws Throwable {
+        byte[] data = "changed content".getBytes();
+        File file = write(tempFile(".dat"), data);
+        HeadObjectOperation objectOperation = new HeadObjectOperation();
+        objectOperation.addObject("key", data.length, crc64(data) + 1, null);
+        
+        RefusingMultipartOperation multipartOperation = new RefusingMultipartOperation();
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation, objectOperation, 
+                new TransferManager(1));
+        UploadFileRequest request = new UploadFileRequest("bucket", "key");
+        request.setUploadFile(file.getPath());
+        request.setSync(true);
+        try {
+            uploadOperation.uploadFile(request);
+        } catch (ClientException e) {
+            assertEquals("Refused", e.getErrorMessage());
+        }
+        assertEquals(1, objectOperation.heads.get());
+        assertEquals(1, multipartOperation.initiated.get());
+    }
+    
+    @Test
+    public void testETagComparedWithoutServerCrc() throws Throwable {
+        byte[] data = "legacy object".getBytes();
+        File file = write(tempFile(".dat"), data);
+        HeadObjectOperation objectOperation = new HeadObjectOperation();
+        objectOperation.addObject("simple", data.length, null, BinaryUtil.encodeMD5(data));
+        objectOperation.addObject("multipart", data.length, null, BinaryUtil.encodeMD5(data) + "-2");
+        RefusingMultipartOperation multipartOperation = new RefusingMultipartOperation();
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation, objectOperation, 
+                new TransferManager(1));
+        
+        UploadFileRequest request = new UploadFileRequest("bucket", "simple");
+        request.setUploadFile(file.getPath());
+        request.setSync(true);
+        assertTrue(uploadOperation.uploadFile(request).isSkipped());
+        
+        request = new UploadFileRequest("bucket", "multipart");
+        request.setUploadFile(file.getPath());
+        request.setSync(true);
+        try {
+            uploadOperation.uploadFile(request);
+        } catch (ClientException e) {
+            assertEquals("Refused", e.getErrorMessage());
+        }
+        assertEquals(1, multipartOperation.initiated.get());
+    }
+}
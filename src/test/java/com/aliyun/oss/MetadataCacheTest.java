@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aliyun.oss.common.auth.DefaultCredentialProvider;
+import com.aliyun.oss.common.auth.DefaultCredentials;
+import com.aliyun.oss.common.comm.ExecutionContext;
+import com.aliyun.oss.common.comm.RequestMessage;
+import com.aliyun.oss.common.comm.ResponseMessage;
+import com.aliyun.oss.common.comm.RetryStrategy;
+import com.aliyun.oss.common.comm.ServiceClient;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.CopyObjectRequest;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.HeadObjectRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.PutObjectRequest;
+
+public class MetadataCacheTest {
+    
+    private static final String BUCKET = "bucket";
+    
+    /**
+     * Answers HEAD, PUT and DELETE of objects kept in memory.
+     */
+    static class ObjectServiceClient extends ServiceClient {
+        
+        final Map<String, String> eTags = Collections.synchronizedMap(new HashMap<String, String>());
+        final AtomicInteger heads = new AtomicInteger();
+        final AtomicInteger version = new AtomicInteger();
+        
+        ObjectServiceClient() {
+            super(new ClientConfiguration());
+        }
+        
+        @Override
+        protected ResponseMessage sendRequestCore(ServiceClient.Request request, ExecutionContext context)
+                throws IOException {
+            String key = URI.create(request.getUri()).getPath().substring(1);
+            ResponseMessage response = new ResponseMessage(request);
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("x-oss-request-id", "request-" + version.get());
+            switch (request.getMethod()) {
+            case HEAD:
+                heads.incrementAndGet();
+                String eTag = eTags.get(key);
+                if (eTag == null) {
+                    response.setStatusCode(404);
+                } else {
+                    response.setStatusCode(200);
+                    headers.put("ETag", "\"" + eTag + "\"");
+                    headers.put("Content-Length", "10");
+                    headers.put("Last-Modified", "Fri, 16 Oct 2026 08:00:00 GMT");
+                }
+                break;
+            case PUT:
+                eTag = "E" + version.incrementAndGet();
+                eTags.put(key, eTag);
+                response.setStatusCode(200);
+                headers.put("ETag", "\"" + eTag + "\"");
+                if (request.getHeaders().containsKey("x-oss-copy-source")) {
+                    String body = "<CopyObjectResult><LastModified>2026-10-16T08:00:00.000Z</LastModified>"
+                            + "<ETag>\"" + eTag + "\"</ETag></CopyObjectResult>";
+                    response.setContent(new ByteArrayInputStream(body.getBytes("UTF-8")));
+                }
+                break;
+            case DELETE:
+                eTags.remove(key);
+                response.setStatusCode(204);
+                break;
+            default:
+                throw new IOException("Unexpected " + request.getMethod());
+            }
+            response.setHeaders(headers);
+            return response;
+        }
+        
+        @Override
+        protected RetryStrategy getDefaultRetryStrategy() {
+            return new RetryStrategy() {
+                @Override
+                public boolean shouldRetry(Exception ex, RequestMessage request, ResponseMessage response, int retries) {
+                    return false;
+                }
+            };
+        }
+        
+        @Override
+        public void shutdown() {
+        }
+    }
+    
+    private final ObjectServiceClient client = new ObjectServiceClient();
+    private final OSSObjectOperation objectOperation = new OSSObjectOperation(client, 
+            new DefaultCredentialProvider(new DefaultCredentials("id", "secret")));
+    private final MetadataCache cache = new MetadataCache();
+    
+    @Before
+    public void setUp() {
+        objectOperation.setEndpoint(URI.create("http://localhost/"));
+        objectOperation.setMetadataCache(cache);
+    }
+    
+    @Test
+    public void testMetadataIsCached() {
+        client.eTags.put("a", "E0");
+        
+        for (int i = 0; i < 3; i++) {
+            ObjectMetadata metadata = objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "a"));
+            assertEquals("E0", metadata.getETag());
+            assertEquals(10, metadata.getContentLength());
+            metadata.setContentLength(99);
+        }
+        objectOperation.headObject(new HeadObjectRequest(BUCKET, "a"));
+        assertEquals(1, client.heads.get());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        
+        HeadObjectRequest conditional = new HeadObjectRequest(BUCKET, "a");
+        conditional.setMatchingETagConstraints(Collections.singletonList("E0"));
+        objectOperation.headObject(conditional);
+        assertEquals(2, client.heads.get());
+    }
+    
+    @Test
+    public void testNotFoundIsCached() {
+        for (int i = 0; i < 3; i++) {
+            try {
+                objectOperation.headObject(new HeadObjectRequest(BUCKET, "missing"));
+                fail("OSSException expected");
+            } catch (OSSException e) {
+                assertEquals(OSSErrorCode.NO_SUCH_KEY, e.getErrorCode());
+            }
+        }
+        assertEquals(1, client.heads.get());
+        assertEquals(2, cache.getNegativeHitCount());
+        
+        MetadataCache noNegative = new MetadataCache(100, 30000, 0);
+        objectOperation.setMetadataCache(noNegative);
+        for (int i = 0; i < 2; i++) {
+            try {
+                objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "missing"));
+                fail("OSSException expected");
+            } catch (OSSException e) {
+                assertEquals(OSSErrorCode.NO_SUCH_KEY, e.getErrorCode());
+            }
+        }
+        assertEquals(3, client.heads.get());
+        assertEquals(0, noNegative.getEntryCount());
+    }
+    
+    @Test
+    public void testFromServerBypassesCache() {
+        client.eTags.put("a", "E0");
+        assertEquals("E0", objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "a")).getETag());
+        
+        client.eTags.put("a", "E9");
+        assertEquals("E0", objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "a")).getETag());
+        assertEquals("E9", objectOperation.getObjectMetadataFromServer(new GenericRequest(BUCKET, "a")).getETag());
+        assertEquals(2, client.heads.get());
+        assertEquals(1, cache.getMissCount());
+    }
+    
+    @Test
+    public void testWritesInvalidate() {
+        try {
+            objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "a"));
+            fail("OSSException expected");
+        } catch (OSSException e) {
+            assertEquals(OSSErrorCode.NO_SUCH_KEY, e.getErrorCode());
+        }
+        
+        objectOperation.putObject(new PutObjectRequest(BUCKET, "a", new ByteArrayInputStream(new byte[10])));
+        assertEquals("E1", objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "a")).getETag());
+        
+        objectOperation.copyObject(new CopyObjectRequest(BUCKET, "b", BUCKET, "a"));
+        assertEquals("E2", objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "a")).getETag());
+        
+        objectOperation.deleteObject(new GenericRequest(BUCKET, "a"));
+        try {
+            objectOperation.getObjectMetadata(new GenericRequest(BUCKET, "a"));
+            fail("OSSException expected");
+        } catch (OSSException e) {
+            assertEquals(OSSErrorCode.NO_SUCH_KEY, e.getErrorCode());
+        }
+        assertEquals(4, client.heads.get());
+        assertEquals(3, cache.getInvalidationCount());
+    }
+    
+    @Test
+    public void testConcurrentLookupsShareOneRequest() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final MetadataCache.Loader<Boolean> slowLoader = new MetadataCache.Loader<Boolean>() {
+            @Override
+            public Boolean load() {
+                loads.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        };
+        
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return cache.doesBucketExist(BUCKET, slowLoader);
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMissCount());
+    }
+    
+    @Test
+    public void testMissingBucketUsesNegativeTtl() throws Exception {
+        MetadataCache shortNegative = new MetadataCache(100, 30000, 50);
+        final AtomicInteger loads = new AtomicInteger();
+        MetadataCache.Loader<Boolean> loader = new MetadataCache.Loader<Boolean>() {
+            @Override
+            public Boolean load() {
+                return loads.incrementAndGet() > 1;
+            }
+        };
+        assertFalse(shortNegative.doesBucketExist(BUCKET, loader));
+        assertFalse(shortNegative.doesBucketExist(BUCKET, loader));
+        assertEquals(1, loads.get());
+        
+        Thread.sleep(100);
+        assertTrue(shortNegative.doesBucketExist(BUCKET, loader));
+        assertTrue(shortNegative.doesBucketExist(BUCKET, loader));
+        assertEquals(2, loads.get());
+        
+        shortNegative.invalidateBucket(BUCKET);
+        assertTrue(shortNegative.doesBucketExist(BUCKET, loader));
+        assertEquals(3, loads.get());
+    }
+    
+    @Test
+    public void testInvalidationDuringLookupIsNotCached() {
+        final MetadataCache.Loader<Boolean> racingLoader = new MetadataCache.Loader<Boolean>() {
+            @Override
+            public Boolean load() {
+                cache.invalidateBucket(BUCKET);
+                return true;
+            }
+        };
+        assertTrue(cache.doesBucketExist(BUCKET, racingLoader));
+        assertEquals(0, cache.getEntryCount());
+    }
+    
+    @Test
+    public void testInvalidatingOtherObjectsDuringLookupIsCached() {
+        final MetadataCache.Loader<ObjectMetadata> racingLoader = new MetadataCache.Loader<ObjectMetadata>() {
+            @Override
+            public ObjectMetadata load() {
+                cache.invalidate(BUCKET, "b");
+                cache.invalidateBucket("other-bucket");
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setHeader("ETag", "E0");
+                return metadata;
+            }
+        };
+        assertEquals("E0", cache.getObjectMetadata(BUCKET, "a", racingLoader).getETag());
+        assertEquals(1, cache.getEntryCount());
+        
+        final MetadataCache.Loader<ObjectMetadata> sameKeyLoader = new MetadataCache.Loader<ObjectMetadata>() {
+            @Override
+            public ObjectMetadata load() {
+                cache.invalidate(BUCKET, "c");
+                return new ObjectMetadata();
+            }
+        };
+        cache.getObjectMetadata(BUCKET, "c", sameKeyLoader);
+        assertEquals(1, cache.getEntryCount());
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedEntriesAreDropped() {
+        MetadataCache small = new MetadataCache(2, 30000, 30000);
+        MetadataCache.Loader<Boolean> loader = new MetadataCache.Loader<Boolean>() {
+            @Override
+            public Boolean load() {
+                return true;
+            }
+        };
+        small.doesBucketExist("b1", loader);
+        small.doesBucketExist("b2", loader);
+        small.doesBucketExist("b1", loader);
+        small.doesBucketExist("b3", loader);
+        assertEquals(2, small.getEntryCount());
+        
+        small.doesBucketExist("b1", loader);
+        assertEquals(2, small.getHitCount());
+        small.doesBucketExist("b2", loader);
+        assertEquals(4, small.getMissCount());
+    }
+}
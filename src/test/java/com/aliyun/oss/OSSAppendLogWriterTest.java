@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.LocalChecksumIndexTest.crc64;
+import static com.aliyun.oss.LocalChecksumIndexTest.unsigned;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.AppendLogRequest;
+import com.aliyun.oss.model.AppendObjectRequest;
+import com.aliyun.oss.model.AppendObjectResult;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+
+public class OSSAppendLogWriterTest {
+    
+    /**
+     * Keeps appendable objects in memory and enforces the append position.
+     */
+    static class AppendableObjectOperation extends OSSObjectOperation {
+        
+        final Map<String, ByteArrayOutputStream> objects = new HashMap<String, ByteArrayOutputStream>();
+        final List<String> appendedKeys = new ArrayList<String>();
+        final AtomicInteger appends = new AtomicInteger();
+        final AtomicInteger heads = new AtomicInteger();
+        volatile boolean duplicateNext;
+        volatile boolean corruptNext;
+        volatile int failures;
+        
+        AppendableObjectOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public synchronized AppendObjectResult appendObject(AppendObjectRequest request) {
+            if (failures > 0) {
+                failures--;
+                throw new ClientException("Connection reset");
+            }
+            
+            ByteArrayOutputStream object = objects.get(request.getKey());
+            if (object == null) {
+                object = new ByteArrayOutputStream();
+                objects.put(request.getKey(), object);
+            }
+            if (request.getPosition().longValue() != object.size()) {
+                throw positionNotEqualToLength();
+            }
+            byte[] data = read(request.getInputStream());
+            object.write(data, 0, data.length);
+            appends.incrementAndGet();
+            appendedKeys.add(request.getKey());
+            
+            // The response is lost and the retried request finds the data written.
+            if (duplicateNext) {
+                duplicateNext = false;
+                throw positionNotEqualToLength();
+            }
+            
+            AppendObjectResult result = new AppendObjectResult();
+            result.setNextPosition((long) object.size());
+            result.setObjectCRC64(unsigned(crc64(object.toByteArray())));
+            // The object was changed by someone else after the append landed.
+            if (corruptNext) {
+                corruptNext = false;
+                result.setObjectCRC64(unsigned(crc64(object.toByteArray()) + 1));
+            }
+            return result;
+        }
+        
+        @Override
+        public synchronized ObjectMetadata getObjectMetadataFromServer(GenericRequest request) {
+            heads.incrementAndGet();
+            ByteArrayOutputStream object = objects.get(request.getKey());
+            if (object == null) {
+                throw new OSSException("Not found", OSSErrorCode.NO_SUCH_KEY, null, null, null, null, null);
+            }
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Content-Length", String.valueOf(object.size()));
+            headers.put("x-oss-hash-crc64ecma", unsigned(crc64(object.toByteArray())));
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setResponseHeaders(headers);
+            return metadata;
+        }
+        
+        synchronized byte[] content(String key) {
+            return objects.get(key).toByteArray();
+        }
+        
+        private static OSSException positionNotEqualToLength() {
+            return new OSSException("Position is not equal to file length", 
+                    OSSErrorCode.POSITION_NOT_EQUAL_TO_LENGTH, null, null, null, null, null);
+        }
+        
+        private static byte[] read(InputStream in) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClientException(e);
+            }
+        }
+    }
+    
+    private static byte[] record(int i) {
+        return String.format("record-%06d\n", i).getBytes();
+    }
+    
+    private static AppendLogRequest newRequest() {
+        return new AppendLogRequest("bucket", "logs/app.log")
+                .withFlushSize(1024)
+                .withFlushIntervalMillis(0);
+    }
+    
+    @Test
+    public void testRecordsAreGroupedIntoFewAppends() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, newRequest());
+        final int threads = 4;
+        final int perThread = 500;
+        
+        final OSSAppendLogWriter target = writer;
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        target.append(record(id * perThread + i));
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        writer.close();
+        
+        int recordCount = threads * perThread;
+        int recordSize = record(0).length;
+        byte[] content = objectOperation.content("logs/app.log");
+        assertEquals(recordCount * recordSize, content.length);
+        assertEquals(recordCount, writer.getRecordsWritten());
+        assertTrue(objectOperation.appends.get() <= recordCount * recordSize / 1024 + 1);
+        assertEquals(crc64(content), writer.getCRC64().longValue());
+        assertEquals(content.length, writer.getPosition());
+    }
+    
+    @Test
+    public void testFlushOnDeadline() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, 
+                newRequest().withFlushIntervalMillis(50));
+        try {
+            writer.append(record(1));
+            writer.append(record(2));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (writer.getRecordsWritten() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, objectOperation.appends.get());
+            assertEquals(0, writer.getPendingBytes());
+            assertEquals(2, writer.getRecordsWritten());
+        } finally {
+            writer.close();
+        }
+    }
+    
+    @Test
+    public void testContinueExistingObject() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        ByteArrayOutputStream existing = new ByteArrayOutputStream();
+        existing.write("header\n".getBytes());
+        objectOperation.objects.put("logs/app.log", existing);
+        
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, newRequest());
+        writer.append(record(1));
+        writer.close();
+        
+        byte[] content = objectOperation.content("logs/app.log");
+        assertEquals("header\n" + new String(record(1)), new String(content));
+        assertEquals(crc64(content), writer.getCRC64().longValue());
+    }
+    
+    @Test
+    public void testRetriedAppendIsNotDuplicated() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, newRequest());
+        writer.append(record(1));
+        writer.flush();
+        
+        objectOperation.duplicateNext = true;
+        writer.append(record(2));
+        writer.flush();
+        writer.append(record(3));
+        writer.close();
+        
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(record(1));
+        expected.write(record(2));
+        expected.write(record(3));
+        assertArrayEquals(expected.toByteArray(), objectOperation.content("logs/app.log"));
+        assertEquals(3, objectOperation.appends.get());
+    }
+    
+    @Test
+    public void testRollToNewObject() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, 
+                newRequest().withMaxObjectSize(2048));
+        for (int i = 0; i < 300; i++) {
+            writer.append(record(i));
+        }
+        writer.close();
+        
+        int total = 0;
+        for (String key : objectOperation.objects.keySet()) {
+            int size = objectOperation.content(key).length;
+            assertTrue(size <= 2048 + 1024 + record(0).length);
+            total += size;
+        }
+        assertEquals(300 * record(0).length, total);
+        assertTrue(objectOperation.objects.containsKey("logs/app.log.000001"));
+        assertEquals("logs/app.log." + String.format("%06d", writer.getSegment()), writer.getKey());
+    }
+    
+    @Test
+    public void testFailedBatchIsKept() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, newRequest());
+        writer.append(record(1));
+        objectOperation.failures = 1;
+        try {
+            writer.flush();
+            fail("The append failure should be thrown.");
+        } catch (ClientException e) {
+            assertEquals("Connection reset", e.getErrorMessage());
+        }
+        writer.append(record(2));
+        writer.close();
+        
+        assertEquals(new String(record(1)) + new String(record(2)), 
+                new String(objectOperation.content("logs/app.log")));
+        assertEquals(1, objectOperation.appends.get());
+    }
+    
+    @Test
+    public void testRestartContinuesLatestSegment() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        String[] keys = { "logs/app.log", "logs/app.log.000001", "logs/app.log.000002", 
+                "logs/app.log.000003", "logs/app.log.000004", "logs/app.log.000005" };
+        for (String key : keys) {
+            ByteArrayOutputStream existing = new ByteArrayOutputStream();
+            existing.write(record(0));
+            objectOperation.objects.put(key, existing);
+        }
+        
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, newRequest());
+        writer.append(record(1));
+        writer.close();
+        
+        assertEquals(5, writer.getSegment());
+        assertEquals("logs/app.log.000005", writer.getKey());
+        assertEquals(new String(record(0)) + new String(record(1)), 
+                new String(objectOperation.content("logs/app.log.000005")));
+        assertEquals(1, objectOperation.appends.get());
+        assertTrue(objectOperation.heads.get() <= 7);
+    }
+    
+    @Test
+    public void testCRCMismatchIsNotResent() throws Exception {
+        AppendableObjectOperation objectOperation = new AppendableObjectOperation();
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(objectOperation, newRequest());
+        writer.append(record(1));
+        objectOperation.corruptNext = true;
+        try {
+            writer.flush();
+            fail("The CRC64 mismatch should be thrown.");
+        } catch (ClientException e) {
+            assertEquals(ClientErrorCode.INCONSISTENT_CRC, e.getErrorCode());
+        }
+        assertEquals(0, writer.getPendingBytes());
+        writer.append(record(2));
+        writer.close();
+        
+        assertEquals(new String(record(1)), new String(objectOperation.content("logs/app.log")));
+        assertEquals(new String(record(2)), new String(objectOperation.content("logs/app.log.000001")));
+        assertEquals(2, objectOperation.appends.get());
+    }
+    
+    @Test
+    public void testAppendAfterClose() {
+        OSSAppendLogWriter writer = new OSSAppendLogWriter(new AppendableObjectOperation(), newRequest());
+        writer.close();
+        try {
+            writer.append(record(1));
+            fail("Appending to a closed writer should fail.");
+        } catch (IllegalStateException e) {
+        }
+    }
+}
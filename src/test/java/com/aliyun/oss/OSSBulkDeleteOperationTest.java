@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSBucketOperation;
+import com.aliyun.oss.internal.OSSBulkDeleteOperation;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.BulkDeleteRequest;
+import com.aliyun.oss.model.BulkDeleteResult;
+import com.aliyun.oss.model.DeleteObjectsRequest;
+import com.aliyun.oss.model.DeleteObjectsResult;
+import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.OSSObjectSummary;
+import com.aliyun.oss.model.ObjectListing;
+
+public class OSSBulkDeleteOperationTest {
+    
+    /**
+     * Records deleted keys and fails the first attempts of batches whose 
+     * first key is listed in failures.
+     */
+    private static class RecordingObjectOperation extends OSSObjectOperation {
+        
+        final Set<String> deleted = Collections.synchronizedSet(new HashSet<String>());
+        final Set<String> failOnce = Collections.synchronizedSet(new HashSet<String>());
+        final Set<String> denied = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        
+        RecordingObjectOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+            int current = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(maxInFlight.get(), current));
+            }
+            try {
+                Thread.sleep(10);
+                String first = request.getKeys().get(0);
+                if (failOnce.remove(first)) {
+                    throw new OSSException("Injected", OSSErrorCode.INTERNAL_ERROR, null, null, null, null, null);
+                }
+                if (denied.contains(first)) {
+                    throw new OSSException("Denied", OSSErrorCode.ACCESS_DENIED, null, null, null, null, null);
+                }
+                deleted.addAll(request.getKeys());
+                return new DeleteObjectsResult(request.isQuiet() ? null : request.getKeys());
+            } catch (InterruptedException e) {
+                throw new ClientException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+    
+    private static class SinglePrefixBucketOperation extends OSSBucketOperation {
+        
+        private final List<String> keys;
+        
+        SinglePrefixBucketOperation(List<String> keys) {
+            super(null, null);
+            this.keys = keys;
+        }
+        
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request) {
+            ObjectListing listing = new ObjectListing();
+            int start = request.getMarker() == null ? 0 : keys.indexOf(request.getMarker()) + 1;
+            int end = Math.min(keys.size(), start + request.getMaxKeys());
+            for (String key : keys.subList(start, end)) {
+                if (key.startsWith(request.getPrefix())) {
+                    OSSObjectSummary summary = new OSSObjectSummary();
+                    summary.setKey(key);
+                    listing.addObjectSummary(summary);
+                }
+            }
+            listing.setTruncated(end < keys.size());
+            listing.setNextMarker(keys.get(end - 1));
+            return listing;
+        }
+    }
+    
+    private static List<String> keys(String prefix, int count) {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            keys.add(String.format("%s%05d", prefix, i));
+        }
+        return keys;
+    }
+    
+    @Test
+    public void testDeleteKeys() {
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        OSSBulkDeleteOperation operation = new OSSBulkDeleteOperation(objectOperation, null);
+        
+        List<String> keys = keys("key-", 2500);
+        keys.add(1200, "");
+        BulkDeleteRequest request = new BulkDeleteRequest("bucket").withKeys(keys.iterator()).withTaskNum(2);
+        BulkDeleteResult result = operation.deleteObjects(request);
+        
+        assertEquals(2500, result.getDeletedCount());
+        assertEquals(2500, objectOperation.deleted.size());
+        assertEquals(3, result.getBatchCount());
+        assertEquals(1, result.getFailedCount());
+        assertEquals(OSSErrorCode.INVALID_OBJECT_NAME, result.getFailures().get(0).getErrorCode());
+        assertTrue(objectOperation.maxInFlight.get() <= 2);
+    }
+    
+    @Test
+    public void testRetryAndFailures() {
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        objectOperation.failOnce.add("key-00000");
+        objectOperation.denied.add("key-00100");
+        OSSBulkDeleteOperation operation = new OSSBulkDeleteOperation(objectOperation, null);
+        
+        BulkDeleteRequest request = new BulkDeleteRequest("bucket").withKeys(keys("key-", 300).iterator())
+                .withQuiet(false);
+        request.setBatchSize(100);
+        BulkDeleteResult result = operation.deleteObjects(request);
+        
+        assertEquals(200, result.getDeletedCount());
+        assertEquals(1, result.getRetryCount());
+        assertEquals(100, result.getFailedCount());
+        for (BulkDeleteResult.DeleteFailure failure : result.getFailures()) {
+            assertEquals(OSSErrorCode.ACCESS_DENIED, failure.getErrorCode());
+            assertTrue(failure.getKey().compareTo("key-00100") >= 0 && failure.getKey().compareTo("key-00200") < 0);
+        }
+    }
+    
+    @Test
+    public void testDeletePrefix() {
+        List<String> keys = keys("a/", 1500);
+        keys.addAll(keys("b/", 700));
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        OSSBulkDeleteOperation operation = new OSSBulkDeleteOperation(objectOperation, 
+                new SinglePrefixBucketOperation(keys));
+        
+        BulkDeleteResult result = operation.deleteObjects(new BulkDeleteRequest("bucket").withPrefix("b/"));
+        
+        assertEquals(700, result.getDeletedCount());
+        assertEquals(new HashSet<String>(keys("b/", 700)), objectOperation.deleted);
+        assertEquals(0, result.getFailedCount());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.aliyun.oss.OSSParallelInputStreamTest.RangedObjectOperation;
+import com.aliyun.oss.model.SeekableObjectRequest;
+
+public class OSSObjectChannelTest {
+    
+    private static final int BLOCK_SIZE = 4 * 1024;
+    
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+    
+    private static SeekableObjectRequest newRequest() {
+        return new SeekableObjectRequest("bucket", "key").withBlockSize(BLOCK_SIZE)
+                .withMaxReadAhead(64 * BLOCK_SIZE).withForwardSeekLimit(8 * BLOCK_SIZE)
+                .withBlockCacheSize(32 * BLOCK_SIZE);
+    }
+    
+    private static byte[] readAt(OSSObjectChannel channel, long position, int length) throws IOException {
+        channel.position(position);
+        byte[] b = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = channel.read(b, offset, length - offset);
+            if (n == -1) {
+                break;
+            }
+            offset += n;
+        }
+        return Arrays.copyOf(b, offset);
+    }
+    
+    private static long rangeLength(long[] range) {
+        return range[1] - range[0] + 1;
+    }
+    
+    @Test
+    public void testRandomReads() throws IOException {
+        byte[] data = randomBytes(300 * 1024 + 17);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        OSSObjectChannel channel = OSSObjectChannel.open(objectOperation, newRequest());
+        assertEquals(data.length, channel.size());
+        
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            int position = random.nextInt(data.length);
+            int length = Math.min(random.nextInt(20000), data.length - position);
+            assertArrayEquals(Arrays.copyOfRange(data, position, position + length), 
+                    readAt(channel, position, length));
+            assertEquals(position + length, channel.position());
+        }
+        
+        ByteBuffer direct = ByteBuffer.allocateDirect(10000);
+        channel.position(1234);
+        while (direct.hasRemaining()) {
+            channel.read(direct);
+        }
+        direct.flip();
+        byte[] copied = new byte[10000];
+        direct.get(copied);
+        assertArrayEquals(Arrays.copyOfRange(data, 1234, 11234), copied);
+        
+        channel.position(data.length + 10);
+        assertEquals(-1, channel.read(new byte[10], 0, 10));
+        channel.close();
+    }
+    
+    @Test
+    public void testSequentialReadGrowsReadAhead() throws IOException {
+        byte[] data = randomBytes(1024 * 1024);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        OSSObjectChannel channel = OSSObjectChannel.open(objectOperation, newRequest());
+        
+        assertArrayEquals(data, readAt(channel, 0, data.length));
+        // 16K, 32K, 64K, 128K, 256K, then 256K ranges up to 1M.
+        long[] expected = { 16, 32, 64, 128, 256, 256, 256, 16 };
+        assertEquals(expected.length, objectOperation.ranges.size());
+        long start = 0;
+        for (int i = 0; i < expected.length; i++) {
+            long[] range = objectOperation.ranges.get(i);
+            assertEquals(start, range[0]);
+            assertEquals(Math.min(expected[i] * 1024, data.length - start), rangeLength(range));
+            start = range[1] + 1;
+        }
+        assertEquals(data.length, channel.getFetchedBytes());
+    }
+    
+    @Test
+    public void testShortForwardSeekKeepsRange() throws IOException {
+        byte[] data = randomBytes(1024 * 1024);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        OSSObjectChannel channel = OSSObjectChannel.open(objectOperation, newRequest());
+        
+        readAt(channel, 0, 100);
+        assertArrayEquals(Arrays.copyOfRange(data, 9000, 9100), readAt(channel, 9000, 100));
+        assertEquals(1, channel.getRangeRequestCount());
+        
+        // Beyond the forward seek limit: a new range of the initial size.
+        assertArrayEquals(Arrays.copyOfRange(data, 500000, 500100), readAt(channel, 500000, 100));
+        assertEquals(2, channel.getRangeRequestCount());
+        long[] range = objectOperation.ranges.get(1);
+        assertEquals(500000 / BLOCK_SIZE * BLOCK_SIZE, range[0]);
+        assertEquals(4 * BLOCK_SIZE, rangeLength(range));
+        
+        // Back into cached blocks.
+        assertArrayEquals(Arrays.copyOfRange(data, 50, 4000), readAt(channel, 50, 3950));
+        assertEquals(2, channel.getRangeRequestCount());
+        assertTrue(channel.getCachedBlockReads() > 0);
+    }
+    
+    @Test
+    public void testFooterReadsShareOneRange() throws IOException {
+        byte[] data = randomBytes(1024 * 1024 + 100);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        OSSObjectChannel channel = OSSObjectChannel.open(objectOperation, newRequest());
+        
+        long size = channel.size();
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 8, data.length), readAt(channel, size - 8, 8));
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 9000, data.length - 8), 
+                readAt(channel, size - 9000, 8992));
+        assertEquals(1, objectOperation.ranges.size());
+        assertEquals(data.length - 1, objectOperation.ranges.get(0)[1]);
+    }
+    
+    @Test
+    public void testBrokenRangeIsReopened() throws IOException {
+        byte[] data = randomBytes(100 * 1024);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        objectOperation.breakAfter.put(0L, 5000);
+        OSSObjectChannel channel = OSSObjectChannel.open(objectOperation, newRequest());
+        
+        assertArrayEquals(data, readAt(channel, 0, data.length));
+        assertEquals(5000, objectOperation.ranges.get(1)[0]);
+        assertEquals(4 * BLOCK_SIZE - 1, objectOperation.ranges.get(1)[1]);
+        
+        objectOperation.alwaysFailAt = 0;
+        OSSObjectChannel failing = OSSObjectChannel.open(objectOperation, newRequest());
+        try {
+            readAt(failing, 0, 10);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof ClientException);
+        }
+    }
+    
+    @Test
+    public void testInputStreamView() throws IOException {
+        byte[] data = randomBytes(64 * 1024);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        OSSObjectChannel channel = OSSObjectChannel.open(objectOperation, newRequest());
+        InputStream in = channel.newInputStream();
+        
+        assertEquals(1000, in.skip(1000));
+        assertEquals(data[1000] & 0xFF, in.read());
+        in.mark(0);
+        byte[] b = new byte[500];
+        assertEquals(500, in.read(b));
+        assertArrayEquals(Arrays.copyOfRange(data, 1001, 1501), b);
+        assertTrue(in.available() > 0);
+        in.reset();
+        assertEquals(1001, channel.position());
+        assertEquals(data.length - 1001, in.skip(Long.MAX_VALUE));
+        assertEquals(-1, in.read());
+        
+        in.close();
+        assertTrue(!channel.isOpen());
+        try {
+            channel.read(ByteBuffer.allocate(10));
+            fail("ClosedChannelException expected");
+        } catch (ClosedChannelException e) {
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSMultipartOperation;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.PutObjectRequest;
+import com.aliyun.oss.model.PutObjectResult;
+import com.aliyun.oss.model.StreamUploadRequest;
+import com.aliyun.oss.model.UploadPartRequest;
+import com.aliyun.oss.model.UploadPartResult;
+
+public class OSSOutputStreamTest {
+    
+    private static final int PART_SIZE = 100 * 1024;
+    
+    private static byte[] readAll(InputStream in) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new ClientException(e);
+        }
+    }
+    
+    private static byte[] content(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+    
+    private static class RecordingMultipartOperation extends OSSMultipartOperation {
+        
+        final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        int failingPart = -1;
+        boolean failInitiate;
+        int initiated;
+        int aborted;
+        CompleteMultipartUploadRequest completed;
+        
+        RecordingMultipartOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            initiated++;
+            if (failInitiate) {
+                throw new ClientException("Simulated initiate failure");
+            }
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload-id");
+            return result;
+        }
+        
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            int current = inFlight.incrementAndGet();
+            int max;
+            while ((max = maxInFlight.get()) < current && !maxInFlight.compareAndSet(max, current)) {
+            }
+            try {
+                Thread.sleep(10);
+                if (request.getPartNumber() == failingPart) {
+                    throw new ClientException("Simulated part failure");
+                }
+                byte[] data = readAll(request.getInputStream());
+                assertEquals(request.getPartSize(), data.length);
+                synchronized (parts) {
+                    parts.put(request.getPartNumber(), data);
+                }
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            } catch (InterruptedException e) {
+                throw new ClientException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+        
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completed = request;
+            CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+            result.setETag("multipart-etag");
+            return result;
+        }
+        
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted++;
+        }
+    }
+    
+    private static class RecordingObjectOperation extends OSSObjectOperation {
+        
+        byte[] putContent;
+        
+        RecordingObjectOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            putContent = readAll(request.getInputStream());
+            PutObjectResult result = new PutObjectResult();
+            result.setETag("put-etag");
+            return result;
+        }
+    }
+    
+    @Test
+    public void testSmallOutputUsesPutObject() throws IOException {
+        RecordingMultipartOperation multipartOperation = new RecordingMultipartOperation();
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        TransferManager transferManager = new TransferManager(4);
+        
+        OSSOutputStream out = new OSSOutputStream(multipartOperation, objectOperation, transferManager,
+                new StreamUploadRequest("bucket", "key").withPartSize(PART_SIZE));
+        out.write("hello ".getBytes());
+        out.write('o');
+        out.write("ss".getBytes());
+        out.close();
+        
+        assertEquals("hello oss", new String(objectOperation.putContent));
+        assertEquals("put-etag", out.getETag());
+        assertEquals(0, multipartOperation.initiated);
+        transferManager.shutdown();
+    }
+    
+    @Test
+    public void testMultipartWithBackPressure() throws IOException {
+        RecordingMultipartOperation multipartOperation = new RecordingMultipartOperation();
+        TransferManager transferManager = new TransferManager(16);
+        byte[] data = content(PART_SIZE * 5 + 1234);
+        
+        OSSOutputStream out = new OSSOutputStream(multipartOperation, new RecordingObjectOperation(), 
+                transferManager, new StreamUploadRequest("bucket", "key").withPartSize(PART_SIZE).withTaskNum(2));
+        for (int off = 0; off < data.length; off += 7777) {
+            out.write(data, off, Math.min(7777, data.length - off));
+        }
+        out.close();
+        
+        assertEquals(1, multipartOperation.initiated);
+        assertTrue(multipartOperation.maxInFlight.get() <= 2);
+        assertEquals("multipart-etag", out.getETag());
+        assertEquals(data.length, out.getBytesWritten());
+        
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        int expectedNumber = 1;
+        for (PartETag partETag : multipartOperation.completed.getPartETags()) {
+            assertEquals(expectedNumber++, partETag.getPartNumber());
+            uploaded.write(multipartOperation.parts.get(partETag.getPartNumber()));
+        }
+        assertEquals(6, multipartOperation.completed.getPartETags().size());
+        assertArrayEquals(data, uploaded.toByteArray());
+        transferManager.shutdown();
+    }
+    
+    @Test
+    public void testPartFailureAbortsUpload() throws IOException {
+        RecordingMultipartOperation multipartOperation = new RecordingMultipartOperation();
+        multipartOperation.failingPart = 2;
+        TransferManager transferManager = new TransferManager(4);
+        
+        OSSOutputStream out = new OSSOutputStream(multipartOperation, new RecordingObjectOperation(), 
+                transferManager, new StreamUploadRequest("bucket", "key").withPartSize(PART_SIZE));
+        out.write(content(PART_SIZE * 3));
+        try {
+            out.close();
+            fail("close should report the failed part.");
+        } catch (ClientException e) {
+            assertEquals("Simulated part failure", e.getErrorMessage());
+        }
+        
+        assertNull(multipartOperation.completed);
+        assertEquals(1, multipartOperation.aborted);
+        transferManager.shutdown();
+    }
+    
+    @Test
+    public void testFailedInitiateIsNotCommittedOnClose() throws IOException {
+        RecordingMultipartOperation multipartOperation = new RecordingMultipartOperation();
+        multipartOperation.failInitiate = true;
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        TransferManager transferManager = new TransferManager(4);
+        
+        OSSOutputStream out = new OSSOutputStream(multipartOperation, objectOperation, 
+                transferManager, new StreamUploadRequest("bucket", "key").withPartSize(PART_SIZE));
+        try {
+            out.write(content(PART_SIZE + 100));
+            fail("write should report the failed initiate.");
+        } catch (ClientException e) {
+            assertEquals("Simulated initiate failure", e.getErrorMessage());
+        }
+        try {
+            out.write(1);
+            fail("write after a failed write should be rejected.");
+        } catch (IOException e) {
+        }
+        try {
+            out.close();
+            fail("close after a failed write should not commit the object.");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof ClientException);
+        }
+        
+        assertNull(objectOperation.putContent);
+        assertNull(multipartOperation.completed);
+        assertNull(out.getETag());
+        transferManager.shutdown();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static com.aliyun.oss.LocalChecksumIndexTest.crc64;
+import static com.aliyun.oss.LocalChecksumIndexTest.unsigned;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.internal.OSSParallelInputStream;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.ParallelGetObjectRequest;
+
+public class OSSParallelInputStreamTest {
+    
+    private static final int PART_SIZE = 100 * 1024;
+    private static final String ETAG = "ETAG-1";
+    
+    /**
+     * Serves ranged GETs of one in-memory object, optionally breaking the
+     * response of some range starts.
+     */
+    static class RangedObjectOperation extends OSSObjectOperation {
+        
+        final byte[] data;
+        final List<long[]> ranges = Collections.synchronizedList(new ArrayList<long[]>());
+        final Map<Long, Integer> breakAfter = Collections.synchronizedMap(new HashMap<Long, Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        volatile Long reportedCRC;
+        volatile int alwaysFailAt = -1;
+        
+        RangedObjectOperation(byte[] data) {
+            super(null, null);
+            this.data = data;
+            this.reportedCRC = crc64(data);
+        }
+        
+        @Override
+        public ObjectMetadata getObjectMetadataFromServer(GenericRequest request) {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Content-Length", String.valueOf(data.length));
+            headers.put("ETag", ETAG);
+            if (reportedCRC != null) {
+                headers.put("x-oss-hash-crc64ecma", unsigned(reportedCRC));
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setResponseHeaders(headers);
+            return metadata;
+        }
+        
+        @Override
+        public OSSObject getObjectFromServer(GetObjectRequest request) {
+            assertEquals(Collections.singletonList(ETAG), request.getMatchingETagConstraints());
+            final long[] range = request.getRange();
+            ranges.add(range);
+            if (range[0] == alwaysFailAt) {
+                throw new ClientException("Connection refused");
+            }
+            
+            int current = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), current));
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new ClientException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            
+            InputStream content = new ByteArrayInputStream(data, (int) range[0], (int) (range[1] - range[0] + 1));
+            final Integer limit = breakAfter.remove(range[0]);
+            if (limit != null) {
+                content = new FilterInputStream(content) {
+                    private int read;
+                    
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        if (read >= limit) {
+                            throw new IOException("Connection reset");
+                        }
+                        int n = super.read(b, off, Math.min(len, limit - read));
+                        read += Math.max(n, 0);
+                        return n;
+                    }
+                };
+            }
+            OSSObject object = new OSSObject();
+            object.setObjectContent(content);
+            return object;
+        }
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+    
+    private static ParallelGetObjectRequest newRequest() {
+        return new ParallelGetObjectRequest("bucket", "key").withPartSize(PART_SIZE).withTaskNum(4);
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7000];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+    
+    @Test
+    public void testReadsInOrderWithConcurrentRanges() throws Exception {
+        byte[] data = randomBytes(20 * PART_SIZE + 123);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        
+        OSSObject object = OSSParallelInputStream.open(objectOperation, new TransferManager(8), newRequest());
+        InputStream in = object.getObjectContent();
+        try {
+            assertArrayEquals(data, readAll(in));
+        } finally {
+            in.close();
+        }
+        
+        assertEquals(data.length, object.getObjectMetadata().getContentLength());
+        assertEquals(21, objectOperation.ranges.size());
+        assertTrue(objectOperation.maxRunning.get() > 1);
+        assertTrue(objectOperation.maxRunning.get() <= 4);
+    }
+    
+    @Test
+    public void testBrokenRangeResumesAfterReceivedBytes() throws Exception {
+        byte[] data = randomBytes(5 * PART_SIZE);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        objectOperation.breakAfter.put(2L * PART_SIZE, 30000);
+        
+        InputStream in = OSSParallelInputStream.open(objectOperation, new TransferManager(4), newRequest())
+                .getObjectContent();
+        try {
+            assertArrayEquals(data, readAll(in));
+        } finally {
+            in.close();
+        }
+        
+        boolean resumed = false;
+        for (long[] range : objectOperation.ranges) {
+            if (range[0] == 2L * PART_SIZE + 30000) {
+                assertEquals(3L * PART_SIZE - 1, range[1]);
+                resumed = true;
+            }
+        }
+        assertTrue(resumed);
+        assertEquals(6, objectOperation.ranges.size());
+    }
+    
+    @Test
+    public void testReadAheadIsBounded() throws Exception {
+        byte[] data = randomBytes(40 * PART_SIZE);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        
+        InputStream in = OSSParallelInputStream.open(objectOperation, new TransferManager(8), 
+                newRequest().withTaskNum(2)).getObjectContent();
+        try {
+            in.read();
+            Thread.sleep(300);
+            assertEquals(4, objectOperation.ranges.size());
+        } finally {
+            in.close();
+        }
+    }
+    
+    @Test
+    public void testCRC64Mismatch() throws Exception {
+        byte[] data = randomBytes(3 * PART_SIZE);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        objectOperation.reportedCRC = crc64(data) + 1;
+        
+        InputStream in = OSSParallelInputStream.open(objectOperation, new TransferManager(4), newRequest())
+                .getObjectContent();
+        try {
+            readAll(in);
+            fail("The CRC64 mismatch should be reported.");
+        } catch (IOException e) {
+            assertEquals(ClientErrorCode.INCONSISTENT_CRC, ((ClientException) e.getCause()).getErrorCode());
+        } finally {
+            in.close();
+        }
+    }
+    
+    @Test
+    public void testRangeFailsAfterRetries() throws Exception {
+        byte[] data = randomBytes(3 * PART_SIZE);
+        RangedObjectOperation objectOperation = new RangedObjectOperation(data);
+        objectOperation.alwaysFailAt = PART_SIZE;
+        
+        InputStream in = OSSParallelInputStream.open(objectOperation, new TransferManager(4), 
+                newRequest().withMaxRetries(1)).getObjectContent();
+        try {
+            readAll(in);
+            fail("The failing range should fail the read.");
+        } catch (IOException e) {
+            assertEquals("Connection refused", ((ClientException) e.getCause()).getErrorMessage());
+        } finally {
+            in.close();
+        }
+        
+        int attempts = 0;
+        for (long[] range : objectOperation.ranges) {
+            if (range[0] == PART_SIZE) {
+                attempts++;
+            }
+        }
+        assertEquals(2, attempts);
+    }
+    
+    @Test
+    public void testEmptyObject() throws Exception {
+        RangedObjectOperation objectOperation = new RangedObjectOperation(new byte[0]);
+        InputStream in = OSSParallelInputStream.open(objectOperation, new TransferManager(4), newRequest())
+                .getObjectContent();
+        assertEquals(-1, in.read());
+        in.close();
+        assertTrue(objectOperation.ranges.isEmpty());
+    }
+}
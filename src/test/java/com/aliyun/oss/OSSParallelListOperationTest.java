@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSBucketOperation;
+import com.aliyun.oss.internal.OSSParallelListOperation;
+import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.ListingStatistics;
+import com.aliyun.oss.model.OSSObjectSummary;
+import com.aliyun.oss.model.ObjectListing;
+import com.aliyun.oss.model.ParallelListObjectsRequest;
+import com.aliyun.oss.model.ParallelObjectListing;
+
+public class OSSParallelListOperationTest {
+    
+    /**
+     * Serves listObjects from an in-memory key set with the paging and 
+     * delimiter semantics of OSS.
+     */
+    private static class InMemoryBucketOperation extends OSSBucketOperation {
+        
+        private final TreeSet<String> keys;
+        private final String failingPrefix;
+        
+        InMemoryBucketOperation(List<String> keys, String failingPrefix) {
+            super(null, null);
+            this.keys = new TreeSet<String>(keys);
+            this.failingPrefix = failingPrefix;
+        }
+        
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request) {
+            String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+            String marker = request.getMarker();
+            String delimiter = request.getDelimiter();
+            if (failingPrefix != null && prefix.startsWith(failingPrefix)) {
+                throw new ClientException("Injected failure");
+            }
+            
+            ObjectListing listing = new ObjectListing();
+            int count = 0;
+            String last = null;
+            for (String key : marker == null ? keys : keys.tailSet(marker, false)) {
+                if (!key.startsWith(prefix)) {
+                    continue;
+                }
+                if (marker != null && marker.endsWith("/") && key.startsWith(marker)) {
+                    continue;
+                }
+                if (count == request.getMaxKeys()) {
+                    listing.setTruncated(true);
+                    listing.setNextMarker(last);
+                    break;
+                }
+                int pos = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+                if (pos >= 0) {
+                    String commonPrefix = key.substring(0, pos + delimiter.length());
+                    if (commonPrefix.equals(last)) {
+                        continue;
+                    }
+                    listing.addCommonPrefix(commonPrefix);
+                    last = commonPrefix;
+                } else {
+                    OSSObjectSummary summary = new OSSObjectSummary();
+                    summary.setKey(key);
+                    listing.addObjectSummary(summary);
+                    last = key;
+                }
+                count++;
+            }
+            return listing;
+        }
+    }
+    
+    private static List<String> sampleKeys() {
+        List<String> keys = new ArrayList<String>();
+        keys.add("a");
+        keys.add("a0");
+        keys.add("c");
+        keys.add("z");
+        for (String dir : new String[] { "a/", "b/x/", "b/y/", "d/" }) {
+            for (int i = 0; i < 7; i++) {
+                keys.add(dir + "key-" + i);
+            }
+        }
+        for (int i = 0; i < 7; i++) {
+            keys.add("b/z-" + i);
+        }
+        return keys;
+    }
+    
+    private static List<String> drain(ParallelObjectListing listing) {
+        List<String> keys = new ArrayList<String>();
+        while (listing.hasNext()) {
+            keys.add(listing.next().getKey());
+        }
+        return keys;
+    }
+    
+    @Test
+    public void testOrderedListing() {
+        List<String> keys = sampleKeys();
+        OSSParallelListOperation operation = new OSSParallelListOperation(new InMemoryBucketOperation(keys, null));
+        
+        ParallelListObjectsRequest request = new ParallelListObjectsRequest("bucket");
+        request.setMaxKeys(3);
+        request.setTaskNum(4);
+        ParallelObjectListing listing = operation.listObjects(request);
+        
+        List<String> expected = new ArrayList<String>(keys);
+        Collections.sort(expected);
+        assertEquals(expected, drain(listing));
+        
+        ListingStatistics statistics = listing.getStatistics();
+        assertTrue(statistics.isFinished());
+        assertEquals(4, statistics.getShardCount());
+        assertTrue(statistics.getPageCount() > statistics.getShardCount());
+        long shardObjects = 0;
+        for (ListingStatistics.ShardStatistics shard : statistics.getShards()) {
+            shardObjects += shard.getObjectCount();
+        }
+        assertEquals(28, shardObjects);
+        assertEquals(keys.size(), statistics.getObjectCount());
+    }
+    
+    @Test
+    public void testUnorderedListing() {
+        List<String> keys = sampleKeys();
+        OSSParallelListOperation operation = new OSSParallelListOperation(new InMemoryBucketOperation(keys, null));
+        
+        ParallelListObjectsRequest request = new ParallelListObjectsRequest("bucket", "b/");
+        request.setMaxKeys(2);
+        request.setOrdered(false);
+        List<String> listed = drain(operation.listObjects(request));
+        
+        Set<String> expected = new HashSet<String>();
+        for (String key : keys) {
+            if (key.startsWith("b/")) {
+                expected.add(key);
+            }
+        }
+        assertEquals(expected.size(), listed.size());
+        assertEquals(expected, new HashSet<String>(listed));
+    }
+    
+    @Test
+    public void testFlatTopLevelIsOneShard() {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            keys.add(String.format("key-%02d", i));
+        }
+        OSSParallelListOperation operation = new OSSParallelListOperation(new InMemoryBucketOperation(keys, null));
+        
+        ParallelListObjectsRequest request = new ParallelListObjectsRequest("bucket");
+        request.setMaxKeys(3);
+        ParallelObjectListing listing = operation.listObjects(request);
+        assertEquals(keys, drain(listing));
+        
+        ListingStatistics statistics = listing.getStatistics();
+        assertEquals(1, statistics.getShardCount());
+        assertEquals(keys.size(), statistics.getShards().get(0).getObjectCount());
+    }
+    
+    @Test
+    public void testShardFailure() {
+        OSSParallelListOperation operation = new OSSParallelListOperation(
+                new InMemoryBucketOperation(sampleKeys(), "d/"));
+        
+        ParallelListObjectsRequest request = new ParallelListObjectsRequest("bucket");
+        request.setMaxShardDepth(1);
+        ParallelObjectListing listing = operation.listObjects(request);
+        try {
+            drain(listing);
+            fail("Shard failure should be propagated.");
+        } catch (ClientException e) {
+            assertEquals("Injected failure", e.getErrorMessage());
+        }
+        assertFalse(listing.hasNext());
+    }
+    
+    @Test
+    public void testCancel() {
+        OSSParallelListOperation operation = new OSSParallelListOperation(
+                new InMemoryBucketOperation(sampleKeys(), null));
+        
+        ParallelListObjectsRequest request = new ParallelListObjectsRequest("bucket");
+        request.setMaxKeys(1);
+        ParallelObjectListing listing = operation.listObjects(request);
+        assertTrue(listing.hasNext());
+        listing.next();
+        listing.cancel();
+        assertFalse(listing.hasNext());
+    }
+}
@@ -32,6 +32,7 @@ import com.aliyun.oss.internal.ResponseParsers;
 import com.aliyun.oss.model.AccessControlList;
 import com.aliyun.oss.model.Bucket;
 import com.aliyun.oss.model.BucketList;
+import com.aliyun.oss.model.CompactObjectListing;
 import com.aliyun.oss.model.CompleteMultipartUploadResult;
 import com.aliyun.oss.model.CopyObjectResult;
 import com.aliyun.oss.model.Grant;
@@ -106,6 +107,62 @@ public class OSSResponseParserTest {
 
     }
 
+    @Test
+    public void testParseListObjectsCompact() throws Exception {
+
+        String filename = "listObjects.xml";
+        InputStream in = getInputStream(filename);
+        ObjectListing expected = ResponseParsers.parseListObjects(in);
+        in.close();
+
+        in = getInputStream(filename);
+        CompactObjectListing objectListing = ResponseParsers.parseListObjectsCompact(in);
+        in.close();
+
+        Assert.assertEquals(expected.isTruncated(), objectListing.isTruncated());
+        Assert.assertEquals(expected.getBucketName(), objectListing.getBucketName());
+        Assert.assertEquals(expected.getMaxKeys(), objectListing.getMaxKeys());
+        Assert.assertEquals(expected.getCommonPrefixes(), objectListing.getCommonPrefixes());
+        Assert.assertEquals(expected.getObjectSummaries().size(), objectListing.size());
+        Assert.assertEquals(objectListing.size(), objectListing.getObjectSummaries().size());
+
+        for (int i = 0; i < objectListing.size(); i++) {
+            OSSObjectSummary summary = expected.getObjectSummaries().get(i);
+            Assert.assertEquals(summary.getKey(), objectListing.getKey(i));
+            Assert.assertEquals(summary.getSize(), objectListing.getSize(i));
+            Assert.assertEquals(summary.getETag(), objectListing.getETag(i));
+            Assert.assertEquals(summary.getLastModified().getTime(), objectListing.getLastModifiedTime(i));
+            Assert.assertEquals(summary.getStorageClass(), objectListing.getStorageClass(i));
+
+            OSSObjectSummary view = objectListing.getObjectSummaries().get(i);
+            Assert.assertEquals(summary.getBucketName(), view.getBucketName());
+            Assert.assertEquals(summary.getLastModified(), view.getLastModified());
+            Assert.assertEquals(summary.getOwner().getId(), view.getOwner().getId());
+            Assert.assertEquals(summary.getOwner().getDisplayName(), view.getOwner().getDisplayName());
+        }
+    }
+
+    @Test
+    public void testCompactObjectListingGrowth() {
+        CompactObjectListing objectListing = new CompactObjectListing(1);
+        for (int i = 0; i < 100; i++) {
+            objectListing.addObject("key-" + i, "etag", i, i * 10L, 
+                    i % 2 == 0 ? "Standard" : "IA", "owner", "owner");
+        }
+        objectListing.trimToSize();
+
+        Assert.assertEquals(100, objectListing.size());
+        Assert.assertEquals("key-99", objectListing.getKey(99));
+        Assert.assertEquals(990L, objectListing.getSize(99));
+        Assert.assertEquals("IA", objectListing.getStorageClass(99));
+        Assert.assertEquals("Standard", objectListing.getStorageClass(98));
+        Assert.assertEquals("owner", objectListing.getOwner(50).getId());
+
+        objectListing.clearObjectSummaries();
+        Assert.assertEquals(0, objectListing.size());
+        Assert.assertTrue(objectListing.getObjectSummaries().isEmpty());
+    }
+
     @Test
     public void testParseGetBucketAcl() throws Exception {
 
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.internal.OSSUploadDirectoryOperation;
+import com.aliyun.oss.internal.OSSUploadOperation;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.PutObjectRequest;
+import com.aliyun.oss.model.PutObjectResult;
+import com.aliyun.oss.model.UploadDirectoryRequest;
+import com.aliyun.oss.model.UploadDirectoryResult;
+import com.aliyun.oss.model.UploadFileRequest;
+import com.aliyun.oss.model.UploadFileResult;
+
+public class OSSUploadDirectoryOperationTest {
+    
+    /**
+     * Records the keys put and fails the keys listed in denied.
+     */
+    private static class RecordingObjectOperation extends OSSObjectOperation {
+        
+        final Map<String, Long> put = Collections.synchronizedMap(new HashMap<String, Long>());
+        final Set<String> denied = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        
+        RecordingObjectOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            int current = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(maxInFlight.get(), current));
+            }
+            try {
+                Thread.sleep(5);
+                if (denied.contains(request.getKey())) {
+                    throw new OSSException("Denied", OSSErrorCode.ACCESS_DENIED, null, null, null, null, null);
+                }
+                put.put(request.getKey(), request.getFile().length());
+                return new PutObjectResult();
+            } catch (InterruptedException e) {
+                throw new ClientException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+    
+    private static class RecordingUploadOperation extends OSSUploadOperation {
+        
+        final Map<String, UploadFileRequest> uploaded = 
+                Collections.synchronizedMap(new HashMap<String, UploadFileRequest>());
+        
+        RecordingUploadOperation() {
+            super(null);
+        }
+        
+        @Override
+        public UploadFileResult uploadFile(UploadFileRequest request) {
+            uploaded.put(request.getKey(), request);
+            return new UploadFileResult();
+        }
+    }
+    
+    private File root;
+    
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("upload-dir", "");
+        root.delete();
+        root.mkdirs();
+    }
+    
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+    private File write(String relativePath, int size) throws IOException {
+        File file = new File(root, relativePath);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+    
+    @Test
+    public void testUploadFilteredTreeWithPrefix() throws Exception {
+        write("a.txt", 10);
+        write("b.log", 10);
+        write("sub/c.txt", 20);
+        write("sub/deep/d.txt", 30);
+        write("sub/big.txt", 200);
+        write("tmp/e.txt", 10);
+        write("sub/tmp/f.txt", 10);
+        
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        RecordingUploadOperation uploadOperation = new RecordingUploadOperation();
+        UploadDirectoryRequest request = new UploadDirectoryRequest("bucket", root.getPath(), "backup/")
+                .withInclude("*.txt").withExclude("**/tmp/**");
+        request.setMultipartThreshold(100);
+        request.setPartTaskNum(5);
+        
+        UploadDirectoryResult result = new OSSUploadDirectoryOperation(objectOperation, uploadOperation)
+                .uploadDirectory(request);
+        
+        assertEquals(new HashSet<String>(Arrays.asList("backup/a.txt", "backup/sub/c.txt", 
+                "backup/sub/deep/d.txt")), objectOperation.put.keySet());
+        assertEquals(1, uploadOperation.uploaded.size());
+        UploadFileRequest multipart = uploadOperation.uploaded.get("backup/sub/big.txt");
+        assertEquals(new File(root, "sub/big.txt").getPath(), multipart.getUploadFile());
+        assertEquals(5, multipart.getTaskNum());
+        assertFalse(multipart.isEnableCheckpoint());
+        
+        assertEquals(4, result.getUploadedCount());
+        assertEquals(1, result.getMultipartCount());
+        assertEquals(260, result.getUploadedBytes());
+        assertEquals(0, result.getFailedCount());
+        assertEquals(0, result.getSkippedCount());
+    }
+    
+    @Test
+    public void testFilesInFlightBounded() throws Exception {
+        for (int i = 0; i < 60; i++) {
+            write(String.format("d%d/f%03d", i % 3, i), 1);
+        }
+        
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        UploadDirectoryRequest request = new UploadDirectoryRequest("bucket", root.getPath()).withTaskNum(4);
+        UploadDirectoryResult result = new OSSUploadDirectoryOperation(objectOperation, 
+                new RecordingUploadOperation()).uploadDirectory(request);
+        
+        assertEquals(60, result.getUploadedCount());
+        assertEquals(60, objectOperation.put.size());
+        assertTrue(objectOperation.put.containsKey("d1/f001"));
+        assertTrue(objectOperation.maxInFlight.get() <= 4);
+    }
+    
+    @Test
+    public void testNonRecursive() throws Exception {
+        write("top", 1);
+        write("sub/nested", 1);
+        
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        UploadDirectoryRequest request = new UploadDirectoryRequest("bucket", root.getPath());
+        request.setRecursive(false);
+        new OSSUploadDirectoryOperation(objectOperation, new RecordingUploadOperation()).uploadDirectory(request);
+        
+        assertEquals(Collections.singleton("top"), objectOperation.put.keySet());
+    }
+    
+    @Test
+    public void testResumeFromManifest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            write("f" + i, 10);
+        }
+        write("big", 200);
+        File manifest = new File(root, "upload.manifest");
+        
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        objectOperation.denied.add("f3");
+        RecordingUploadOperation uploadOperation = new RecordingUploadOperation();
+        UploadDirectoryRequest request = new UploadDirectoryRequest("bucket", root.getPath())
+                .withManifestFile(manifest.getPath());
+        request.setMultipartThreshold(100);
+        
+        UploadDirectoryResult result = new OSSUploadDirectoryOperation(objectOperation, uploadOperation)
+                .uploadDirectory(request);
+        assertEquals(10, result.getUploadedCount());
+        assertEquals(1, result.getFailedCount());
+        assertEquals("f3", result.getFailures().get(0).getKey());
+        assertEquals(OSSErrorCode.ACCESS_DENIED, result.getFailures().get(0).getErrorCode());
+        assertTrue(manifest.exists());
+        assertFalse(objectOperation.put.containsKey("upload.manifest"));
+        UploadFileRequest multipart = uploadOperation.uploaded.get("big");
+        assertTrue(multipart.isEnableCheckpoint());
+        assertTrue(multipart.getCheckpointFile().startsWith(manifest.getPath() + "."));
+        
+        // A file changed since the first run is uploaded again.
+        File changed = write("f5", 20);
+        changed.setLastModified(changed.lastModified() - 10000);
+        
+        objectOperation = new RecordingObjectOperation();
+        uploadOperation = new RecordingUploadOperation();
+        result = new OSSUploadDirectoryOperation(objectOperation, uploadOperation).uploadDirectory(request);
+        
+        assertEquals(new HashSet<String>(Arrays.asList("f3", "f5")), objectOperation.put.keySet());
+        assertEquals(0, uploadOperation.uploaded.size());
+        assertEquals(9, result.getSkippedCount());
+        assertEquals(2, result.getUploadedCount());
+        assertEquals(0, result.getFailedCount());
+        assertFalse(manifest.exists());
+    }
+    
+    /**
+     * Serves HEAD from a map of objects and records puts.
+     */
+    private static class SyncedObjectOperation extends RecordingObjectOperation {
+        
+        final LocalChecksumIndexTest.HeadObjectOperation remote = new LocalChecksumIndexTest.HeadObjectOperation();
+        
+        @Override
+        public ObjectMetadata getObjectMetadataFromServer(GenericRequest request) {
+            return remote.getObjectMetadataFromServer(request);
+        }
+    }
+    
+    @Test
+    public void testSyncSkipsUnchangedFiles() throws Exception {
+        write("same", 10);
+        write("resized", 10);
+        write("edited", 10);
+        write("missing", 10);
+        write("big", 200);
+        File index = new File(root, "checksums.idx");
+        
+        SyncedObjectOperation objectOperation = new SyncedObjectOperation();
+        long zeros = LocalChecksumIndexTest.crc64(new byte[10]);
+        objectOperation.remote.addObject("same", 10, zeros, null);
+        objectOperation.remote.addObject("resized", 20, zeros, null);
+        objectOperation.remote.addObject("edited", 10, zeros + 1, null);
+        objectOperation.remote.addObject("big", 200, LocalChecksumIndexTest.crc64(new byte[200]), null);
+        RecordingUploadOperation uploadOperation = new RecordingUploadOperation();
+        UploadDirectoryRequest request = new UploadDirectoryRequest("bucket", root.getPath()).withSync(true);
+        request.setChecksumIndexFile(index.getPath());
+        request.setMultipartThreshold(100);
+        
+        UploadDirectoryResult result = new OSSUploadDirectoryOperation(objectOperation, uploadOperation)
+                .uploadDirectory(request);
+        
+        assertEquals(new HashSet<String>(Arrays.asList("resized", "edited", "missing")), 
+                objectOperation.put.keySet());
+        assertEquals(0, uploadOperation.uploaded.size());
+        assertEquals(2, result.getUnchangedCount());
+        assertEquals(3, result.getUploadedCount());
+        assertEquals(5, objectOperation.remote.heads.get());
+        assertTrue(index.exists());
+    }
+    
+    @Test
+    public void testManifestOfAnotherPrefixIgnored() throws Exception {
+        write("a", 1);
+        File manifest = File.createTempFile("upload", ".manifest");
+        manifest.deleteOnExit();
+        
+        RecordingObjectOperation objectOperation = new RecordingObjectOperation();
+        objectOperation.denied.add("one/a");
+        UploadDirectoryRequest request = new UploadDirectoryRequest("bucket", root.getPath(), "one/")
+                .withManifestFile(manifest.getPath());
+        new OSSUploadDirectoryOperation(objectOperation, new RecordingUploadOperation()).uploadDirectory(request);
+        assertTrue(manifest.exists());
+        
+        request.setKeyPrefix("two/");
+        UploadDirectoryResult result = new OSSUploadDirectoryOperation(objectOperation, 
+                new RecordingUploadOperation()).uploadDirectory(request);
+        assertEquals(0, result.getSkippedCount());
+        assertEquals(Collections.singleton("two/a"), objectOperation.put.keySet());
+    }
+}
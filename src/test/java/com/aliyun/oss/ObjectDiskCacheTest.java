@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.ResponseHeaderOverrides;
+
+public class ObjectDiskCacheTest {
+    
+    private static final String BUCKET = "bucket";
+    
+    /**
+     * Serves in-memory objects and answers If-None-Match like OSS does.
+     */
+    static class ObjectStore extends OSSObjectOperation {
+        
+        final Map<String, byte[]> objects = new HashMap<String, byte[]>();
+        final Map<String, String> eTags = new HashMap<String, String>();
+        final List<GetObjectRequest> requests = Collections.synchronizedList(new ArrayList<GetObjectRequest>());
+        
+        ObjectStore() {
+            super(null, null);
+        }
+        
+        synchronized void put(String key, byte[] data, String eTag) {
+            objects.put(key, data);
+            eTags.put(key, eTag);
+        }
+        
+        @Override
+        public synchronized OSSObject getObject(GetObjectRequest request) {
+            requests.add(request);
+            byte[] data = objects.get(request.getKey());
+            String eTag = eTags.get(request.getKey());
+            if (request.getNonmatchingETagConstraints().contains(eTag)) {
+                throw new OSSException("Not Modified", OSSErrorCode.NOT_MODIFIED, null, null, null, null, null);
+            }
+            long[] range = request.getRange();
+            if (range != null) {
+                data = Arrays.copyOfRange(data, (int) range[0], (int) range[1] + 1);
+            }
+            
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Content-Length", String.valueOf(data.length));
+            headers.put("ETag", "\"" + eTag + "\"");
+            headers.put("Last-Modified", "Fri, 16 Oct 2026 08:00:00 GMT");
+            headers.put("x-oss-meta-owner", "alice");
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setResponseHeaders(headers);
+            
+            OSSObject ossObject = new OSSObject();
+            ossObject.setBucketName(request.getBucketName());
+            ossObject.setKey(request.getKey());
+            ossObject.setObjectMetadata(metadata);
+            ossObject.setObjectContent(new ByteArrayInputStream(data));
+            return ossObject;
+        }
+    }
+    
+    private final ObjectStore store = new ObjectStore();
+    private final ObjectLoader loader = new ObjectLoader() {
+        @Override
+        public OSSObject load(GetObjectRequest request) {
+            return store.getObject(request);
+        }
+    };
+    private File directory;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("object-cache", "");
+        directory.delete();
+    }
+    
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+    
+    @Test
+    public void testRevalidatedHit() throws IOException {
+        byte[] data = randomBytes(10000);
+        store.put("a", data, "E1");
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 1024 * 1024);
+        
+        OSSObject first = cache.getObject(new GetObjectRequest(BUCKET, "a"), loader);
+        assertArrayEquals(data, readAll(first.getObjectContent()));
+        assertEquals(1, cache.getMissCount());
+        
+        OSSObject second = cache.getObject(new GetObjectRequest(BUCKET, "a"), loader);
+        assertArrayEquals(data, readAll(second.getObjectContent()));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(Arrays.asList("E1"), store.requests.get(1).getNonmatchingETagConstraints());
+        
+        ObjectMetadata metadata = second.getObjectMetadata();
+        assertEquals("E1", metadata.getETag());
+        assertEquals(data.length, metadata.getContentLength());
+        assertEquals("alice", metadata.getUserMetadata().get("owner"));
+        assertEquals(first.getObjectMetadata().getLastModified(), metadata.getLastModified());
+        assertEquals("a", second.getKey());
+    }
+    
+    @Test
+    public void testModifiedObjectReplacesEntry() throws IOException {
+        store.put("a", randomBytes(5000), "E1");
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 1024 * 1024);
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        
+        byte[] updated = randomBytes(7000);
+        store.put("a", updated, "E2");
+        assertArrayEquals(updated, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(0, cache.getHitCount());
+        
+        assertArrayEquals(updated, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, entries().length);
+        assertEquals(entries()[0].length(), cache.getSize());
+        assertEquals(7000, cache.getObject(new GetObjectRequest(BUCKET, "a"), loader)
+                .getObjectMetadata().getContentLength());
+    }
+    
+    @Test
+    public void testRangesAreCachedSeparately() throws IOException {
+        byte[] data = randomBytes(4096);
+        store.put("a", data, "E1");
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 1024 * 1024);
+        
+        GetObjectRequest range = new GetObjectRequest(BUCKET, "a").withRange(100, 199);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 200), readAll(cache.getObject(range, loader).getObjectContent()));
+        assertArrayEquals(data, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(2, entries().length);
+        
+        range = new GetObjectRequest(BUCKET, "a").withRange(100, 199);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 200), readAll(cache.getObject(range, loader).getObjectContent()));
+        assertEquals(1, cache.getHitCount());
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 25 * 1024);
+        for (String key : new String[] { "a", "b" }) {
+            store.put(key, randomBytes(10 * 1024), "E-" + key);
+            readAll(cache.getObject(new GetObjectRequest(BUCKET, key), loader).getObjectContent());
+        }
+        File[] entries = entries();
+        assertEquals(2, entries.length);
+        // "a" was used last.
+        long now = System.currentTimeMillis();
+        for (File entry : entries) {
+            entry.setLastModified(now - 60000);
+        }
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        assertEquals(1, cache.getHitCount());
+        
+        store.put("c", randomBytes(10 * 1024), "E-c");
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "c"), loader).getObjectContent());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, entries().length);
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+        
+        store.requests.clear();
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "b"), loader).getObjectContent());
+        assertEquals(2, cache.getHitCount());
+        assertTrue(store.requests.get(1).getNonmatchingETagConstraints().isEmpty());
+    }
+    
+    @Test
+    public void testMissIsStreamedAndCommittedAtEnd() throws IOException {
+        byte[] data = randomBytes(200 * 1024);
+        store.put("a", data, "E1");
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 1024 * 1024);
+        
+        InputStream partial = cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent();
+        byte[] head = new byte[1000];
+        assertEquals(1000, partial.read(head));
+        assertArrayEquals(Arrays.copyOf(data, 1000), head);
+        assertEquals(0, entries().length);
+        // Closed early: the partial copy is dropped.
+        partial.close();
+        assertEquals(0, directory.listFiles().length);
+        
+        InputStream full = cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent();
+        assertArrayEquals(data, readAll(full));
+        assertEquals(1, entries().length);
+        assertEquals(1, directory.listFiles().length);
+        assertArrayEquals(data, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(1, cache.getHitCount());
+    }
+    
+    @Test
+    public void testObjectsLargerThanCacheAreNotStored() throws IOException {
+        byte[] data = randomBytes(8192);
+        store.put("a", data, "E1");
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 4096);
+        
+        assertArrayEquals(data, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(0, entries().length);
+        assertEquals(0, cache.getSize());
+    }
+    
+    @Test
+    public void testSharedDirectory() throws IOException {
+        byte[] data = randomBytes(3000);
+        store.put("a", data, "E1");
+        ObjectDiskCache writer = new ObjectDiskCache(directory, 1024 * 1024);
+        readAll(writer.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        
+        ObjectDiskCache reader = new ObjectDiskCache(directory, 1024 * 1024);
+        assertEquals(writer.getSize(), reader.getSize());
+        
+        // An entry opened by one reader survives its replacement by another.
+        InputStream opened = reader.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent();
+        assertEquals(1, reader.getHitCount());
+        byte[] updated = randomBytes(3000);
+        store.put("a", updated, "E2");
+        assertArrayEquals(updated, readAll(writer.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertArrayEquals(data, readAll(opened));
+        
+        File temp = new File(directory, "abandoned.entry1.tmp");
+        writeFile(temp, new byte[100]);
+        temp.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000L);
+        new ObjectDiskCache(directory, 1024 * 1024);
+        assertFalse(temp.exists());
+    }
+    
+    @Test
+    public void testCorruptEntryIsReloaded() throws IOException {
+        byte[] data = randomBytes(2000);
+        store.put("a", data, "E1");
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 1024 * 1024);
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        writeFile(entries()[0], new byte[] { 1, 2, 3 });
+        
+        store.requests.clear();
+        assertArrayEquals(data, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertTrue(store.requests.get(0).getNonmatchingETagConstraints().isEmpty());
+        assertEquals(0, cache.getHitCount());
+    }
+    
+    @Test
+    public void testGetObjectToFile() throws IOException {
+        byte[] data = randomBytes(300 * 1024);
+        store.put("a", data, "E1");
+        ObjectDiskCache cache = new ObjectDiskCache(directory, 1024 * 1024);
+        File file = File.createTempFile("cached", ".dat");
+        file.deleteOnExit();
+        
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        OSSObject hit = cache.getObject(new GetObjectRequest(BUCKET, "a"), loader);
+        assertEquals(1, cache.getHitCount());
+        
+        ObjectMetadata metadata = new CopyingObjectOperation(hit).getObject(new GetObjectRequest(BUCKET, "a"), file);
+        assertEquals("E1", metadata.getETag());
+        assertArrayEquals(data, readAll(new FileInputStream(file)));
+    }
+    
+    @Test
+    public void testCacheableRequests() {
+        assertTrue(ObjectDiskCache.isCacheable(new GetObjectRequest(BUCKET, "a").withRange(0, 9)));
+        
+        GetObjectRequest conditional = new GetObjectRequest(BUCKET, "a");
+        conditional.setMatchingETagConstraints(Arrays.asList("E1"));
+        assertFalse(ObjectDiskCache.isCacheable(conditional));
+        
+        GetObjectRequest processed = new GetObjectRequest(BUCKET, "a");
+        processed.addParameter("x-oss-process", "image/resize,w_100");
+        assertFalse(ObjectDiskCache.isCacheable(processed));
+        
+        GetObjectRequest customHeader = new GetObjectRequest(BUCKET, "a");
+        customHeader.addHeader("x-oss-traffic-limit", "819200");
+        assertFalse(ObjectDiskCache.isCacheable(customHeader));
+        
+        GetObjectRequest overrides = new GetObjectRequest(BUCKET, "a");
+        overrides.setResponseHeaders(new ResponseHeaderOverrides());
+        assertFalse(ObjectDiskCache.isCacheable(overrides));
+        
+        assertNull(new OSSClient("http://oss.example.com", "id", "secret").getObjectDiskCache());
+    }
+    
+    /**
+     * Returns a prepared object from getObject so that getObject(request, File) 
+     * runs its cached-content path.
+     */
+    static class CopyingObjectOperation extends OSSObjectOperation {
+        
+        final OSSObject ossObject;
+        
+        CopyingObjectOperation(OSSObject ossObject) {
+            super(null, null);
+            this.ossObject = ossObject;
+        }
+        
+        @Override
+        public OSSObject getObject(GetObjectRequest request) {
+            return ossObject;
+        }
+    }
+    
+    private File[] entries() {
+        File[] files = directory.listFiles();
+        List<File> entries = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(".entry")) {
+                entries.add(file);
+            }
+        }
+        return entries.toArray(new File[entries.size()]);
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random().nextBytes(data);
+        return data;
+    }
+    
+    private static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
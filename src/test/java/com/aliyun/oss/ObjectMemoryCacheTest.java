@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.ObjectDiskCacheTest.ObjectStore;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+
+public class ObjectMemoryCacheTest {
+    
+    private static final String BUCKET = "bucket";
+    
+    private final ObjectStore store = new ObjectStore();
+    private final ObjectLoader loader = new ObjectLoader() {
+        @Override
+        public OSSObject load(GetObjectRequest request) {
+            return store.getObject(request);
+        }
+    };
+    
+    @Test
+    public void testHitWithinTtl() throws IOException {
+        byte[] data = randomBytes(1000);
+        store.put("a", data, "E1");
+        ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024);
+        
+        for (int i = 0; i < 4; i++) {
+            OSSObject ossObject = cache.getObject(new GetObjectRequest(BUCKET, "a"), loader);
+            assertArrayEquals(data, readAll(ossObject.getObjectContent()));
+            assertEquals("E1", ossObject.getObjectMetadata().getETag());
+            assertEquals("alice", ossObject.getObjectMetadata().getUserMetadata().get("owner"));
+        }
+        assertEquals(1, store.requests.size());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.75, cache.getHitRate(), 0.0001);
+        assertEquals(3000, cache.getHitBytes());
+        assertEquals(1000, cache.getLoadedBytes());
+        assertEquals(1000, cache.getSize());
+        assertEquals(1, cache.getEntryCount());
+    }
+    
+    @Test
+    public void testExpiredEntryIsRevalidated() throws IOException {
+        byte[] data = randomBytes(1000);
+        store.put("a", data, "E1");
+        ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024, 4096, 0, true);
+        
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        assertArrayEquals(data, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals("E1", store.requests.get(1).getNonmatchingETagConstraints().get(0));
+        assertEquals(1000, cache.getLoadedBytes());
+        
+        byte[] updated = randomBytes(1200);
+        store.put("a", updated, "E2");
+        assertArrayEquals(updated, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(1200, cache.getSize());
+        assertEquals(3, cache.getLoadCount());
+    }
+    
+    @Test
+    public void testExpiredEntryIsReloadedWithoutRevalidation() throws IOException {
+        store.put("a", randomBytes(1000), "E1");
+        ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024, 4096, 0, false);
+        
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        assertTrue(store.requests.get(1).getNonmatchingETagConstraints().isEmpty());
+        assertEquals(0, cache.getRevalidationCount());
+        assertEquals(2000, cache.getLoadedBytes());
+        assertEquals(1, cache.getEntryCount());
+    }
+    
+    @Test
+    public void testLargeObjectsPassThrough() throws IOException {
+        byte[] data = randomBytes(5000);
+        store.put("a", data, "E1");
+        ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024, 4096, 60000, true);
+        
+        assertArrayEquals(data, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertArrayEquals(data, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(2, store.requests.size());
+        assertEquals(0, cache.getEntryCount());
+    }
+    
+    @Test
+    public void testScanDoesNotFlushHotObjects() throws IOException {
+        ObjectMemoryCache cache = new ObjectMemoryCache(4 * 1024, 1024, 60000, true);
+        for (int i = 0; i < 24; i++) {
+            store.put("key" + i, randomBytes(1024), "E" + i);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 4; i++) {
+                readAll(cache.getObject(new GetObjectRequest(BUCKET, "key" + i), loader).getObjectContent());
+            }
+        }
+        for (int i = 4; i < 24; i++) {
+            readAll(cache.getObject(new GetObjectRequest(BUCKET, "key" + i), loader).getObjectContent());
+        }
+        assertEquals(20, cache.getRejectionCount());
+        
+        store.requests.clear();
+        for (int i = 0; i < 4; i++) {
+            readAll(cache.getObject(new GetObjectRequest(BUCKET, "key" + i), loader).getObjectContent());
+        }
+        assertEquals(0, store.requests.size());
+        assertEquals(4 * 1024, cache.getSize());
+    }
+    
+    @Test
+    public void testFrequentNewcomerDisplacesVictim() throws IOException {
+        ObjectMemoryCache cache = new ObjectMemoryCache(2 * 1024, 1024, 60000, true);
+        for (String key : new String[] { "a", "b", "c" }) {
+            store.put(key, randomBytes(1024), "E-" + key);
+        }
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "b"), loader).getObjectContent());
+        
+        // "c" is rejected until it has been requested more often than "a".
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "c"), loader).getObjectContent());
+        assertEquals(1, cache.getRejectionCount());
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "c"), loader).getObjectContent());
+        assertEquals(1, cache.getEvictionCount());
+        
+        store.requests.clear();
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "c"), loader).getObjectContent());
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "b"), loader).getObjectContent());
+        assertEquals(0, store.requests.size());
+    }
+    
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        final byte[] data = randomBytes(2000);
+        store.put("a", data, "E1");
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final ObjectLoader slowLoader = new ObjectLoader() {
+            @Override
+            public OSSObject load(GetObjectRequest request) {
+                loads.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return store.getObject(request);
+            }
+        };
+        final ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), slowLoader).getObjectContent());
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<byte[]> future : futures) {
+                assertArrayEquals(data, future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(7, cache.getHitCount());
+    }
+    
+    @Test
+    public void testFailedLoadIsNotCached() throws IOException {
+        store.put("a", randomBytes(100), "E1");
+        ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024);
+        ObjectLoader failing = new ObjectLoader() {
+            @Override
+            public OSSObject load(GetObjectRequest request) {
+                throw new ClientException("connection reset");
+            }
+        };
+        try {
+            cache.getObject(new GetObjectRequest(BUCKET, "a"), failing);
+            fail("ClientException expected");
+        } catch (ClientException e) {
+            assertEquals("connection reset", e.getErrorMessage());
+        }
+        assertEquals(0, cache.getEntryCount());
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        assertEquals(1, cache.getEntryCount());
+    }
+    
+    @Test
+    public void testInvalidateDropsCachedObject() throws IOException {
+        store.put("a", randomBytes(1000), "E1");
+        store.put("b", randomBytes(1000), "E1");
+        ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024);
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent());
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "b"), loader).getObjectContent());
+        assertEquals(2, cache.getEntryCount());
+        
+        byte[] updated = randomBytes(800);
+        store.put("a", updated, "E2");
+        cache.invalidate(BUCKET, "a");
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(1000, cache.getSize());
+        assertArrayEquals(updated, readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), loader).getObjectContent()));
+        assertEquals(3, store.requests.size());
+    }
+    
+    @Test
+    public void testLoadInFlightDuringInvalidateIsNotCached() throws IOException {
+        store.put("a", randomBytes(1000), "E1");
+        final ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024);
+        ObjectLoader racing = new ObjectLoader() {
+            @Override
+            public OSSObject load(GetObjectRequest request) {
+                OSSObject ossObject = store.getObject(request);
+                cache.invalidate(BUCKET, "a");
+                return ossObject;
+            }
+        };
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), racing).getObjectContent());
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+    }
+    
+    @Test
+    public void testInvalidatingAnotherKeyKeepsLoadCacheable() throws IOException {
+        store.put("a", randomBytes(1000), "E1");
+        final ObjectMemoryCache cache = new ObjectMemoryCache(1024 * 1024);
+        ObjectLoader racing = new ObjectLoader() {
+            @Override
+            public OSSObject load(GetObjectRequest request) {
+                OSSObject ossObject = store.getObject(request);
+                cache.invalidate(BUCKET, "b");
+                cache.invalidate(BUCKET, "a0");
+                return ossObject;
+            }
+        };
+        readAll(cache.getObject(new GetObjectRequest(BUCKET, "a"), racing).getObjectContent());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(1000, cache.getSize());
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random().nextBytes(data);
+        return data;
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSCopyOperation;
+import com.aliyun.oss.internal.OSSMultipartOperation;
+import com.aliyun.oss.internal.OSSObjectOperation;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.CopyObjectRequest;
+import com.aliyun.oss.model.CopyObjectResult;
+import com.aliyun.oss.model.GenericRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.ParallelCopyObjectRequest;
+import com.aliyun.oss.model.ParallelCopyObjectResult;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.UploadPartCopyRequest;
+import com.aliyun.oss.model.UploadPartCopyResult;
+
+public class ParallelCopyObjectTest {
+    
+    private static final long SOURCE_SIZE = 1024 * 1024L;
+    private static final long PART_SIZE = 100 * 1024L;
+    private static final String SOURCE_ETAG = "5B1B68A7B8C5D0F6E2A3C4D5E6F70819";
+    
+    static class SourceObjectOperation extends OSSObjectOperation {
+        
+        final List<CopyObjectRequest> copies = 
+                Collections.synchronizedList(new ArrayList<CopyObjectRequest>());
+        long size = SOURCE_SIZE;
+        String eTag = SOURCE_ETAG;
+        
+        SourceObjectOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public ObjectMetadata getObjectMetadataFromServer(GenericRequest request) {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Content-Length", String.valueOf(size));
+            headers.put("ETag", eTag);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setResponseHeaders(headers);
+            metadata.setContentType("video/mp4");
+            metadata.addUserMetadata("owner", "media");
+            return metadata;
+        }
+        
+        @Override
+        public CopyObjectResult copyObject(CopyObjectRequest request) {
+            copies.add(request);
+            CopyObjectResult result = new CopyObjectResult();
+            result.setEtag(eTag);
+            return result;
+        }
+    }
+    
+    static class CopyMultipartOperation extends OSSMultipartOperation {
+        
+        final List<UploadPartCopyRequest> partCopies = 
+                Collections.synchronizedList(new ArrayList<UploadPartCopyRequest>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger initiated = new AtomicInteger();
+        final AtomicInteger aborted = new AtomicInteger();
+        volatile int failingPart = -1;
+        volatile InitiateMultipartUploadRequest initiateRequest;
+        volatile CompleteMultipartUploadRequest completeRequest;
+        
+        CopyMultipartOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            initiateRequest = request;
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload-" + initiated.incrementAndGet());
+            return result;
+        }
+        
+        @Override
+        public UploadPartCopyResult uploadPartCopy(UploadPartCopyRequest request) {
+            int current = running.incrementAndGet();
+            try {
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                }
+                Thread.sleep(10);
+                if (request.getPartNumber() == failingPart) {
+                    throw new ClientException("Part copy failed");
+                }
+                partCopies.add(request);
+                UploadPartCopyResult result = new UploadPartCopyResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            } catch (InterruptedException e) {
+                throw new ClientException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+        
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completeRequest = request;
+            CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+            result.setETag("complete-etag");
+            return result;
+        }
+        
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted.incrementAndGet();
+        }
+    }
+    
+    private static ParallelCopyObjectRequest newRequest() {
+        ParallelCopyObjectRequest request = new ParallelCopyObjectRequest("src-bucket", "src-key", 
+                "dst-bucket", "dst-key");
+        request.setPartSize(PART_SIZE);
+        request.setMultipartThreshold(512 * 1024L);
+        request.setTaskNum(4);
+        return request;
+    }
+    
+    @Test
+    public void testSmallObjectUsesCopyObject() {
+        SourceObjectOperation objectOperation = new SourceObjectOperation();
+        objectOperation.size = 1024;
+        CopyMultipartOperation multipartOperation = new CopyMultipartOperation();
+        OSSCopyOperation copyOperation = new OSSCopyOperation(objectOperation, multipartOperation, 
+                new TransferManager(4));
+        
+        ParallelCopyObjectResult result = copyOperation.copyObject(newRequest());
+        
+        assertFalse(result.isMultipart());
+        assertEquals(1, objectOperation.copies.size());
+        assertEquals(Collections.singletonList(SOURCE_ETAG), 
+                objectOperation.copies.get(0).getMatchingETagConstraints());
+        assertEquals(0, multipartOperation.initiated.get());
+    }
+    
+    @Test
+    public void testRangesCoverSourceConcurrently() {
+        SourceObjectOperation objectOperation = new SourceObjectOperation();
+        CopyMultipartOperation multipartOperation = new CopyMultipartOperation();
+        OSSCopyOperation copyOperation = new OSSCopyOperation(objectOperation, multipartOperation, 
+                new TransferManager(4));
+        
+        ParallelCopyObjectResult result = copyOperation.copyObject(newRequest());
+        
+        assertTrue(result.isMultipart());
+        assertEquals("complete-etag", result.getETag());
+        assertEquals(SOURCE_SIZE, result.getObjectSize());
+        assertTrue(multipartOperation.maxRunning.get() > 1);
+        
+        int partCount = (int) ((SOURCE_SIZE + PART_SIZE - 1) / PART_SIZE);
+        assertEquals(partCount, multipartOperation.partCopies.size());
+        long[] covered = new long[partCount];
+        for (UploadPartCopyRequest part : multipartOperation.partCopies) {
+            assertEquals(Collections.singletonList(SOURCE_ETAG), part.getMatchingETagConstraints());
+            assertEquals((part.getPartNumber() - 1) * PART_SIZE, part.getBeginIndex().longValue());
+            covered[part.getPartNumber() - 1] = part.getPartSize();
+        }
+        long total = 0;
+        for (long size : covered) {
+            total += size;
+        }
+        assertEquals(SOURCE_SIZE, total);
+        
+        List<PartETag> partETags = multipartOperation.completeRequest.getPartETags();
+        for (int i = 0; i < partETags.size(); i++) {
+            assertEquals(i + 1, partETags.get(i).getPartNumber());
+        }
+        // Multipart copy does not carry the source metadata over by itself.
+        ObjectMetadata metadata = multipartOperation.initiateRequest.getObjectMetadata();
+        assertEquals("video/mp4", metadata.getContentType());
+        assertEquals("media", metadata.getUserMetadata().get("owner"));
+        assertEquals(0, multipartOperation.aborted.get());
+    }
+    
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        File checkpoint = File.createTempFile("copy", ".ccp");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        
+        SourceObjectOperation objectOperation = new SourceObjectOperation();
+        CopyMultipartOperation multipartOperation = new CopyMultipartOperation();
+        multipartOperation.failingPart = 5;
+        OSSCopyOperation copyOperation = new OSSCopyOperation(objectOperation, multipartOperation, 
+                new TransferManager(1));
+        ParallelCopyObjectRequest request = newRequest();
+        request.setTaskNum(1);
+        request.setEnableCheckpoint(true);
+        request.setCheckpointFile(checkpoint.getPath());
+        
+        try {
+            copyOperation.copyObject(request);
+            fail("The failing part should fail the copy.");
+        } catch (ClientException e) {
+            assertEquals("Part copy failed", e.getErrorMessage());
+        }
+        assertTrue(checkpoint.exists());
+        assertEquals(0, multipartOperation.aborted.get());
+        int copiedBefore = multipartOperation.partCopies.size();
+        assertEquals(4, copiedBefore);
+        
+        multipartOperation.failingPart = -1;
+        ParallelCopyObjectResult result = copyOperation.copyObject(request);
+        
+        assertNotNull(result.getMultipartUploadResult());
+        assertEquals(1, multipartOperation.initiated.get());
+        assertEquals(11, multipartOperation.partCopies.size());
+        assertEquals(11, multipartOperation.completeRequest.getPartETags().size());
+        assertFalse(checkpoint.exists());
+    }
+    
+    @Test
+    public void testChangedSourceRestartsCopy() throws Exception {
+        File checkpoint = File.createTempFile("copy", ".ccp");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        
+        SourceObjectOperation objectOperation = new SourceObjectOperation();
+        CopyMultipartOperation multipartOperation = new CopyMultipartOperation();
+        multipartOperation.failingPart = 3;
+        OSSCopyOperation copyOperation = new OSSCopyOperation(objectOperation, multipartOperation, 
+                new TransferManager(1));
+        ParallelCopyObjectRequest request = newRequest();
+        request.setTaskNum(1);
+        request.setEnableCheckpoint(true);
+        request.setCheckpointFile(checkpoint.getPath());
+        
+        try {
+            copyOperation.copyObject(request);
+            fail("The failing part should fail the copy.");
+        } catch (ClientException e) {
+        }
+        
+        objectOperation.eTag = "0F1E2D3C4B5A69788796A5B4C3D2E1F0";
+        multipartOperation.failingPart = -1;
+        multipartOperation.partCopies.clear();
+        copyOperation.copyObject(request);
+        
+        assertEquals(2, multipartOperation.initiated.get());
+        assertEquals(1, multipartOperation.aborted.get());
+        assertEquals(11, multipartOperation.partCopies.size());
+        for (UploadPartCopyRequest part : multipartOperation.partCopies) {
+            assertEquals("upload-2", part.getUploadId());
+            assertEquals(Collections.singletonList(objectOperation.eTag), part.getMatchingETagConstraints());
+        }
+    }
+    
+    @Test
+    public void testFailureWithoutCheckpointAbortsUpload() {
+        SourceObjectOperation objectOperation = new SourceObjectOperation();
+        CopyMultipartOperation multipartOperation = new CopyMultipartOperation();
+        multipartOperation.failingPart = 2;
+        OSSCopyOperation copyOperation = new OSSCopyOperation(objectOperation, multipartOperation, 
+                new TransferManager(4));
+        
+        try {
+            copyOperation.copyObject(newRequest());
+            fail("The failing part should fail the copy.");
+        } catch (ClientException e) {
+        }
+        assertEquals(1, multipartOperation.aborted.get());
+    }
+}
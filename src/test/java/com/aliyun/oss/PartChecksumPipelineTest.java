@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.common.utils.CRC64;
+import com.aliyun.oss.internal.OSSMultipartOperation;
+import com.aliyun.oss.internal.OSSUploadOperation;
+import com.aliyun.oss.internal.PartChecksumPipeline;
+import com.aliyun.oss.internal.PartChecksumPipeline.PartChecksum;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.UploadFileRequest;
+import com.aliyun.oss.model.UploadFileResult;
+import com.aliyun.oss.model.UploadPartRequest;
+import com.aliyun.oss.model.UploadPartResult;
+
+public class PartChecksumPipelineTest {
+    
+    private static final int PART_SIZE = 100 * 1024;
+    
+    /**
+     * Checks each part against the precomputed checksums and answers 
+     * CompleteMultipartUpload with a server CRC64 of the received bytes.
+     */
+    private static class VerifyingMultipartOperation extends OSSMultipartOperation {
+        
+        final Map<Integer, byte[]> received = Collections.synchronizedMap(new HashMap<Integer, byte[]>());
+        final Map<Integer, UploadPartRequest> requests = 
+                Collections.synchronizedMap(new HashMap<Integer, UploadPartRequest>());
+        long serverCRCDelta;
+        
+        VerifyingMultipartOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload");
+            return result;
+        }
+        
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            byte[] data = read(request.getInputStream(), request.getPartSize());
+            received.put(request.getPartNumber(), data);
+            requests.put(request.getPartNumber(), request);
+            
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            result.setPartSize(request.getPartSize());
+            result.setClientCRC64(request.getPartCRC64());
+            return result;
+        }
+        
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            long clientCRC = 0;
+            long serverCRC = 0;
+            for (PartETag partETag : request.getPartETags()) {
+                clientCRC = CRC64.combine(clientCRC, partETag.getPartCRC64(), partETag.getPartSize());
+                byte[] data = received.get(partETag.getPartNumber());
+                serverCRC = CRC64.combine(serverCRC, crc64(data, 0, data.length), data.length);
+            }
+            CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+            result.setClientCRC64(clientCRC);
+            result.setServerCRC64(serverCRC + serverCRCDelta);
+            return result;
+        }
+    }
+    
+    private static byte[] read(InputStream in, long size) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            long remaining = size;
+            while (remaining > 0) {
+                int len = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (len < 0) {
+                    break;
+                }
+                out.write(buffer, 0, len);
+                remaining -= len;
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new ClientException(e);
+        }
+    }
+    
+    private static long crc64(byte[] data, int offset, int length) {
+        CRC64 crc = new CRC64();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+    
+    private static String md5(byte[] data, int offset, int length) throws Exception {
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        md5.update(data, offset, length);
+        return BinaryUtil.toBase64String(md5.digest());
+    }
+    
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+    
+    private static File writeTemp(byte[] data) throws IOException {
+        File file = File.createTempFile("pipeline", ".dat");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+    
+    @Test
+    public void testChecksumsMatchPartsFromConcurrentReaders() throws Exception {
+        final byte[] data = randomData(PART_SIZE * 7 + 123);
+        RandomAccessFile file = new RandomAccessFile(writeTemp(data), "r");
+        
+        int parts = (data.length + PART_SIZE - 1) / PART_SIZE;
+        long[] offsets = new long[parts];
+        long[] sizes = new long[parts];
+        for (int i = 0; i < parts; i++) {
+            offsets[i] = (long) i * PART_SIZE;
+            sizes[i] = Math.min(PART_SIZE, data.length - offsets[i]);
+        }
+        
+        final PartChecksumPipeline pipeline = new PartChecksumPipeline(file.getChannel(), offsets, sizes, 2, true);
+        pipeline.start();
+        ExecutorService service = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<PartChecksum>> futures = new ArrayList<Future<PartChecksum>>();
+            for (int i = 0; i < parts; i++) {
+                final int index = i;
+                futures.add(service.submit(new Callable<PartChecksum>() {
+                    @Override
+                    public PartChecksum call() throws Exception {
+                        return pipeline.get(index);
+                    }
+                }));
+            }
+            
+            long combined = 0;
+            for (int i = 0; i < parts; i++) {
+                PartChecksum checksum = futures.get(i).get();
+                int offset = (int) offsets[i];
+                int size = (int) sizes[i];
+                assertEquals(crc64(data, offset, size), checksum.getCrc64());
+                assertEquals(md5(data, offset, size), checksum.getMd5());
+                combined = CRC64.combine(combined, checksum.getCrc64(), size);
+            }
+            assertEquals(crc64(data, 0, data.length), combined);
+        } finally {
+            service.shutdown();
+            pipeline.close();
+            file.close();
+        }
+    }
+    
+    @Test
+    public void testGetComputesInlineWithoutStage() throws Exception {
+        byte[] data = randomData(1000);
+        RandomAccessFile file = new RandomAccessFile(writeTemp(data), "r");
+        try {
+            PartChecksumPipeline pipeline = new PartChecksumPipeline(file.getChannel(), 
+                    new long[] { 500 }, new long[] { 500 }, 1, false);
+            PartChecksum checksum = pipeline.get(0);
+            assertEquals(crc64(data, 500, 500), checksum.getCrc64());
+            assertNull(checksum.getMd5());
+            pipeline.close();
+        } finally {
+            file.close();
+        }
+    }
+    
+    @Test
+    public void testCloseWaitsForStage() throws Exception {
+        byte[] data = randomData(PART_SIZE * 8);
+        RandomAccessFile file = new RandomAccessFile(writeTemp(data), "r");
+        long[] offsets = new long[8];
+        long[] sizes = new long[8];
+        for (int i = 0; i < 8; i++) {
+            offsets[i] = (long) i * PART_SIZE;
+            sizes[i] = PART_SIZE;
+        }
+        
+        PartChecksumPipeline pipeline = new PartChecksumPipeline(file.getChannel(), offsets, sizes, 4, true);
+        pipeline.start();
+        assertEquals(crc64(data, 0, PART_SIZE), pipeline.get(0).getCrc64());
+        pipeline.close();
+        // Once close returns the stage no longer reads the file.
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName().startsWith("oss-checksum-"));
+        }
+        file.close();
+    }
+    
+    @Test
+    public void testPipelinedUploadFile() throws Throwable {
+        byte[] data = randomData(PART_SIZE * 5 + 77);
+        File upload = writeTemp(data);
+        VerifyingMultipartOperation multipartOperation = new VerifyingMultipartOperation();
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation, new TransferManager(4));
+        
+        UploadFileRequest request = new UploadFileRequest("bucket", "key", upload.getPath(), PART_SIZE, 3);
+        request.setChecksumPipelined(true);
+        request.setContentMD5Enabled(true);
+        UploadFileResult result = uploadOperation.uploadFile(request);
+        
+        assertEquals(6, multipartOperation.requests.size());
+        for (UploadPartRequest part : multipartOperation.requests.values()) {
+            int offset = (part.getPartNumber() - 1) * PART_SIZE;
+            assertEquals(Long.valueOf(crc64(data, offset, (int) part.getPartSize())), part.getPartCRC64());
+            assertEquals(md5(data, offset, (int) part.getPartSize()), part.getMd5Digest());
+        }
+        assertEquals(Long.valueOf(crc64(data, 0, data.length)), 
+                result.getMultipartUploadResult().getClientCRC64());
+    }
+    
+    @Test
+    public void testPipelinedUploadDetectsCrcMismatch() throws Throwable {
+        File upload = writeTemp(randomData(PART_SIZE * 2));
+        VerifyingMultipartOperation multipartOperation = new VerifyingMultipartOperation();
+        multipartOperation.serverCRCDelta = 1;
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation, new TransferManager(4));
+        
+        UploadFileRequest request = new UploadFileRequest("bucket", "key", upload.getPath(), PART_SIZE, 2);
+        request.setChecksumPipelined(true);
+        try {
+            uploadOperation.uploadFile(request);
+            fail("The CRC64 mismatch should be detected.");
+        } catch (ClientException e) {
+            assertEquals(ClientErrorCode.INCONSISTENT_CRC, e.getErrorCode());
+        }
+        assertNull(multipartOperation.requests.get(1).getMd5Digest());
+    }
+    
+    @Test
+    public void testCrcMismatchRemovesCheckpoint() throws Throwable {
+        File upload = writeTemp(randomData(PART_SIZE * 2));
+        File checkpoint = new File(upload.getPath() + ".ucp");
+        checkpoint.deleteOnExit();
+        VerifyingMultipartOperation multipartOperation = new VerifyingMultipartOperation();
+        multipartOperation.serverCRCDelta = 1;
+        OSSUploadOperation uploadOperation = new OSSUploadOperation(multipartOperation, new TransferManager(2));
+        
+        UploadFileRequest request = new UploadFileRequest("bucket", "key", upload.getPath(), PART_SIZE, 2);
+        request.setChecksumPipelined(true);
+        request.setEnableCheckpoint(true);
+        try {
+            uploadOperation.uploadFile(request);
+            fail("The CRC64 mismatch should be detected.");
+        } catch (ClientException e) {
+            assertEquals(ClientErrorCode.INCONSISTENT_CRC, e.getErrorCode());
+        }
+        // The upload was completed, so there is nothing left to resume.
+        assertFalse(checkpoint.exists());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.PrefetchingListingIterator;
+
+public class PrefetchingListingIteratorTest {
+    
+    private static class PagedIterator extends PrefetchingListingIterator<Integer> {
+        
+        private final int pageCount;
+        private final int pageSize;
+        private final int failAtPage;
+        private final AtomicInteger fetched = new AtomicInteger();
+        
+        public PagedIterator(int pageCount, int pageSize, int failAtPage, int readAheadPages) {
+            super(readAheadPages);
+            this.pageCount = pageCount;
+            this.pageSize = pageSize;
+            this.failAtPage = failAtPage;
+        }
+        
+        @Override
+        protected List<Integer> fetchNextPage() {
+            int page = fetched.get();
+            if (page == failAtPage) {
+                throw new ClientException("page " + page + " failed");
+            }
+            if (page >= pageCount) {
+                return null;
+            }
+            fetched.incrementAndGet();
+            List<Integer> items = new ArrayList<Integer>();
+            for (int i = 0; i < pageSize; i++) {
+                items.add(page * pageSize + i);
+            }
+            return items;
+        }
+    }
+    
+    @Test
+    public void testIterateAllPages() {
+        PagedIterator it = new PagedIterator(5, 3, -1, 2);
+        int expected = 0;
+        while (it.hasNext()) {
+            assertEquals(expected++, it.next().intValue());
+        }
+        assertEquals(15, expected);
+        assertFalse(it.hasNext());
+    }
+    
+    @Test
+    public void testSkipEmptyPages() {
+        PrefetchingListingIterator<Integer> it = new PrefetchingListingIterator<Integer>(1) {
+            private int page = 0;
+            
+            @Override
+            protected List<Integer> fetchNextPage() {
+                page++;
+                if (page > 4) {
+                    return null;
+                }
+                return page % 2 == 0 ? new ArrayList<Integer>() : Arrays.asList(page);
+            }
+        };
+        
+        List<Integer> items = new ArrayList<Integer>();
+        while (it.hasNext()) {
+            items.add(it.next());
+        }
+        assertEquals(Arrays.asList(1, 3), items);
+    }
+    
+    @Test
+    public void testBoundedReadAhead() throws InterruptedException {
+        PagedIterator it = new PagedIterator(100, 1, -1, 2);
+        assertTrue(it.hasNext());
+        Thread.sleep(200);
+        // One page consumed plus at most two buffered and one blocked on put.
+        assertTrue(it.fetched.get() <= 4);
+        it.cancel();
+    }
+    
+    @Test
+    public void testCancel() {
+        PagedIterator it = new PagedIterator(100, 10, -1, 1);
+        assertTrue(it.hasNext());
+        it.next();
+        it.cancel();
+        assertTrue(it.isCancelled());
+        assertFalse(it.hasNext());
+    }
+    
+    @Test
+    public void testCancelWakesBlockedConsumer() throws InterruptedException {
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final PrefetchingListingIterator<Integer> it = new PrefetchingListingIterator<Integer>(1) {
+            @Override
+            protected List<Integer> fetchNextPage() {
+                fetching.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    throw new ClientException("interrupted", e);
+                }
+                return null;
+            }
+        };
+        final AtomicInteger result = new AtomicInteger(-1);
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(it.hasNext() ? 1 : 0);
+            }
+        });
+        consumer.start();
+        fetching.await();
+        it.close();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertEquals(0, result.get());
+    }
+    
+    @Test
+    public void testErrorPropagated() {
+        PrefetchingListingIterator<Integer> it = new PrefetchingListingIterator<Integer>(1) {
+            @Override
+            protected List<Integer> fetchNextPage() {
+                throw new AssertionError("page failed");
+            }
+        };
+        try {
+            it.hasNext();
+            fail("Listing error should be propagated.");
+        } catch (AssertionError e) {
+            assertEquals("page failed", e.getMessage());
+        }
+        assertFalse(it.hasNext());
+    }
+    
+    @Test
+    public void testFailurePropagated() {
+        PagedIterator it = new PagedIterator(5, 2, 2, 2);
+        int consumed = 0;
+        try {
+            while (it.hasNext()) {
+                it.next();
+                consumed++;
+            }
+            fail("Listing failure should be propagated.");
+        } catch (ClientException e) {
+            assertEquals(4, consumed);
+        }
+        assertFalse(it.hasNext());
+    }
+}
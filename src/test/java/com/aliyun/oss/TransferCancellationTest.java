@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.aliyun.oss.internal.OSSMultipartOperation;
+import com.aliyun.oss.internal.OSSUploadOperation;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.TransferHandle;
+import com.aliyun.oss.model.UploadFileRequest;
+import com.aliyun.oss.model.UploadPartRequest;
+import com.aliyun.oss.model.UploadPartResult;
+
+public class TransferCancellationTest {
+    
+    private static final int PART_SIZE = 100 * 1024;
+    
+    /**
+     * Reads every part slowly so that a transfer can be stopped while parts
+     * are in flight.
+     */
+    private static class SlowMultipartOperation extends OSSMultipartOperation {
+        
+        final AtomicInteger startedParts = new AtomicInteger();
+        final AtomicInteger aborted = new AtomicInteger();
+        final CountDownLatch firstPartStarted = new CountDownLatch(1);
+        volatile int failingPart = -1;
+        
+        SlowMultipartOperation() {
+            super(null, null);
+        }
+        
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload-id");
+            return result;
+        }
+        
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            startedParts.incrementAndGet();
+            firstPartStarted.countDown();
+            if (request.getPartNumber() == failingPart) {
+                throw new ClientException("Simulated part failure");
+            }
+            try {
+                InputStream in = request.getInputStream();
+                byte[] buffer = new byte[PART_SIZE / 20];
+                long remaining = request.getPartSize();
+                while (remaining > 0) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) {
+                        break;
+                    }
+                    remaining -= n;
+                    Thread.sleep(5);
+                }
+            } catch (IOException e) {
+                throw new ClientException(e);
+            } catch (InterruptedException e) {
+                throw new ClientException(e);
+            }
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        }
+        
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            return new CompleteMultipartUploadResult();
+        }
+        
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted.incrementAndGet();
+        }
+    }
+    
+    private static UploadFileRequest newRequest(int parts) throws IOException {
+        File upload = File.createTempFile("upload", ".dat");
+        upload.deleteOnExit();
+        new File(upload.getPath() + ".ucp").deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(upload, "rw");
+        raf.setLength((long) parts * PART_SIZE);
+        raf.close();
+        
+        UploadFileRequest request = new UploadFileRequest("bucket", "key");
+        request.setUploadFile(upload.getPath());
+        request.setPartSize(PART_SIZE);
+        return request;
+    }
+    
+    @Test
+    public void testFailFastStopsQueuedPartsAndAborts() throws Throwable {
+        SlowMultipartOperation multipartOperation = new SlowMultipartOperation();
+        multipartOperation.failingPart = 2;
+        UploadFileRequest request = newRequest(20);
+        request.setTaskNum(2);
+        
+        try {
+            new OSSUploadOperation(multipartOperation).uploadFile(request);
+            fail("The upload should fail.");
+        } catch (ClientException e) {
+            assertEquals("Simulated part failure", e.getErrorMessage());
+        }
+        
+        // Only the parts already running when part 2 failed were started.
+        assertTrue(multipartOperation.startedParts.get() <= 3);
+        assertEquals(1, multipartOperation.aborted.get());
+    }
+    
+    @Test
+    public void testCancelAbortsInFlightParts() throws Throwable {
+        final SlowMultipartOperation multipartOperation = new SlowMultipartOperation();
+        final UploadFileRequest request = newRequest(20);
+        request.setTaskNum(2);
+        final TransferHandle handle = new TransferHandle();
+        request.setTransferHandle(handle);
+        
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread uploader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new OSSUploadOperation(multipartOperation).uploadFile(request);
+                } catch (ClientException e) {
+                    if ("The transfer has been cancelled.".equals(e.getErrorMessage())) {
+                        failures.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        uploader.start();
+        
+        assertTrue(multipartOperation.firstPartStarted.await(5, TimeUnit.SECONDS));
+        long cancelTime = System.currentTimeMillis();
+        handle.cancel();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        
+        // A part takes about 100ms to read, the abort interrupts it at the next read.
+        assertTrue(System.currentTimeMillis() - cancelTime < 1000);
+        assertEquals(1, failures.get());
+        assertTrue(multipartOperation.startedParts.get() <= 2);
+        assertEquals(1, multipartOperation.aborted.get());
+    }
+    
+    @Test
+    public void testCheckpointKeepsPartsOnFailure() throws Throwable {
+        SlowMultipartOperation multipartOperation = new SlowMultipartOperation();
+        multipartOperation.failingPart = 1;
+        UploadFileRequest request = newRequest(3);
+        request.setEnableCheckpoint(true);
+        
+        try {
+            new OSSUploadOperation(multipartOperation).uploadFile(request);
+            fail("The upload should fail.");
+        } catch (ClientException e) {
+            assertEquals("Simulated part failure", e.getErrorMessage());
+        }
+        assertEquals(0, multipartOperation.aborted.get());
+        assertTrue(new File(request.getCheckpointFile()).exists());
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TransferManagerTest {
+    
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while ((current = max.get()) < value && !max.compareAndSet(current, value)) {
+        }
+    }
+    
+    private static List<Callable<Integer>> trackedTasks(final int count, final AtomicInteger globalInFlight,
+            final AtomicInteger globalMax, final AtomicInteger transferMax) {
+        final AtomicInteger transferInFlight = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < count; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    updateMax(globalMax, globalInFlight.incrementAndGet());
+                    updateMax(transferMax, transferInFlight.incrementAndGet());
+                    try {
+                        Thread.sleep(5);
+                    } finally {
+                        transferInFlight.decrementAndGet();
+                        globalInFlight.decrementAndGet();
+                    }
+                    return value;
+                }
+            });
+        }
+        return tasks;
+    }
+    
+    @Test
+    public void testConcurrencyCaps() throws Exception {
+        TransferManager transferManager = new TransferManager(4);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger globalMax = new AtomicInteger();
+        AtomicInteger firstMax = new AtomicInteger();
+        AtomicInteger secondMax = new AtomicInteger();
+        
+        List<Future<Integer>> first = transferManager.submitAll(
+                trackedTasks(20, inFlight, globalMax, firstMax), 3);
+        List<Future<Integer>> second = transferManager.submitAll(
+                trackedTasks(20, inFlight, globalMax, secondMax), 3);
+        
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, first.get(i).get().intValue());
+            assertEquals(i, second.get(i).get().intValue());
+        }
+        
+        assertTrue(globalMax.get() <= 4);
+        assertTrue(firstMax.get() <= 3);
+        assertTrue(secondMax.get() <= 3);
+        waitForCompletedTasks(transferManager, 40);
+        assertEquals(0, transferManager.getQueuedTaskCount());
+        assertEquals(0, transferManager.getRunningTaskCount());
+        assertEquals(0, transferManager.getPendingTransferCount());
+        transferManager.shutdown();
+    }
+    
+    @Test
+    public void testRoundRobinAcrossTransfers() throws Exception {
+        TransferManager transferManager = new TransferManager(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        
+        List<Callable<Void>> transferA = new ArrayList<Callable<Void>>();
+        List<Callable<Void>> transferB = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < 3; i++) {
+            final String a = "a" + i;
+            final String b = "b" + i;
+            transferA.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    gate.await();
+                    order.add(a);
+                    return null;
+                }
+            });
+            transferB.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    order.add(b);
+                    return null;
+                }
+            });
+        }
+        
+        List<Future<Void>> futuresA = transferManager.submitAll(transferA, 5);
+        List<Future<Void>> futuresB = transferManager.submitAll(transferB, 5);
+        
+        assertEquals(1, transferManager.getRunningTaskCount());
+        assertEquals(5, transferManager.getQueuedTaskCount());
+        assertEquals(2, transferManager.getPendingTransferCount());
+        
+        gate.countDown();
+        for (Future<Void> future : futuresA) {
+            future.get();
+        }
+        for (Future<Void> future : futuresB) {
+            future.get();
+        }
+        
+        assertEquals(Arrays.asList("a0", "a1", "b0", "a2", "b1", "b2"), order);
+        transferManager.shutdown();
+    }
+    
+    @Test
+    public void testCallerExecutorAndCancellation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        TransferManager transferManager = new TransferManager(executor, 1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    gate.await();
+                    return runs.incrementAndGet();
+                }
+            });
+        }
+        
+        List<Future<Integer>> futures = transferManager.submitAll(tasks, 3);
+        assertTrue(futures.get(1).cancel(false));
+        gate.countDown();
+        
+        futures.get(0).get();
+        futures.get(2).get();
+        assertTrue(futures.get(1).isCancelled());
+        assertEquals(2, runs.get());
+        
+        // The caller supplied executor is left running.
+        transferManager.shutdown();
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testSameThreadExecutorDoesNotRecurse() throws Exception {
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicInteger maxDepth = new AtomicInteger();
+        Executor sameThread = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                updateMax(maxDepth, depth.incrementAndGet());
+                try {
+                    command.run();
+                } finally {
+                    depth.decrementAndGet();
+                }
+            }
+        };
+        TransferManager transferManager = new TransferManager(sameThread, 4);
+        
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 50000; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return value;
+                }
+            });
+        }
+        List<Future<Integer>> futures = transferManager.submitAll(tasks, 4);
+        
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).get().intValue());
+        }
+        assertEquals(1, maxDepth.get());
+        assertEquals(0, transferManager.getQueuedTaskCount());
+        assertEquals(0, transferManager.getRunningTaskCount());
+    }
+    
+    @Test
+    public void testClientShutdownKeepsSharedManager() throws Exception {
+        TransferManager shared = new TransferManager(2);
+        OSSClient first = new OSSClient("http://oss.example.com", "id", "secret");
+        OSSClient second = new OSSClient("http://oss.example.com", "id", "secret");
+        first.setTransferManager(shared);
+        second.setTransferManager(shared);
+        first.shutdown();
+        
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        tasks.add(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 7;
+            }
+        });
+        assertEquals(7, second.getTransferManager().submitAll(tasks, 1).get(0).get().intValue());
+        second.shutdown();
+        shared.shutdown();
+    }
+    
+    @Test
+    public void testCancelQueuedLeavesRunningTasks() throws Exception {
+        TransferManager transferManager = new TransferManager(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    started.countDown();
+                    gate.await();
+                    return runs.incrementAndGet();
+                }
+            });
+        }
+        
+        List<Future<Integer>> futures = transferManager.submitAll(tasks, 2);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(3, transferManager.cancelQueued(futures));
+        assertEquals(0, transferManager.getQueuedTaskCount());
+        assertEquals(0, transferManager.getPendingTransferCount());
+        assertFalse(futures.get(0).isCancelled());
+        assertTrue(futures.get(3).isCancelled());
+        
+        gate.countDown();
+        assertEquals(1, futures.get(0).get().intValue());
+        assertEquals(1, runs.get());
+        transferManager.shutdown();
+    }
+    
+    private static void waitForCompletedTasks(TransferManager transferManager, long expected) 
+            throws InterruptedException {
+        // Futures complete just before the bookkeeping of the task runs.
+        for (int i = 0; i < 500 && transferManager.getCompletedTaskCount() < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, transferManager.getCompletedTaskCount());
+    }
+}
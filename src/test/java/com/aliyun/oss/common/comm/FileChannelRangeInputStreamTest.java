@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.oss.common.comm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.aliyun.oss.common.comm.io.BoundedInputStream;
+import com.aliyun.oss.common.comm.io.FileChannelRangeInputStream;
+import com.aliyun.oss.common.utils.IOUtils;
+
+public class FileChannelRangeInputStreamTest {
+    
+    private static File createFile(byte[] content) throws IOException {
+        File file = File.createTempFile("range", ".dat");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+        return file;
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+    
+    @Test
+    public void testReadRangesOfSharedChannel() throws IOException {
+        byte[] content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        RandomAccessFile file = new RandomAccessFile(createFile(content), "r");
+        FileChannel channel = file.getChannel();
+        try {
+            InputStream first = new FileChannelRangeInputStream(channel, 0, 40);
+            InputStream second = new FileChannelRangeInputStream(channel, 40, 60);
+            
+            assertEquals(0, first.read());
+            assertEquals(40, second.read());
+            assertArrayEquals(Arrays.copyOfRange(content, 41, 100), readAll(second));
+            assertArrayEquals(Arrays.copyOfRange(content, 1, 40), readAll(first));
+            assertEquals(-1, first.read());
+            
+            // Closing a part leaves the shared channel open.
+            first.close();
+            assertTrue(channel.isOpen());
+            assertEquals(0, channel.position());
+        } finally {
+            file.close();
+        }
+    }
+    
+    @Test
+    public void testRepeatableThroughBoundedStream() throws IOException {
+        byte[] content = "0123456789abcdefghij".getBytes();
+        RandomAccessFile file = new RandomAccessFile(createFile(content), "r");
+        try {
+            FileChannelRangeInputStream part = new FileChannelRangeInputStream(file.getChannel(), 5, 10);
+            InputStream repeatable = IOUtils.newRepeatableInputStream(new BoundedInputStream(part, 10));
+            
+            assertTrue(repeatable.markSupported());
+            repeatable.mark(0);
+            assertArrayEquals("56789abcde".getBytes(), readAll(repeatable));
+            repeatable.reset();
+            assertEquals(3, repeatable.skip(3));
+            assertEquals(7, repeatable.available());
+            assertArrayEquals("89abcde".getBytes(), readAll(repeatable));
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.common.comm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.junit.Test;
+
+import com.aliyun.oss.common.parser.ResponseParseException;
+import com.aliyun.oss.common.utils.DateUtil;
+import com.aliyun.oss.internal.OSSHeaders;
+import com.aliyun.oss.internal.ResponseParsers;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.SimplifiedObjectMeta;
+
+public class ResponseHeaderMapTest {
+    
+    private static String toIso88591(String value) throws Exception {
+        return new String(value.getBytes("utf-8"), "iso-8859-1");
+    }
+    
+    private static Header[] sampleHeaders() throws Exception {
+        return new Header[] {
+            new BasicHeader(OSSHeaders.ETAG, "\"5B3C1A2E053D763E1B002CC607C5A0FE\""),
+            new BasicHeader(OSSHeaders.CONTENT_LENGTH, "344606"),
+            new BasicHeader(OSSHeaders.LAST_MODIFIED, "Fri, 24 Feb 2012 06:07:48 GMT"),
+            new BasicHeader(OSSHeaders.OSS_USER_METADATA_PREFIX + "author", toIso88591("作者")),
+            new BasicHeader("x-oss-request-id", "first"),
+            new BasicHeader("x-oss-request-id", "last"),
+        };
+    }
+    
+    @Test
+    public void testLookupAndConversion() throws Exception {
+        ResponseHeaderMap headers = new ResponseHeaderMap(sampleHeaders());
+        
+        assertEquals("344606", headers.get(OSSHeaders.CONTENT_LENGTH));
+        assertEquals("作者", headers.get(OSSHeaders.OSS_USER_METADATA_PREFIX + "author"));
+        assertEquals("last", headers.get("x-oss-request-id"));
+        assertTrue(headers.containsKey(OSSHeaders.ETAG));
+        assertNull(headers.get("Content-Type"));
+        
+        Map<String, String> expected = new HashMap<String, String>();
+        for (Header header : sampleHeaders()) {
+            expected.put(header.getName(), header.getValue());
+        }
+        expected.put(OSSHeaders.OSS_USER_METADATA_PREFIX + "author", "作者");
+        assertEquals(expected.size(), headers.size());
+        assertEquals(expected, new HashMap<String, String>(headers));
+    }
+    
+    @Test
+    public void testModification() throws Exception {
+        ResponseHeaderMap headers = new ResponseHeaderMap(sampleHeaders());
+        
+        headers.put("Content-Type", "text/plain");
+        headers.remove(OSSHeaders.ETAG);
+        assertEquals("text/plain", headers.get("Content-Type"));
+        assertFalse(headers.containsKey(OSSHeaders.ETAG));
+        assertEquals("作者", headers.get(OSSHeaders.OSS_USER_METADATA_PREFIX + "author"));
+        assertEquals(5, headers.size());
+    }
+    
+    @Test
+    public void testLazyObjectMetadata() throws Exception {
+        ObjectMetadata metadata = ResponseParsers.parseObjectMetadata(new ResponseHeaderMap(sampleHeaders()));
+        
+        assertEquals(344606L, metadata.getContentLength());
+        assertEquals("5B3C1A2E053D763E1B002CC607C5A0FE", metadata.getETag());
+        assertEquals(DateUtil.parseRfc822Date("Fri, 24 Feb 2012 06:07:48 GMT"), metadata.getLastModified());
+        assertEquals("作者", metadata.getUserMetadata().get("author"));
+        assertEquals("last", metadata.getRequestId());
+        
+        metadata.setContentType("text/plain");
+        assertEquals("text/plain", metadata.getContentType());
+        assertEquals(344606L, metadata.getContentLength());
+    }
+    
+    @Test
+    public void testMalformedObjectMetadata() throws Exception {
+        Header[] headers = sampleHeaders();
+        headers[2] = new BasicHeader(OSSHeaders.LAST_MODIFIED, "not a date");
+        try {
+            ResponseParsers.parseObjectMetadata(new ResponseHeaderMap(headers));
+            fail("ResponseParseException expected");
+        } catch (ResponseParseException e) {
+        }
+        
+        headers = sampleHeaders();
+        headers[1] = new BasicHeader(OSSHeaders.CONTENT_LENGTH, "-");
+        try {
+            ResponseParsers.parseObjectMetadata(new ResponseHeaderMap(headers));
+            fail("ResponseParseException expected");
+        } catch (ResponseParseException e) {
+        }
+    }
+    
+    @Test
+    public void testSimplifiedObjectMeta() throws Exception {
+        SimplifiedObjectMeta meta = ResponseParsers.parseSimplifiedObjectMeta(
+                new ResponseHeaderMap(sampleHeaders()));
+        
+        assertEquals(344606L, meta.getSize());
+        assertEquals("5B3C1A2E053D763E1B002CC607C5A0FE", meta.getETag());
+        assertEquals(DateUtil.parseRfc822Date("Fri, 24 Feb 2012 06:07:48 GMT"), meta.getLastModified());
+        assertEquals("last", meta.getRequestId());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.oss.common.parser;
+
+import static com.aliyun.oss.common.parser.RequestMarshallers.completeMultipartUploadRequestMarshaller;
+import static com.aliyun.oss.common.parser.RequestMarshallers.deleteObjectsRequestMarshaller;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.DeleteObjectsRequest;
+import com.aliyun.oss.model.PartETag;
+
+public class XmlWriterTest {
+    
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+    
+    @Test
+    public void testDeleteObjectsBody() throws Exception {
+        List<String> keys = new ArrayList<String>();
+        StringBuilder expected = new StringBuilder("<Delete><Quiet>true</Quiet>");
+        for (int i = 0; i < 1000; i++) {
+            keys.add("目录/key-" + i + "\t<&\">\r\n😀");
+            expected.append("<Object><Key>目录/key-" + i 
+                    + "&#x0009;&lt;&amp;&quot;&gt;&#x000D;&#x000A;😀</Key></Object>");
+        }
+        expected.append("</Delete>");
+        byte[] expectedBytes = expected.toString().getBytes("utf-8");
+        
+        DeleteObjectsRequest request = new DeleteObjectsRequest("bucket");
+        request.setKeys(keys);
+        request.setQuiet(true);
+        XmlWriter xmlBody = deleteObjectsRequestMarshaller.marshall(request);
+        try {
+            assertEquals(expectedBytes.length, xmlBody.length());
+            assertArrayEquals(BinaryUtil.calculateMd5(expectedBytes), xmlBody.getMd5());
+            assertArrayEquals(expectedBytes, xmlBody.toByteArray());
+            
+            InputStream in = xmlBody.getInputStream();
+            in.mark(0);
+            assertEquals('<', in.read());
+            in.skip(5000);
+            in.reset();
+            assertArrayEquals(expectedBytes, readAll(in));
+            assertEquals(-1, in.read());
+        } finally {
+            xmlBody.release();
+        }
+    }
+    
+    @Test
+    public void testCompleteMultipartUploadBody() throws Exception {
+        List<PartETag> partETags = new ArrayList<PartETag>();
+        partETags.add(new PartETag(1, "\"9BF156C2C16BB90B9EC81C96FE37EF1B\""));
+        partETags.add(new PartETag(2, "5B3C1A2E053D763E1B002CC607C5A0FE"));
+        CompleteMultipartUploadRequest request = 
+                new CompleteMultipartUploadRequest("bucket", "key", "upload", partETags);
+        
+        XmlWriter xmlBody = completeMultipartUploadRequestMarshaller.marshall(request);
+        try {
+            String expected = "<CompleteMultipartUpload>"
+                    + "<Part><PartNumber>1</PartNumber><ETag>&quot;9BF156C2C16BB90B9EC81C96FE37EF1B&quot;</ETag></Part>"
+                    + "<Part><PartNumber>2</PartNumber><ETag>&quot;5B3C1A2E053D763E1B002CC607C5A0FE&quot;</ETag></Part>"
+                    + "</CompleteMultipartUpload>";
+            assertEquals(expected, new String(readAll(xmlBody.getInputStream()), "utf-8"));
+            assertEquals(expected.length(), xmlBody.getInputStream().getLength());
+        } finally {
+            xmlBody.release();
+        }
+    }
+    
+    @Test
+    public void testReleasedChunksAreReused() throws Exception {
+        XmlWriter first = new XmlWriter();
+        for (int i = 0; i < 5000; i++) {
+            first.element("Key", "key-" + i);
+        }
+        first.release();
+        
+        XmlWriter second = new XmlWriter().element("Key", "a&b");
+        try {
+            assertEquals("<Key>a&amp;b</Key>", new String(second.toByteArray(), "utf-8"));
+            assertArrayEquals(BinaryUtil.calculateMd5("<Key>a&amp;b</Key>".getBytes("utf-8")), second.getMd5());
+        } finally {
+            second.release();
+        }
+    }
+}
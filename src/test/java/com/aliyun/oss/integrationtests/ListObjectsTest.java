@@ -32,6 +32,7 @@ import org.junit.Test;
 import com.aliyun.oss.OSSErrorCode;
 import com.aliyun.oss.OSSException;
 import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.ListingIterator;
 import com.aliyun.oss.model.OSSObjectSummary;
 import com.aliyun.oss.model.ObjectListing;
 
@@ -281,4 +282,39 @@ public class ListObjectsTest extends TestBase {
         }
     }
     
+    @Test
+    public void testIterateObjects() {
+        final String objectPrefix = "iterate-objects-";
+        
+        try {
+            List<String> existingKeys = new ArrayList<String>();
+            for (int i = 0; i < 25; i++) {
+                existingKeys.add(objectPrefix + String.format("%02d", i));
+            }
+            
+            if (!batchPutObject(ossClient, bucketName, existingKeys)) {
+                Assert.fail("batch put object failed");
+            }
+            
+            // Iterate with small pages so that several pages are prefetched
+            ListObjectsRequest listObjectsRequest = new ListObjectsRequest(bucketName);
+            listObjectsRequest.setPrefix(objectPrefix);
+            listObjectsRequest.setMaxKeys(4);
+            List<String> iteratedKeys = new ArrayList<String>();
+            for (OSSObjectSummary s : ossClient.iterateObjects(listObjectsRequest, 3)) {
+                iteratedKeys.add(s.getKey());
+            }
+            Assert.assertEquals(existingKeys, iteratedKeys);
+            
+            // Cancel in the middle of the listing
+            ListingIterator<OSSObjectSummary> it = ossClient.iterateObjects(listObjectsRequest).iterator();
+            Assert.assertTrue(it.hasNext());
+            Assert.assertEquals(existingKeys.get(0), it.next().getKey());
+            it.cancel();
+            Assert.assertFalse(it.hasNext());
+        } catch (Exception e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+    
 }